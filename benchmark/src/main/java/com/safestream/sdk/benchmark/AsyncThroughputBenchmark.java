@@ -0,0 +1,161 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.safestream.sdk.http.SafeStreamAsyncClient;
+import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import com.safestream.sdk.http.SafeStreamHttpClientException;
+import com.safestream.sdk.http.SafeStreamHttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the throughput of {@link SafeStreamAsyncClient} with {@link SafeStreamHttpClient} against a {@link LoopbackStub}, with the same number of requests in flight.
+ *
+ * Usage: <code>AsyncThroughputBenchmark [requests] [in flight]</code>
+ *
+ * Every request is for a different video, so that neither client combines concurrent identical requests into one. The blocking client needs a thread for every request in flight. The async client sends them all from one thread and reads the responses on its I/O threads. Each mode is warmed up and then timed.
+ */
+public class AsyncThroughputBenchmark {
+
+    private static final int WARMUP_REQUESTS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int inFlight = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        LoopbackStub stub = LoopbackStub.start(16);
+        SafeStreamHttpClient client = new SafeStreamHttpClient("BENCHMARK", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withMaxConnectionsTotal(inFlight)
+                .withMaxConnectionsPerRoute(inFlight));
+        SafeStreamAsyncClient asyncClient = new SafeStreamAsyncClient(client);
+
+        try {
+            runBlocking(client, inFlight, WARMUP_REQUESTS, "warmup");
+            runBlocking(client, inFlight, requests, "benchmark");
+            runAsync(asyncClient, inFlight, WARMUP_REQUESTS, "warmup");
+            runAsync(asyncClient, inFlight, requests, "benchmark");
+            System.out.println(String.format("The stub answered %d requests for videos", stub.getRequests()));
+        } finally {
+            client.close();
+            stub.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void runBlocking(final SafeStreamHttpClient client, int inFlight, int requests, String label) throws InterruptedException {
+        final AtomicInteger remaining = new AtomicInteger(requests);
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(inFlight);
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        ExecutorService executor = Executors.newFixedThreadPool(inFlight);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < inFlight; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int request;
+                        while((request = remaining.decrementAndGet()) >= 0) {
+                            try {
+                                client.get("videos?key=video-" + request);
+                            } catch (SafeStreamHttpClientException e) {
+                                fail(failed, e);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        report(label, "blocking", requests, inFlight, System.nanoTime() - start, failed.get(), threadMXBean.getPeakThreadCount());
+        executor.shutdown();
+    }
+
+    private static void runAsync(SafeStreamAsyncClient asyncClient, int inFlight, int requests, String label) throws InterruptedException {
+        final Semaphore slots = new Semaphore(inFlight);
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(requests);
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        FutureCallback<SafeStreamHttpResponse> callback = new FutureCallback<SafeStreamHttpResponse>() {
+            @Override
+            public void completed(SafeStreamHttpResponse result) {
+                finish();
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                fail(failed, ex);
+                finish();
+            }
+
+            @Override
+            public void cancelled() {
+                finish();
+            }
+
+            private void finish() {
+                slots.release();
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for(int i = 0; i < requests; i++) {
+            slots.acquire();
+            asyncClient.get("videos?key=video-" + i, callback);
+        }
+        done.await();
+        report(label, "async", requests, inFlight, System.nanoTime() - start, failed.get(), threadMXBean.getPeakThreadCount());
+    }
+
+    private static void fail(AtomicInteger failed, Exception e) {
+        if(failed.incrementAndGet() == 1) {
+            System.err.println("First failure: " + e);
+        }
+    }
+
+    private static void report(String label, String mode, int requests, int inFlight, long elapsedNanos, int failed, int peakThreads) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        System.out.println(String.format("%s: %d %s requests, %d in flight, in %d ms (%.0f requests/s), %d failed, %d peak threads",
+                label, requests, mode, inFlight, elapsedMillis, requests * 1000.0 / Math.max(1, elapsedMillis), failed, peakThreads));
+    }
+}
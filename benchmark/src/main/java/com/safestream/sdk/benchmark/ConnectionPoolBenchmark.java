@@ -0,0 +1,115 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import com.safestream.sdk.http.SafeStreamHttpClientException;
+import org.apache.http.impl.client.HttpClients;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the requests per second {@link SafeStreamHttpClient} makes against a {@link LoopbackStub} through its shared connection pool and through a new HTTP client for every call, which is how the SDK made every request before it pooled connections.
+ *
+ * Usage: <code>ConnectionPoolBenchmark [requests] [threads]</code>
+ *
+ * Each mode is warmed up and then timed. The stub is plain HTTP, so a new client per call pays for a TCP handshake but not the TLS handshake it pays against the real API, and the difference here is the smallest it can be.
+ */
+public class ConnectionPoolBenchmark {
+
+    private static final int WARMUP_REQUESTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        LoopbackStub stub = LoopbackStub.start(threads);
+        SafeStreamHttpClient client = new SafeStreamHttpClient("BENCHMARK", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withMaxConnectionsTotal(threads)
+                .withMaxConnectionsPerRoute(threads));
+
+        try {
+            for(boolean pooled : new boolean[] { true, false }) {
+                run(client, pooled, threads, WARMUP_REQUESTS, "warmup");
+                run(client, pooled, threads, requests, "benchmark");
+            }
+            System.out.println(String.format("The stub answered %d requests for videos", stub.getRequests()));
+        } finally {
+            client.close();
+            stub.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void run(final SafeStreamHttpClient client, final boolean pooled, int threads, int requests, String label) throws InterruptedException {
+        final AtomicInteger remaining = new AtomicInteger(requests);
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < threads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int request;
+                        while((request = remaining.decrementAndGet()) >= 0) {
+                            // A different key every time, so that the shared client does not combine concurrent identical requests into one
+                            String resource = "videos?key=video-" + request;
+                            try {
+                                if(pooled) {
+                                    client.get(resource);
+                                } else {
+                                    client.get(resource, HttpClients.createDefault());
+                                }
+                            } catch (SafeStreamHttpClientException e) {
+                                if(failed.incrementAndGet() == 1) {
+                                    System.err.println("First failure: " + e);
+                                }
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        System.out.println(String.format("%s: %d requests on %d threads with %s in %d ms (%.0f requests/s), %d failed",
+                label, requests, threads, pooled ? "the shared pool" : "a new client per call", elapsedMillis,
+                requests * 1000.0 / Math.max(1, elapsedMillis), failed.get()));
+    }
+}
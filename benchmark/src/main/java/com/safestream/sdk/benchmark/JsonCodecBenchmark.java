@@ -0,0 +1,115 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.google.gson.reflect.TypeToken;
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+import com.safestream.sdk.json.GsonJsonCodec;
+import com.safestream.sdk.json.JsonCodec;
+import com.safestream.sdk.json.jackson.JacksonJsonCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link JsonCodec}s on the bodies the SDK sends and receives most: watermark requests, watermark results, single videos and a page of videos read from a stream.
+ *
+ * Run with <code>gradle :benchmark:jmh -Pjmh.args="JsonCodecBenchmark -prof gc"</code>. The <code>codec</code> parameter picks the codec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Type VIDEO_LIST_TYPE = new TypeToken<List<Video>>(){}.getType();
+
+    @Param({"gson", "jackson"})
+    private String codec;
+
+    private JsonCodec jsonCodec;
+
+    private EncodingConfiguration watermarkRequest;
+
+    private String video;
+
+    private byte[] videos;
+
+    @Setup
+    public void setup() {
+        if("gson".equals(codec)) {
+            jsonCodec = new GsonJsonCodec();
+        } else if("jackson".equals(codec)) {
+            jsonCodec = new JacksonJsonCodec();
+        } else {
+            throw new IllegalArgumentException("Unknown codec " + codec);
+        }
+        watermarkRequest = jsonCodec.fromJson(Payloads.ENCODING_CONFIGURATION, EncodingConfiguration.class);
+        video = Payloads.video(0);
+        videos = Payloads.videos(100).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public String encodeWatermarkRequest() {
+        return jsonCodec.toJson(watermarkRequest);
+    }
+
+    @Benchmark
+    public WatermarkResult decodeWatermarkResult() {
+        return jsonCodec.fromJson(Payloads.WATERMARK_RESULT, WatermarkResult.class);
+    }
+
+    @Benchmark
+    public Video decodeVideo() {
+        return jsonCodec.fromJson(video, Video.class);
+    }
+
+    @Benchmark
+    public List<Video> decodeVideos() throws IOException {
+        return jsonCodec.fromJson(new ByteArrayInputStream(videos), UTF_8, VIDEO_LIST_TYPE);
+    }
+}
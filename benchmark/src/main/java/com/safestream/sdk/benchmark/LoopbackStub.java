@@ -0,0 +1,136 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stub of the SafeStream API on the loopback interface that hands out a token and answers every request for videos with a list of one video straight away, so a benchmark against it measures the client rather than the server
+ */
+final class LoopbackStub {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static {
+        // Without this the JDK server leaves Nagle's algorithm on, and every response on a kept-alive connection waits about 40 ms for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // and closes kept-alive connections beyond the first 200, which the client then finds dead when it reuses them
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private LoopbackStub(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a stub on a free port
+     * @param threads The number of threads that handle requests
+     * @return The running stub
+     * @throws IOException If the stub cannot listen
+     */
+    static LoopbackStub start(int threads) throws IOException {
+        final byte[] token = "{\"token\":\"benchmark\"}".getBytes(UTF_8);
+        final byte[] videos = Payloads.videos(1).getBytes(UTF_8);
+        final byte[] empty = "{}".getBytes(UTF_8);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final LoopbackStub stub = new LoopbackStub(server, executor);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange.getRequestBody());
+                String path = exchange.getRequestURI().getPath();
+                byte[] body;
+                if(path.endsWith("/token")) {
+                    body = token;
+                } else if(path.endsWith("/videos")) {
+                    stub.requests.incrementAndGet();
+                    body = videos;
+                } else {
+                    body = empty;
+                }
+
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.start();
+        return stub;
+    }
+
+    /**
+     * @return The host name and port to configure the client with
+     */
+    String getHostName() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of requests for videos the stub has answered
+     */
+    int getRequests() {
+        return requests.get();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while(in.read(buffer) != -1) {
+            // Discard the request body
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,101 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.google.gson.Gson;
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.video.signing.PlaybackUrlSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures signing and verifying playback URLs with {@link PlaybackUrlSigner}.
+ *
+ * Run with <code>gradle :benchmark:jmh</code>, adding <code>-Pjmh.args="-prof gc"</code> to see how much each operation allocates. The <code>videos</code> parameter sets how many videos the signed URLs rotate through, so the cost of switching keys shows up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaybackUrlSignerBenchmark {
+
+    private static final String URL = "https://cdn.safestream.com/watermarks/0123456789abcdef/1080p/playlist.m3u8";
+
+    @Param({"1", "100"})
+    private int videos;
+
+    private PlaybackUrlSigner signer;
+
+    private Video[] video;
+
+    private String[] viewers;
+
+    private String signedUrl;
+
+    private long expiresAt;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        signer = new PlaybackUrlSigner("BENCHMARK SECRET");
+        Gson gson = new Gson();
+        video = new Video[videos];
+        for(int i = 0; i < videos; i++) {
+            video[i] = gson.fromJson("{\"id\":\"video-" + i + "\",\"allowHmacAuth\":true}", Video.class);
+        }
+        viewers = new String[1024];
+        for(int i = 0; i < viewers.length; i++) {
+            viewers[i] = "viewer-" + i + "@example.com";
+        }
+        expiresAt = System.currentTimeMillis() / 1000 + 3600;
+        signedUrl = signer.sign(video[0], URL, viewers[0], expiresAt);
+    }
+
+    @Benchmark
+    public String sign() {
+        int i = next++;
+        return signer.sign(video[i % videos], URL, viewers[i & (viewers.length - 1)], expiresAt);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return signer.verify(video[0], signedUrl);
+    }
+}
@@ -0,0 +1,91 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.google.gson.reflect.TypeToken;
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.json.GsonJsonCodec;
+import com.safestream.sdk.json.JsonCodec;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a list of videos straight from the response stream, as the SDK does, with reading the body into a string first and decoding that, as it did before.
+ *
+ * Run with <code>gradle :benchmark:jmh -Pjmh.args="ResponseDecodeBenchmark -prof gc"</code> to see how much each decode allocates. The <code>videos</code> parameter sets the length of the list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Type VIDEO_LIST_TYPE = new TypeToken<List<Video>>(){}.getType();
+
+    @Param({"10", "1000"})
+    private int videos;
+
+    private JsonCodec codec;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        codec = new GsonJsonCodec();
+        body = Payloads.videos(videos).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public List<Video> stream() throws IOException {
+        return codec.fromJson(new ByteArrayInputStream(body), UTF_8, VIDEO_LIST_TYPE);
+    }
+
+    @Benchmark
+    public List<Video> string() throws IOException {
+        return codec.fromJson(IOUtils.toString(new ByteArrayInputStream(body), UTF_8.name()), VIDEO_LIST_TYPE);
+    }
+}
@@ -0,0 +1,132 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.safestream.sdk.api.video.SegmentOverrides;
+import com.safestream.sdk.api.video.SegmentedProxy;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Compares the memory held by the segment overrides of long proxies, and the time to look every segment up, between {@link SegmentOverrides} and the map of strings to boxed numbers Gson reads them into.
+ *
+ * Usage: <code>SegmentOverridesFootprint [segments] [proxies] [overridden percent]</code>
+ *
+ * Each proxy's overrides are decoded from JSON both ways. The heap in use is measured after a full collection while the decoded overrides are still reachable.
+ */
+public class SegmentOverridesFootprint {
+
+    public static void main(String[] args) {
+        int segments = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int proxies = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int overriddenPercent = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        Gson gson = new Gson();
+        String[] json = new String[proxies];
+        for(int p = 0; p < proxies; p++) {
+            json[p] = proxyJson(segments, overriddenPercent, p);
+        }
+        Type mapType = new TypeToken<Map<String, Object>>(){}.getType();
+
+        long baseline = usedHeap();
+        Map<?, ?>[] maps = new Map<?, ?>[proxies];
+        for(int p = 0; p < proxies; p++) {
+            Map<String, Object> proxy = gson.fromJson(json[p], mapType);
+            maps[p] = (Map<?, ?>) proxy.get("segmentOverrides");
+        }
+        long mapBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        SegmentedProxy[] compact = new SegmentedProxy[proxies];
+        for(int p = 0; p < proxies; p++) {
+            compact[p] = gson.fromJson(json[p], SegmentedProxy.class);
+        }
+        long compactBytes = usedHeap() - baseline;
+
+        int overrides = compact[0].getCompactSegmentOverrides().getCount();
+        System.out.println(String.format("%d proxies of %d segments with %d overrides each", proxies, segments, overrides));
+        System.out.println(String.format("map:     %,d bytes per proxy (%.1f per override)", mapBytes / proxies, mapBytes / (double) proxies / overrides));
+        System.out.println(String.format("compact: %,d bytes per proxy (%.1f per override)", compactBytes / proxies, compactBytes / (double) proxies / overrides));
+
+        // Look up every segment, as building a playlist does
+        double sink = 0;
+        for(int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for(Map<?, ?> map : maps) {
+                for(int i = 0; i < segments; i++) {
+                    Object duration = map.get(Integer.toString(i));
+                    sink += duration != null ? ((Number) duration).doubleValue() : 6;
+                }
+            }
+            long mapNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(SegmentedProxy proxy : compact) {
+                SegmentOverrides segmentOverrides = proxy.getCompactSegmentOverrides();
+                for(int i = 0; i < segments; i++) {
+                    sink += segmentOverrides.getDuration(i, 6);
+                }
+            }
+            long compactNanos = System.nanoTime() - start;
+
+            if(round == 1) {
+                System.out.println(String.format("lookup:  map %.1f ns, compact %.1f ns per segment", mapNanos / (double) proxies / segments, compactNanos / (double) proxies / segments));
+            }
+        }
+
+        // Keep everything reachable until the end
+        System.out.println(sink > 0 && maps.length == compact.length ? "" : "-");
+    }
+
+    private static String proxyJson(int segments, int overriddenPercent, int seed) {
+        StringBuilder json = new StringBuilder("{\"type\":\"HLSDEFAULT\",\"url\":\"https://example.com/proxy/").append(seed)
+                .append("\",\"segmentDuration\":6,\"segmentNameFormat\":\"segment_%05d.ts\",\"segmentCount\":").append(segments)
+                .append(",\"segmentOverrides\":{");
+        boolean first = true;
+        for(int i = 0; i < segments; i++) {
+            if(i % 100 >= overriddenPercent) {
+                continue;
+            }
+            if(!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(i).append("\":").append(5 + (i + seed) % 1000 / 1000.0);
+        }
+        return json.append("}}").toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,163 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.InstanceCreator;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.ConstructorConstructor;
+import com.google.gson.internal.Excluder;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.safestream.sdk.api.config.VideoConfiguration;
+import com.safestream.sdk.api.config.storage.S3StorageConfiguration;
+import com.safestream.sdk.api.video.Resolution;
+import com.safestream.sdk.api.video.SegmentedProxy;
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.watermarking.WatermarkConfiguration;
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+import com.safestream.sdk.json.SafeStreamGson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding each SDK model with its streaming type adapter and with Gson's reflection, which the SDK used before the models had adapters.
+ *
+ * Run with <code>gradle :benchmark:jmh -Pjmh.args="TypeAdapterBenchmark -prof gc"</code>. The <code>model</code> parameter picks the model.
+ *
+ * The models name their adapters with <code>@JsonAdapter</code>, which any Gson honours, so the reflective Gson registers a factory that hands every model to Gson's reflective adapter first. {@link com.safestream.sdk.api.config.storage.StorageConfiguration} keeps its adapter in both, since it is abstract and Gson cannot read it by reflection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeAdapterBenchmark {
+
+    @Param({"Video", "SegmentedProxy", "Resolution", "VideoConfiguration", "S3StorageConfiguration", "WatermarkConfiguration", "EncodingConfiguration", "WatermarkResult"})
+    private String model;
+
+    private Gson generated;
+
+    private Gson reflective;
+
+    private Class<?> type;
+
+    private String json;
+
+    private Object value;
+
+    @Setup
+    public void setup() {
+        generated = SafeStreamGson.getInstance();
+        reflective = reflectiveGson();
+        if("Video".equals(model)) {
+            type = Video.class;
+            json = Payloads.video(0);
+        } else if("SegmentedProxy".equals(model)) {
+            type = SegmentedProxy.class;
+            json = Payloads.SEGMENTED_PROXY;
+        } else if("Resolution".equals(model)) {
+            type = Resolution.class;
+            json = Payloads.RESOLUTION;
+        } else if("VideoConfiguration".equals(model)) {
+            type = VideoConfiguration.class;
+            json = Payloads.VIDEO_CONFIGURATION;
+        } else if("S3StorageConfiguration".equals(model)) {
+            type = S3StorageConfiguration.class;
+            json = Payloads.S3_STORAGE_CONFIGURATION;
+        } else if("WatermarkConfiguration".equals(model)) {
+            type = WatermarkConfiguration.class;
+            json = Payloads.WATERMARK_CONFIGURATION;
+        } else if("EncodingConfiguration".equals(model)) {
+            type = EncodingConfiguration.class;
+            json = Payloads.ENCODING_CONFIGURATION;
+        } else if("WatermarkResult".equals(model)) {
+            type = WatermarkResult.class;
+            json = Payloads.WATERMARK_RESULT;
+        } else {
+            throw new IllegalArgumentException("Unknown model " + model);
+        }
+        value = generated.fromJson(json, type);
+    }
+
+    @Benchmark
+    public String encodeGenerated() {
+        return generated.toJson(value, type);
+    }
+
+    @Benchmark
+    public String encodeReflective() {
+        return reflective.toJson(value, type);
+    }
+
+    @Benchmark
+    public Object decodeGenerated() {
+        return generated.fromJson(json, type);
+    }
+
+    @Benchmark
+    public Object decodeReflective() {
+        return reflective.fromJson(json, type);
+    }
+
+    /**
+     * A Gson that reads and writes the concrete SDK models by reflection, as a Gson did before the models had adapters
+     */
+    static Gson reflectiveGson() {
+        final ReflectiveTypeAdapterFactory reflection = new ReflectiveTypeAdapterFactory(
+                new ConstructorConstructor(Collections.<Type, InstanceCreator<?>>emptyMap()), FieldNamingPolicy.IDENTITY, Excluder.DEFAULT);
+        return new GsonBuilder().registerTypeAdapterFactory(new TypeAdapterFactory() {
+            @Override
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+                Class<? super T> rawType = typeToken.getRawType();
+                boolean model = rawType.getName().startsWith("com.safestream.sdk.api.") && !rawType.isEnum()
+                        && !Modifier.isAbstract(rawType.getModifiers()) && !Map.class.isAssignableFrom(rawType);
+                return model ? reflection.create(gson, typeToken) : null;
+            }
+        }).create();
+    }
+}
@@ -0,0 +1,216 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.benchmark;
+
+import com.safestream.sdk.api.SafeStreamAPI;
+import com.safestream.sdk.api.watermarking.WatermarkAPI;
+import com.safestream.sdk.api.watermarking.WatermarkAPIException;
+import com.safestream.sdk.api.watermarking.WatermarkConfiguration;
+import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import com.safestream.sdk.http.VirtualThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes many blocking watermark calls at once against a local stub of the SafeStream API, each from its own thread, and reports how long they took and how many platform threads were needed.
+ *
+ * Usage: <code>VirtualThreadBenchmark [calls] [virtual|platform|pool]</code>
+ *
+ * <ul>
+ *     <li><code>virtual</code> runs each call on a virtual thread and needs Java 24, see {@link VirtualThreads}</li>
+ *     <li><code>platform</code> runs each call on a new platform thread</li>
+ *     <li><code>pool</code> runs the calls on a pool of 200 platform threads</li>
+ * </ul>
+ *
+ * The stub accepts every watermark straight away and reports it ready after {@link #JOB_MILLIS}, so the calls spend nearly all their time waiting.
+ */
+public class VirtualThreadBenchmark {
+
+    /**
+     * How long each stub watermark takes to be ready
+     */
+    private static final long JOB_MILLIS = 2000;
+
+    private static final int POOL_SIZE = 200;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String threads = args.length > 1 ? args[1] : (VirtualThreads.isAvailable() ? "virtual" : "platform");
+        if("virtual".equals(threads) && !VirtualThreads.isAvailable()) {
+            System.err.println("Virtual threads need Java 24 or later");
+            System.exit(1);
+        }
+
+        HttpServer stub = startStub();
+        SafeStreamAPI safestream = new SafeStreamAPI("BENCHMARK", new SafeStreamHttpClientConfiguration()
+                .withHostName("localhost:" + stub.getAddress().getPort())
+                .withMaxConnectionsTotal(POOL_SIZE)
+                .withMaxConnectionsPerRoute(POOL_SIZE)
+                .withConnectionRequestTimeoutMillis(60000)
+                .withVirtualThreads("virtual".equals(threads)));
+
+        try {
+            // Fetch the auth token and warm up the connection pool before timing
+            run(safestream, threads, Math.min(calls, POOL_SIZE), "warmup");
+            run(safestream, threads, calls, "benchmark");
+        } finally {
+            safestream.close();
+            stub.stop(0);
+        }
+        System.exit(0);
+    }
+
+    private static void run(SafeStreamAPI safestream, String threads, int calls, String label) throws InterruptedException {
+        final WatermarkAPI watermarkAPI = safestream.watermark();
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        ExecutorService executor = newExecutor(threads);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < calls; i++) {
+            final String content = label + " recipient " + i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        watermarkAPI.create("VIDEO", new EncodingConfiguration(new WatermarkConfiguration().withContent(content)), 120000);
+                        succeeded.incrementAndGet();
+                    } catch (WatermarkAPIException e) {
+                        if(failed.incrementAndGet() == 1) {
+                            System.err.println("First failure: " + e);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        System.out.println(String.format("%s: %d calls on %s threads in %d ms (%.0f calls/s), %d succeeded, %d failed, %d peak platform threads, %d polls per watermark",
+                label, calls, threads, elapsedMillis, calls * 1000.0 / Math.max(1, elapsedMillis), succeeded.get(), failed.get(),
+                threadMXBean.getPeakThreadCount(), Math.round(watermarkAPI.getJobTracker().getMetrics().getPollsPerJob())));
+    }
+
+    private static ExecutorService newExecutor(String threads) {
+        if("virtual".equals(threads)) {
+            return VirtualThreads.newExecutor("benchmark");
+        }
+        if("pool".equals(threads)) {
+            return Executors.newFixedThreadPool(POOL_SIZE);
+        }
+        if("platform".equals(threads)) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(null, runnable, "benchmark", 256 * 1024);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        throw new IllegalArgumentException("Unknown threads " + threads + ", expected virtual, platform or pool");
+    }
+
+    /**
+     * A stub of the SafeStream API that hands out a token, accepts watermarks and reports them ready once {@link #JOB_MILLIS} have passed
+     */
+    private static HttpServer startStub() throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        final ConcurrentMap<String, Long> jobs = new ConcurrentHashMap<String, Long>();
+        final AtomicInteger ids = new AtomicInteger();
+
+        server.setExecutor(Executors.newFixedThreadPool(64));
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange.getRequestBody());
+                String path = exchange.getRequestURI().getPath();
+                String body;
+                if(path.endsWith("/token")) {
+                    body = "{\"token\":\"benchmark\"}";
+                } else if("POST".equals(exchange.getRequestMethod()) && path.endsWith("/watermark")) {
+                    String id = String.valueOf(ids.incrementAndGet());
+                    jobs.put(id, System.currentTimeMillis());
+                    body = "{\"status\":\"PENDING\",\"href\":\"http://localhost:" + server.getAddress().getPort() + "/watermark/" + id + "\"}";
+                } else if(path.contains("/watermark/")) {
+                    String id = path.substring(path.lastIndexOf('/') + 1);
+                    Long created = jobs.get(id);
+                    boolean ready = created != null && System.currentTimeMillis() - created >= JOB_MILLIS;
+                    body = "{\"status\":\"" + (ready ? "READY" : "WATERMARKING") + "\",\"href\":\"http://localhost:" + server.getAddress().getPort() + "/watermark/" + id + "\"}";
+                } else {
+                    body = "{}";
+                }
+
+                byte[] bytes = body.getBytes(UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while(in.read(buffer) != -1) {
+            // Discard the request body
+        }
+        in.close();
+    }
+}
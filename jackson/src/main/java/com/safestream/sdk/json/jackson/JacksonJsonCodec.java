@@ -0,0 +1,182 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.json.jackson;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.safestream.sdk.api.config.VideoConfiguration;
+import com.safestream.sdk.api.config.storage.StorageConfiguration;
+import com.safestream.sdk.api.video.SegmentOverrides;
+import com.safestream.sdk.api.video.SegmentedProxy;
+import com.safestream.sdk.json.JsonCodec;
+import com.safestream.sdk.json.JsonCodecException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * A {@link JsonCodec} backed by Jackson with the Afterburner module.
+ *
+ * The mapper is configured to match the default Gson codec: models are read and written through their fields, null properties are omitted and unknown properties are ignored.
+ *
+ * <code>
+ *
+ *     SafeStreamAPI safestream = new SafeStreamAPI("MY API KEY", new SafeStreamHttpClientConfiguration()
+ *                                          .withJsonCodec(new JacksonJsonCodec()));
+ *
+ * </code>
+ */
+public class JacksonJsonCodec implements JsonCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonJsonCodec() {
+        this(createObjectMapper());
+    }
+
+    /**
+     * Uses an existing mapper, for example one already configured by your application. The mapper must be able to read the SDK models through their fields, see {@link #configure(ObjectMapper)}.
+     * @param objectMapper A Jackson object mapper
+     */
+    public JacksonJsonCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new JsonCodecException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJson(String json, Type type) {
+        if(json == null || json.trim().isEmpty()) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(json, objectMapper.getTypeFactory().constructType(type));
+        } catch (JsonProcessingException e) {
+            throw new JsonCodecException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJson(InputStream in, Charset charset, Type type) throws IOException {
+        // Jackson decodes UTF-8 bytes itself, which is faster than going through a Reader
+        JsonParser parser = UTF_8.equals(charset)
+                ? objectMapper.getFactory().createParser(in)
+                : objectMapper.getFactory().createParser(new InputStreamReader(in, charset));
+        // The caller owns the stream, so closing the parser must not close it
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+        try {
+            // An empty body is read as null, the same as Gson
+            if(parser.nextToken() == null) {
+                return null;
+            }
+            JavaType javaType = objectMapper.getTypeFactory().constructType(type);
+            return objectMapper.readValue(parser, javaType);
+        } catch (JsonProcessingException e) {
+            throw new JsonCodecException(e);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Creates a mapper configured for the SDK models
+     * @return A new object mapper
+     */
+    public static ObjectMapper createObjectMapper() {
+        return configure(new ObjectMapper());
+    }
+
+    /**
+     * Configures an existing mapper for the SDK models
+     * @param objectMapper A Jackson object mapper
+     * @return The same mapper
+     */
+    public static ObjectMapper configure(ObjectMapper objectMapper) {
+        // The models are plain field holders, many without setters, so they are mapped through their fields like Gson does
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.setVisibility(PropertyAccessor.CREATOR, JsonAutoDetect.Visibility.ANY);
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        objectMapper.addMixIn(VideoConfiguration.class, VideoConfigurationMixIn.class);
+        objectMapper.addMixIn(SegmentOverrides.class, SegmentOverridesMixIn.class);
+        objectMapper.addMixIn(SegmentedProxy.class, SegmentedProxyMixIn.class);
+        objectMapper.registerModule(new AfterburnerModule());
+        return objectMapper;
+    }
+
+    /**
+     * VideoConfiguration has no default constructor
+     */
+    abstract static class VideoConfigurationMixIn {
+        @JsonCreator
+        VideoConfigurationMixIn(@JsonProperty("storageConfiguration") StorageConfiguration storageConfiguration) { }
+    }
+
+    /**
+     * SegmentedProxy's overrides field is stale once they have been read as a map, so they are written through their compact getter
+     */
+    abstract static class SegmentedProxyMixIn {
+        @JsonProperty("segmentOverrides")
+        abstract SegmentOverrides getCompactSegmentOverrides();
+    }
+
+    /**
+     * SegmentOverrides is an immutable map, built from the map read from JSON
+     */
+    abstract static class SegmentOverridesMixIn {
+        @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+        static SegmentOverrides of(Map<String, ?> overrides) {
+            return null;
+        }
+    }
+}
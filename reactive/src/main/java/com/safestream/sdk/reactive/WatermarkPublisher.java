@@ -0,0 +1,187 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.reactive;
+
+import com.safestream.sdk.api.watermarking.WatermarkAPI;
+import com.safestream.sdk.api.watermarking.WatermarkBatch;
+import com.safestream.sdk.api.watermarking.WatermarkBatchCallback;
+import com.safestream.sdk.api.watermarking.WatermarkBatchConfiguration;
+import com.safestream.sdk.api.watermarking.WatermarkBatchItem;
+import com.safestream.sdk.api.watermarking.WatermarkRequest;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A Reactive Streams {@link Publisher} of the status updates and outcomes of many watermarks.
+ *
+ * Each subscriber gets its own {@link WatermarkBatch} with backpressure, so watermarks are only submitted, and only polled, while the subscriber has asked for more items than there are watermarks in flight. A slow subscriber slows the batch down instead of items building up in memory. Cancelling the subscription cancels the batch.
+ *
+ * On Java 9 and later the publisher can be used as a <code>java.util.concurrent.Flow.Publisher</code> with <code>org.reactivestreams.FlowAdapters</code>.
+ *
+ * <code>
+ *
+ *     Publisher&lt;WatermarkBatchItem&gt; updates = new WatermarkPublisher(safestream.watermark(), requests,
+ *                                              new WatermarkBatchConfiguration().withStatusUpdates(true));
+ *
+ * </code>
+ */
+public class WatermarkPublisher implements Publisher<WatermarkBatchItem> {
+
+    private final WatermarkAPI watermarkAPI;
+
+    private final Collection<WatermarkRequest> requests;
+
+    private final WatermarkBatchConfiguration batchConfiguration;
+
+    public WatermarkPublisher(WatermarkAPI watermarkAPI, Collection<WatermarkRequest> requests) {
+        this(watermarkAPI, requests, new WatermarkBatchConfiguration());
+    }
+
+    /**
+     * @param watermarkAPI {@link WatermarkAPI}
+     * @param requests The video and encoding configuration of each watermark. Every subscriber submits all of them.
+     * @param batchConfiguration {@link WatermarkBatchConfiguration}. Backpressure is always on whatever it is set to.
+     */
+    public WatermarkPublisher(WatermarkAPI watermarkAPI, Collection<WatermarkRequest> requests, WatermarkBatchConfiguration batchConfiguration) {
+        this.watermarkAPI = watermarkAPI;
+        this.requests = new ArrayList<WatermarkRequest>(requests);
+        this.batchConfiguration = new WatermarkBatchConfiguration()
+                .withMaxConcurrentSubmissions(batchConfiguration.getMaxConcurrentSubmissions())
+                .withMaxInFlight(batchConfiguration.getMaxInFlight())
+                .withTimeout(batchConfiguration.getTimeout())
+                .withStatusUpdates(batchConfiguration.isStatusUpdates())
+                .withPriority(batchConfiguration.getPriority())
+                .withBackpressure(true);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super WatermarkBatchItem> subscriber) {
+        if(subscriber == null) {
+            throw new NullPointerException("A subscriber is needed");
+        }
+
+        BatchSubscription subscription = new BatchSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * Connects one subscriber to its batch. The batch is only created once the subscriber has been handed its subscription, so no item can arrive before it.
+     */
+    private class BatchSubscription implements Subscription, WatermarkBatchCallback {
+
+        private final Subscriber<? super WatermarkBatchItem> subscriber;
+
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        /**
+         * Guarded by this
+         */
+        private WatermarkBatch batch;
+
+        /**
+         * Items asked for before the batch was created. Guarded by this.
+         */
+        private long requested;
+
+        private volatile boolean cancelled;
+
+        BatchSubscription(Subscriber<? super WatermarkBatchItem> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            WatermarkBatch batch;
+            long requested;
+            synchronized (this) {
+                if(cancelled) {
+                    return;
+                }
+                batch = watermarkAPI.createAll(requests, batchConfiguration, this);
+                this.batch = batch;
+                requested = this.requested;
+            }
+            if(requested > 0) {
+                batch.request(requested);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                cancel();
+                if(terminated.compareAndSet(false, true)) {
+                    subscriber.onError(new IllegalArgumentException("The number of items requested must be positive"));
+                }
+                return;
+            }
+
+            WatermarkBatch batch;
+            synchronized (this) {
+                if(cancelled) {
+                    return;
+                }
+                if(this.batch == null) {
+                    requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                    return;
+                }
+                batch = this.batch;
+            }
+            batch.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            WatermarkBatch batch;
+            synchronized (this) {
+                cancelled = true;
+                batch = this.batch;
+            }
+            if(batch != null) {
+                batch.cancel();
+            }
+        }
+
+        @Override
+        public void completed(WatermarkBatchItem item) {
+            if(!cancelled) {
+                subscriber.onNext(item);
+            }
+        }
+
+        @Override
+        public void finished(WatermarkBatch batch) {
+            if(!cancelled && terminated.compareAndSet(false, true)) {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
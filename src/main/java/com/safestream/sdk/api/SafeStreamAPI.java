@@ -25,20 +25,73 @@
 
 package com.safestream.sdk.api;
 
+import com.safestream.sdk.api.polling.PollScheduler;
 import com.safestream.sdk.api.video.VideoAPI;
+import com.safestream.sdk.api.video.cache.VideoCache;
 import com.safestream.sdk.api.watermarking.WatermarkAPI;
+import com.safestream.sdk.api.watermarking.WatermarkJobTracker;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCache;
+import com.safestream.sdk.api.watermarking.journal.WatermarkJournal;
+import com.safestream.sdk.api.watermarking.webhook.WatermarkWebhookReceiver;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
 import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
 
-public class SafeStreamAPI {
+import java.io.Closeable;
+import java.io.IOException;
+
+public class SafeStreamAPI implements Closeable {
 
     private SafeStreamHttpClient safeStreamHttpClient;
 
+    /**
+     * Polls every watermark this API is waiting for. It is created the first time a watermark API is requested.
+     */
+    private WatermarkJobTracker watermarkJobTracker;
+
+    /**
+     * Learns how long video ingests take, shared by every video API
+     */
+    private final PollScheduler ingestPollScheduler = new PollScheduler();
+
+    /**
+     * Videos found by key, shared by every video API, or null if videos are not cached
+     */
+    private VideoCache videoCache;
+
+    /**
+     * Watermarks that are ready, shared by every watermark API, or null if watermarks are not cached
+     */
+    private WatermarkCache watermarkCache;
+
+    /**
+     * Receives watermark callbacks, or null if watermarks are only polled
+     */
+    private WatermarkWebhookReceiver webhookReceiver;
+
     protected SafeStreamAPI() { }
 
     public SafeStreamAPI(String apiKey) {
         this.safeStreamHttpClient = new SafeStreamHttpClient(apiKey);
     }
 
+    /**
+     * Creates a SafeStream API with custom transport settings such as connection pool limits and keep alive. See {@link SafeStreamHttpClientConfiguration}
+     * @param apiKey SafeStream API key
+     * @param configuration {@link SafeStreamHttpClientConfiguration}
+     */
+    public SafeStreamAPI(String apiKey, SafeStreamHttpClientConfiguration configuration) {
+        this.safeStreamHttpClient = new SafeStreamHttpClient(apiKey, configuration);
+    }
+
+    /**
+     * Creates a SafeStream API on top of an existing client, for example one that shares its connection pool with other API keys. See {@link SafeStreamClientRegistry}
+     * @param safeStreamHttpClient {@link SafeStreamHttpClient}
+     */
+    public SafeStreamAPI(SafeStreamHttpClient safeStreamHttpClient) {
+        this.safeStreamHttpClient = safeStreamHttpClient;
+    }
+
     /**
      * The video API is for ingesting and managing videos in SafeStream.
      *
@@ -46,7 +99,17 @@ public class SafeStreamAPI {
      * @return A VideoAPI object {@see VideoAPI}
      */
     public VideoAPI video() {
-        return new VideoAPI(safeStreamHttpClient);
+        return new VideoAPI(safeStreamHttpClient, ingestPollScheduler, videoCache);
+    }
+
+    /**
+     * Caches videos found by key, so that finding the same video again, for example on every playback request, does not request it from SafeStream each time. See {@link VideoCache}
+     * @param videoCache {@link VideoCache}
+     * @return this
+     */
+    public SafeStreamAPI withVideoCache(VideoCache videoCache) {
+        this.videoCache = videoCache;
+        return this;
     }
 
     /**
@@ -55,6 +118,58 @@ public class SafeStreamAPI {
      * @return A WatermarkAPI object {@see WatermarkAPI}
      */
     public WatermarkAPI watermark() {
-        return new WatermarkAPI(safeStreamHttpClient);
+        return new WatermarkAPI(safeStreamHttpClient, getWatermarkJobTracker(), watermarkCache);
+    }
+
+    /**
+     * Caches watermarks once they are ready, so that watermarking the same video with the same settings again returns the existing watermark. See {@link WatermarkCache}
+     * @param watermarkCache {@link WatermarkCache}
+     * @return this
+     */
+    public SafeStreamAPI withWatermarkCache(WatermarkCache watermarkCache) {
+        this.watermarkCache = watermarkCache;
+        return this;
+    }
+
+    /**
+     * Completes watermarks from SafeStream callbacks instead of polling for them. Watermarks are still polled if their callback does not arrive in time. See {@link WatermarkWebhookReceiver}
+     * @param webhookReceiver A started {@link WatermarkWebhookReceiver}
+     * @return this
+     */
+    public synchronized SafeStreamAPI withWebhookReceiver(WatermarkWebhookReceiver webhookReceiver) {
+        this.webhookReceiver = webhookReceiver;
+        if(watermarkJobTracker != null) {
+            watermarkJobTracker.useWebhooks(webhookReceiver);
+        }
+        return this;
+    }
+
+    /**
+     * Records watermark jobs in a journal so that the jobs still pending when the process stops are resumed, not submitted again, when it starts. Resuming starts straight away. See {@link WatermarkJournal}
+     * @param watermarkJournal An open {@link WatermarkJournal}
+     * @return this
+     */
+    public synchronized SafeStreamAPI withWatermarkJournal(WatermarkJournal watermarkJournal) {
+        getWatermarkJobTracker().useJournal(watermarkJournal);
+        return this;
+    }
+
+    private synchronized WatermarkJobTracker getWatermarkJobTracker() {
+        if(watermarkJobTracker == null) {
+            watermarkJobTracker = new WatermarkJobTracker(new SafeStreamAsyncClient(safeStreamHttpClient));
+            watermarkJobTracker.useWebhooks(webhookReceiver);
+        }
+        return watermarkJobTracker;
+    }
+
+    /**
+     * Releases the connection pool held by this API. Call this once when your application shuts down.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(safeStreamHttpClient != null) {
+            safeStreamHttpClient.close();
+        }
     }
 }
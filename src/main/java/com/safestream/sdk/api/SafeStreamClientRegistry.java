@@ -0,0 +1,246 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api;
+
+import com.safestream.sdk.http.RequestDispatcher;
+import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import com.safestream.sdk.http.SafeStreamHttpResources;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves SafeStream APIs for many API keys (tenants) from one process.
+ *
+ * Every tenant gets its own auth token but all tenants share a single connection pool, scheduler and serializer. When tenants have more requests waiting than may be in flight, each gets a share of the requests sent in proportion to its weight, see {@link #setWeight(String, double)}. The number of tenants is bounded. When the bound is reached the least recently used tenant is evicted, and tenants that have not been looked up for the idle timeout are evicted in the background.
+ *
+ * Look tenants up through {@link #get(String)} for each unit of work rather than holding on to the returned API. An evicted API still works, but its token is no longer refreshed ahead of expiry.
+ */
+public class SafeStreamClientRegistry implements Closeable {
+
+    private final SafeStreamHttpResources resources;
+
+    /**
+     * Maximum number of tenants held at once
+     */
+    private final int maxTenants;
+
+    /**
+     * Time in millis after which a tenant that has not been looked up is evicted
+     */
+    private final long idleTimeoutMillis;
+
+    /**
+     * Tenants in least recently used order
+     */
+    private final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<String, Tenant>(16, 0.75f, true);
+
+    private final ScheduledFuture<?> idleSweep;
+
+    private boolean closed;
+
+    public SafeStreamClientRegistry() {
+        this(new SafeStreamHttpClientConfiguration(), 1000, TimeUnit.MINUTES.toMillis(30));
+    }
+
+    /**
+     * @param configuration Transport settings shared by all tenants {@link SafeStreamHttpClientConfiguration}
+     * @param maxTenants Maximum number of tenants held at once
+     * @param idleTimeoutMillis Time in millis after which a tenant that has not been looked up is evicted
+     */
+    public SafeStreamClientRegistry(SafeStreamHttpClientConfiguration configuration, int maxTenants, long idleTimeoutMillis) {
+        if(maxTenants < 1) {
+            throw new IllegalArgumentException("maxTenants must be at least 1");
+        }
+
+        this.resources = new SafeStreamHttpResources(configuration);
+        this.maxTenants = maxTenants;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        long sweepInterval = Math.max(1000, idleTimeoutMillis / 2);
+        this.idleSweep = resources.getScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleTenants();
+            }
+        }, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the SafeStream API for an API key, creating it if this is the first time the key has been seen
+     * @param apiKey SafeStream API key
+     * @return A SafeStream API for the key {@link SafeStreamAPI}
+     */
+    public SafeStreamAPI get(String apiKey) {
+        if(apiKey == null) {
+            throw new IllegalArgumentException("An API key is required");
+        }
+
+        Tenant evicted = null;
+        Tenant tenant;
+        synchronized (tenants) {
+            if(closed) {
+                throw new IllegalStateException("The client registry has been closed");
+            }
+
+            tenant = tenants.get(apiKey);
+            if(tenant == null) {
+                if(tenants.size() >= maxTenants) {
+                    Iterator<Map.Entry<String, Tenant>> eldest = tenants.entrySet().iterator();
+                    evicted = eldest.next().getValue();
+                    eldest.remove();
+                }
+                tenant = new Tenant(new SafeStreamHttpClient(apiKey, resources));
+                tenants.put(apiKey, tenant);
+            }
+            tenant.lastAccess = System.currentTimeMillis();
+        }
+
+        if(evicted != null) {
+            evicted.close();
+        }
+        return tenant.api;
+    }
+
+    /**
+     * Removes a tenant and discards its auth token
+     * @param apiKey SafeStream API key
+     */
+    public void remove(String apiKey) {
+        Tenant removed;
+        synchronized (tenants) {
+            removed = tenants.remove(apiKey);
+        }
+
+        if(removed != null) {
+            removed.close();
+        }
+    }
+
+    /**
+     * Gives a tenant a larger or smaller share of the requests in flight when tenants have more requests waiting than may be sent at once. The weight is kept if the tenant is evicted. See {@link RequestDispatcher}
+     * @param apiKey SafeStream API key
+     * @param weight A positive weight. The default is 1.
+     */
+    public void setWeight(String apiKey, double weight) {
+        resources.getRequestDispatcher().setWeight(apiKey, weight);
+    }
+
+    /**
+     * Orders requests by priority and shares them between tenants. Use it to read queue depth and wait times, see {@link RequestDispatcher#getMetrics(com.safestream.sdk.http.RequestPriority)}
+     * @return The request dispatcher shared by every tenant
+     */
+    public RequestDispatcher getRequestDispatcher() {
+        return resources.getRequestDispatcher();
+    }
+
+    /**
+     * @return The number of tenants currently held
+     */
+    public int size() {
+        synchronized (tenants) {
+            return tenants.size();
+        }
+    }
+
+    /**
+     * Discards every tenant and closes the shared connection pool and scheduler
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        List<Tenant> removed;
+        synchronized (tenants) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            removed = new ArrayList<Tenant>(tenants.values());
+            tenants.clear();
+        }
+
+        idleSweep.cancel(false);
+        for(Tenant tenant : removed) {
+            tenant.close();
+        }
+        resources.close();
+    }
+
+    private void evictIdleTenants() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMillis;
+        List<Tenant> evicted = new ArrayList<Tenant>();
+        synchronized (tenants) {
+            // Iteration is in least recently used order, so we can stop at the first tenant that is not idle
+            Iterator<Tenant> iterator = tenants.values().iterator();
+            while(iterator.hasNext()) {
+                Tenant tenant = iterator.next();
+                if(tenant.lastAccess > idleSince) {
+                    break;
+                }
+                evicted.add(tenant);
+                iterator.remove();
+            }
+        }
+
+        for(Tenant tenant : evicted) {
+            tenant.close();
+        }
+    }
+
+    private static class Tenant {
+
+        private final SafeStreamHttpClient client;
+
+        private final SafeStreamAPI api;
+
+        /**
+         * Epoch millis of the last lookup. Guarded by the tenants lock.
+         */
+        private long lastAccess;
+
+        Tenant(SafeStreamHttpClient client) {
+            this.client = client;
+            this.api = new SafeStreamAPI(client);
+        }
+
+        void close() {
+            try {
+                // Only releases the tenant's token, the shared resources stay open
+                client.close();
+            } catch (IOException e) {
+                // Closing a client that shares its resources does no I/O
+            }
+        }
+    }
+}
@@ -24,11 +24,13 @@
 
 package com.safestream.sdk.api.config;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.safestream.sdk.api.config.storage.StorageConfiguration;
 
 /**
  * SafeStream allows you to override the storage configuration for each video. If you want to store the video and it's watermarked proxies in your own S3 bucket for example, you can apply an s3 storage configuration {@link com.safestream.sdk.api.config.storage.S3StorageConfiguration} to the video.
  */
+@JsonAdapter(VideoConfigurationTypeAdapter.Factory.class)
 public class VideoConfiguration {
 
     private StorageConfiguration storageConfiguration;
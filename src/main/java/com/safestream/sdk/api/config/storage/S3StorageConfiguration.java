@@ -24,6 +24,8 @@
 
 package com.safestream.sdk.api.config.storage;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.HashMap;
 
 /**
@@ -32,6 +34,7 @@ import java.util.HashMap;
  * This provides support for storing videos and watermarked video proxies on S3 rather than the default SafeStream storage service
  *
  */
+@JsonAdapter(StorageConfigurationTypeAdapter.Factory.class)
 public class S3StorageConfiguration extends StorageConfiguration {
 
     public S3StorageConfiguration() {
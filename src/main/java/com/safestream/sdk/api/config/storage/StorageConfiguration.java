@@ -24,6 +24,8 @@
 
 package com.safestream.sdk.api.config.storage;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,17 +35,18 @@ import java.util.Map;
  * See StorageConfigurationType for a list of supported services {@link StorageConfigurationType}
  *
  */
+@JsonAdapter(StorageConfigurationTypeAdapter.Factory.class)
 public class StorageConfiguration {
 
     /**
      * The type of storage service adapter to use
      */
-    StorageConfigurationType type;
+    private StorageConfigurationType type;
 
     /**
      * The connection properties required for the storage configuration type
      */
-    Map<String, Object> properties;
+    private Map<String, Object> properties;
 
     public StorageConfiguration() {}
 
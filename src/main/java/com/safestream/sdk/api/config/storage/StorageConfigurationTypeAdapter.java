@@ -0,0 +1,103 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.config.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Streaming JSON adapter for {@link StorageConfiguration} and its subclasses
+ */
+final class StorageConfigurationTypeAdapter<T extends StorageConfiguration> extends TypeAdapter<T> {
+
+    private final Class<T> storageClass;
+
+    private final TypeAdapter<Map<String, Object>> propertiesAdapter;
+
+    StorageConfigurationTypeAdapter(Gson gson, Class<T> storageClass) {
+        this.storageClass = storageClass;
+        this.propertiesAdapter = gson.getAdapter(new TypeToken<Map<String, Object>>(){});
+    }
+
+    @Override
+    public void write(JsonWriter out, T storage) throws IOException {
+        out.beginObject();
+        out.name("type");
+        JsonStreams.writeEnum(out, storage.getType());
+        out.name("properties");
+        propertiesAdapter.write(out, storage.getProperties());
+        out.endObject();
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        T storage = newInstance();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("type".equals(name)) {
+                storage.setType(JsonStreams.readEnum(in, StorageConfigurationType.class));
+            } else if("properties".equals(name)) {
+                storage.setProperties(propertiesAdapter.read(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return storage;
+    }
+
+    private T newInstance() {
+        if(storageClass == S3StorageConfiguration.class) {
+            return storageClass.cast(new S3StorageConfiguration());
+        }
+        return storageClass.cast(new StorageConfiguration());
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+            if(rawType != StorageConfiguration.class && rawType != S3StorageConfiguration.class) {
+                return null;
+            }
+            return (TypeAdapter<T>) adapterFor(gson, rawType.asSubclass(StorageConfiguration.class));
+        }
+
+        private static <S extends StorageConfiguration> TypeAdapter<S> adapterFor(Gson gson, Class<S> storageClass) {
+            return new StorageConfigurationTypeAdapter<S>(gson, storageClass);
+        }
+    }
+}
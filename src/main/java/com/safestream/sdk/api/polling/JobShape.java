@@ -0,0 +1,134 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.polling;
+
+import com.safestream.sdk.api.video.Resolution;
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+
+/**
+ * The properties of a job that decide how long it takes. Jobs with the same shape are expected to take about as long as each other, so completion times are learned per shape. See {@link PollScheduler}
+ */
+public final class JobShape {
+
+    /**
+     * Used for jobs nothing is known about
+     */
+    public static final JobShape UNKNOWN = new JobShape(-1, -1, -1, null, -1);
+
+    private final int watermarkCount;
+
+    private final int width;
+
+    private final int height;
+
+    private final String bitRate;
+
+    /**
+     * Video duration rounded up to a power of two seconds, or -1 if unknown
+     */
+    private final int durationBucket;
+
+    public JobShape(int watermarkCount, int width, int height, String bitRate, long durationMillis) {
+        this.watermarkCount = watermarkCount;
+        this.width = width;
+        this.height = height;
+        this.bitRate = bitRate;
+        this.durationBucket = durationMillis < 0 ? -1 : 32 - Integer.numberOfLeadingZeros((int) Math.min(Integer.MAX_VALUE, durationMillis / 1000));
+    }
+
+    /**
+     * The shape of a watermark job
+     * @param encodingConfiguration The configuration the watermark was requested with
+     * @return The job shape
+     */
+    public static JobShape of(EncodingConfiguration encodingConfiguration) {
+        Resolution resolution = encodingConfiguration.getResolution();
+        return new JobShape(
+                encodingConfiguration.getWatermarks() != null ? encodingConfiguration.getWatermarks().size() : 0,
+                resolution != null ? resolution.getWidth() : -1,
+                resolution != null ? resolution.getHeight() : -1,
+                encodingConfiguration.getBitRate(),
+                -1);
+    }
+
+    /**
+     * The shape of a video ingest job
+     * @param video The video being ingested
+     * @return The job shape
+     */
+    public static JobShape of(Video video) {
+        return new JobShape(0, -1, -1, video.getTargetBitRate(), -1);
+    }
+
+    public int getWatermarkCount() {
+        return watermarkCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getBitRate() {
+        return bitRate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof JobShape)) {
+            return false;
+        }
+
+        JobShape other = (JobShape) o;
+        return watermarkCount == other.watermarkCount
+                && width == other.width
+                && height == other.height
+                && durationBucket == other.durationBucket
+                && (bitRate != null ? bitRate.equals(other.bitRate) : other.bitRate == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = watermarkCount;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + (bitRate != null ? bitRate.hashCode() : 0);
+        result = 31 * result + durationBucket;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JobShape{watermarks=%d, resolution=%dx%d, bitRate=%s, durationBucket=%d}", watermarkCount, width, height, bitRate, durationBucket);
+    }
+}
@@ -0,0 +1,98 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.polling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many status requests jobs needed and how late their completion was noticed.
+ *
+ * SafeStream does not report when a job finished, so the detection lag of a job is estimated as half the time between the last poll that found it pending and the poll that found it ready.
+ */
+public class PollMetrics {
+
+    private final AtomicLong completedJobs = new AtomicLong();
+
+    private final AtomicLong polls = new AtomicLong();
+
+    private final AtomicLong detectionLagMillis = new AtomicLong();
+
+    private final AtomicLong maxDetectionLagMillis = new AtomicLong();
+
+    void record(int jobPolls, long jobDetectionLagMillis) {
+        completedJobs.incrementAndGet();
+        polls.addAndGet(jobPolls);
+        detectionLagMillis.addAndGet(jobDetectionLagMillis);
+
+        long max;
+        do {
+            max = maxDetectionLagMillis.get();
+        } while(jobDetectionLagMillis > max && !maxDetectionLagMillis.compareAndSet(max, jobDetectionLagMillis));
+    }
+
+    /**
+     * @return The number of jobs that were polled until they were ready
+     */
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    /**
+     * @return The number of status requests made for completed jobs
+     */
+    public long getPolls() {
+        return polls.get();
+    }
+
+    /**
+     * @return The mean number of status requests per completed job
+     */
+    public double getPollsPerJob() {
+        long jobs = completedJobs.get();
+        return jobs == 0 ? 0 : (double) polls.get() / jobs;
+    }
+
+    /**
+     * @return The mean estimated time in millis between a job becoming ready and the poll that noticed it
+     */
+    public double getMeanDetectionLagMillis() {
+        long jobs = completedJobs.get();
+        return jobs == 0 ? 0 : (double) detectionLagMillis.get() / jobs;
+    }
+
+    /**
+     * @return The largest estimated detection lag in millis
+     */
+    public long getMaxDetectionLagMillis() {
+        return maxDetectionLagMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PollMetrics{completedJobs=%d, pollsPerJob=%.2f, meanDetectionLagMillis=%.0f, maxDetectionLagMillis=%d}",
+                getCompletedJobs(), getPollsPerJob(), getMeanDetectionLagMillis(), getMaxDetectionLagMillis());
+    }
+}
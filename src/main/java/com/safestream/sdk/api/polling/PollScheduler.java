@@ -0,0 +1,209 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.polling;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides when to poll a job for its status by learning how long jobs of the same {@link JobShape} took before.
+ *
+ * Until enough jobs of a shape have finished, jobs are polled at the base interval and then back off, waiting a quarter of the time the job has been running between polls, up to the max interval. Once there is a history, polls are placed at the 50th, 75th, 90th, 95th and 99th percentile of past completion times, so short jobs are noticed quickly and long jobs are not polled needlessly. Jobs that outlast the history fall back to the same backoff.
+ *
+ * A job's completion time is only known to lie between the last poll that found it pending and the poll that found it ready, so the later of the two is recorded. An extra probe slightly before the median lets the history move earlier when jobs get faster.
+ *
+ * One poll scheduler should be shared by every poller of the same kind of job so they learn from each other.
+ */
+public class PollScheduler {
+
+    /**
+     * Default wait in millis before the first poll and between early polls of a job with no history
+     */
+    public static final long DEFAULT_BASE_INTERVAL_MILLIS = 1500;
+
+    /**
+     * Default longest wait in millis between polls
+     */
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 15000;
+
+    /**
+     * Polls are never closer together than this
+     */
+    private static final long MIN_INTERVAL_MILLIS = 250;
+
+    /**
+     * Number of completed jobs of a shape needed before its history is used
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    /**
+     * Number of most recent completion times kept per shape
+     */
+    private static final int WINDOW_SIZE = 128;
+
+    private static final double[] PERCENTILES = {0.5, 0.75, 0.9, 0.95, 0.99};
+
+    /**
+     * The first poll of a job with a history is made at this fraction of the median completion time
+     */
+    private static final double PROBE_FRACTION = 0.85;
+
+    private final long baseIntervalMillis;
+
+    private final long maxIntervalMillis;
+
+    private final ConcurrentHashMap<JobShape, CompletionTimes> completionTimes = new ConcurrentHashMap<JobShape, CompletionTimes>();
+
+    private final PollMetrics metrics = new PollMetrics();
+
+    public PollScheduler() {
+        this(DEFAULT_BASE_INTERVAL_MILLIS, DEFAULT_MAX_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param baseIntervalMillis Wait in millis before the first poll and between early polls of a job with no history
+     * @param maxIntervalMillis Longest wait in millis between polls
+     */
+    public PollScheduler(long baseIntervalMillis, long maxIntervalMillis) {
+        this.baseIntervalMillis = baseIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    /**
+     * Picks how long to wait before the next poll of a job
+     * @param shape The shape of the job
+     * @param elapsedMillis Time in millis since the job was started
+     * @return The wait in millis
+     */
+    public long nextPollDelayMillis(JobShape shape, long elapsedMillis) {
+        long[] history = history(shape);
+        if(history != null) {
+            long probe = (long) (PROBE_FRACTION * percentile(history, 0.5));
+            if(probe - elapsedMillis >= MIN_INTERVAL_MILLIS) {
+                return Math.min(maxIntervalMillis, probe - elapsedMillis);
+            }
+            for(double percentile : PERCENTILES) {
+                long expected = percentile(history, percentile);
+                if(expected - elapsedMillis >= MIN_INTERVAL_MILLIS) {
+                    return Math.min(maxIntervalMillis, expected - elapsedMillis);
+                }
+            }
+        } else if(elapsedMillis < baseIntervalMillis) {
+            return Math.max(MIN_INTERVAL_MILLIS, baseIntervalMillis - elapsedMillis);
+        }
+
+        return Math.min(maxIntervalMillis, Math.max(baseIntervalMillis, elapsedMillis / 4));
+    }
+
+    /**
+     * Records a job that was found to be ready
+     * @param shape The shape of the job
+     * @param lastPendingMillis Time in millis from the start of the job to the last poll that found it still pending, or 0 if there was none
+     * @param readyMillis Time in millis from the start of the job to the poll that found it ready
+     * @param polls The number of polls made for the job
+     */
+    public void recordReady(JobShape shape, long lastPendingMillis, long readyMillis, int polls) {
+        completionTimesFor(shape).add(readyMillis);
+        if(!JobShape.UNKNOWN.equals(shape)) {
+            // Jobs of a shape never seen before are predicted from every job
+            completionTimesFor(JobShape.UNKNOWN).add(readyMillis);
+        }
+
+        // The job became ready some time between the two polls
+        metrics.record(polls, (readyMillis - lastPendingMillis) / 2);
+    }
+
+    /**
+     * Gets a percentile of past completion times
+     * @param shape The shape of the job
+     * @param percentile Between 0 and 1
+     * @return The completion time in millis or -1 if there is not enough history
+     */
+    public long getCompletionTimeMillis(JobShape shape, double percentile) {
+        long[] history = history(shape);
+        return history == null ? -1 : percentile(history, percentile);
+    }
+
+    public PollMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sorted completion times for a shape, falling back to all jobs when the shape has too little history
+     */
+    private long[] history(JobShape shape) {
+        CompletionTimes times = completionTimes.get(shape);
+        long[] history = times != null ? times.sorted() : null;
+        if(history == null && !JobShape.UNKNOWN.equals(shape)) {
+            times = completionTimes.get(JobShape.UNKNOWN);
+            history = times != null ? times.sorted() : null;
+        }
+        return history;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.max(0, Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1))];
+    }
+
+    private CompletionTimes completionTimesFor(JobShape shape) {
+        CompletionTimes times = completionTimes.get(shape);
+        if(times == null) {
+            completionTimes.putIfAbsent(shape, new CompletionTimes());
+            times = completionTimes.get(shape);
+        }
+        return times;
+    }
+
+    /**
+     * A ring of the most recent completion times
+     */
+    private static class CompletionTimes {
+
+        private final long[] times = new long[WINDOW_SIZE];
+
+        private int count;
+
+        private int next;
+
+        synchronized void add(long completionMillis) {
+            times[next] = completionMillis;
+            next = (next + 1) % times.length;
+            count = Math.min(times.length, count + 1);
+        }
+
+        /**
+         * @return The times sorted or null if there are too few
+         */
+        synchronized long[] sorted() {
+            if(count < MIN_SAMPLES) {
+                return null;
+            }
+            long[] sorted = Arrays.copyOf(times, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -24,9 +24,12 @@
 
 package com.safestream.sdk.api.video;
 
+import com.google.gson.annotations.JsonAdapter;
+
 /**
  * Video resolution configuration.
  */
+@JsonAdapter(ResolutionTypeAdapter.Factory.class)
 public class Resolution {
 
     /**
@@ -57,4 +60,22 @@ public class Resolution {
     public void setHeight(int height) {
         this.height = height;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof Resolution)) {
+            return false;
+        }
+
+        Resolution other = (Resolution) o;
+        return width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
 }
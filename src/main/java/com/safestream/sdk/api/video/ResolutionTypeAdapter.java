@@ -0,0 +1,76 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON adapter for {@link Resolution}
+ */
+final class ResolutionTypeAdapter extends TypeAdapter<Resolution> {
+
+    @Override
+    public void write(JsonWriter out, Resolution resolution) throws IOException {
+        out.beginObject();
+        out.name("width").value(resolution.getWidth());
+        out.name("height").value(resolution.getHeight());
+        out.endObject();
+    }
+
+    @Override
+    public Resolution read(JsonReader in) throws IOException {
+        Resolution resolution = new Resolution();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("width".equals(name)) {
+                resolution.setWidth(JsonStreams.readInt(in, resolution.getWidth()));
+            } else if("height".equals(name)) {
+                resolution.setHeight(JsonStreams.readInt(in, resolution.getHeight()));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return resolution;
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return Resolution.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new ResolutionTypeAdapter() : null;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The segment duration overrides of a {@link SegmentedProxy}, held as sorted arrays of segment indexes and durations.
+ *
+ * A long proxy can have thousands of overrides, and a map of strings to boxed numbers costs several times the memory of the arrays and is slow to look up in. Overrides are built once, when a proxy is read or given its overrides, and never change. Looking up a segment takes constant time when the overridden segments are consecutive and logarithmic time otherwise.
+ *
+ * For compatibility the overrides can also be read as an unmodifiable map of segment index strings to durations.
+ */
+public final class SegmentOverrides extends AbstractMap<String, Object> {
+
+    private static final int[] NO_SEGMENTS = new int[0];
+
+    private static final double[] NO_DURATIONS = new double[0];
+
+    /**
+     * Overridden segment indexes, in ascending order
+     */
+    private final int[] segments;
+
+    private final double[] durations;
+
+    /**
+     * True if the overridden segments are consecutive, so a segment's position is its offset from the first
+     */
+    private final boolean consecutive;
+
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    private SegmentOverrides(int[] segments, double[] durations) {
+        this.segments = segments;
+        this.durations = durations;
+        this.consecutive = segments.length == 0 || segments[segments.length - 1] - segments[0] == segments.length - 1;
+    }
+
+    /**
+     * Copies overrides from a map
+     * @param overrides Durations in seconds by segment index. Keys must be integers and values numbers, or strings holding them. Other entries are skipped.
+     * @return The overrides, or null if the map is null
+     */
+    public static SegmentOverrides of(Map<String, ?> overrides) {
+        if(overrides == null) {
+            return null;
+        }
+        if(overrides instanceof SegmentOverrides) {
+            return (SegmentOverrides) overrides;
+        }
+
+        Builder builder = new Builder();
+        for(Map.Entry<String, ?> override : overrides.entrySet()) {
+            String segment = override.getKey();
+            Object duration = override.getValue();
+            if(segment == null || duration == null) {
+                continue;
+            }
+            try {
+                builder.add(Integer.parseInt(segment.trim()), duration instanceof Number ? ((Number) duration).doubleValue() : Double.parseDouble(duration.toString()));
+            } catch (NumberFormatException e) {
+                // Not a segment index and duration
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The number of overridden segments
+     */
+    public int getCount() {
+        return segments.length;
+    }
+
+    /**
+     * @param position The position of an override, from 0 to {@link #getCount()} - 1, in order of segment index
+     * @return The index of the segment at that position
+     */
+    public int getSegment(int position) {
+        return segments[position];
+    }
+
+    /**
+     * @param position The position of an override, from 0 to {@link #getCount()} - 1, in order of segment index
+     * @return The duration in seconds at that position
+     */
+    public double getDuration(int position) {
+        return durations[position];
+    }
+
+    /**
+     * @param segment A segment index
+     * @param defaultDuration The duration to return if the segment is not overridden
+     * @return The segment's duration in seconds
+     */
+    public double getDuration(int segment, double defaultDuration) {
+        int position = positionOf(segment);
+        return position >= 0 ? durations[position] : defaultDuration;
+    }
+
+    /**
+     * @param segment A segment index
+     * @return True if the segment's duration is overridden
+     */
+    public boolean isOverridden(int segment) {
+        return positionOf(segment) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return segments.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return positionOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int position = positionOf(key);
+        return position >= 0 ? Double.valueOf(durations[position]) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        private int position;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < segments.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            if(position >= segments.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(Integer.toString(segments[position]), durations[position]);
+                            position++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("Segment overrides cannot be changed");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return segments.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int positionOf(Object key) {
+        if(!(key instanceof String)) {
+            return -1;
+        }
+        try {
+            return positionOf(Integer.parseInt(((String) key).trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private int positionOf(int segment) {
+        if(segments.length == 0) {
+            return -1;
+        }
+        if(consecutive) {
+            int position = segment - segments[0];
+            return position >= 0 && position < segments.length ? position : -1;
+        }
+        int position = Arrays.binarySearch(segments, segment);
+        return position >= 0 ? position : -1;
+    }
+
+    /**
+     * Collects overrides in any order. A later override of the same segment replaces an earlier one.
+     */
+    static final class Builder {
+
+        private int[] segments = NO_SEGMENTS;
+
+        private double[] durations = NO_DURATIONS;
+
+        private int count;
+
+        private boolean sorted = true;
+
+        Builder add(int segment, double duration) {
+            if(count == segments.length) {
+                int capacity = Math.max(8, count * 2);
+                segments = Arrays.copyOf(segments, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+            }
+            if(count > 0 && segment <= segments[count - 1]) {
+                sorted = false;
+            }
+            segments[count] = segment;
+            durations[count] = duration;
+            count++;
+            return this;
+        }
+
+        SegmentOverrides build() {
+            if(count == 0) {
+                return new SegmentOverrides(NO_SEGMENTS, NO_DURATIONS);
+            }
+
+            if(!sorted) {
+                // Sort by segment, keeping the order overrides were added in among equal segments so the last one wins
+                long[] order = new long[count];
+                for(int i = 0; i < count; i++) {
+                    order[i] = ((long) segments[i] << 32) | i;
+                }
+                Arrays.sort(order);
+                int[] sortedSegments = new int[count];
+                double[] sortedDurations = new double[count];
+                int unique = 0;
+                for(int i = 0; i < count; i++) {
+                    int from = (int) order[i];
+                    if(unique > 0 && sortedSegments[unique - 1] == segments[from]) {
+                        unique--;
+                    }
+                    sortedSegments[unique] = segments[from];
+                    sortedDurations[unique] = durations[from];
+                    unique++;
+                }
+                return new SegmentOverrides(Arrays.copyOf(sortedSegments, unique), Arrays.copyOf(sortedDurations, unique));
+            }
+            return new SegmentOverrides(Arrays.copyOf(segments, count), Arrays.copyOf(durations, count));
+        }
+    }
+}
@@ -24,8 +24,12 @@
 
 package com.safestream.sdk.api.video;
 
+import com.google.gson.annotations.JsonAdapter;
+
+import java.util.HashMap;
 import java.util.Map;
 
+@JsonAdapter(SegmentedProxyTypeAdapter.Factory.class)
 public class SegmentedProxy {
 
     private ProxyType type;
@@ -56,8 +60,15 @@ public class SegmentedProxy {
      *     overrides.put("3", 5.0);
      *
      * </code>
+     *
+     * Overrides are held compactly as {@link SegmentOverrides}, copied from the map they are given as.
      */
-    private Map<String, Object> segmentOverrides;
+    private SegmentOverrides segmentOverrides;
+
+    /**
+     * The overrides as a modifiable map, once they have been read through {@link #getSegmentOverrides()}. From then on the map holds the overrides.
+     */
+    private transient Map<String, Object> segmentOverridesMap;
 
     /**
      * The total HLS segments in the proxy. Knowing the total number of segments allows SafeStream to locate the segments at the base URL by index.
@@ -72,7 +83,7 @@ public class SegmentedProxy {
         this.url = url;
         this.segmentDuration = segmentDuration;
         this.segmentNameFormat = segmentNameFormat;
-        this.segmentOverrides = segmentOverrides;
+        this.segmentOverrides = SegmentOverrides.of(segmentOverrides);
         this.segmentCount = segmentCount;
     }
 
@@ -112,12 +123,30 @@ public class SegmentedProxy {
         this.segmentNameFormat = segmentNameFormat;
     }
 
+    /**
+     * Reads the overrides as a map that can be changed. The map is created on the first call and from then on holds the proxy's overrides, so changes to it are seen by {@link #getCompactSegmentOverrides()}, which then has to rebuild them on every call.
+     * @return Durations in seconds by segment index, or null if there are none
+     */
     public Map<String, Object> getSegmentOverrides() {
-        return segmentOverrides;
+        if(segmentOverridesMap == null && segmentOverrides != null) {
+            segmentOverridesMap = new HashMap<String, Object>(segmentOverrides);
+        }
+        return segmentOverridesMap;
     }
 
+    /**
+     * @return The segment overrides as sorted arrays, or null if there are none {@link SegmentOverrides}
+     */
+    public SegmentOverrides getCompactSegmentOverrides() {
+        return segmentOverridesMap != null ? SegmentOverrides.of(segmentOverridesMap) : segmentOverrides;
+    }
+
+    /**
+     * @param segmentOverrides Durations in seconds by segment index. They are copied, so later changes to the map are not seen.
+     */
     public void setSegmentOverrides(Map<String, Object> segmentOverrides) {
-        this.segmentOverrides = segmentOverrides;
+        this.segmentOverrides = SegmentOverrides.of(segmentOverrides);
+        this.segmentOverridesMap = null;
     }
 
     public int getSegmentCount() {
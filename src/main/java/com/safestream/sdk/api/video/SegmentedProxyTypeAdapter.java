@@ -0,0 +1,134 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON adapter for {@link SegmentedProxy}
+ */
+final class SegmentedProxyTypeAdapter extends TypeAdapter<SegmentedProxy> {
+
+    @Override
+    public void write(JsonWriter out, SegmentedProxy proxy) throws IOException {
+        out.beginObject();
+        out.name("type");
+        JsonStreams.writeEnum(out, proxy.getType());
+        out.name("url").value(proxy.getUrl());
+        out.name("segmentDuration").value(proxy.getSegmentDuration());
+        out.name("segmentNameFormat").value(proxy.getSegmentNameFormat());
+        out.name("segmentOverrides");
+        writeOverrides(out, proxy.getCompactSegmentOverrides());
+        out.name("segmentCount").value(proxy.getSegmentCount());
+        out.endObject();
+    }
+
+    @Override
+    public SegmentedProxy read(JsonReader in) throws IOException {
+        SegmentedProxy proxy = new SegmentedProxy();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("type".equals(name)) {
+                proxy.setType(JsonStreams.readEnum(in, ProxyType.class));
+            } else if("url".equals(name)) {
+                proxy.setUrl(JsonStreams.readString(in));
+            } else if("segmentDuration".equals(name)) {
+                proxy.setSegmentDuration(JsonStreams.readLong(in, proxy.getSegmentDuration()));
+            } else if("segmentNameFormat".equals(name)) {
+                proxy.setSegmentNameFormat(JsonStreams.readString(in));
+            } else if("segmentOverrides".equals(name)) {
+                proxy.setSegmentOverrides(readOverrides(in));
+            } else if("segmentCount".equals(name)) {
+                proxy.setSegmentCount(JsonStreams.readInt(in, proxy.getSegmentCount()));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return proxy;
+    }
+
+    /**
+     * Reads overrides straight into their compact form, without building a map of them first. Overrides that are not a segment index and a duration are skipped, like {@link SegmentOverrides#of(java.util.Map)} does, so one bad override does not fail reading the video.
+     */
+    private static SegmentOverrides readOverrides(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        SegmentOverrides.Builder builder = new SegmentOverrides.Builder();
+        in.beginObject();
+        while(in.hasNext()) {
+            String segment = in.nextName();
+            JsonToken token = in.peek();
+            if(token != JsonToken.NUMBER && token != JsonToken.STRING) {
+                in.skipValue();
+                continue;
+            }
+            // Read as a string so that a value that is not a number is consumed before it is parsed
+            String duration = in.nextString();
+            try {
+                builder.add(Integer.parseInt(segment.trim()), Double.parseDouble(duration));
+            } catch (NumberFormatException e) {
+                // Not a segment index and duration
+            }
+        }
+        in.endObject();
+        return builder.build();
+    }
+
+    private static void writeOverrides(JsonWriter out, SegmentOverrides overrides) throws IOException {
+        if(overrides == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        for(int i = 0; i < overrides.getCount(); i++) {
+            out.name(Integer.toString(overrides.getSegment(i))).value(overrides.getDuration(i));
+        }
+        out.endObject();
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return SegmentedProxy.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new SegmentedProxyTypeAdapter() : null;
+        }
+    }
+}
@@ -24,12 +24,14 @@
 
 package com.safestream.sdk.api.video;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.safestream.sdk.api.config.VideoConfiguration;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+@JsonAdapter(VideoTypeAdapter.Factory.class)
 public class Video {
 
     /**
@@ -260,4 +262,62 @@ public class Video {
     public String getCreatedBy() {
         return createdBy;
     }
+
+    // Setters for the properties that are assigned by SafeStream. These are used when reading videos from the SafeStream REST API.
+
+    void setId(String id) {
+        this.id = id;
+    }
+
+    void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    void setKey(String key) {
+        this.key = key;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    void setSourceUrl(String sourceUrl) {
+        this.sourceUrl = sourceUrl;
+    }
+
+    void setTargetBitRate(String targetBitRate) {
+        this.targetBitRate = targetBitRate;
+    }
+
+    void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    void setAllowHmacAuth(boolean allowHmacAuth) {
+        this.allowHmacAuth = allowHmacAuth;
+    }
+
+    void setEncrypt(boolean encrypt) {
+        this.encrypt = encrypt;
+    }
+
+    void setProxies(List<SegmentedProxy> proxies) {
+        this.proxies = proxies;
+    }
+
+    void setConfig(VideoConfiguration config) {
+        this.config = config;
+    }
+
+    void setStatus(String status) {
+        this.status = status;
+    }
+
+    void setCreated(long created) {
+        this.created = created;
+    }
+
+    void setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+    }
 }
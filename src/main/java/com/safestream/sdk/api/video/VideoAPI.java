@@ -25,11 +25,23 @@
 package com.safestream.sdk.api.video;
 
 import com.google.gson.reflect.TypeToken;
+import com.safestream.sdk.api.polling.JobShape;
+import com.safestream.sdk.api.polling.PollMetrics;
+import com.safestream.sdk.api.polling.PollScheduler;
+import com.safestream.sdk.api.video.cache.VideoCache;
+import com.safestream.sdk.api.video.cache.VideoLoader;
+import com.safestream.sdk.http.ChainedFutureCallback;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
 import com.safestream.sdk.http.SafeStreamHttpClient;
 import com.safestream.sdk.http.SafeStreamHttpClientException;
+import com.safestream.sdk.http.SafeStreamHttpResponse;
 import org.apache.commons.validator.routines.UrlValidator;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
 
+import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.Future;
 
 
 /**
@@ -42,18 +54,72 @@ public class VideoAPI {
      */
     private SafeStreamHttpClient safeStreamHttpClient;
 
+    /**
+     * Manages non-blocking REST requests to the SafeStream HTTP API
+     */
+    private SafeStreamAsyncClient safeStreamAsyncClient;
+
     /**
      * The SafeStream REST endpoint for video requests
      */
     private String apiResourcePath = "videos";
 
+    /**
+     * Decides when to poll a video that is being ingested
+     */
+    private PollScheduler ingestPollScheduler;
+
+    /**
+     * Videos found by key, or null if they are not cached
+     */
+    private VideoCache videoCache;
+
+    /**
+     * Looks up videos the cache does not have
+     */
+    private final VideoLoader videoLoader = new VideoLoader() {
+        @Override
+        public Video load(String key) throws VideoAPIException {
+            return fetch(key);
+        }
+
+        @Override
+        public Future<Video> loadAsync(String key, FutureCallback<Video> callback) {
+            return fetchAsync(key, callback);
+        }
+    };
+
+    private static final Type VIDEO_LIST_TYPE = new TypeToken<List<Video>>(){}.getType();
+
     /**
      * A SafeStreamHttpClient must be passed into the VideoAPI constructor. So, we disable the use of the default constructor.
      */
     protected VideoAPI() { }
 
     public VideoAPI(SafeStreamHttpClient safeStreamHttpClient) {
+        this(safeStreamHttpClient, new PollScheduler());
+    }
+
+    /**
+     * Creates a video API that learns how long ingests take from a shared poll scheduler
+     * @param safeStreamHttpClient {@link SafeStreamHttpClient}
+     * @param ingestPollScheduler Decides when to poll a video that is being ingested. See {@link PollScheduler}
+     */
+    public VideoAPI(SafeStreamHttpClient safeStreamHttpClient, PollScheduler ingestPollScheduler) {
+        this(safeStreamHttpClient, ingestPollScheduler, null);
+    }
+
+    /**
+     * Creates a video API that finds videos through a shared cache
+     * @param safeStreamHttpClient {@link SafeStreamHttpClient}
+     * @param ingestPollScheduler Decides when to poll a video that is being ingested. See {@link PollScheduler}
+     * @param videoCache An optional {@link VideoCache} videos found by key are kept in
+     */
+    public VideoAPI(SafeStreamHttpClient safeStreamHttpClient, PollScheduler ingestPollScheduler, VideoCache videoCache) {
         this.safeStreamHttpClient = safeStreamHttpClient;
+        this.safeStreamAsyncClient = new SafeStreamAsyncClient(safeStreamHttpClient);
+        this.ingestPollScheduler = ingestPollScheduler;
+        this.videoCache = videoCache;
     }
 
     /**
@@ -79,36 +145,54 @@ public class VideoAPI {
     public Video create(Video video, long waitForIngest) throws VideoAPIException {
 
         // We need a source URL before we can ingest the video
-        UrlValidator urlValidator = new UrlValidator(new String[]{"http", "https"});
-        if(video.getSourceUrl() == null || video.getSourceUrl().isEmpty() || !urlValidator.isValid(video.getSourceUrl())) {
-            throw new VideoAPIException("Invalid source URL. Cannot ingest video.");
-        }
+        validateSourceUrl(video);
 
         final String ingestedStatus = "INGESTED";
 
         try {
+            long startTime = System.currentTimeMillis();
+
             // Make the request to the SafeStream REST API
-            Video videoResponse = safeStreamHttpClient.post(apiResourcePath, video).getEntity(Video.class);
+            Video videoResponse = safeStreamHttpClient.post(apiResourcePath, video, Video.class).getEntity(Video.class);
+            invalidate(videoResponse);
 
-            // Wait for the video to be ingested before returning
-            // TODO: Have the ingest wait be on a separate thread
+            // Wait for the video to be ingested before returning, polling when the ingest is predicted to be done
             if(waitForIngest > 0 && !ingestedStatus.equals(videoResponse.getStatus())) {
-                long startTime = System.currentTimeMillis();
-                boolean ingested = false;
-                while(!ingested && (System.currentTimeMillis() - startTime) < waitForIngest) {
-                    Video test = find(video.getKey());
-                    if(ingestedStatus.equals(videoResponse.getStatus())) {
-                        return test;
+                JobShape shape = JobShape.of(video);
+                long deadline = startTime + waitForIngest;
+                long lastPendingMillis = System.currentTimeMillis() - startTime;
+                long retryAfterMillis = -1;
+                int polls = 0;
+
+                while(true) {
+                    long now = System.currentTimeMillis();
+                    long remaining = deadline - now;
+                    long delay = Math.max(Math.min(ingestPollScheduler.nextPollDelayMillis(shape, now - startTime), remaining), retryAfterMillis);
+                    if(remaining <= 0 || delay > remaining) {
+                        throw new VideoAPIException("Timeout reached waiting for video to be ingested");
                     }
 
                     try {
-                        Thread.sleep(1500);
+                        Thread.sleep(delay);
                     } catch(InterruptedException e) {
-                        throw new VideoAPIException("Thread interrupted while waiting for watermarking", e);
+                        Thread.currentThread().interrupt();
+                        throw new VideoAPIException("Thread interrupted while waiting for ingest", e);
                     }
-                }
 
-                throw new VideoAPIException("Timeout reached waiting for video to be ingested");
+                    SafeStreamHttpResponse response = safeStreamHttpClient.get(String.format("%s?key=%s", apiResourcePath, videoResponse.getKey()), VIDEO_LIST_TYPE);
+                    // The new video may not be visible yet, in which case it is polled again like a pending one
+                    Video test = firstOf(response.<List<Video>>getEntity(VIDEO_LIST_TYPE));
+                    long elapsed = System.currentTimeMillis() - startTime;
+                    polls++;
+
+                    if(test != null && ingestedStatus.equals(test.getStatus())) {
+                        ingestPollScheduler.recordReady(shape, lastPendingMillis, elapsed, polls);
+                        invalidate(test);
+                        return test;
+                    }
+                    lastPendingMillis = elapsed;
+                    retryAfterMillis = response.getRetryAfterMillis();
+                }
 
             } else {
                 return videoResponse;
@@ -119,9 +203,9 @@ public class VideoAPI {
     }
 
     /**
-     * Gets an existing video by it's key.
+     * Gets an existing video by it's key. When the API has a {@link VideoCache} the video is read from it.
      * @param key If no key was passed in when creating the video then the key will be the source URL of the video
-     * @return An existing video {@link Video}
+     * @return An existing video {@link Video}, or null if there is no video with the key
      * @throws VideoAPIException
      */
     public Video find(String key) throws VideoAPIException {
@@ -129,13 +213,148 @@ public class VideoAPI {
             throw new VideoAPIException("A key is needed to fnd a video");
         }
 
+        if(videoCache != null) {
+            return videoCache.get(key, videoLoader);
+        }
+        return fetch(key);
+    }
+
+    /**
+     * Creates a new video in SafeStream without blocking. Like {@link #create(Video)} this completes before the video has been fully ingested.
+     * @param video {@link Video}
+     * @return A future of the new video. The future fails with a {@link VideoAPIException}
+     */
+    public Future<Video> createAsync(Video video) {
+        return createAsync(video, null);
+    }
+
+    /**
+     * Creates a new video in SafeStream without blocking. Like {@link #create(Video)} this completes before the video has been fully ingested.
+     * @param video {@link Video}
+     * @param callback An optional callback notified on an I/O thread when the request completes. It must not block.
+     * @return A future of the new video. The future fails with a {@link VideoAPIException}
+     */
+    public Future<Video> createAsync(Video video, FutureCallback<Video> callback) {
+        BasicFuture<Video> future = new BasicFuture<Video>(callback);
+
+        try {
+            validateSourceUrl(video);
+        } catch (VideoAPIException e) {
+            future.failed(e);
+            return future;
+        }
+
+        safeStreamAsyncClient.post(apiResourcePath, video, Video.class, new VideoCallback<Video>(future) {
+            @Override
+            protected Video convert(SafeStreamHttpResponse response) {
+                Video video = response.getEntity(Video.class);
+                invalidate(video);
+                return video;
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Gets an existing video by it's key without blocking.
+     * @param key If no key was passed in when creating the video then the key will be the source URL of the video
+     * @return A future of the video {@link Video}. The future fails with a {@link VideoAPIException}
+     */
+    public Future<Video> findAsync(String key) {
+        return findAsync(key, null);
+    }
+
+    /**
+     * Gets an existing video by it's key without blocking. When the API has a {@link VideoCache} the video is read from it.
+     * @param key If no key was passed in when creating the video then the key will be the source URL of the video
+     * @param callback An optional callback notified on an I/O thread when the request completes, or before this returns when the video is cached. It must not block.
+     * @return A future of the video {@link Video}, or of null if there is no video with the key. The future fails with a {@link VideoAPIException}
+     */
+    public Future<Video> findAsync(String key, FutureCallback<Video> callback) {
+        if(key == null) {
+            BasicFuture<Video> future = new BasicFuture<Video>(callback);
+            future.failed(new VideoAPIException("A key is needed to fnd a video"));
+            return future;
+        }
+
+        if(videoCache != null) {
+            return videoCache.getAsync(key, videoLoader, callback);
+        }
+        return fetchAsync(key, callback);
+    }
+
+    /**
+     * Polls per video and detection lag for videos that were waited on until ingested
+     * @return {@link PollMetrics}
+     */
+    public PollMetrics getIngestMetrics() {
+        return ingestPollScheduler.getMetrics();
+    }
+
+    /**
+     * @return The cache videos are found through, or null if they are not cached {@link VideoCache}
+     */
+    public VideoCache getVideoCache() {
+        return videoCache;
+    }
+
+    private Video fetch(String key) throws VideoAPIException {
         try {
             // Request the video from the SafeStream REST API
-            List<Video> videos = safeStreamHttpClient.get(String.format("%s?key=%s", apiResourcePath, key)).getEntity(new TypeToken<List<Video>>(){}.getType());
+            List<Video> videos = safeStreamHttpClient.get(String.format("%s?key=%s", apiResourcePath, key), VIDEO_LIST_TYPE).getEntity(VIDEO_LIST_TYPE);
 
-            return videos.get(0);
+            return firstOf(videos);
         } catch (SafeStreamHttpClientException e) {
             throw new VideoAPIException(e);
         }
     }
+
+    private Future<Video> fetchAsync(String key, FutureCallback<Video> callback) {
+        BasicFuture<Video> future = new BasicFuture<Video>(callback);
+        safeStreamAsyncClient.get(String.format("%s?key=%s", apiResourcePath, key), VIDEO_LIST_TYPE, new VideoCallback<Video>(future) {
+            @Override
+            protected Video convert(SafeStreamHttpResponse response) {
+                return firstOf(response.<List<Video>>getEntity(VIDEO_LIST_TYPE));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return The video found by a lookup by key, or null if the list is empty because there is no video with the key
+     */
+    private static Video firstOf(List<Video> videos) {
+        return videos == null || videos.isEmpty() ? null : videos.get(0);
+    }
+
+    /**
+     * Forgets a video that has just been created or ingested, so it is not hidden by an earlier lookup that found nothing
+     */
+    private void invalidate(Video video) {
+        if(videoCache != null && video != null) {
+            videoCache.invalidate(video.getKey());
+        }
+    }
+
+    private void validateSourceUrl(Video video) throws VideoAPIException {
+        UrlValidator urlValidator = new UrlValidator(new String[]{"http", "https"});
+        if(video.getSourceUrl() == null || video.getSourceUrl().isEmpty() || !urlValidator.isValid(video.getSourceUrl())) {
+            throw new VideoAPIException("Invalid source URL. Cannot ingest video.");
+        }
+    }
+
+    /**
+     * Reports HTTP failures as VideoAPIExceptions, the same as the blocking calls
+     */
+    private abstract static class VideoCallback<T> extends ChainedFutureCallback<SafeStreamHttpResponse, T> {
+
+        VideoCallback(BasicFuture<T> target) {
+            super(target);
+        }
+
+        @Override
+        protected Exception convertFailure(Exception ex) {
+            return new VideoAPIException(ex);
+        }
+    }
 }
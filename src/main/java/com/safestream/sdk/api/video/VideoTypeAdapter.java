@@ -0,0 +1,125 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.api.config.VideoConfiguration;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON adapter for {@link Video}
+ */
+final class VideoTypeAdapter extends TypeAdapter<Video> {
+
+    private final TypeAdapter<SegmentedProxy> proxyAdapter;
+
+    private final TypeAdapter<VideoConfiguration> configAdapter;
+
+    VideoTypeAdapter(Gson gson) {
+        this.proxyAdapter = gson.getAdapter(SegmentedProxy.class);
+        this.configAdapter = gson.getAdapter(VideoConfiguration.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, Video video) throws IOException {
+        out.beginObject();
+        out.name("id").value(video.getId());
+        out.name("scope").value(video.getScope());
+        out.name("key").value(video.getKey());
+        out.name("name").value(video.getName());
+        out.name("sourceUrl").value(video.getSourceUrl());
+        out.name("targetBitRate").value(video.getTargetBitRate());
+        out.name("tags");
+        JsonStreams.writeStringCollection(out, video.getTags());
+        out.name("allowHmacAuth").value(video.isAllowHmacAuth());
+        out.name("encrypt").value(video.isEncrypt());
+        out.name("proxies");
+        JsonStreams.writeCollection(out, video.getProxies(), proxyAdapter);
+        out.name("config");
+        configAdapter.write(out, video.getConfig());
+        out.name("status").value(video.getStatus());
+        out.name("created").value(video.getCreated());
+        out.name("createdBy").value(video.getCreatedBy());
+        out.endObject();
+    }
+
+    @Override
+    public Video read(JsonReader in) throws IOException {
+        Video video = new Video();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("id".equals(name)) {
+                video.setId(JsonStreams.readString(in));
+            } else if("scope".equals(name)) {
+                video.setScope(JsonStreams.readString(in));
+            } else if("key".equals(name)) {
+                video.setKey(JsonStreams.readString(in));
+            } else if("name".equals(name)) {
+                video.setName(JsonStreams.readString(in));
+            } else if("sourceUrl".equals(name)) {
+                video.setSourceUrl(JsonStreams.readString(in));
+            } else if("targetBitRate".equals(name)) {
+                video.setTargetBitRate(JsonStreams.readString(in));
+            } else if("tags".equals(name)) {
+                video.setTags(JsonStreams.readStringList(in));
+            } else if("allowHmacAuth".equals(name)) {
+                video.setAllowHmacAuth(JsonStreams.readBoolean(in, video.isAllowHmacAuth()));
+            } else if("encrypt".equals(name)) {
+                video.setEncrypt(JsonStreams.readBoolean(in, video.isEncrypt()));
+            } else if("proxies".equals(name)) {
+                video.setProxies(JsonStreams.readList(in, proxyAdapter));
+            } else if("config".equals(name)) {
+                video.setConfig(configAdapter.read(in));
+            } else if("status".equals(name)) {
+                video.setStatus(JsonStreams.readString(in));
+            } else if("created".equals(name)) {
+                video.setCreated(JsonStreams.readLong(in, video.getCreated()));
+            } else if("createdBy".equals(name)) {
+                video.setCreatedBy(JsonStreams.readString(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return video;
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return Video.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new VideoTypeAdapter(gson) : null;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.cache;
+
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.video.VideoAPIException;
+import com.safestream.sdk.http.SingleFlight;
+import com.safestream.sdk.json.SafeStreamGson;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Remembers videos looked up by key so that reading a video's proxies and status on every playback request does not reach SafeStream every time.
+ *
+ * A video is kept for a time that depends on its status, see {@link VideoCacheConfiguration}. Keys with no video are remembered too, for a shorter time. Once a video expires it is still used for a while as it is looked up again in the background, so videos that are used often never make a lookup wait. Lookups of the same key that miss at the same time share one request.
+ *
+ * Videos are kept up to a maximum number, dropping the least recently used first. The cache is split into stripes, each with its own lock, so lookups of different videos rarely wait for each other. Videos are cached as JSON, so every lookup gets its own copy of the video that it is free to modify without changing what other lookups see.
+ *
+ * <code>
+ *
+ *     SafeStreamAPI safestream = new SafeStreamAPI("MY API KEY")
+ *                                      .withVideoCache(new VideoCache(new VideoCacheConfiguration()
+ *                                              .withTtl("INGESTED", TimeUnit.HOURS.toMillis(1))));
+ *
+ * </code>
+ */
+public class VideoCache {
+
+    private static final int MAX_STRIPES = 16;
+
+    private final int maxEntries;
+
+    private final long defaultTtl;
+
+    private final Map<String, Long> statusTtls;
+
+    private final long notFoundTtl;
+
+    private final long staleWhileRevalidate;
+
+    private final VideoCacheStats stats = new VideoCacheStats();
+
+    /**
+     * Lookups waiting for SafeStream, so that a key is only requested once at a time. Each lookup gets its own copy of the loaded video.
+     */
+    private final SingleFlight<String, Video> loads = new SingleFlight<String, Video>(new SingleFlight.Copier<Video>() {
+        @Override
+        public Video copy(Video video) {
+            return video == null ? null : toVideo(toJson(video));
+        }
+    });
+
+    private final Stripe[] stripes;
+
+    public VideoCache() {
+        this(new VideoCacheConfiguration());
+    }
+
+    /**
+     * @param configuration {@link VideoCacheConfiguration}. Later changes to it do not affect the cache.
+     */
+    public VideoCache(VideoCacheConfiguration configuration) {
+        this.maxEntries = configuration.getMaxEntries();
+        this.defaultTtl = configuration.getDefaultTtl();
+        this.statusTtls = new HashMap<String, Long>(configuration.getStatusTtls());
+        this.notFoundTtl = configuration.getNotFoundTtl();
+        this.staleWhileRevalidate = configuration.getStaleWhileRevalidate();
+
+        int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(maxEntries));
+        int maxPerStripe = (maxEntries + stripeCount - 1) / stripeCount;
+        this.stripes = new Stripe[stripeCount];
+        for(int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxPerStripe);
+        }
+    }
+
+    /**
+     * Looks up a video, blocking to load it if it is not cached
+     * @param key The video's key
+     * @param loader Looks the video up in SafeStream {@link VideoLoader}
+     * @return The video, or null if there is no video with the key
+     * @throws VideoAPIException If the video is not cached and could not be looked up
+     */
+    public Video get(String key, VideoLoader loader) throws VideoAPIException {
+        CachedVideo entry = lookup(key, loader);
+        if(entry != null) {
+            return entry.toVideo();
+        }
+
+        stats.miss();
+        Future<Video> future = loads.execute(key, null, new Load(key, loader, false));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VideoAPIException("Thread interrupted while waiting for video", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof VideoAPIException) {
+                throw (VideoAPIException) e.getCause();
+            }
+            throw new VideoAPIException(e.getCause());
+        }
+    }
+
+    /**
+     * Looks up a video without blocking
+     * @param key The video's key
+     * @param loader Looks the video up in SafeStream {@link VideoLoader}
+     * @param callback An optional callback notified with the video, or null if there is no video with the key. It is notified before this returns when the video is cached, and otherwise on an I/O thread. It must not block.
+     * @return A future of the video. The future fails with a {@link VideoAPIException}
+     */
+    public Future<Video> getAsync(String key, VideoLoader loader, FutureCallback<Video> callback) {
+        CachedVideo entry = lookup(key, loader);
+        if(entry != null) {
+            BasicFuture<Video> future = new BasicFuture<Video>(callback);
+            future.completed(entry.toVideo());
+            return future;
+        }
+
+        stats.miss();
+        return loads.execute(key, callback, new Load(key, loader, true));
+    }
+
+    /**
+     * Forgets a video, for example because it has been created or changed. A lookup of the video already waiting for SafeStream is not cached when it completes.
+     * @param key The video's key
+     */
+    public void invalidate(String key) {
+        if(key == null) {
+            return;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+            stripe.generation++;
+        }
+    }
+
+    /**
+     * Forgets every video
+     */
+    public void invalidateAll() {
+        for(Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+                stripe.generation++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of videos and keys with no video cached, including any that have expired but have not been looked up since
+     */
+    public int size() {
+        int size = 0;
+        for(Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return {@link VideoCacheStats}
+     */
+    public VideoCacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Finds a video that can be used, starting a background refresh if it has expired
+     * @return The entry, or null if the video has to be loaded
+     */
+    private CachedVideo lookup(String key, VideoLoader loader) {
+        long now = System.currentTimeMillis();
+        Stripe stripe = stripeOf(key);
+        CachedVideo entry;
+        boolean refresh = false;
+        synchronized (stripe) {
+            entry = stripe.get(key);
+            if(entry == null) {
+                return null;
+            }
+            if(now >= entry.staleUntil) {
+                stripe.remove(key);
+                stats.expired();
+                return null;
+            }
+            if(now >= entry.freshUntil && !entry.refreshing) {
+                entry.refreshing = true;
+                refresh = true;
+            }
+        }
+
+        if(now < entry.freshUntil) {
+            if(entry.json == null) {
+                stats.notFoundHit();
+            } else {
+                stats.hit();
+            }
+        } else {
+            stats.staleHit();
+            if(refresh) {
+                refresh(key, entry, loader);
+            }
+        }
+        return entry;
+    }
+
+    private void refresh(String key, final CachedVideo entry, VideoLoader loader) {
+        stats.refreshed();
+        final Stripe stripe = stripeOf(key);
+        loads.execute(key, new FutureCallback<Video>() {
+            @Override
+            public void completed(Video result) { }
+
+            @Override
+            public void failed(Exception ex) {
+                retry();
+            }
+
+            @Override
+            public void cancelled() {
+                retry();
+            }
+
+            /**
+             * Lets a later lookup try again while the stale video is still used
+             */
+            private void retry() {
+                synchronized (stripe) {
+                    entry.refreshing = false;
+                }
+            }
+        }, new Load(key, loader, true));
+    }
+
+    /**
+     * Caches a loaded video unless it was invalidated while it was being loaded
+     */
+    private void store(String key, Video video, long generation) {
+        long ttl = video == null ? notFoundTtl : ttlOf(video.getStatus());
+        long now = System.currentTimeMillis();
+        long freshUntil = plus(now, ttl);
+        CachedVideo entry = ttl > 0 ? new CachedVideo(video == null ? null : toJson(video), freshUntil, video == null ? freshUntil : plus(freshUntil, staleWhileRevalidate)) : null;
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            if(stripe.generation != generation) {
+                return;
+            }
+            if(entry != null) {
+                stripe.put(key, entry);
+            } else {
+                // A status that is not cached replaces any stale video being refreshed
+                stripe.remove(key);
+            }
+        }
+    }
+
+    private static String toJson(Video video) {
+        return SafeStreamGson.getInstance().toJson(video);
+    }
+
+    private static Video toVideo(String json) {
+        return SafeStreamGson.getInstance().fromJson(json, Video.class);
+    }
+
+    private long ttlOf(String status) {
+        Long ttl = status != null ? statusTtls.get(status) : null;
+        return ttl != null ? ttl : defaultTtl;
+    }
+
+    private static long plus(long time, long millis) {
+        long sum = time + millis;
+        return sum < time ? Long.MAX_VALUE : sum;
+    }
+
+    private Stripe stripeOf(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Loads a video for every lookup waiting on its key, and caches it
+     */
+    private final class Load implements SingleFlight.Call<Video> {
+
+        private final String key;
+
+        private final VideoLoader loader;
+
+        private final boolean async;
+
+        Load(String key, VideoLoader loader, boolean async) {
+            this.key = key;
+            this.loader = loader;
+            this.async = async;
+        }
+
+        @Override
+        public Future<?> start(final FutureCallback<Video> callback) {
+            final Stripe stripe = stripeOf(key);
+            final long generation;
+            synchronized (stripe) {
+                generation = stripe.generation;
+            }
+            final long started = System.nanoTime();
+
+            FutureCallback<Video> outcome = new FutureCallback<Video>() {
+                @Override
+                public void completed(Video video) {
+                    stats.loaded(System.nanoTime() - started);
+                    store(key, video, generation);
+                    callback.completed(video);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    stats.loadFailed(System.nanoTime() - started);
+                    callback.failed(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    callback.cancelled();
+                }
+            };
+
+            if(async) {
+                return loader.loadAsync(key, outcome);
+            }
+
+            Video video;
+            try {
+                video = loader.load(key);
+            } catch (VideoAPIException e) {
+                outcome.failed(e);
+                return null;
+            } catch (RuntimeException e) {
+                outcome.failed(e);
+                return null;
+            }
+            outcome.completed(video);
+            return null;
+        }
+    }
+
+    /**
+     * Videos of one stripe in least recently used order. Guarded by itself.
+     */
+    private final class Stripe extends LinkedHashMap<String, CachedVideo> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        /**
+         * Changes whenever a video of the stripe is invalidated
+         */
+        private long generation;
+
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedVideo> eldest) {
+            if(size() > maxEntries) {
+                stats.evicted();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class CachedVideo {
+
+        /**
+         * The video as JSON, or null if there is no video with the key. A string cannot be changed, so the cached video cannot be changed through a copy returned by a lookup.
+         */
+        private final String json;
+
+        private final long freshUntil;
+
+        private final long staleUntil;
+
+        /**
+         * True once a lookup has started refreshing the expired video. Guarded by the stripe.
+         */
+        private boolean refreshing;
+
+        CachedVideo(String json, long freshUntil, long staleUntil) {
+            this.json = json;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+
+        /**
+         * @return A new copy of the video, or null if there is no video with the key
+         */
+        Video toVideo() {
+            return json == null ? null : VideoCache.toVideo(json);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for a {@link VideoCache}
+ *
+ * How long a video is used for depends on its status. An ingested video rarely changes and is kept for a long time, while a video that is still being ingested is looked up again shortly so that its new status is seen.
+ */
+public class VideoCacheConfiguration {
+
+    /**
+     * Default maximum number of videos kept
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * Default time in millis an <code>INGESTED</code> video is used for
+     */
+    public static final long DEFAULT_INGESTED_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Default time in millis a video in any other status is used for
+     */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Default time in millis a key with no video is remembered for
+     */
+    public static final long DEFAULT_NOT_FOUND_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Default time in millis an expired video is still used for while it is looked up again
+     */
+    public static final long DEFAULT_STALE_WHILE_REVALIDATE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long defaultTtl = DEFAULT_TTL_MILLIS;
+
+    private final Map<String, Long> statusTtls = new HashMap<String, Long>();
+
+    private long notFoundTtl = DEFAULT_NOT_FOUND_TTL_MILLIS;
+
+    private long staleWhileRevalidate = DEFAULT_STALE_WHILE_REVALIDATE_MILLIS;
+
+    public VideoCacheConfiguration() {
+        statusTtls.put("INGESTED", DEFAULT_INGESTED_TTL_MILLIS);
+    }
+
+    /**
+     * Fluent setter for maxEntries. The most videos kept, including keys with no video. The least recently used are dropped first.
+     * @param maxEntries
+     * @return this
+     */
+    public VideoCacheConfiguration withMaxEntries(int maxEntries) {
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException("A video cache must hold at least one video");
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Sets the time in millis a video in a status is used for. Specifying 0 looks the video up every time it is found in that status.
+     * @param status A video status such as <code>INGESTED</code>
+     * @param ttl Time in millis
+     * @return this
+     */
+    public VideoCacheConfiguration withTtl(String status, long ttl) {
+        statusTtls.put(status, ttl);
+        return this;
+    }
+
+    /**
+     * Fluent setter for defaultTtl. Time in millis a video is used for when its status has no time of its own. See {@link #withTtl(String, long)}
+     * @param defaultTtl
+     * @return this
+     */
+    public VideoCacheConfiguration withDefaultTtl(long defaultTtl) {
+        this.defaultTtl = defaultTtl;
+        return this;
+    }
+
+    /**
+     * Fluent setter for notFoundTtl. Time in millis a key with no video is remembered for, so that repeated lookups of an unknown key do not all reach SafeStream. Specifying 0 does not remember them.
+     * @param notFoundTtl
+     * @return this
+     */
+    public VideoCacheConfiguration withNotFoundTtl(long notFoundTtl) {
+        this.notFoundTtl = notFoundTtl;
+        return this;
+    }
+
+    /**
+     * Fluent setter for staleWhileRevalidate. Time in millis a video is still used for after it expires. The first lookup in that time looks the video up again in the background, so a video that is used often is refreshed without any lookup waiting for SafeStream.
+     * @param staleWhileRevalidate
+     * @return this
+     */
+    public VideoCacheConfiguration withStaleWhileRevalidate(long staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        return this;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    /**
+     * @return Time in millis by video status, for the statuses that have a time of their own
+     */
+    public Map<String, Long> getStatusTtls() {
+        return Collections.unmodifiableMap(statusTtls);
+    }
+
+    /**
+     * @param status A video status, or null
+     * @return Time in millis a video in the status is used for
+     */
+    public long getTtl(String status) {
+        Long ttl = status != null ? statusTtls.get(status) : null;
+        return ttl != null ? ttl : defaultTtl;
+    }
+
+    public long getNotFoundTtl() {
+        return notFoundTtl;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+}
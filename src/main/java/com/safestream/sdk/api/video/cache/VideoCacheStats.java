@@ -0,0 +1,188 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hits, misses and lookups of a {@link VideoCache}. The counters are updated as the cache is used.
+ */
+public class VideoCacheStats {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong staleHits = new AtomicLong();
+
+    private final AtomicLong notFoundHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void staleHit() {
+        hits.incrementAndGet();
+        staleHits.incrementAndGet();
+    }
+
+    void notFoundHit() {
+        hits.incrementAndGet();
+        notFoundHits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void loaded(long nanos) {
+        loads.incrementAndGet();
+        loadNanos.addAndGet(nanos);
+    }
+
+    void loadFailed(long nanos) {
+        loads.incrementAndGet();
+        loadFailures.incrementAndGet();
+        loadNanos.addAndGet(nanos);
+    }
+
+    void refreshed() {
+        refreshes.incrementAndGet();
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    void expired() {
+        expirations.incrementAndGet();
+    }
+
+    /**
+     * @return Lookups answered without waiting for SafeStream, including stale videos and keys with no video
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Lookups answered with an expired video while it was looked up again in the background
+     */
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    /**
+     * @return Lookups answered with a key being remembered as having no video
+     */
+    public long getNotFoundHits() {
+        return notFoundHits.get();
+    }
+
+    /**
+     * @return Lookups that waited for SafeStream, either for their own request or for one already in flight for the same key
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The fraction of lookups answered without waiting for SafeStream, or 0 if there have been none
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return Requests made to SafeStream, including background refreshes and those that failed
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return Requests made to SafeStream that failed. Failures are not cached.
+     */
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    /**
+     * @return Total time in millis spent waiting for requests to SafeStream
+     */
+    public long getTotalLoadTimeMillis() {
+        return loadNanos.get() / 1000000;
+    }
+
+    /**
+     * @return Mean time in millis a request to SafeStream took, or 0 if there have been none
+     */
+    public double getAverageLoadTimeMillis() {
+        long loads = this.loads.get();
+        return loads == 0 ? 0 : loadNanos.get() / 1e6 / loads;
+    }
+
+    /**
+     * @return Background refreshes started by lookups of expired videos
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return Videos dropped to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Videos found to have expired, and to be too old to use while refreshing, when they were looked up
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VideoCacheStats{hits=%d, staleHits=%d, notFoundHits=%d, misses=%d, hitRate=%.3f, loads=%d, loadFailures=%d, averageLoadTimeMillis=%.1f, refreshes=%d, evictions=%d, expirations=%d}",
+                getHits(), getStaleHits(), getNotFoundHits(), getMisses(), getHitRate(), getLoads(), getLoadFailures(), getAverageLoadTimeMillis(), getRefreshes(), getEvictions(), getExpirations());
+    }
+}
@@ -0,0 +1,54 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.cache;
+
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.video.VideoAPIException;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.concurrent.Future;
+
+/**
+ * Looks up a video in SafeStream when it is not in a {@link VideoCache}
+ */
+public interface VideoLoader {
+
+    /**
+     * Looks up a video, blocking until it is found
+     * @param key The video's key
+     * @return The video, or null if there is no video with the key
+     * @throws VideoAPIException If the video could not be looked up
+     */
+    Video load(String key) throws VideoAPIException;
+
+    /**
+     * Looks up a video without blocking
+     * @param key The video's key
+     * @param callback Completed with the video, or null if there is no video with the key. It is failed with a {@link VideoAPIException} if the video could not be looked up.
+     * @return The future of the lookup
+     */
+    Future<Video> loadAsync(String key, FutureCallback<Video> callback);
+}
@@ -0,0 +1,209 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.forensic;
+
+/**
+ * Maps viewer IDs to sequences of A/B segment variants, and recovers the viewer ID from the variants seen in a leaked copy.
+ *
+ * A viewer ID is split into bytes and protected with Reed-Solomon parity. Each byte of the codeword becomes eight segments, one bit per segment, after the bits are scrambled with a key so the sequence of one viewer says nothing about another's. The sequence repeats for as long as the video lasts, so any long enough stretch of a leak carries the whole codeword.
+ *
+ * When a leak is traced every repeat of a bit is a vote. Bits with no votes, or a tie, make their byte an erasure, and bytes read wrongly are errors. With P parity bytes a viewer is recovered while twice the errors plus the erasures is at most P. A leak only needs to cover the ID's bytes, eight segments each, if it has no errors.
+ *
+ * This identifies the source of a copy leaked by one viewer. It is not a collusion-resistant code, so a copy made by mixing the segments of several viewers may not be traced to any of them.
+ *
+ * A code is immutable and safe to use from many threads. Keep the key secret and use the same key and sizes to trace a leak as were used to serve it.
+ */
+public class ForensicCode {
+
+    /**
+     * An entry of an observed sequence whose variant is not known
+     */
+    public static final int UNKNOWN = -1;
+
+    private final int idBytes;
+
+    private final int paritySymbols;
+
+    private final ReedSolomon reedSolomon;
+
+    /**
+     * The key's scrambling bit of every position of the sequence
+     */
+    private final long[] mask;
+
+    private final int sequenceLength;
+
+    /**
+     * A code for IDs of up to 32 bits with 12 parity bytes, so a sequence is 128 segments long
+     * @param key The secret key sequences are scrambled with
+     */
+    public ForensicCode(long key) {
+        this(key, 4, 12);
+    }
+
+    /**
+     * @param key The secret key sequences are scrambled with
+     * @param idBytes The number of bytes of a viewer ID, 1 to 8
+     * @param paritySymbols The number of parity bytes
+     */
+    public ForensicCode(long key, int idBytes, int paritySymbols) {
+        if(idBytes < 1 || idBytes > 8) {
+            throw new IllegalArgumentException("idBytes must be 1 to 8");
+        }
+
+        this.idBytes = idBytes;
+        this.paritySymbols = paritySymbols;
+        this.reedSolomon = new ReedSolomon(idBytes, paritySymbols);
+        this.sequenceLength = reedSolomon.getLength() * 8;
+
+        this.mask = new long[(sequenceLength + 63) / 64];
+        long state = key;
+        for(int i = 0; i < mask.length; i++) {
+            // SplitMix64
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            mask[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * @param viewerId The viewer, from 0 to {@link #getMaxViewerId()}
+     * @return The viewer's sequence of variants {@link ForensicSequence}
+     */
+    public ForensicSequence encode(long viewerId) {
+        if(viewerId < 0 || viewerId > getMaxViewerId()) {
+            throw new IllegalArgumentException("viewerId must be from 0 to " + getMaxViewerId());
+        }
+
+        int[] data = new int[idBytes];
+        for(int i = 0; i < idBytes; i++) {
+            data[i] = (int) (viewerId >>> (8 * i)) & 0xFF;
+        }
+        int[] codeword = new int[reedSolomon.getLength()];
+        reedSolomon.encode(data, codeword);
+
+        long[] bits = new long[mask.length];
+        for(int symbol = 0; symbol < codeword.length; symbol++) {
+            for(int bit = 0; bit < 8; bit++) {
+                if(((codeword[symbol] >>> bit) & 1) != 0) {
+                    int position = symbol * 8 + bit;
+                    bits[position >>> 6] |= 1L << position;
+                }
+            }
+        }
+        for(int i = 0; i < bits.length; i++) {
+            bits[i] ^= mask[i];
+        }
+        return new ForensicSequence(bits, sequenceLength);
+    }
+
+    /**
+     * Recovers the viewer a copy was served to from the variants seen in it
+     * @param observed The variant seen at each segment position, 0 or 1, or {@link #UNKNOWN} where the segment is missing or could not be told apart
+     * @return The viewer and how confidently they were recovered {@link ForensicTrace}, or null if the observed variants cannot be decoded
+     */
+    public ForensicTrace decode(int[] observed) {
+        int[] ones = new int[sequenceLength];
+        int[] votes = new int[sequenceLength];
+        int observedSegments = 0;
+        for(int i = 0; i < observed.length; i++) {
+            if(observed[i] == 0 || observed[i] == 1) {
+                int position = i % sequenceLength;
+                votes[position]++;
+                ones[position] += observed[i] ^ maskBit(position);
+                observedSegments++;
+            }
+        }
+
+        int[] codeword = new int[reedSolomon.getLength()];
+        boolean[] erased = new boolean[codeword.length];
+        int erasures = 0;
+        for(int symbol = 0; symbol < codeword.length; symbol++) {
+            for(int bit = 0; bit < 8; bit++) {
+                int position = symbol * 8 + bit;
+                if(votes[position] == 0 || ones[position] * 2 == votes[position]) {
+                    erased[symbol] = true;
+                } else if(ones[position] * 2 > votes[position]) {
+                    codeword[symbol] |= 1 << bit;
+                }
+            }
+            if(erased[symbol]) {
+                erasures++;
+            }
+        }
+
+        int corrected = reedSolomon.decode(codeword, erased);
+        if(corrected < 0) {
+            return null;
+        }
+
+        long viewerId = 0;
+        for(int i = 0; i < idBytes; i++) {
+            viewerId |= (long) codeword[paritySymbols + i] << (8 * i);
+        }
+        if(viewerId < 0) {
+            // Not an ID that could have been encoded
+            return null;
+        }
+
+        ForensicSequence sequence = encode(viewerId);
+        int mismatchedSegments = 0;
+        for(int i = 0; i < observed.length; i++) {
+            if((observed[i] == 0 || observed[i] == 1) && observed[i] != sequence.variantOf(i)) {
+                mismatchedSegments++;
+            }
+        }
+        return new ForensicTrace(viewerId, observedSegments, mismatchedSegments, erasures, corrected);
+    }
+
+    /**
+     * @return The largest viewer ID that can be encoded
+     */
+    public long getMaxViewerId() {
+        return idBytes == 8 ? Long.MAX_VALUE : (1L << (8 * idBytes)) - 1;
+    }
+
+    /**
+     * @return The number of segments after which a sequence repeats
+     */
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    public int getIdBytes() {
+        return idBytes;
+    }
+
+    public int getParitySymbols() {
+        return paritySymbols;
+    }
+
+    private int maskBit(int position) {
+        return (int) (mask[position >>> 6] >>> position) & 1;
+    }
+}
@@ -0,0 +1,103 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.forensic;
+
+import com.safestream.sdk.api.video.SegmentedProxy;
+import com.safestream.sdk.api.video.hls.HlsMediaPlaylist;
+import com.safestream.sdk.api.video.hls.HlsPlaylistWriter;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Serves every viewer a playlist of their own that mixes two watermarked variants of a proxy, segment by segment, in the viewer's {@link ForensicSequence}.
+ *
+ * Each segment is watermarked twice, once per variant, ahead of time. Serving a viewer then only takes writing a playlist rather than a watermark of their own, and a leaked copy can be traced back to the viewer with {@link ForensicCode#decode(int[])}.
+ *
+ * A forensic playlist is immutable and safe to use from many threads, with a {@link HlsPlaylistWriter} per thread.
+ */
+public class ForensicPlaylist {
+
+    private final ForensicCode code;
+
+    private final HlsMediaPlaylist variantA;
+
+    private final HlsMediaPlaylist variantB;
+
+    /**
+     * @param code Chooses each viewer's variants {@link ForensicCode}
+     * @param variantA The proxy watermarked with the first variant {@link SegmentedProxy}
+     * @param variantB The proxy watermarked with the second variant, with the same segments {@link SegmentedProxy}
+     */
+    public ForensicPlaylist(ForensicCode code, SegmentedProxy variantA, SegmentedProxy variantB) {
+        this(code, new HlsMediaPlaylist(variantA), new HlsMediaPlaylist(variantB));
+    }
+
+    /**
+     * @param code Chooses each viewer's variants {@link ForensicCode}
+     * @param variantA The playlist of the first variant {@link HlsMediaPlaylist}
+     * @param variantB The playlist of the second variant, with the same segments {@link HlsMediaPlaylist}
+     */
+    public ForensicPlaylist(ForensicCode code, HlsMediaPlaylist variantA, HlsMediaPlaylist variantB) {
+        if(variantA.getSegmentCount() != variantB.getSegmentCount()) {
+            throw new IllegalArgumentException("Both variants must have the same number of segments");
+        }
+        if(variantA.getSegmentCount() < code.getIdBytes() * 8) {
+            throw new IllegalArgumentException("A video needs at least " + code.getIdBytes() * 8 + " segments to carry a viewer ID");
+        }
+
+        this.code = code;
+        this.variantA = variantA;
+        this.variantB = variantB;
+    }
+
+    /**
+     * Writes a viewer's playlist into a writer's buffer
+     * @param writer The writer {@link HlsPlaylistWriter}
+     * @param viewerId The viewer
+     * @param query A query to append to every segment URI without a leading <code>?</code>, or null for none
+     * @return The writer, holding the playlist
+     */
+    public HlsPlaylistWriter write(HlsPlaylistWriter writer, long viewerId, String query) {
+        return writer.writeMedia(variantA, null, variantB, null, code.encode(viewerId), query);
+    }
+
+    /**
+     * Writes a viewer's playlist to a channel
+     * @param writer The writer {@link HlsPlaylistWriter}
+     * @param viewerId The viewer
+     * @param query A query to append to every segment URI without a leading <code>?</code>, or null for none
+     * @param channel A blocking channel to write the playlist to
+     * @throws IOException If the playlist cannot be written to the channel
+     */
+    public void write(HlsPlaylistWriter writer, long viewerId, String query, WritableByteChannel channel) throws IOException {
+        writer.writeMedia(variantA, null, variantB, null, code.encode(viewerId), query, channel);
+    }
+
+    public ForensicCode getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,58 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.forensic;
+
+import com.safestream.sdk.api.video.hls.HlsVariantSelector;
+
+/**
+ * The variant of every segment served to one viewer, see {@link ForensicCode#encode(long)}
+ *
+ * The sequence repeats every {@link #getLength()} segments. It is immutable.
+ */
+public class ForensicSequence implements HlsVariantSelector {
+
+    private final long[] bits;
+
+    private final int length;
+
+    ForensicSequence(long[] bits, int length) {
+        this.bits = bits;
+        this.length = length;
+    }
+
+    @Override
+    public int variantOf(int segment) {
+        int position = segment % length;
+        return (int) (bits[position >>> 6] >>> position) & 1;
+    }
+
+    /**
+     * @return The number of segments after which the sequence repeats
+     */
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,82 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.forensic;
+
+/**
+ * The viewer a leaked copy was traced to, see {@link ForensicCode#decode(int[])}
+ */
+public class ForensicTrace {
+
+    private final long viewerId;
+
+    private final int observedSegments;
+
+    private final int mismatchedSegments;
+
+    private final int erasedSymbols;
+
+    private final int correctedSymbols;
+
+    ForensicTrace(long viewerId, int observedSegments, int mismatchedSegments, int erasedSymbols, int correctedSymbols) {
+        this.viewerId = viewerId;
+        this.observedSegments = observedSegments;
+        this.mismatchedSegments = mismatchedSegments;
+        this.erasedSymbols = erasedSymbols;
+        this.correctedSymbols = correctedSymbols;
+    }
+
+    public long getViewerId() {
+        return viewerId;
+    }
+
+    /**
+     * @return The number of segments whose variant was seen
+     */
+    public int getObservedSegments() {
+        return observedSegments;
+    }
+
+    /**
+     * @return The number of seen segments whose variant differs from the viewer's sequence. A large share of mismatches means the trace should not be trusted.
+     */
+    public int getMismatchedSegments() {
+        return mismatchedSegments;
+    }
+
+    /**
+     * @return The number of codeword bytes that could not be read
+     */
+    public int getErasedSymbols() {
+        return erasedSymbols;
+    }
+
+    /**
+     * @return The number of codeword bytes that were read wrongly and corrected
+     */
+    public int getCorrectedSymbols() {
+        return correctedSymbols;
+    }
+}
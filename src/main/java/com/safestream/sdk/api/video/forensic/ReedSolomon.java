@@ -0,0 +1,294 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.forensic;
+
+/**
+ * A systematic Reed-Solomon code over GF(256) that corrects errors and erasures.
+ *
+ * A codeword holds the parity symbols first and the data symbols after them, and is read as a polynomial whose coefficient of x<sup>i</sup> is symbol i. The generator's roots are &alpha;<sup>0</sup> to &alpha;<sup>parity - 1</sup>, so up to parity erasures, or half as many errors, or any mix where twice the errors plus the erasures is at most the parity, are corrected.
+ */
+final class ReedSolomon {
+
+    /**
+     * x<sup>8</sup> + x<sup>4</sup> + x<sup>3</sup> + x<sup>2</sup> + 1, for which &alpha; = 2 is primitive
+     */
+    private static final int PRIMITIVE_POLYNOMIAL = 0x11D;
+
+    /**
+     * Powers of &alpha;, repeated so a sum of two logarithms can be looked up without reducing it
+     */
+    private static final int[] EXP = new int[512];
+
+    private static final int[] LOG = new int[256];
+
+    static {
+        int x = 1;
+        for(int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if((x & 0x100) != 0) {
+                x ^= PRIMITIVE_POLYNOMIAL;
+            }
+        }
+        for(int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+    }
+
+    private final int dataSymbols;
+
+    private final int paritySymbols;
+
+    /**
+     * The generator polynomial, lowest degree first. It is monic, of degree paritySymbols.
+     */
+    private final int[] generator;
+
+    ReedSolomon(int dataSymbols, int paritySymbols) {
+        if(dataSymbols < 1 || paritySymbols < 1 || dataSymbols + paritySymbols > 255) {
+            throw new IllegalArgumentException("A Reed-Solomon code over GF(256) needs at least one data and one parity symbol, and at most 255 symbols in all");
+        }
+
+        this.dataSymbols = dataSymbols;
+        this.paritySymbols = paritySymbols;
+
+        int[] generator = {1};
+        for(int j = 0; j < paritySymbols; j++) {
+            // Multiply by (x + alpha^j)
+            int[] product = new int[generator.length + 1];
+            for(int i = 0; i < generator.length; i++) {
+                product[i] ^= multiply(generator[i], EXP[j]);
+                product[i + 1] ^= generator[i];
+            }
+            generator = product;
+        }
+        this.generator = generator;
+    }
+
+    int getLength() {
+        return dataSymbols + paritySymbols;
+    }
+
+    /**
+     * @param data The data symbols, each 0 to 255
+     * @param codeword Receives the parity symbols followed by the data symbols
+     */
+    void encode(int[] data, int[] codeword) {
+        // The parity is the remainder of data(x) * x^parity divided by the generator, worked out highest degree first
+        for(int j = 0; j < paritySymbols; j++) {
+            codeword[j] = 0;
+        }
+        for(int i = dataSymbols - 1; i >= 0; i--) {
+            int feedback = data[i] ^ codeword[paritySymbols - 1];
+            for(int j = paritySymbols - 1; j > 0; j--) {
+                codeword[j] = codeword[j - 1] ^ multiply(feedback, generator[j]);
+            }
+            codeword[0] = multiply(feedback, generator[0]);
+        }
+        System.arraycopy(data, 0, codeword, paritySymbols, dataSymbols);
+    }
+
+    /**
+     * Corrects a received codeword in place
+     * @param received The received symbols. Erased symbols may hold any value.
+     * @param erased Which symbols are known to be missing
+     * @return The number of symbols that were wrong but not erased, or -1 if the codeword has too many errors and erasures to be corrected
+     */
+    int decode(int[] received, boolean[] erased) {
+        int length = getLength();
+        int[] locator = {1};
+        int erasures = 0;
+        for(int i = 0; i < length; i++) {
+            if(erased[i]) {
+                received[i] = 0;
+                locator = multiplyByRoot(locator, EXP[i]);
+                erasures++;
+            }
+        }
+        if(erasures > paritySymbols) {
+            return -1;
+        }
+
+        int[] syndromes = syndromes(received);
+        if(isZero(syndromes)) {
+            return 0;
+        }
+
+        // Berlekamp-Massey, started from the erasure locator so it only has to find the errors
+        int[] errata = new int[paritySymbols + 1];
+        int[] previous = new int[paritySymbols + 2];
+        System.arraycopy(locator, 0, errata, 0, locator.length);
+        System.arraycopy(locator, 0, previous, 0, locator.length);
+        int degree = erasures;
+        for(int k = erasures; k < paritySymbols; k++) {
+            int discrepancy = 0;
+            for(int j = 0; j <= k && j <= paritySymbols; j++) {
+                discrepancy ^= multiply(errata[j], syndromes[k - j]);
+            }
+
+            // previous = x * previous
+            System.arraycopy(previous, 0, previous, 1, paritySymbols + 1);
+            previous[0] = 0;
+
+            if(discrepancy != 0) {
+                int[] next = new int[paritySymbols + 1];
+                for(int j = 0; j <= paritySymbols; j++) {
+                    next[j] = errata[j] ^ multiply(discrepancy, previous[j]);
+                }
+                if(2 * degree <= k + erasures) {
+                    int inverse = inverse(discrepancy);
+                    for(int j = 0; j <= paritySymbols; j++) {
+                        previous[j] = multiply(errata[j], inverse);
+                    }
+                    previous[paritySymbols + 1] = 0;
+                    degree = k + 1 + erasures - degree;
+                }
+                errata = next;
+            }
+        }
+
+        int errors = degree - erasures;
+        if(errors < 0 || 2 * errors + erasures > paritySymbols || degreeOf(errata) != degree) {
+            return -1;
+        }
+
+        // The evaluator is syndromes(x) * errata(x) mod x^parity
+        int[] evaluator = new int[paritySymbols];
+        for(int i = 0; i < paritySymbols; i++) {
+            for(int j = 0; j <= i; j++) {
+                evaluator[i] ^= multiply(syndromes[j], errata[i - j]);
+            }
+        }
+
+        // Find the errata by trying every position (Chien search), and their values with Forney's formula
+        int found = 0;
+        int corrected = 0;
+        for(int i = 0; i < length; i++) {
+            int inverseLocation = EXP[(255 - i) % 255];
+            if(evaluate(errata, inverseLocation) != 0) {
+                continue;
+            }
+            found++;
+
+            int derivative = 0;
+            for(int j = 1; j < errata.length; j += 2) {
+                derivative ^= multiply(errata[j], power(inverseLocation, j - 1));
+            }
+            if(derivative == 0) {
+                return -1;
+            }
+            int magnitude = multiply(EXP[i], divide(evaluate(evaluator, inverseLocation), derivative));
+            received[i] ^= magnitude;
+            if(!erased[i] && magnitude != 0) {
+                corrected++;
+            }
+        }
+
+        if(found != degree || !isZero(syndromes(received))) {
+            return -1;
+        }
+        return corrected;
+    }
+
+    private int[] syndromes(int[] received) {
+        int[] syndromes = new int[paritySymbols];
+        for(int j = 0; j < paritySymbols; j++) {
+            syndromes[j] = evaluate(received, EXP[j], getLength());
+        }
+        return syndromes;
+    }
+
+    private static boolean isZero(int[] values) {
+        for(int value : values) {
+            if(value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int degreeOf(int[] polynomial) {
+        for(int i = polynomial.length - 1; i > 0; i--) {
+            if(polynomial[i] != 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return polynomial(x) * (1 + root x)
+     */
+    private static int[] multiplyByRoot(int[] polynomial, int root) {
+        int[] product = new int[polynomial.length + 1];
+        for(int i = 0; i < polynomial.length; i++) {
+            product[i] ^= polynomial[i];
+            product[i + 1] ^= multiply(polynomial[i], root);
+        }
+        return product;
+    }
+
+    private static int evaluate(int[] polynomial, int x) {
+        return evaluate(polynomial, x, polynomial.length);
+    }
+
+    private static int evaluate(int[] polynomial, int x, int length) {
+        int value = 0;
+        for(int i = length - 1; i >= 0; i--) {
+            value = multiply(value, x) ^ polynomial[i];
+        }
+        return value;
+    }
+
+    static int multiply(int a, int b) {
+        if(a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int divide(int a, int b) {
+        if(a == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + 255 - LOG[b]];
+    }
+
+    private static int inverse(int a) {
+        return EXP[255 - LOG[a]];
+    }
+
+    private static int power(int a, int n) {
+        if(n == 0) {
+            return 1;
+        }
+        if(a == 0) {
+            return 0;
+        }
+        return EXP[(LOG[a] * n) % 255];
+    }
+}
@@ -0,0 +1,94 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.hls;
+
+import com.safestream.sdk.api.video.Resolution;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An HLS master playlist listing the media playlists of a video, one per bit rate.
+ *
+ * Each variant's <code>#EXT-X-STREAM-INF</code> line and URI are encoded as the variant is added, so writing the playlist for a viewer with {@link HlsPlaylistWriter} only copies bytes. Add every variant before sharing the playlist between threads.
+ */
+public class HlsMasterPlaylist {
+
+    private static final byte[] PREFIX = "#EXTM3U\n#EXT-X-VERSION:3\n".getBytes(HlsMediaPlaylist.UTF_8);
+
+    private final List<byte[]> streamInfs = new ArrayList<byte[]>();
+
+    private final List<byte[]> uris = new ArrayList<byte[]>();
+
+    /**
+     * Variants whose URI already has a query
+     */
+    private final BitSet withQuery = new BitSet();
+
+    /**
+     * Fluent setter for a variant
+     * @param uri The URI of the variant's media playlist, absolute or relative to the master playlist
+     * @param bandwidth The peak bit rate of the variant in bits per second
+     * @param resolution The variant's resolution, or null if not known {@link Resolution}
+     */
+    public HlsMasterPlaylist withVariant(String uri, long bandwidth, Resolution resolution) {
+        if(uri == null || bandwidth <= 0) {
+            throw new IllegalArgumentException("A variant needs a URI and a positive bandwidth");
+        }
+
+        StringBuilder streamInf = new StringBuilder("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth);
+        if(resolution != null && resolution.getWidth() > 0 && resolution.getHeight() > 0) {
+            streamInf.append(",RESOLUTION=").append(resolution.getWidth()).append('x').append(resolution.getHeight());
+        }
+        streamInf.append('\n');
+
+        withQuery.set(uris.size(), uri.indexOf('?') >= 0);
+        streamInfs.add(streamInf.toString().getBytes(HlsMediaPlaylist.UTF_8));
+        uris.add(uri.getBytes(HlsMediaPlaylist.UTF_8));
+        return this;
+    }
+
+    public int getVariantCount() {
+        return uris.size();
+    }
+
+    byte[] getPrefix() {
+        return PREFIX;
+    }
+
+    byte[] getStreamInf(int variant) {
+        return streamInfs.get(variant);
+    }
+
+    byte[] getUri(int variant) {
+        return uris.get(variant);
+    }
+
+    boolean hasQuery(int variant) {
+        return withQuery.get(variant);
+    }
+}
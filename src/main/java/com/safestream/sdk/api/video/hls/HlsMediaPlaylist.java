@@ -0,0 +1,210 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.hls;
+
+import com.safestream.sdk.api.video.SegmentOverrides;
+import com.safestream.sdk.api.video.SegmentedProxy;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * The parts of an HLS media playlist of a {@link SegmentedProxy} that are the same for every viewer.
+ *
+ * The header, the <code>#EXTINF</code> line and name of every segment and the end tag are encoded once, when the playlist is built, so writing a playlist for a viewer with {@link HlsPlaylistWriter} only copies bytes. Segment durations come from the proxy's segment duration, replaced by its segment overrides where there is one, and segment names from formatting each segment's index with the proxy's segment name format, see {@link String#format(String, Object...)}.
+ *
+ * A media playlist is immutable, so build it once per proxy and share it between threads. Changes made to the proxy afterwards are not seen.
+ */
+public class HlsMediaPlaylist {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String baseUrl;
+
+    private final int segmentCount;
+
+    private final int firstSegmentIndex;
+
+    private final int targetDuration;
+
+    private final byte[] prefix;
+
+    private final byte[] suffix;
+
+    /**
+     * The <code>#EXTINF</code> line and name of every segment, one after another
+     */
+    private final byte[] segments;
+
+    /**
+     * Where each segment's <code>#EXTINF</code> line starts in segments, and where the last one ends
+     */
+    private final int[] segmentStarts;
+
+    /**
+     * Where each segment's name starts in segments
+     */
+    private final int[] nameStarts;
+
+    /**
+     * Segments whose name already has a query
+     */
+    private final BitSet withQuery = new BitSet();
+
+    /**
+     * Builds the playlist of a proxy whose segments are numbered from 0
+     * @param proxy The proxy {@link SegmentedProxy}
+     */
+    public HlsMediaPlaylist(SegmentedProxy proxy) {
+        this(proxy, 0);
+    }
+
+    /**
+     * Builds the playlist of a proxy
+     * @param proxy The proxy {@link SegmentedProxy}
+     * @param firstSegmentIndex The index of the first segment, used in its name and to find its override
+     */
+    public HlsMediaPlaylist(SegmentedProxy proxy, int firstSegmentIndex) {
+        if(proxy.getSegmentNameFormat() == null) {
+            throw new IllegalArgumentException("The proxy has no segment name format");
+        }
+
+        this.baseUrl = proxy.getUrl();
+        this.segmentCount = Math.max(0, proxy.getSegmentCount());
+        this.firstSegmentIndex = firstSegmentIndex;
+
+        BigDecimal[] durations = durations(proxy, segmentCount, firstSegmentIndex);
+        BigDecimal longest = BigDecimal.ZERO;
+        byte[][] extinfs = new byte[segmentCount][];
+        byte[][] names = new byte[segmentCount][];
+        int length = 0;
+        for(int i = 0; i < segmentCount; i++) {
+            longest = longest.max(durations[i]);
+            extinfs[i] = ("#EXTINF:" + durations[i].toPlainString() + ",\n").getBytes(UTF_8);
+            String name = String.format(Locale.ROOT, proxy.getSegmentNameFormat(), firstSegmentIndex + i);
+            withQuery.set(i, name.indexOf('?') >= 0);
+            names[i] = name.getBytes(UTF_8);
+            length += extinfs[i].length + names[i].length;
+        }
+
+        this.segments = new byte[length];
+        this.segmentStarts = new int[segmentCount + 1];
+        this.nameStarts = new int[segmentCount];
+        int position = 0;
+        for(int i = 0; i < segmentCount; i++) {
+            segmentStarts[i] = position;
+            System.arraycopy(extinfs[i], 0, segments, position, extinfs[i].length);
+            position += extinfs[i].length;
+            nameStarts[i] = position;
+            System.arraycopy(names[i], 0, segments, position, names[i].length);
+            position += names[i].length;
+        }
+        segmentStarts[segmentCount] = position;
+
+        // Every segment's duration, rounded to the nearest second, must not exceed the target duration
+        this.targetDuration = longest.setScale(0, RoundingMode.CEILING).intValue();
+        this.prefix = ("#EXTM3U\n"
+                + "#EXT-X-VERSION:3\n"
+                + "#EXT-X-TARGETDURATION:" + targetDuration + "\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXT-X-PLAYLIST-TYPE:VOD\n").getBytes(UTF_8);
+        this.suffix = "#EXT-X-ENDLIST\n".getBytes(UTF_8);
+    }
+
+    /**
+     * @return The proxy's base URL, which segment names are relative to unless a viewer is given another
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int getFirstSegmentIndex() {
+        return firstSegmentIndex;
+    }
+
+    /**
+     * @return The longest segment duration in seconds, rounded up
+     */
+    public int getTargetDuration() {
+        return targetDuration;
+    }
+
+    byte[] getPrefix() {
+        return prefix;
+    }
+
+    byte[] getSuffix() {
+        return suffix;
+    }
+
+    byte[] getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return Where a segment's <code>#EXTINF</code> line starts in {@link #getSegments()}. The start of the next segment is where the segment's name ends.
+     */
+    int getSegmentStart(int segment) {
+        return segmentStarts[segment];
+    }
+
+    int getNameStart(int segment) {
+        return nameStarts[segment];
+    }
+
+    boolean hasQuery(int segment) {
+        return withQuery.get(segment);
+    }
+
+    /**
+     * @return Each segment's duration in seconds, to the millisecond
+     */
+    private static BigDecimal[] durations(SegmentedProxy proxy, int segmentCount, int firstSegmentIndex) {
+        BigDecimal[] durations = new BigDecimal[segmentCount];
+        BigDecimal duration = BigDecimal.valueOf(proxy.getSegmentDuration()).setScale(3);
+        for(int i = 0; i < segmentCount; i++) {
+            durations[i] = duration;
+        }
+
+        SegmentOverrides overrides = proxy.getCompactSegmentOverrides();
+        if(overrides != null) {
+            for(int i = 0; i < overrides.getCount(); i++) {
+                int segment = overrides.getSegment(i) - firstSegmentIndex;
+                if(segment >= 0 && segment < segmentCount) {
+                    durations[segment] = BigDecimal.valueOf(overrides.getDuration(i)).setScale(3, RoundingMode.HALF_UP);
+                }
+            }
+        }
+        return durations;
+    }
+}
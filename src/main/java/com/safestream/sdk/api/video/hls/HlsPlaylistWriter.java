@@ -0,0 +1,399 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.hls;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes HLS playlists for viewers into a reusable buffer, or through it to a channel.
+ *
+ * Only the parts of a playlist that differ between viewers are encoded as it is written: the base URL segments are served from, for example the href of the viewer's watermark, and a query appended to every URI, for example a signature from {@link com.safestream.sdk.api.video.signing.PlaybackUrlSigner}. Everything else is copied from the {@link HlsMediaPlaylist} or {@link HlsMasterPlaylist}, so once the buffer has grown to fit a playlist, writing it again with ASCII URLs allocates nothing.
+ *
+ * A writer is not safe to use from many threads at once. Give each thread its own, for example through a {@link ThreadLocal}.
+ */
+public class HlsPlaylistWriter {
+
+    /**
+     * Size of the buffer when writing to a channel
+     */
+    private static final int CHANNEL_BUFFER_BYTES = 64 * 1024;
+
+    private byte[] buffer;
+
+    private ByteBuffer channelBuffer;
+
+    private int length;
+
+    private WritableByteChannel channel;
+
+    /**
+     * The base URL of the playlist being written, with a trailing slash
+     */
+    private byte[] base = new byte[256];
+
+    private int baseLength;
+
+    /**
+     * The base URL of the second variant of the playlist being written, with a trailing slash
+     */
+    private byte[] baseB = new byte[256];
+
+    private int baseBLength;
+
+    private byte[] query = new byte[256];
+
+    private int queryLength;
+
+    /**
+     * The length of the string last encoded
+     */
+    private int encodedLength;
+
+    public HlsPlaylistWriter() {
+        this(4096);
+    }
+
+    /**
+     * @param initialCapacity The initial size of the buffer in bytes. It grows to fit the largest playlist written.
+     */
+    public HlsPlaylistWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Writes a viewer's media playlist into the buffer, replacing what was there
+     * @param playlist The playlist {@link HlsMediaPlaylist}
+     * @param baseUrl The URL segment names are relative to, or null for the proxy's URL
+     * @param query A query to append to every segment URI without a leading <code>?</code>, or null for none
+     * @return This writer, holding the playlist in {@link #getBytes()}
+     */
+    public HlsPlaylistWriter writeMedia(HlsMediaPlaylist playlist, String baseUrl, String query) {
+        try {
+            start(null);
+            media(playlist, baseUrl, query);
+        } catch (IOException e) {
+            // Only writing to a channel can fail
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a viewer's media playlist to a channel, through the buffer
+     * @param playlist The playlist {@link HlsMediaPlaylist}
+     * @param baseUrl The URL segment names are relative to, or null for the proxy's URL
+     * @param query A query to append to every segment URI without a leading <code>?</code>, or null for none
+     * @param channel A blocking channel to write the playlist to
+     * @throws IOException If the playlist cannot be written to the channel
+     */
+    public void writeMedia(HlsMediaPlaylist playlist, String baseUrl, String query, WritableByteChannel channel) throws IOException {
+        start(channel);
+        try {
+            media(playlist, baseUrl, query);
+            flush();
+        } finally {
+            this.channel = null;
+            length = 0;
+        }
+    }
+
+    /**
+     * Writes a viewer's media playlist that mixes segments of two variants of a proxy into the buffer, replacing what was there
+     * @param variantA The first variant {@link HlsMediaPlaylist}
+     * @param baseUrlA The URL the first variant's segment names are relative to, or null for its proxy's URL
+     * @param variantB The second variant, with the same number of segments {@link HlsMediaPlaylist}
+     * @param baseUrlB The URL the second variant's segment names are relative to, or null for its proxy's URL
+     * @param selector Chooses the variant of each segment {@link HlsVariantSelector}
+     * @param query A query to append to every segment URI without a leading <code>?</code>, or null for none
+     * @return This writer, holding the playlist in {@link #getBytes()}
+     */
+    public HlsPlaylistWriter writeMedia(HlsMediaPlaylist variantA, String baseUrlA, HlsMediaPlaylist variantB, String baseUrlB, HlsVariantSelector selector, String query) {
+        try {
+            start(null);
+            media(variantA, baseUrlA, variantB, baseUrlB, selector, query);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a viewer's media playlist that mixes segments of two variants of a proxy to a channel, through the buffer
+     * @param variantA The first variant {@link HlsMediaPlaylist}
+     * @param baseUrlA The URL the first variant's segment names are relative to, or null for its proxy's URL
+     * @param variantB The second variant, with the same number of segments {@link HlsMediaPlaylist}
+     * @param baseUrlB The URL the second variant's segment names are relative to, or null for its proxy's URL
+     * @param selector Chooses the variant of each segment {@link HlsVariantSelector}
+     * @param query A query to append to every segment URI without a leading <code>?</code>, or null for none
+     * @param channel A blocking channel to write the playlist to
+     * @throws IOException If the playlist cannot be written to the channel
+     */
+    public void writeMedia(HlsMediaPlaylist variantA, String baseUrlA, HlsMediaPlaylist variantB, String baseUrlB, HlsVariantSelector selector, String query, WritableByteChannel channel) throws IOException {
+        start(channel);
+        try {
+            media(variantA, baseUrlA, variantB, baseUrlB, selector, query);
+            flush();
+        } finally {
+            this.channel = null;
+            length = 0;
+        }
+    }
+
+    /**
+     * Writes a viewer's master playlist into the buffer, replacing what was there
+     * @param playlist The playlist {@link HlsMasterPlaylist}
+     * @param query A query to append to every variant URI without a leading <code>?</code>, or null for none
+     * @return This writer, holding the playlist in {@link #getBytes()}
+     */
+    public HlsPlaylistWriter writeMaster(HlsMasterPlaylist playlist, String query) {
+        try {
+            start(null);
+            master(playlist, query);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a viewer's master playlist to a channel, through the buffer
+     * @param playlist The playlist {@link HlsMasterPlaylist}
+     * @param query A query to append to every variant URI without a leading <code>?</code>, or null for none
+     * @param channel A blocking channel to write the playlist to
+     * @throws IOException If the playlist cannot be written to the channel
+     */
+    public void writeMaster(HlsMasterPlaylist playlist, String query, WritableByteChannel channel) throws IOException {
+        start(channel);
+        try {
+            master(playlist, query);
+            flush();
+        } finally {
+            this.channel = null;
+            length = 0;
+        }
+    }
+
+    /**
+     * @return The buffer holding the playlist last written into it. Only the first {@link #getLength()} bytes are the playlist, and they are overwritten by the next write.
+     */
+    public byte[] getBytes() {
+        return buffer;
+    }
+
+    /**
+     * @return The length in bytes of the playlist last written into the buffer
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the playlist last written into the buffer to a stream
+     * @param out The stream
+     * @throws IOException If the stream cannot be written to
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    private void media(HlsMediaPlaylist playlist, String baseUrl, String query) throws IOException {
+        base = encodeBase(baseUrl != null ? baseUrl : playlist.getBaseUrl(), base);
+        baseLength = encodedLength;
+        setQuery(query);
+
+        put(playlist.getPrefix(), 0, playlist.getPrefix().length);
+        for(int i = 0; i < playlist.getSegmentCount(); i++) {
+            putSegment(playlist, i, base, baseLength);
+        }
+        put(playlist.getSuffix(), 0, playlist.getSuffix().length);
+    }
+
+    private void media(HlsMediaPlaylist variantA, String baseUrlA, HlsMediaPlaylist variantB, String baseUrlB, HlsVariantSelector selector, String query) throws IOException {
+        if(variantA.getSegmentCount() != variantB.getSegmentCount()) {
+            throw new IllegalArgumentException("Both variants must have the same number of segments");
+        }
+
+        base = encodeBase(baseUrlA != null ? baseUrlA : variantA.getBaseUrl(), base);
+        baseLength = encodedLength;
+        baseB = encodeBase(baseUrlB != null ? baseUrlB : variantB.getBaseUrl(), baseB);
+        baseBLength = encodedLength;
+        setQuery(query);
+
+        // The target duration must cover the longest segment of either variant
+        HlsMediaPlaylist header = variantB.getTargetDuration() > variantA.getTargetDuration() ? variantB : variantA;
+        put(header.getPrefix(), 0, header.getPrefix().length);
+        for(int i = 0; i < variantA.getSegmentCount(); i++) {
+            if(selector.variantOf(i) == 0) {
+                putSegment(variantA, i, base, baseLength);
+            } else {
+                putSegment(variantB, i, baseB, baseBLength);
+            }
+        }
+        put(header.getSuffix(), 0, header.getSuffix().length);
+    }
+
+    private void putSegment(HlsMediaPlaylist playlist, int segment, byte[] base, int baseLength) throws IOException {
+        byte[] segments = playlist.getSegments();
+        int start = playlist.getSegmentStart(segment);
+        int nameStart = playlist.getNameStart(segment);
+        put(segments, start, nameStart - start);
+        put(base, 0, baseLength);
+        put(segments, nameStart, playlist.getSegmentStart(segment + 1) - nameStart);
+        putQuery(playlist.hasQuery(segment));
+    }
+
+    private void master(HlsMasterPlaylist playlist, String query) throws IOException {
+        setQuery(query);
+
+        put(playlist.getPrefix(), 0, playlist.getPrefix().length);
+        for(int i = 0; i < playlist.getVariantCount(); i++) {
+            byte[] streamInf = playlist.getStreamInf(i);
+            byte[] uri = playlist.getUri(i);
+            put(streamInf, 0, streamInf.length);
+            put(uri, 0, uri.length);
+            putQuery(playlist.hasQuery(i));
+        }
+    }
+
+    private void start(WritableByteChannel channel) {
+        this.channel = channel;
+        this.length = 0;
+        if(channel != null && buffer.length < CHANNEL_BUFFER_BYTES) {
+            buffer = new byte[CHANNEL_BUFFER_BYTES];
+        }
+    }
+
+    /**
+     * Encodes a base URL with a trailing slash
+     * @return The array holding the base URL, whose length is left in encodedLength
+     */
+    private byte[] encodeBase(String baseUrl, byte[] into) {
+        if(baseUrl == null || baseUrl.isEmpty()) {
+            encodedLength = 0;
+            return into;
+        }
+
+        into = encode(baseUrl, into, 1);
+        if(into[encodedLength - 1] != '/') {
+            into[encodedLength++] = '/';
+        }
+        return into;
+    }
+
+    private void setQuery(String query) {
+        queryLength = 0;
+        if(query != null && !query.isEmpty()) {
+            this.query = encode(query, this.query, 0);
+            queryLength = encodedLength;
+        }
+    }
+
+    /**
+     * Encodes a string as UTF-8 into an array, growing it if needed
+     * @param extra Room to leave after the string
+     * @return The array holding the string
+     */
+    private byte[] encode(String s, byte[] into, int extra) {
+        int length = s.length();
+        if(length + extra > into.length) {
+            into = new byte[Math.max(into.length * 2, length + extra)];
+        }
+        for(int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if(c >= 0x80) {
+                // URLs are nearly always ASCII, so only encode the general way when they are not
+                byte[] encoded = s.getBytes(HlsMediaPlaylist.UTF_8);
+                if(encoded.length + extra > into.length) {
+                    into = new byte[encoded.length + extra];
+                }
+                System.arraycopy(encoded, 0, into, 0, encoded.length);
+                encodedLength = encoded.length;
+                return into;
+            }
+            into[i] = (byte) c;
+        }
+        encodedLength = length;
+        return into;
+    }
+
+    private void putQuery(boolean hasQuery) throws IOException {
+        if(queryLength > 0) {
+            putByte(hasQuery ? (byte) '&' : (byte) '?');
+            put(query, 0, queryLength);
+        }
+        putByte((byte) '\n');
+    }
+
+    private void putByte(byte b) throws IOException {
+        if(length == buffer.length) {
+            makeRoom(1);
+        }
+        buffer[length++] = b;
+    }
+
+    private void put(byte[] bytes, int offset, int count) throws IOException {
+        while(count > 0) {
+            if(length + count > buffer.length) {
+                makeRoom(count);
+            }
+            int copied = Math.min(count, buffer.length - length);
+            System.arraycopy(bytes, offset, buffer, length, copied);
+            length += copied;
+            offset += copied;
+            count -= copied;
+        }
+    }
+
+    /**
+     * Flushes the buffer to the channel, or grows the buffer if there is no channel
+     */
+    private void makeRoom(int needed) throws IOException {
+        if(channel != null) {
+            flush();
+            return;
+        }
+
+        byte[] grown = new byte[Math.max(buffer.length * 2, length + needed)];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        buffer = grown;
+    }
+
+    private void flush() throws IOException {
+        if(channelBuffer == null || channelBuffer.array() != buffer) {
+            channelBuffer = ByteBuffer.wrap(buffer);
+        }
+        // Through Buffer, so that a build on JDK 9 or later does not link to ByteBuffer.clear(), which Java 8 lacks
+        ((Buffer) channelBuffer).clear().limit(length);
+        while(channelBuffer.hasRemaining()) {
+            channel.write(channelBuffer);
+        }
+        length = 0;
+    }
+}
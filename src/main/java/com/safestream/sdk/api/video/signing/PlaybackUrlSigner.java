@@ -0,0 +1,516 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.signing;
+
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Signs playback and watermark URLs of a video locally, so a URL can be handed to each viewer without a call to the SafeStream API.
+ *
+ * Only videos that allow HMAC auth can be signed, see {@link Video#isAllowHmacAuth()}. Each video gets its own key, the HMAC-SHA256 of its id keyed with the account secret, so a signature for one video can never be used for another. Derived keys are cached.
+ *
+ * A signed URL is the URL with three parameters appended to its query:
+ *
+ * <ul>
+ *     <li>{@value #VIEWER_PARAM}: the viewer identity, percent-encoded</li>
+ *     <li>{@value #EXPIRES_PARAM}: when the URL expires, in seconds since the epoch</li>
+ *     <li>{@value #SIGNATURE_PARAM}: the hex HMAC-SHA256, keyed with the video's key, of the URL, a newline, the viewer, a newline and the expiry</li>
+ * </ul>
+ *
+ * {@link #verify(Video, String)} checks a signed URL. A signer is safe to use from many threads, and each thread reuses its own buffers and MAC so signing a URL allocates little more than the URL returned.
+ */
+public class PlaybackUrlSigner {
+
+    public static final String VIEWER_PARAM = "viewer";
+
+    public static final String EXPIRES_PARAM = "expires";
+
+    public static final String SIGNATURE_PARAM = "signature";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String KEY_PREFIX = "video:";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final char[] UPPER_HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final String VIEWER_MARKER = VIEWER_PARAM + "=";
+
+    private static final String EXPIRES_MARKER = "&" + EXPIRES_PARAM + "=";
+
+    private static final char[] VIEWER_PREFIX = VIEWER_MARKER.toCharArray();
+
+    private static final char[] EXPIRES_PREFIX = EXPIRES_MARKER.toCharArray();
+
+    private static final char[] SIGNATURE_PREFIX = ("&" + SIGNATURE_PARAM + "=").toCharArray();
+
+    /**
+     * Length in bytes of an HMAC-SHA256
+     */
+    private static final int MAC_LENGTH = 32;
+
+    private final SecretKeySpec secret;
+
+    /**
+     * Maximum number of derived keys cached
+     */
+    private final int maxCachedKeys;
+
+    /**
+     * Derived keys, by video id
+     */
+    private final ConcurrentMap<String, SecretKeySpec> keys = new ConcurrentHashMap<String, SecretKeySpec>();
+
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     * @param secret The account secret videos' keys are derived from
+     */
+    public PlaybackUrlSigner(String secret) {
+        this(secret, 10000);
+    }
+
+    /**
+     * @param secret The account secret videos' keys are derived from
+     * @param maxCachedKeys Maximum number of derived keys cached. Once it is reached an arbitrary key is dropped for each new one.
+     */
+    public PlaybackUrlSigner(String secret, int maxCachedKeys) {
+        if(secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A secret is needed to sign URLs");
+        }
+        if(maxCachedKeys < 1) {
+            throw new IllegalArgumentException("maxCachedKeys must be at least 1");
+        }
+
+        this.secret = new SecretKeySpec(secret.getBytes(UTF_8), ALGORITHM);
+        this.maxCachedKeys = maxCachedKeys;
+    }
+
+    /**
+     * Signs a watermarked version of a video
+     * @param video The video that was watermarked
+     * @param watermarkResult The watermark. Its href is signed.
+     * @param viewer Identifies who the URL is for
+     * @param expiresAt When the URL expires, in seconds since the epoch
+     * @return The signed URL
+     */
+    public String sign(Video video, WatermarkResult watermarkResult, String viewer, long expiresAt) {
+        if(watermarkResult == null || watermarkResult.getHref() == null) {
+            throw new IllegalArgumentException("The watermark has no href to sign");
+        }
+        return sign(video, watermarkResult.getHref(), viewer, expiresAt);
+    }
+
+    /**
+     * Signs a URL of a video, such as the M3U8 or a segment of one of its proxies
+     * @param video The video the URL plays
+     * @param url The URL to sign. It may already have a query.
+     * @param viewer Identifies who the URL is for
+     * @param expiresAt When the URL expires, in seconds since the epoch
+     * @return The signed URL
+     */
+    public String sign(Video video, String url, String viewer, long expiresAt) {
+        if(url == null || viewer == null) {
+            throw new IllegalArgumentException("A URL and a viewer are needed to sign a URL");
+        }
+        if(expiresAt < 0) {
+            throw new IllegalArgumentException("expiresAt must be in seconds since the epoch");
+        }
+        if(!video.isAllowHmacAuth()) {
+            throw new IllegalArgumentException("Video " + video.getId() + " does not allow HMAC auth");
+        }
+
+        State state = this.state.get();
+        Mac mac = state.mac(keyFor(video));
+
+        int length = url.length();
+        state.startMessage(url, length);
+        state.putUtf8(viewer, 0, viewer.length());
+        state.bytes[state.byteCount++] = '\n';
+        state.putDigits(expiresAt);
+        mac.update(state.bytes, 0, state.byteCount);
+        byte[] signature = state.doFinal(mac);
+
+        // The URL, the separator and the parameters. Each byte of the viewer takes at most three characters.
+        state.ensureChars(length + 1 + VIEWER_PREFIX.length + viewer.length() * 9 + EXPIRES_PREFIX.length + 20 + SIGNATURE_PREFIX.length + MAC_LENGTH * 2);
+        char[] out = state.chars;
+        url.getChars(0, length, out, 0);
+        int position = length;
+        out[position++] = url.indexOf('?') < 0 ? '?' : '&';
+        position = append(out, position, VIEWER_PREFIX);
+        position = state.percentEncode(viewer, out, position);
+        position = append(out, position, EXPIRES_PREFIX);
+        position = appendDigits(out, position, expiresAt);
+        position = append(out, position, SIGNATURE_PREFIX);
+        for(int i = 0; i < MAC_LENGTH; i++) {
+            out[position++] = HEX[(signature[i] >> 4) & 0xF];
+            out[position++] = HEX[signature[i] & 0xF];
+        }
+        return new String(out, 0, position);
+    }
+
+    /**
+     * Checks a signed URL of a video has not been changed and has not expired
+     * @param video The video the URL plays
+     * @param signedUrl The signed URL
+     * @return True if the URL was signed for this video and has not expired
+     */
+    public boolean verify(Video video, String signedUrl) {
+        return verify(video, signedUrl, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Checks a signed URL of a video has not been changed and had not expired at a time
+     * @param video The video the URL plays
+     * @param signedUrl The signed URL
+     * @param now The time to check the expiry against, in seconds since the epoch
+     * @return True if the URL was signed for this video and had not expired
+     */
+    public boolean verify(Video video, String signedUrl, long now) {
+        if(signedUrl == null || !video.isAllowHmacAuth() || video.getId() == null) {
+            return false;
+        }
+
+        // The parameters are always the last three, in the order they are appended
+        int signatureStart = signedUrl.length() - MAC_LENGTH * 2;
+        int signatureParam = signatureStart - SIGNATURE_PREFIX.length;
+        if(signatureParam < 0 || !regionMatches(signedUrl, signatureParam, SIGNATURE_PREFIX)) {
+            return false;
+        }
+        int expiresParam = signedUrl.lastIndexOf(EXPIRES_MARKER, signatureParam - 1);
+        if(expiresParam < 0) {
+            return false;
+        }
+        int viewerParam = signedUrl.lastIndexOf(VIEWER_MARKER, expiresParam - 1) - 1;
+        if(viewerParam < 0 || (signedUrl.charAt(viewerParam) != '?' && signedUrl.charAt(viewerParam) != '&')) {
+            return false;
+        }
+
+        long expiresAt = parseDigits(signedUrl, expiresParam + EXPIRES_PREFIX.length, signatureParam);
+        if(expiresAt < 0 || now > expiresAt) {
+            return false;
+        }
+
+        State state = this.state.get();
+        Mac mac = state.mac(keyFor(video));
+        state.startMessage(signedUrl, viewerParam);
+        if(!state.percentDecode(signedUrl, viewerParam + 1 + VIEWER_PREFIX.length, expiresParam)) {
+            return false;
+        }
+        state.bytes[state.byteCount++] = '\n';
+        state.putDigits(expiresAt);
+        mac.update(state.bytes, 0, state.byteCount);
+        byte[] expected = state.doFinal(mac);
+
+        // Compared in constant time so the signature cannot be guessed a byte at a time
+        int difference = 0;
+        for(int i = 0; i < MAC_LENGTH; i++) {
+            int high = hexValue(signedUrl.charAt(signatureStart + i * 2));
+            int low = hexValue(signedUrl.charAt(signatureStart + i * 2 + 1));
+            difference |= (high | low) >>> 31;
+            difference |= ((high << 4) | low) ^ (expected[i] & 0xFF);
+        }
+        return difference == 0;
+    }
+
+    /**
+     * @return The number of derived keys cached
+     */
+    public int getCachedKeys() {
+        return keys.size();
+    }
+
+    private SecretKeySpec keyFor(Video video) {
+        String id = video.getId();
+        if(id == null) {
+            throw new IllegalArgumentException("The video has no id. Only videos read from SafeStream can be signed.");
+        }
+
+        SecretKeySpec key = keys.get(id);
+        if(key != null) {
+            return key;
+        }
+
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            key = new SecretKeySpec(mac.doFinal((KEY_PREFIX + id).getBytes(UTF_8)), ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            // Every JVM supports HmacSHA256
+            throw new IllegalStateException(e);
+        }
+
+        if(keys.size() >= maxCachedKeys) {
+            Iterator<String> cached = keys.keySet().iterator();
+            if(cached.hasNext()) {
+                cached.next();
+                cached.remove();
+            }
+        }
+        SecretKeySpec existing = keys.putIfAbsent(id, key);
+        return existing != null ? existing : key;
+    }
+
+    private static int append(char[] out, int position, char[] chars) {
+        System.arraycopy(chars, 0, out, position, chars.length);
+        return position + chars.length;
+    }
+
+    private static int appendDigits(char[] out, int position, long value) {
+        int digits = 1;
+        for(long remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        for(int i = position + digits - 1; i >= position; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    /**
+     * @return The number, or -1 if the characters are not all digits
+     */
+    private static long parseDigits(String s, int start, int end) {
+        if(start >= end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for(int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean regionMatches(String s, int offset, char[] chars) {
+        for(int i = 0; i < chars.length; i++) {
+            if(s.charAt(offset + i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The value of a hex digit, or a negative number if it is not one
+     */
+    private static int hexValue(char c) {
+        if(c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if(c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if(c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * A thread's MAC and buffers
+     */
+    private static final class State {
+
+        private final Mac mac;
+
+        /**
+         * The key the MAC was last initialised with
+         */
+        private SecretKeySpec key;
+
+        private final byte[] signature = new byte[MAC_LENGTH];
+
+        private byte[] bytes = new byte[512];
+
+        private int byteCount;
+
+        private char[] chars = new char[512];
+
+        State() {
+            try {
+                this.mac = Mac.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Mac mac(SecretKeySpec key) {
+            if(this.key != key) {
+                try {
+                    mac.init(key);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+                this.key = key;
+            }
+            return mac;
+        }
+
+        byte[] doFinal(Mac mac) {
+            try {
+                mac.doFinal(signature, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            return signature;
+        }
+
+        /**
+         * Starts the signed message with the URL and a newline
+         * @param url Holds the URL
+         * @param length The length of the URL
+         */
+        void startMessage(String url, int length) {
+            byteCount = 0;
+            putUtf8(url, 0, length);
+            bytes[byteCount++] = '\n';
+        }
+
+        void putUtf8(String s, int start, int end) {
+            ensureBytes((end - start) * 3 + 1);
+            for(int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if(c < 0x80) {
+                    bytes[byteCount++] = (byte) c;
+                } else if(c < 0x800) {
+                    bytes[byteCount++] = (byte) (0xC0 | (c >> 6));
+                    bytes[byteCount++] = (byte) (0x80 | (c & 0x3F));
+                } else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    bytes[byteCount++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[byteCount++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[byteCount++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[byteCount++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if(Character.isSurrogate(c)) {
+                    // An unpaired surrogate, encoded as String.getBytes does
+                    bytes[byteCount++] = '?';
+                } else {
+                    bytes[byteCount++] = (byte) (0xE0 | (c >> 12));
+                    bytes[byteCount++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[byteCount++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        void putDigits(long value) {
+            ensureBytes(20);
+            ensureChars(20);
+            int end = appendDigits(chars, 0, value);
+            for(int i = 0; i < end; i++) {
+                bytes[byteCount++] = (byte) chars[i];
+            }
+        }
+
+        /**
+         * Percent-encodes the viewer into the URL being built
+         * @return The position after the viewer
+         */
+        int percentEncode(String viewer, char[] out, int position) {
+            int start = byteCount;
+            putUtf8(viewer, 0, viewer.length());
+            for(int i = start; i < byteCount; i++) {
+                byte b = bytes[i];
+                if(b >= 0 && isUnreserved((char) b)) {
+                    out[position++] = (char) b;
+                } else {
+                    out[position++] = '%';
+                    out[position++] = UPPER_HEX[(b >> 4) & 0xF];
+                    out[position++] = UPPER_HEX[b & 0xF];
+                }
+            }
+            byteCount = start;
+            return position;
+        }
+
+        /**
+         * Appends the percent-decoded viewer from a signed URL to the message
+         * @return False if the viewer is not validly encoded
+         */
+        boolean percentDecode(String s, int start, int end) {
+            ensureBytes(end - start + 1);
+            for(int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if(c == '%') {
+                    if(i + 2 >= end) {
+                        return false;
+                    }
+                    int high = hexValue(s.charAt(i + 1));
+                    int low = hexValue(s.charAt(i + 2));
+                    if(high < 0 || low < 0) {
+                        return false;
+                    }
+                    bytes[byteCount++] = (byte) ((high << 4) | low);
+                    i += 2;
+                } else if(c < 0x80) {
+                    bytes[byteCount++] = (byte) c;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void ensureBytes(int extra) {
+            if(byteCount + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, byteCount + extra)];
+                System.arraycopy(bytes, 0, grown, 0, byteCount);
+                bytes = grown;
+            }
+        }
+
+        void ensureChars(int length) {
+            if(length > chars.length) {
+                chars = new char[Math.max(chars.length * 2, length)];
+            }
+        }
+    }
+}
@@ -24,14 +24,31 @@
 
 package com.safestream.sdk.api.watermarking;
 
+import com.safestream.sdk.api.polling.JobShape;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCache;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCacheKey;
 import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+import com.safestream.sdk.api.watermarking.webhook.WatermarkWebhookReceiver;
+import com.safestream.sdk.http.BlockingCallback;
+import com.safestream.sdk.http.RequestPriority;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
 import com.safestream.sdk.http.SafeStreamHttpClient;
 import com.safestream.sdk.http.SafeStreamHttpClientException;
+import com.safestream.sdk.http.SafeStreamHttpResponse;
+import com.safestream.sdk.http.SingleFlight;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The Watermark API provides support for adding a destructive watermark to videos. Additionally, it supports desaturation and resolution.
@@ -43,11 +60,31 @@ public class WatermarkAPI {
      */
     private SafeStreamHttpClient safeStreamHttpClient;
 
+    /**
+     * Manages non-blocking REST requests to the SafeStream HTTP API
+     */
+    private SafeStreamAsyncClient safeStreamAsyncClient;
+
     /**
      * The SafeStream REST endpoint for video requests
      */
     private String apiResourcePath = "watermark";
 
+    /**
+     * Polls pending watermark jobs until they are ready
+     */
+    private WatermarkJobTracker watermarkJobTracker;
+
+    /**
+     * Watermarks that are ready, or null if watermarks are not cached
+     */
+    private WatermarkCache watermarkCache;
+
+    /**
+     * The priority watermark and status requests are sent with
+     */
+    private RequestPriority priority = RequestPriority.NORMAL;
+
     /**
      * A SafeStreamHttpClient must be passed into the VideoAPI constructor. So, we disable the use of the default constructor.
      */
@@ -55,6 +92,49 @@ public class WatermarkAPI {
 
     public WatermarkAPI(SafeStreamHttpClient safeStreamHttpClient) {
         this.safeStreamHttpClient = safeStreamHttpClient;
+        this.safeStreamAsyncClient = new SafeStreamAsyncClient(safeStreamHttpClient);
+        this.watermarkJobTracker = new WatermarkJobTracker(safeStreamAsyncClient);
+    }
+
+    /**
+     * Creates a watermark API that waits for watermarks with a shared job tracker, so that the limit on concurrent status requests applies to every watermark being waited on
+     * @param safeStreamHttpClient {@link SafeStreamHttpClient}
+     * @param watermarkJobTracker {@link WatermarkJobTracker}
+     */
+    public WatermarkAPI(SafeStreamHttpClient safeStreamHttpClient, WatermarkJobTracker watermarkJobTracker) {
+        this(safeStreamHttpClient, watermarkJobTracker, null);
+    }
+
+    /**
+     * Creates a watermark API that returns a watermark that is already ready instead of creating it again when the same video is watermarked with the same settings. See {@link WatermarkCache}
+     * @param safeStreamHttpClient {@link SafeStreamHttpClient}
+     * @param watermarkJobTracker {@link WatermarkJobTracker}
+     * @param watermarkCache An optional {@link WatermarkCache}
+     */
+    public WatermarkAPI(SafeStreamHttpClient safeStreamHttpClient, WatermarkJobTracker watermarkJobTracker, WatermarkCache watermarkCache) {
+        this.safeStreamHttpClient = safeStreamHttpClient;
+        this.safeStreamAsyncClient = new SafeStreamAsyncClient(safeStreamHttpClient);
+        this.watermarkJobTracker = watermarkJobTracker;
+        this.watermarkCache = watermarkCache;
+    }
+
+    /**
+     * A watermark API that sends its watermark and status requests with a priority, for example INTERACTIVE for a watermark a viewer is waiting for. When more requests are waiting than may be in flight, higher priority requests are sent first. See {@link RequestPriority}
+     * @param priority {@link RequestPriority}
+     * @return This API if it already has the priority, otherwise a new API sharing its client, job tracker and cache
+     */
+    public WatermarkAPI withPriority(RequestPriority priority) {
+        if(priority == this.priority) {
+            return this;
+        }
+        WatermarkAPI watermarkAPI = new WatermarkAPI(safeStreamHttpClient, watermarkJobTracker, watermarkCache);
+        watermarkAPI.safeStreamAsyncClient = safeStreamAsyncClient.withPriority(priority);
+        watermarkAPI.priority = priority;
+        return watermarkAPI;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
     }
 
     /**
@@ -166,45 +246,331 @@ public class WatermarkAPI {
     /**
      * Creates a watermarked version of an existing video from an encoding configuration. Using the encoding configuration allows for changes to saturation and resolution as well as adding watermarks to a video.
      *
-     * This function allows you to specify the timeout for watermarking completion. Specifying -1 will result in no wait.
+     * This function allows you to specify the timeout for watermarking completion. Specifying -1 will result in no wait. While waiting, the watermark status is polled by the {@link WatermarkJobTracker} and the calling thread is parked until the watermark is ready.
+     *
+     * When a {@link WatermarkCache} is configured and the same watermark is already ready, it is returned without a request. Identical requests made at the same time share one request and one wait, and every caller receives the same result or exception.
      *
      * @param encodingConfiguration {@link EncodingConfiguration}
      * @return A watermark result {@link WatermarkResult}
      * @throws WatermarkAPIException
      */
-    public WatermarkResult create(String key, EncodingConfiguration encodingConfiguration, long timeout) throws WatermarkAPIException {
-        try {
-            // Make request to SafeStream REST API
-            Map<String, Object> payload = new HashMap<String, Object>();
-            payload.put("key", key);
-            payload.put("settings", encodingConfiguration);
-            WatermarkResult watermarkResult = safeStreamHttpClient.post(apiResourcePath, payload).getEntity(WatermarkResult.class);
-
-            // TODO: Handle this on a separate thread so that it's not blocking
-            if(timeout > -1 && !"READY".equals(watermarkResult.getStatus())) {
-                long startTime = System.currentTimeMillis();
-                boolean ready = false;
-                while(!ready && (System.currentTimeMillis() - startTime) < timeout) {
-                    WatermarkResult test = safeStreamHttpClient.getEndpoint(watermarkResult.getHref()).getEntity(WatermarkResult.class);
-                    if("READY".equals(test.getStatus())) {
-                        return test;
-                    }
+    public WatermarkResult create(final String key, final EncodingConfiguration encodingConfiguration, long timeout) throws WatermarkAPIException {
+        final WatermarkCacheKey cacheKey = WatermarkCacheKey.of(key, encodingConfiguration);
+        WatermarkResult cached = getCached(cacheKey);
+        if(cached != null) {
+            return cached;
+        }
 
+        final long wait = Math.max(timeout, -1);
+        long deadline = System.currentTimeMillis() + wait;
+        BlockingCallback<WatermarkResult> waiter = new BlockingCallback<WatermarkResult>();
+        // A job resumed from the journal after a restart is waited for rather than submitted again
+        Future<WatermarkResult> future = wait > -1 ? watermarkJobTracker.joinResumed(cacheKey.getHash(), new CachingCallback(cacheKey, waiter)) : null;
+        if(future == null) {
+            future = watermarkJobTracker.getRequestsInFlight().execute(requestKey(cacheKey, wait), waiter, new SingleFlight.Call<WatermarkResult>() {
+                @Override
+                public Future<?> start(FutureCallback<WatermarkResult> flight) {
+                    long startTime = System.currentTimeMillis();
+                    WatermarkResult watermarkResult;
                     try {
-                        Thread.sleep(1500);
-                    } catch(InterruptedException e) {
-                        throw new WatermarkAPIException("Thread interrupted while waiting for watermarking", e);
+                        // Make request to SafeStream REST API
+                        watermarkResult = safeStreamHttpClient.post(apiResourcePath, createPayload(key, encodingConfiguration), WatermarkResult.class, priority).getEntity(WatermarkResult.class);
+                    } catch (SafeStreamHttpClientException e) {
+                        flight.failed(new WatermarkAPIException(e));
+                        return null;
                     }
+
+                    BasicFuture<WatermarkResult> ready = new BasicFuture<WatermarkResult>(new CachingCallback(cacheKey, flight));
+                    if(wait == -1) {
+                        ready.completed(watermarkResult);
+                    } else {
+                        watermarkJobTracker.startTracking(watermarkResult, JobShape.of(encodingConfiguration), startTime, startTime + wait, ready, null, cacheKey, priority);
+                    }
+                    return ready;
                 }
+            });
+        }
 
-                throw new WatermarkAPIException("Timeout reached waiting for video to be watermarked");
+        try {
+            // The job tracker fails the job by its deadline, but a job can also be lost, for example when the client is closed, so the wait is never longer than the timeout
+            return wait == -1 ? waiter.get(future) : waiter.get(future, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new WatermarkAPIException("Timeout reached waiting for video to be watermarked");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new WatermarkAPIException("Thread interrupted while waiting for watermarking", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof WatermarkAPIException ? (WatermarkAPIException) e.getCause() : new WatermarkAPIException(e.getCause());
+        }
+    }
+
+    /**
+     * Submits a watermark request without blocking.
+     *
+     * The returned future completes as soon as SafeStream accepts the request, before watermarking has finished, in the same way as {@link #createAsync(String, EncodingConfiguration)}.
+     *
+     * @param encodingConfiguration {@link EncodingConfiguration}
+     * @return A future watermark result {@link WatermarkResult}. The future fails with a {@link WatermarkAPIException}
+     */
+    public Future<WatermarkResult> submit(String key, EncodingConfiguration encodingConfiguration) {
+        return submit(key, encodingConfiguration, -1, null);
+    }
+
+    /**
+     * Submits a watermark request without blocking and waits, also without blocking, for watermarking to complete.
+     *
+     * The status of the watermark is polled by the {@link WatermarkJobTracker}, so no thread is held while waiting. Specifying a timeout of -1 completes the future as soon as SafeStream accepts the request. When a {@link WatermarkCache} is configured and the same watermark is already ready, the future is completed with it straight away. Identical requests made at the same time with the same timeout share one request and one wait, and cancelling the returned future only stops the shared wait once every caller has cancelled.
+     *
+     * @param encodingConfiguration {@link EncodingConfiguration}
+     * @param timeout Time in millis to wait for watermarking to complete
+     * @param callback An optional callback notified on an I/O thread when the watermark completes. It must not block.
+     * @return A future watermark result {@link WatermarkResult}. The future fails with a {@link WatermarkAPIException}
+     */
+    public Future<WatermarkResult> submit(final String key, final EncodingConfiguration encodingConfiguration, long timeout, FutureCallback<WatermarkResult> callback) {
+        final WatermarkCacheKey cacheKey = WatermarkCacheKey.of(key, encodingConfiguration);
+        WatermarkResult cached = getCached(cacheKey);
+        if(cached != null) {
+            BasicFuture<WatermarkResult> future = new BasicFuture<WatermarkResult>(callback);
+            future.completed(cached);
+            return future;
+        }
 
-            } else {
-                return watermarkResult;
+        final long wait = Math.max(timeout, -1);
+        if(wait > -1) {
+            // A job resumed from the journal after a restart is waited for rather than submitted again
+            Future<WatermarkResult> resumed = watermarkJobTracker.joinResumed(cacheKey.getHash(), new CachingCallback(cacheKey, callback));
+            if(resumed != null) {
+                return resumed;
             }
-        } catch (SafeStreamHttpClientException e) {
-            throw new WatermarkAPIException(e);
         }
+        return watermarkJobTracker.getRequestsInFlight().execute(requestKey(cacheKey, wait), callback, new SingleFlight.Call<WatermarkResult>() {
+            @Override
+            public Future<?> start(FutureCallback<WatermarkResult> flight) {
+                final BasicFuture<WatermarkResult> future = new BasicFuture<WatermarkResult>(new CachingCallback(cacheKey, flight));
+                final long startTime = System.currentTimeMillis();
+
+                safeStreamAsyncClient.post(apiResourcePath, createPayload(key, encodingConfiguration), WatermarkResult.class, new WatermarkCallback(future) {
+                    @Override
+                    protected void onResult(WatermarkResult watermarkResult) {
+                        if(wait > -1) {
+                            watermarkJobTracker.startTracking(watermarkResult, JobShape.of(encodingConfiguration), startTime, startTime + wait, future, null, cacheKey, priority);
+                        } else {
+                            future.completed(watermarkResult);
+                        }
+                    }
+                });
+                return future;
+            }
+        });
+    }
+
+    /**
+     * Creates many watermarked versions of one video, for example one per recipient of a screener.
+     *
+     * This function does not block. Watermarks are submitted a few at a time and waited for until ready using the defaults of {@link WatermarkBatchConfiguration}, and the outcome of each is returned by iterating the batch as soon as it is known. A watermark that fails does not stop the rest of the batch.
+     *
+     * @param key The key of the video to watermark
+     * @param encodingConfigurations One {@link EncodingConfiguration} per watermarked version
+     * @return {@link WatermarkBatch}
+     */
+    public WatermarkBatch createAll(String key, Collection<EncodingConfiguration> encodingConfigurations) {
+        return createAll(key, encodingConfigurations, new WatermarkBatchConfiguration(), null);
+    }
+
+    /**
+     * Creates many watermarked versions of one video.
+     *
+     * This function does not block. When a callback is given, the outcome of each watermark is reported to it, otherwise by iterating the returned batch.
+     *
+     * @param key The key of the video to watermark
+     * @param encodingConfigurations One {@link EncodingConfiguration} per watermarked version
+     * @param batchConfiguration {@link WatermarkBatchConfiguration}
+     * @param callback An optional {@link WatermarkBatchCallback}. It is called on I/O threads and must not block.
+     * @return {@link WatermarkBatch}
+     */
+    public WatermarkBatch createAll(final String key, final Collection<EncodingConfiguration> encodingConfigurations, WatermarkBatchConfiguration batchConfiguration, WatermarkBatchCallback callback) {
+        final Iterator<EncodingConfiguration> iterator = encodingConfigurations.iterator();
+        return createAll(new Iterator<WatermarkRequest>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public WatermarkRequest next() {
+                return new WatermarkRequest(key, iterator.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, batchConfiguration, callback);
     }
 
+    /**
+     * Creates watermarked versions of any number of videos.
+     *
+     * This function does not block. Watermarks are submitted a few at a time and waited for until ready using the defaults of {@link WatermarkBatchConfiguration}, and the outcome of each is returned by iterating the batch as soon as it is known.
+     *
+     * @param requests The video and {@link EncodingConfiguration} of each watermark
+     * @return {@link WatermarkBatch}
+     */
+    public WatermarkBatch createAll(Collection<WatermarkRequest> requests) {
+        return createAll(requests, new WatermarkBatchConfiguration(), null);
+    }
+
+    /**
+     * Creates watermarked versions of any number of videos.
+     *
+     * This function does not block. When a callback is given, the outcome of each watermark is reported to it, otherwise by iterating the returned batch.
+     *
+     * @param requests The video and {@link EncodingConfiguration} of each watermark
+     * @param batchConfiguration {@link WatermarkBatchConfiguration}
+     * @param callback An optional {@link WatermarkBatchCallback}. It is called on I/O threads and must not block.
+     * @return {@link WatermarkBatch}
+     */
+    public WatermarkBatch createAll(Collection<WatermarkRequest> requests, WatermarkBatchConfiguration batchConfiguration, WatermarkBatchCallback callback) {
+        return createAll(requests.iterator(), batchConfiguration, callback);
+    }
+
+    private WatermarkBatch createAll(Iterator<WatermarkRequest> requests, WatermarkBatchConfiguration batchConfiguration, WatermarkBatchCallback callback) {
+        WatermarkBatch batch = new WatermarkBatch(this, safeStreamAsyncClient.getBlockingExecutor(), requests, batchConfiguration, callback);
+        batch.start();
+        return batch;
+    }
+
+    /**
+     * The job tracker that polls watermarks this API is waiting for
+     * @return {@link WatermarkJobTracker}
+     */
+    public WatermarkJobTracker getJobTracker() {
+        return watermarkJobTracker;
+    }
+
+    /**
+     * The cache watermarks are looked up in
+     * @return {@link WatermarkCache} or null if watermarks are not cached
+     */
+    public WatermarkCache getCache() {
+        return watermarkCache;
+    }
+
+    private WatermarkResult getCached(WatermarkCacheKey cacheKey) {
+        return watermarkCache != null ? watermarkCache.get(cacheKey) : null;
+    }
+
+    /**
+     * Identifies identical watermark requests. Requests that wait for different times are not identical since each caller must be able to time out on its own.
+     */
+    private static String requestKey(WatermarkCacheKey cacheKey, long timeout) {
+        return timeout + " " + cacheKey.getHash();
+    }
+
+    /**
+     * Wraps a callback so that the watermark it is completed with is cached first, for waits started outside this class such as a batch's
+     * @param cacheKey The key the watermark is cached under
+     * @param callback An optional callback to notify once the watermark is cached
+     * @return A callback that caches ready watermarks
+     */
+    FutureCallback<WatermarkResult> cachingCallback(WatermarkCacheKey cacheKey, FutureCallback<WatermarkResult> callback) {
+        return new CachingCallback(cacheKey, callback);
+    }
+
+    /**
+     * Caches a watermark once it is ready. Pending watermarks are not cached since they may still fail.
+     */
+    private void cache(WatermarkCacheKey cacheKey, WatermarkResult watermarkResult) {
+        if(watermarkCache != null && watermarkResult != null && "READY".equals(watermarkResult.getStatus())) {
+            watermarkCache.put(cacheKey, watermarkResult);
+        }
+    }
+
+    private Map<String, Object> createPayload(String key, EncodingConfiguration encodingConfiguration) {
+        Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put("key", key);
+        payload.put("settings", encodingConfiguration);
+
+        // Ask SafeStream to call back when the watermark is ready
+        WatermarkWebhookReceiver webhookReceiver = watermarkJobTracker.getWebhookReceiver();
+        if(webhookReceiver != null && webhookReceiver.getConfiguration().getCallbackUrl() != null) {
+            payload.put("callbackUrl", webhookReceiver.getConfiguration().getCallbackUrl());
+        }
+        return payload;
+    }
+
+    /**
+     * Caches a submitted watermark when it completes, before the caller's callback is notified
+     */
+    private class CachingCallback implements FutureCallback<WatermarkResult> {
+
+        private final WatermarkCacheKey cacheKey;
+
+        private final FutureCallback<WatermarkResult> callback;
+
+        CachingCallback(WatermarkCacheKey cacheKey, FutureCallback<WatermarkResult> callback) {
+            this.cacheKey = cacheKey;
+            this.callback = callback;
+        }
+
+        @Override
+        public void completed(WatermarkResult watermarkResult) {
+            cache(cacheKey, watermarkResult);
+            if(callback != null) {
+                callback.completed(watermarkResult);
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            if(callback != null) {
+                callback.failed(ex);
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            if(callback != null) {
+                callback.cancelled();
+            }
+        }
+    }
+
+    /**
+     * Decodes watermark results and reports HTTP failures as WatermarkAPIExceptions, the same as the blocking calls
+     */
+    private abstract static class WatermarkCallback implements FutureCallback<SafeStreamHttpResponse> {
+
+        private final BasicFuture<WatermarkResult> future;
+
+        WatermarkCallback(BasicFuture<WatermarkResult> future) {
+            this.future = future;
+        }
+
+        protected abstract void onResult(WatermarkResult watermarkResult);
+
+        @Override
+        public void completed(SafeStreamHttpResponse response) {
+            WatermarkResult watermarkResult;
+            try {
+                watermarkResult = response.getEntity(WatermarkResult.class);
+            } catch (RuntimeException e) {
+                future.failed(new WatermarkAPIException(e));
+                return;
+            }
+            onResult(watermarkResult);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            future.failed(new WatermarkAPIException(ex));
+        }
+
+        @Override
+        public void cancelled() {
+            future.cancel();
+        }
+    }
 }
@@ -0,0 +1,542 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.safestream.sdk.api.polling.JobShape;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCacheKey;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many watermarks being submitted and waited for together. Created by {@link WatermarkAPI#createAll(java.util.Collection, WatermarkBatchConfiguration, WatermarkBatchCallback)}
+ *
+ * Watermarks are submitted a few at a time, and each one is handed to the {@link WatermarkJobTracker} as soon as SafeStream accepts it, so later watermarks are submitted while earlier ones are still being encoded. The outcome of every watermark is reported as soon as it is known, either to a {@link WatermarkBatchCallback} or by iterating the batch. A watermark that fails is reported as a failed {@link WatermarkBatchItem} and the rest of the batch carries on.
+ *
+ * No more than {@link WatermarkBatchConfiguration#getMaxInFlight()} watermarks are submitted and not yet reported at once. When the batch is iterated, watermarks waiting to be read count towards that limit, so a slow reader slows submission down rather than results building up in memory. A callback can be given the same protection by turning on {@link WatermarkBatchConfiguration#withBackpressure(boolean)} and asking for items with {@link #request(long)}.
+ *
+ * <code>
+ *
+ *     WatermarkBatch batch = safestream.watermark().createAll("MY VIDEO KEY", encodingConfigurations);
+ *     for(WatermarkBatchItem item : batch) {
+ *         if(item.isSuccessful()) {
+ *             send(item.getResult());
+ *         }
+ *     }
+ *
+ * </code>
+ */
+public class WatermarkBatch implements Iterable<WatermarkBatchItem> {
+
+    /**
+     * Marks the end of the results of an iterated batch
+     */
+    private static final WatermarkBatchItem END = new WatermarkBatchItem(-1, null, null, null);
+
+    private final WatermarkAPI watermarkAPI;
+
+    /**
+     * Runs the pump. Reading the caller's requests may block, so the pump never runs on the shared scheduler or an I/O thread.
+     */
+    private final Executor executor;
+
+    private final WatermarkBatchConfiguration configuration;
+
+    private final WatermarkBatchCallback callback;
+
+    /**
+     * Requests not submitted yet. Guarded by this.
+     */
+    private final Iterator<WatermarkRequest> requests;
+
+    /**
+     * Items waiting to be read when the batch is iterated, or to be handed to the callback
+     */
+    private final BlockingQueue<WatermarkBatchItem> results = new LinkedBlockingQueue<WatermarkBatchItem>();
+
+    /**
+     * The submission or wait for ready of each watermark not yet reported, by index, so that they can be cancelled
+     */
+    private final ConcurrentMap<Integer, Future<WatermarkResult>> pending = new ConcurrentHashMap<Integer, Future<WatermarkResult>>();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final Runnable pump = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    private int nextIndex;
+
+    private int submitting;
+
+    private int inFlight;
+
+    private int succeeded;
+
+    private int failed;
+
+    private boolean cancelled;
+
+    private boolean finished;
+
+    private boolean iterated;
+
+    /**
+     * Items the callback has asked for and not yet been handed. Unlimited unless the batch has backpressure.
+     */
+    private long demand;
+
+    /**
+     * Set while a thread is handing items to the callback
+     */
+    private boolean draining;
+
+    WatermarkBatch(WatermarkAPI watermarkAPI, Executor executor, Iterator<WatermarkRequest> requests,
+                   WatermarkBatchConfiguration configuration, WatermarkBatchCallback callback) {
+        this.watermarkAPI = watermarkAPI.withPriority(configuration.getPriority());
+        this.executor = executor;
+        this.requests = requests;
+        this.configuration = configuration;
+        this.callback = callback;
+        this.demand = callback != null && configuration.isBackpressure() ? 0 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts submitting. Submission runs on the blocking executor so the caller is not held up by it.
+     */
+    void start() {
+        schedulePump();
+    }
+
+    /**
+     * Returns the outcome of each watermark as it completes, blocking until the next one is known. A batch created with a callback cannot be iterated, and a batch can only be iterated once.
+     *
+     * If the iterating thread is interrupted the batch is cancelled and an IllegalStateException is thrown.
+     *
+     * @return An iterator of {@link WatermarkBatchItem}
+     */
+    @Override
+    public synchronized Iterator<WatermarkBatchItem> iterator() {
+        if(callback != null) {
+            throw new IllegalStateException("The results of this batch are reported to its callback");
+        }
+        if(iterated) {
+            throw new IllegalStateException("A batch can only be iterated once");
+        }
+        iterated = true;
+
+        return new Iterator<WatermarkBatchItem>() {
+
+            private WatermarkBatchItem next;
+
+            private boolean end;
+
+            @Override
+            public boolean hasNext() {
+                if(next != null) {
+                    return true;
+                }
+                if(end) {
+                    return false;
+                }
+
+                WatermarkBatchItem item;
+                try {
+                    item = results.take();
+                } catch (InterruptedException e) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Thread interrupted while waiting for watermarks", e);
+                }
+
+                if(item == END) {
+                    end = true;
+                    return false;
+                }
+
+                // The outcome now belongs to the reader so it no longer counts towards the in flight limit
+                if(item.isFinal()) {
+                    release();
+                }
+                next = item;
+                return true;
+            }
+
+            @Override
+            public WatermarkBatchItem next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                WatermarkBatchItem item = next;
+                next = null;
+                return item;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Asks for more items to be handed to the callback of a batch with backpressure. Watermarks are only submitted while fewer are in flight than have been asked for, so asking for items slowly also slows down submission and polling.
+     *
+     * Items may be handed to the callback on the calling thread before this returns. Calling this from the callback is allowed and does not recurse.
+     *
+     * @param n The number of further items wanted, which must be positive
+     */
+    public void request(long n) {
+        if(n <= 0) {
+            throw new IllegalArgumentException("The number of items requested must be positive");
+        }
+        synchronized (this) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+        drain();
+        schedulePump();
+    }
+
+    /**
+     * Waits until every watermark has been reported. When the batch is iterated, it only finishes once every result has been read.
+     * @throws InterruptedException
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Waits until every watermark has been reported or the timeout passes
+     * @return true if the batch finished
+     * @throws InterruptedException
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * Stops submitting watermarks and stops waiting for those already submitted. Watermarks already submitted are reported as failed, except in a batch with backpressure where items not yet handed to the callback are dropped. Watermarks SafeStream has accepted are still created.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+        }
+        for(Future<WatermarkResult> future : pending.values()) {
+            future.cancel(true);
+        }
+        drain();
+        schedulePump();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true once every watermark has been reported
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * @return The number of watermarks submitted so far
+     */
+    public synchronized int getSubmitted() {
+        return nextIndex;
+    }
+
+    /**
+     * @return The number of watermarks reported as successful so far
+     */
+    public synchronized int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return The number of watermarks reported as failed so far
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Submits requests while there is room, and finishes the batch once every request has been reported
+     */
+    private void pump() {
+        List<WatermarkRequest> toSubmit = new ArrayList<WatermarkRequest>();
+        int firstIndex;
+        boolean finish = false;
+        synchronized (this) {
+            firstIndex = nextIndex;
+            while(!cancelled && submitting < configuration.getMaxConcurrentSubmissions() && inFlight < configuration.getMaxInFlight() && inFlight < demand && requests.hasNext()) {
+                toSubmit.add(requests.next());
+                nextIndex++;
+                submitting++;
+                inFlight++;
+            }
+            if(!finished && inFlight == 0 && (cancelled || !requests.hasNext())) {
+                finished = true;
+                finish = true;
+            }
+        }
+
+        // Requests are sent outside the lock so that results reported while sending are not held up
+        for(int i = 0; i < toSubmit.size(); i++) {
+            submit(firstIndex + i, toSubmit.get(i));
+        }
+
+        if(finish) {
+            finish();
+        }
+    }
+
+    private void submit(final int index, final WatermarkRequest request) {
+        final WatermarkCacheKey cacheKey = WatermarkCacheKey.of(request.getKey(), request.getEncodingConfiguration());
+        if(configuration.getTimeout() > -1) {
+            // A job resumed from the journal after a restart is waited for rather than submitted again
+            Future<WatermarkResult> resumed = watermarkAPI.getJobTracker().joinResumed(cacheKey.getHash(), readyCallback(index, request, cacheKey));
+            if(resumed != null) {
+                pending.put(index, resumed);
+                afterPending(index, resumed);
+                submitted();
+                return;
+            }
+        }
+
+        final long startTime = System.currentTimeMillis();
+        Future<WatermarkResult> accepted = watermarkAPI.submit(request.getKey(), request.getEncodingConfiguration(), -1, new FutureCallback<WatermarkResult>() {
+            @Override
+            public void completed(WatermarkResult watermarkResult) {
+                submitted();
+                if(configuration.getTimeout() > -1) {
+                    if(configuration.isStatusUpdates() && !"READY".equals(watermarkResult.getStatus())) {
+                        update(index, request, watermarkResult);
+                    }
+                    waitForReady(index, request, cacheKey, watermarkResult, startTime);
+                } else {
+                    report(index, request, watermarkResult, null);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                submitted();
+                report(index, request, null, ex instanceof WatermarkAPIException ? (WatermarkAPIException) ex : new WatermarkAPIException(ex));
+            }
+
+            @Override
+            public void cancelled() {
+                submitted();
+                report(index, request, null, new WatermarkAPIException("Watermark batch was cancelled"));
+            }
+        });
+        // Unless it has already been accepted and replaced by the wait for ready
+        if(pending.putIfAbsent(index, accepted) == null) {
+            afterPending(index, accepted);
+        }
+    }
+
+    private void waitForReady(final int index, final WatermarkRequest request, WatermarkCacheKey cacheKey, WatermarkResult watermarkResult, long startTime) {
+        BasicFuture<WatermarkResult> ready = new BasicFuture<WatermarkResult>(readyCallback(index, request, cacheKey));
+        pending.put(index, ready);
+        afterPending(index, ready);
+        WatermarkJobTracker.StatusListener statusListener = null;
+        if(configuration.isStatusUpdates()) {
+            statusListener = new WatermarkJobTracker.StatusListener() {
+                @Override
+                public void statusChanged(WatermarkResult result) {
+                    update(index, request, result);
+                }
+            };
+        }
+        watermarkAPI.getJobTracker().startTracking(watermarkResult, JobShape.of(request.getEncodingConfiguration()), startTime, startTime + configuration.getTimeout(), ready, statusListener,
+                cacheKey, configuration.getPriority());
+    }
+
+    /**
+     * Caches a watermark once it is ready, the same as a single request does, then reports it
+     */
+    private FutureCallback<WatermarkResult> readyCallback(final int index, final WatermarkRequest request, WatermarkCacheKey cacheKey) {
+        return watermarkAPI.cachingCallback(cacheKey, new FutureCallback<WatermarkResult>() {
+            @Override
+            public void completed(WatermarkResult result) {
+                report(index, request, result, null);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                report(index, request, null, ex instanceof WatermarkAPIException ? (WatermarkAPIException) ex : new WatermarkAPIException(ex));
+            }
+
+            @Override
+            public void cancelled() {
+                report(index, request, null, new WatermarkAPIException("Watermark batch was cancelled"));
+            }
+        });
+    }
+
+    /**
+     * Drops a future that completed before it was remembered, and cancels one remembered after the batch was cancelled
+     */
+    private void afterPending(int index, Future<WatermarkResult> future) {
+        if(future.isDone()) {
+            pending.remove(index, future);
+        } else if(isCancelled()) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * A submission has been accepted or has failed, so another may be sent
+     */
+    private void submitted() {
+        synchronized (this) {
+            submitting--;
+        }
+        schedulePump();
+    }
+
+    private void report(int index, WatermarkRequest request, WatermarkResult watermarkResult, WatermarkAPIException e) {
+        pending.remove(index);
+        WatermarkBatchItem item = new WatermarkBatchItem(index, request, watermarkResult, e);
+        synchronized (this) {
+            if(item.isSuccessful()) {
+                succeeded++;
+            } else {
+                failed++;
+            }
+        }
+
+        results.add(item);
+        drain();
+    }
+
+    /**
+     * Reports a watermark still being created. Updates do not count towards the in flight limit, but each job only has a few statuses so they cannot build up.
+     */
+    private void update(int index, WatermarkRequest request, WatermarkResult watermarkResult) {
+        results.add(new WatermarkBatchItem(index, request, watermarkResult, null, false));
+        drain();
+    }
+
+    /**
+     * Hands waiting items to the callback while it has asked for them. Only one thread does this at a time, so the callback sees the items of each watermark in order and is never called concurrently.
+     */
+    private void drain() {
+        if(callback == null) {
+            return;
+        }
+        synchronized (this) {
+            if(draining) {
+                return;
+            }
+            draining = true;
+        }
+
+        while(true) {
+            WatermarkBatchItem item;
+            boolean drop;
+            synchronized (this) {
+                drop = cancelled && configuration.isBackpressure();
+                item = results.peek();
+                if(item == null || (demand == 0 && !drop)) {
+                    draining = false;
+                    return;
+                }
+                results.poll();
+                if(!drop && demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+
+            try {
+                if(!drop) {
+                    callback.completed(item);
+                }
+            } catch (RuntimeException e) {
+                // A failing callback must not stop the rest of the batch being reported
+            } finally {
+                if(item.isFinal()) {
+                    release();
+                }
+            }
+        }
+    }
+
+    /**
+     * A watermark has been handed to the callback or the reader, so another may be submitted
+     */
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        schedulePump();
+    }
+
+    /**
+     * Notifies the reader or callback that the batch has finished, and then wakes threads waiting for it
+     */
+    private void finish() {
+        try {
+            if(callback == null) {
+                results.add(END);
+            } else {
+                callback.finished(this);
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void schedulePump() {
+        try {
+            executor.execute(pump);
+        } catch (RejectedExecutionException e) {
+            // The client has been closed. Stop submitting and finish once the watermarks already submitted have been reported.
+            synchronized (this) {
+                cancelled = true;
+            }
+            pump();
+        }
+    }
+}
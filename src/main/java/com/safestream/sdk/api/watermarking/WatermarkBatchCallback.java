@@ -0,0 +1,46 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+/**
+ * Receives the outcome of each watermark in a {@link WatermarkBatch} as it completes.
+ *
+ * Methods are called on I/O, scheduler and background threads and must not block. Watermarks complete independently and {@link #completed(WatermarkBatchItem)} may be called from different threads, but never from more than one at once.
+ */
+public interface WatermarkBatchCallback {
+
+    /**
+     * Called once for every watermark in the batch, whether it succeeded or failed, and for each status update if the batch reports them
+     * @param item {@link WatermarkBatchItem}
+     */
+    void completed(WatermarkBatchItem item);
+
+    /**
+     * Called once after every watermark in the batch has been reported, or after a cancelled batch has reported its submitted watermarks
+     * @param batch {@link WatermarkBatch}
+     */
+    void finished(WatermarkBatch batch);
+}
@@ -0,0 +1,140 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.safestream.sdk.http.RequestPriority;
+
+/**
+ * Settings for submitting many watermarks at once. See {@link WatermarkAPI#createAll(java.util.Collection, WatermarkBatchConfiguration, WatermarkBatchCallback)}
+ */
+public class WatermarkBatchConfiguration {
+
+    /**
+     * Default number of watermark requests sent to SafeStream at once
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_SUBMISSIONS = 8;
+
+    /**
+     * Default number of watermarks that have been submitted but not yet reported
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private int maxConcurrentSubmissions = DEFAULT_MAX_CONCURRENT_SUBMISSIONS;
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private long timeout = 90000;
+
+    private boolean statusUpdates;
+
+    private boolean backpressure;
+
+    private RequestPriority priority = RequestPriority.BULK;
+
+    /**
+     * Fluent setter for maxConcurrentSubmissions. The most watermark requests waiting for SafeStream to accept them at once.
+     * @param maxConcurrentSubmissions
+     * @return this
+     */
+    public WatermarkBatchConfiguration withMaxConcurrentSubmissions(int maxConcurrentSubmissions) {
+        this.maxConcurrentSubmissions = maxConcurrentSubmissions;
+        return this;
+    }
+
+    /**
+     * Fluent setter for maxInFlight. The most watermarks that have been submitted but not yet reported, including those waiting to be ready and, when the batch is iterated, those waiting to be read. Submission pauses at this limit, which bounds the memory a batch uses however many watermarks it has.
+     * @param maxInFlight
+     * @return this
+     */
+    public WatermarkBatchConfiguration withMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Fluent setter for timeout. Time in millis to wait for each watermark to be ready, measured from when it is submitted. Specifying -1 reports each watermark as soon as SafeStream accepts it.
+     * @param timeout
+     * @return this
+     */
+    public WatermarkBatchConfiguration withTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Fluent setter for statusUpdates. Reports each status a watermark is seen in while it is being created, such as <code>PENDING</code> and <code>WATERMARKING</code>, as well as its outcome. See {@link WatermarkBatchItem#isFinal()}
+     * @param statusUpdates
+     * @return this
+     */
+    public WatermarkBatchConfiguration withStatusUpdates(boolean statusUpdates) {
+        this.statusUpdates = statusUpdates;
+        return this;
+    }
+
+    /**
+     * Fluent setter for backpressure. Only applies to a batch created with a callback. The callback is then handed no more items than have been requested with {@link WatermarkBatch#request(long)}, and no more watermarks are submitted than have been requested, so a slow callback slows down submission and polling rather than items building up in memory.
+     * @param backpressure
+     * @return this
+     */
+    public WatermarkBatchConfiguration withBackpressure(boolean backpressure) {
+        this.backpressure = backpressure;
+        return this;
+    }
+
+    /**
+     * Fluent setter for priority. The priority the batch's watermark and status requests are sent with, BULK by default, so that a large batch does not hold up watermarks someone is waiting for. See {@link RequestPriority}
+     * @param priority
+     * @return this
+     */
+    public WatermarkBatchConfiguration withPriority(RequestPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public int getMaxConcurrentSubmissions() {
+        return maxConcurrentSubmissions;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public boolean isStatusUpdates() {
+        return statusUpdates;
+    }
+
+    public boolean isBackpressure() {
+        return backpressure;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+}
@@ -0,0 +1,100 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+/**
+ * The outcome of one watermark in a {@link WatermarkBatch}. Either a result or the exception the watermark failed with is set.
+ *
+ * When the batch reports status updates ({@link WatermarkBatchConfiguration#withStatusUpdates(boolean)}) an item may instead be an update on a watermark still being created, in which case {@link #isFinal()} is false and the result holds the status it was last seen in.
+ */
+public class WatermarkBatchItem {
+
+    private final int index;
+
+    private final WatermarkRequest request;
+
+    private final WatermarkResult result;
+
+    private final WatermarkAPIException exception;
+
+    private final boolean last;
+
+    WatermarkBatchItem(int index, WatermarkRequest request, WatermarkResult result, WatermarkAPIException exception) {
+        this(index, request, result, exception, true);
+    }
+
+    WatermarkBatchItem(int index, WatermarkRequest request, WatermarkResult result, WatermarkAPIException exception, boolean last) {
+        this.index = index;
+        this.request = request;
+        this.result = result;
+        this.exception = exception;
+        this.last = last;
+    }
+
+    /**
+     * The position of the request in the collection the batch was created from
+     * @return The zero based index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * The video and encoding configuration that was requested
+     * @return {@link WatermarkRequest}
+     */
+    public WatermarkRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return true if this is the outcome of the watermark, false if it is a status update and the watermark is still being created
+     */
+    public boolean isFinal() {
+        return last;
+    }
+
+    /**
+     * @return true if the watermark was created, and was ready if the batch waits for watermarks to be ready
+     */
+    public boolean isSuccessful() {
+        return exception == null;
+    }
+
+    /**
+     * @return The watermark result {@link WatermarkResult} or null if the watermark failed
+     */
+    public WatermarkResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return The reason the watermark failed or null if it succeeded
+     */
+    public WatermarkAPIException getException() {
+        return exception;
+    }
+}
@@ -24,9 +24,12 @@
 
 package com.safestream.sdk.api.watermarking;
 
+import com.google.gson.annotations.JsonAdapter;
+
 /**
  * Defines the settings for a given watermark. At minimum this configuration requires "content", a string that will be watermarked onto the video.
  */
+@JsonAdapter(WatermarkConfigurationTypeAdapter.Factory.class)
 public class WatermarkConfiguration {
 
     /**
@@ -243,4 +246,101 @@ public class WatermarkConfiguration {
         return this;
     }
 
+    public String getContent() {
+        return content;
+    }
+
+    public WatermarkType getType() {
+        return type;
+    }
+
+    public WatermarkHorizontalAlignment getHorizontalAlignment() {
+        return horizontalAlignment;
+    }
+
+    public WatermarkVerticalAlignment getVerticalAlignment() {
+        return verticalAlignment;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
+
+    public float getFontOpacity() {
+        return fontOpacity;
+    }
+
+    public String getFontColor() {
+        return fontColor;
+    }
+
+    public float getShadowOpacity() {
+        return shadowOpacity;
+    }
+
+    public String getShadowColor() {
+        return shadowColor;
+    }
+
+    public float getShadowOffsetX() {
+        return shadowOffsetX;
+    }
+
+    public float getShadowOffsetY() {
+        return shadowOffsetY;
+    }
+
+    /**
+     * Two watermark configurations are equal when every setting is equal, so the same watermark requested twice can be recognised. Configurations are mutable and must not be changed while they are used as a key.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof WatermarkConfiguration)) {
+            return false;
+        }
+
+        WatermarkConfiguration other = (WatermarkConfiguration) o;
+        return Float.compare(x, other.x) == 0
+                && Float.compare(y, other.y) == 0
+                && Float.compare(fontSize, other.fontSize) == 0
+                && Float.compare(fontOpacity, other.fontOpacity) == 0
+                && Float.compare(shadowOpacity, other.shadowOpacity) == 0
+                && Float.compare(shadowOffsetX, other.shadowOffsetX) == 0
+                && Float.compare(shadowOffsetY, other.shadowOffsetY) == 0
+                && type == other.type
+                && horizontalAlignment == other.horizontalAlignment
+                && verticalAlignment == other.verticalAlignment
+                && (content != null ? content.equals(other.content) : other.content == null)
+                && (fontColor != null ? fontColor.equals(other.fontColor) : other.fontColor == null)
+                && (shadowColor != null ? shadowColor.equals(other.shadowColor) : other.shadowColor == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = content != null ? content.hashCode() : 0;
+        result = 31 * result + (type != null ? type.hashCode() : 0);
+        result = 31 * result + (horizontalAlignment != null ? horizontalAlignment.hashCode() : 0);
+        result = 31 * result + (verticalAlignment != null ? verticalAlignment.hashCode() : 0);
+        result = 31 * result + Float.floatToIntBits(x);
+        result = 31 * result + Float.floatToIntBits(y);
+        result = 31 * result + Float.floatToIntBits(fontSize);
+        result = 31 * result + Float.floatToIntBits(fontOpacity);
+        result = 31 * result + (fontColor != null ? fontColor.hashCode() : 0);
+        result = 31 * result + Float.floatToIntBits(shadowOpacity);
+        result = 31 * result + (shadowColor != null ? shadowColor.hashCode() : 0);
+        result = 31 * result + Float.floatToIntBits(shadowOffsetX);
+        result = 31 * result + Float.floatToIntBits(shadowOffsetY);
+        return result;
+    }
 }
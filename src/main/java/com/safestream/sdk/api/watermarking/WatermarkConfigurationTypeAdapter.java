@@ -0,0 +1,121 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON adapter for {@link WatermarkConfiguration}
+ */
+final class WatermarkConfigurationTypeAdapter extends TypeAdapter<WatermarkConfiguration> {
+
+    @Override
+    public void write(JsonWriter out, WatermarkConfiguration watermark) throws IOException {
+        out.beginObject();
+        out.name("content").value(watermark.getContent());
+        out.name("type");
+        JsonStreams.writeEnum(out, watermark.getType());
+        out.name("horizontalAlignment");
+        JsonStreams.writeEnum(out, watermark.getHorizontalAlignment());
+        out.name("verticalAlignment");
+        JsonStreams.writeEnum(out, watermark.getVerticalAlignment());
+        // Floats are written through their boxed form so 0.3 is written as 0.3 and not as its double expansion
+        out.name("x").value(Float.valueOf(watermark.getX()));
+        out.name("y").value(Float.valueOf(watermark.getY()));
+        out.name("fontSize").value(Float.valueOf(watermark.getFontSize()));
+        out.name("fontOpacity").value(Float.valueOf(watermark.getFontOpacity()));
+        out.name("fontColor").value(watermark.getFontColor());
+        out.name("shadowOpacity").value(Float.valueOf(watermark.getShadowOpacity()));
+        out.name("shadowColor").value(watermark.getShadowColor());
+        out.name("shadowOffsetX").value(Float.valueOf(watermark.getShadowOffsetX()));
+        out.name("shadowOffsetY").value(Float.valueOf(watermark.getShadowOffsetY()));
+        out.endObject();
+    }
+
+    @Override
+    public WatermarkConfiguration read(JsonReader in) throws IOException {
+        WatermarkConfiguration watermark = new WatermarkConfiguration();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("content".equals(name)) {
+                watermark.withContent(JsonStreams.readString(in));
+            } else if("type".equals(name)) {
+                watermark.withType(JsonStreams.readEnum(in, WatermarkType.class));
+            } else if("horizontalAlignment".equals(name)) {
+                watermark.withHorizontalAlignment(JsonStreams.readEnum(in, WatermarkHorizontalAlignment.class));
+            } else if("verticalAlignment".equals(name)) {
+                watermark.withVerticalAlignment(JsonStreams.readEnum(in, WatermarkVerticalAlignment.class));
+            } else if("x".equals(name)) {
+                watermark.withX(readFloat(in, watermark.getX()));
+            } else if("y".equals(name)) {
+                watermark.withY(readFloat(in, watermark.getY()));
+            } else if("fontSize".equals(name)) {
+                watermark.withFontSize(readFloat(in, watermark.getFontSize()));
+            } else if("fontOpacity".equals(name)) {
+                watermark.withFontOpacity(readFloat(in, watermark.getFontOpacity()));
+            } else if("fontColor".equals(name)) {
+                watermark.withFontColor(JsonStreams.readString(in));
+            } else if("shadowOpacity".equals(name)) {
+                watermark.withShadowOpacity(readFloat(in, watermark.getShadowOpacity()));
+            } else if("shadowColor".equals(name)) {
+                watermark.withShadowColor(JsonStreams.readString(in));
+            } else if("shadowOffsetX".equals(name)) {
+                watermark.withShadowOffsetX(readFloat(in, watermark.getShadowOffsetX()));
+            } else if("shadowOffsetY".equals(name)) {
+                watermark.withShadowOffsetY(readFloat(in, watermark.getShadowOffsetY()));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return watermark;
+    }
+
+    /**
+     * The float properties are primitives, so a null keeps the default
+     */
+    private static Float readFloat(JsonReader in, float defaultValue) throws IOException {
+        Float value = JsonStreams.readFloat(in);
+        return value != null ? value : defaultValue;
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return WatermarkConfiguration.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new WatermarkConfigurationTypeAdapter() : null;
+        }
+    }
+}
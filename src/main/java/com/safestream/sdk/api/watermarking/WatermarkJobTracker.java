@@ -0,0 +1,698 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.safestream.sdk.api.polling.JobShape;
+import com.safestream.sdk.api.polling.PollMetrics;
+import com.safestream.sdk.api.polling.PollScheduler;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCacheKey;
+import com.safestream.sdk.api.watermarking.journal.WatermarkJournal;
+import com.safestream.sdk.api.watermarking.journal.WatermarkJournalEntry;
+import com.safestream.sdk.api.watermarking.webhook.WatermarkWebhookListener;
+import com.safestream.sdk.api.watermarking.webhook.WatermarkWebhookReceiver;
+import com.safestream.sdk.api.watermarking.webhook.WebhookConfiguration;
+import com.safestream.sdk.http.RequestPriority;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
+import com.safestream.sdk.http.SafeStreamHttpResponse;
+import com.safestream.sdk.http.SingleFlight;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waits for any number of watermark jobs to finish without holding a thread per job.
+ *
+ * Every tracked job is polled for its status on the shared scheduler of the {@link SafeStreamAsyncClient}. When a job is due to be polled it joins a queue, and at most a fixed number of status requests are in flight at once, so thousands of pending jobs neither add threads nor flood SafeStream with requests.
+ *
+ * When each job is polled is decided by a {@link PollScheduler} from how long jobs of the same shape took before, and a Retry-After sent with a status response is honored. Polls per job and detection lag are reported by {@link #getMetrics()}.
+ *
+ * With a {@link WatermarkWebhookReceiver}, see {@link #useWebhooks(WatermarkWebhookReceiver)}, jobs are completed by their callbacks and only polled if a callback has not arrived within {@link WebhookConfiguration#getFallbackMillis()}.
+ *
+ * With a {@link WatermarkJournal}, see {@link #useJournal(WatermarkJournal)}, jobs started by a {@link WatermarkAPI} are recorded as they are submitted and finished, and the jobs still pending when the process stopped are polled again when it starts.
+ *
+ * Closing the tracker, or the client it polls with, fails every job still pending.
+ *
+ * <code>
+ *
+ *     WatermarkResult pending = safestream.watermark().createAsync("MY VIDEO KEY", watermarkConfiguration);
+ *     Future&lt;WatermarkResult&gt; ready = jobTracker.track(pending, 90000, null);
+ *
+ * </code>
+ */
+public class WatermarkJobTracker implements Closeable {
+
+    /**
+     * Default maximum number of status requests in flight at once
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_POLLS = 32;
+
+    private final SafeStreamAsyncClient safeStreamAsyncClient;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final PollScheduler pollScheduler;
+
+    private final int maxConcurrentPolls;
+
+    /**
+     * Jobs that are due to be polled, waiting for a free slot, by priority
+     */
+    private final Queue<Job>[] dueJobs = newDueJobs();
+
+    private final AtomicInteger pollsInFlight = new AtomicInteger();
+
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+
+    /**
+     * Jobs being tracked that have not finished, so that they can be failed when the tracker is closed
+     */
+    private final Set<Job> jobs = Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+
+    private volatile boolean closed;
+
+    /**
+     * Watermark requests in flight, so that identical requests made at the same time share one request and one polling loop
+     */
+    private final SingleFlight<String, WatermarkResult> requestsInFlight = new SingleFlight<String, WatermarkResult>();
+
+    /**
+     * Jobs waiting for a callback, by href
+     */
+    private final ConcurrentHashMap<String, Job> jobsByHref = new ConcurrentHashMap<String, Job>();
+
+    private volatile WatermarkWebhookReceiver webhookReceiver;
+
+    /**
+     * Jobs resumed from a journal, by settings hash, so that requesting the same watermark again waits for the resumed job instead of submitting it again
+     */
+    private final SingleFlight<String, WatermarkResult> resumedJobs = new SingleFlight<String, WatermarkResult>();
+
+    private volatile Map<WatermarkJournalEntry, Future<WatermarkResult>> resumed = Collections.emptyMap();
+
+    private volatile WatermarkJournal journal;
+
+    private final WatermarkWebhookListener webhookListener = new WatermarkWebhookListener() {
+        @Override
+        public void onWatermark(WatermarkResult watermarkResult) {
+            onCallback(watermarkResult);
+        }
+    };
+
+    private final Runnable dispatcher = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    /**
+     * Closes the tracker when the client is closed. The client's scheduler throws away the polls still waiting on it, so the jobs they were for would otherwise never complete.
+     */
+    private final Runnable closer = new Runnable() {
+        @Override
+        public void run() {
+            close();
+        }
+    };
+
+    public WatermarkJobTracker(SafeStreamAsyncClient safeStreamAsyncClient) {
+        this(safeStreamAsyncClient, new PollScheduler(), DEFAULT_MAX_CONCURRENT_POLLS);
+    }
+
+    /**
+     * @param safeStreamAsyncClient The client status requests are made with
+     * @param pollIntervalMillis Time in millis between status requests for a job while there is no history of completion times
+     * @param maxConcurrentPolls The most status requests in flight at once across all jobs
+     */
+    public WatermarkJobTracker(SafeStreamAsyncClient safeStreamAsyncClient, long pollIntervalMillis, int maxConcurrentPolls) {
+        this(safeStreamAsyncClient, new PollScheduler(pollIntervalMillis, Math.max(pollIntervalMillis, PollScheduler.DEFAULT_MAX_INTERVAL_MILLIS)), maxConcurrentPolls);
+    }
+
+    /**
+     * @param safeStreamAsyncClient The client status requests are made with
+     * @param pollScheduler Decides when each job is polled
+     * @param maxConcurrentPolls The most status requests in flight at once across all jobs
+     */
+    public WatermarkJobTracker(SafeStreamAsyncClient safeStreamAsyncClient, PollScheduler pollScheduler, int maxConcurrentPolls) {
+        this.safeStreamAsyncClient = safeStreamAsyncClient;
+        this.scheduler = safeStreamAsyncClient.getScheduler();
+        this.pollScheduler = pollScheduler;
+        this.maxConcurrentPolls = maxConcurrentPolls;
+        safeStreamAsyncClient.addCloseListener(closer);
+    }
+
+    /**
+     * Tracks a watermark job until it is ready.
+     * @param watermarkResult The result returned when the watermark was created. Its href is polled for the job status.
+     * @param timeout Time in millis to wait for watermarking to complete
+     * @param callback An optional callback notified when the job completes. It may run on an I/O thread and must not block.
+     * @return A future watermark result {@link WatermarkResult}. The future fails with a {@link WatermarkAPIException}
+     */
+    public Future<WatermarkResult> track(WatermarkResult watermarkResult, long timeout, FutureCallback<WatermarkResult> callback) {
+        return track(watermarkResult, JobShape.UNKNOWN, timeout, callback);
+    }
+
+    /**
+     * Tracks a watermark job until it is ready. The shape of the job is used to predict when it will be ready, see {@link JobShape#of(com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration)}
+     * @param watermarkResult The result returned when the watermark was created. Its href is polled for the job status.
+     * @param shape The shape of the job
+     * @param timeout Time in millis to wait for watermarking to complete
+     * @param callback An optional callback notified when the job completes. It may run on an I/O thread and must not block.
+     * @return A future watermark result {@link WatermarkResult}. The future fails with a {@link WatermarkAPIException}
+     */
+    public Future<WatermarkResult> track(WatermarkResult watermarkResult, JobShape shape, long timeout, FutureCallback<WatermarkResult> callback) {
+        BasicFuture<WatermarkResult> future = new BasicFuture<WatermarkResult>(callback);
+        long now = System.currentTimeMillis();
+        startTracking(watermarkResult, shape, now, now + timeout, future);
+        return future;
+    }
+
+    /**
+     * @param startTime When the watermark was requested
+     * @param deadline When to give up waiting
+     */
+    void startTracking(WatermarkResult watermarkResult, JobShape shape, long startTime, long deadline, BasicFuture<WatermarkResult> future) {
+        startTracking(watermarkResult, shape, startTime, deadline, future, null, null, RequestPriority.NORMAL);
+    }
+
+    /**
+     * @param statusListener Notified each time a poll sees the job in a new status other than ready, or null
+     * @param cacheKey The video and settings the watermark was requested with, which are recorded in the journal, or null if the job is not journaled
+     * @param priority The priority the job's status requests are sent with. Due jobs of a higher priority are polled first.
+     */
+    void startTracking(WatermarkResult watermarkResult, JobShape shape, long startTime, long deadline, BasicFuture<WatermarkResult> future,
+                       StatusListener statusListener, WatermarkCacheKey cacheKey, RequestPriority priority) {
+        if("READY".equals(watermarkResult.getStatus())) {
+            future.completed(watermarkResult);
+            return;
+        }
+
+        pendingJobs.incrementAndGet();
+        Job job = new Job(watermarkResult.getHref(), shape, startTime, deadline, future, statusListener, priority);
+        job.lastStatus = watermarkResult.getStatus();
+        if(!addJob(job)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        job.lastPendingMillis = now - startTime;
+
+        WatermarkJournal journal = this.journal;
+        if(journal != null && cacheKey != null && job.href != null) {
+            try {
+                journal.submitted(new WatermarkJournalEntry(cacheKey.getKey(), cacheKey.getHash(), job.href, startTime, deadline, shape));
+                job.journaled = true;
+            } catch (IOException e) {
+                // The job is still tracked, it just cannot be resumed after a restart
+            }
+        }
+
+        WatermarkWebhookReceiver webhookReceiver = this.webhookReceiver;
+        if(webhookReceiver != null && job.href != null && jobsByHref.putIfAbsent(job.href, job) == null) {
+            // Wait for the callback, and poll once the fallback time has passed or just before giving up
+            schedulePoll(job, Math.max(0, Math.min(webhookReceiver.getConfiguration().getFallbackMillis(), deadline - now)));
+        } else {
+            scheduleNextPoll(job, -1);
+        }
+    }
+
+    /**
+     * Completes jobs from the callbacks a webhook receiver gets, so they do not have to be polled. Jobs tracked before this is called are still polled.
+     * @param webhookReceiver {@link WatermarkWebhookReceiver}
+     */
+    public void useWebhooks(WatermarkWebhookReceiver webhookReceiver) {
+        WatermarkWebhookReceiver previous = this.webhookReceiver;
+        if(previous == webhookReceiver) {
+            return;
+        }
+        if(previous != null) {
+            previous.removeListener(webhookListener);
+        }
+        this.webhookReceiver = webhookReceiver;
+        if(webhookReceiver != null) {
+            webhookReceiver.addListener(webhookListener);
+        }
+    }
+
+    /**
+     * @return The webhook receiver jobs are completed from, or null if jobs are only polled
+     */
+    public WatermarkWebhookReceiver getWebhookReceiver() {
+        return webhookReceiver;
+    }
+
+    /**
+     * Records jobs in a journal as they are submitted and finished, and resumes polling the jobs the journal has as pending. A job that was pending when the process stopped is not submitted again: requesting the same watermark with a timeout waits for the resumed job. Jobs whose deadline passed while the process was stopped are polled once.
+     *
+     * Jobs that fail because the client was closed are left pending in the journal, so that closing the client on shutdown does not stop them being resumed.
+     * @param journal {@link WatermarkJournal}
+     */
+    public void useJournal(WatermarkJournal journal) {
+        if(this.journal == journal) {
+            return;
+        }
+        this.journal = journal;
+        if(journal == null) {
+            return;
+        }
+
+        Map<WatermarkJournalEntry, Future<WatermarkResult>> resumed = new LinkedHashMap<WatermarkJournalEntry, Future<WatermarkResult>>();
+        Set<String> settingsHashes = new HashSet<String>();
+        for(final WatermarkJournalEntry entry : journal.getPending()) {
+            if(entry.getSettingsHash() != null && settingsHashes.add(entry.getSettingsHash())) {
+                resumed.put(entry, resumedJobs.execute(entry.getSettingsHash(), null, new SingleFlight.Call<WatermarkResult>() {
+                    @Override
+                    public Future<?> start(FutureCallback<WatermarkResult> callback) {
+                        BasicFuture<WatermarkResult> future = new BasicFuture<WatermarkResult>(callback);
+                        resumeTracking(entry, future);
+                        return future;
+                    }
+                }));
+            } else {
+                // The same watermark was requested twice, only the first can be waited for by settings
+                BasicFuture<WatermarkResult> future = new BasicFuture<WatermarkResult>(null);
+                resumeTracking(entry, future);
+                resumed.put(entry, future);
+            }
+        }
+        this.resumed = Collections.unmodifiableMap(resumed);
+    }
+
+    /**
+     * @return The journal jobs are recorded in, or null if they are not recorded
+     */
+    public WatermarkJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * The jobs resumed from the journal when it was set with {@link #useJournal(WatermarkJournal)}
+     * @return The future of each resumed job, by journal entry
+     */
+    public Map<WatermarkJournalEntry, Future<WatermarkResult>> getResumedJobs() {
+        return resumed;
+    }
+
+    /**
+     * Waits for a job resumed from the journal with the given settings, if there is one still pending
+     * @param settingsHash {@link WatermarkCacheKey#getHash()}
+     * @param callback Notified when the job completes
+     * @return A future of the resumed job or null if there is none
+     */
+    Future<WatermarkResult> joinResumed(String settingsHash, FutureCallback<WatermarkResult> callback) {
+        return resumedJobs.join(settingsHash, callback);
+    }
+
+    /**
+     * The number of jobs being tracked that have not completed yet
+     * @return The number of pending jobs
+     */
+    public int getPendingJobs() {
+        return pendingJobs.get();
+    }
+
+    /**
+     * Watermark requests in flight for the watermark APIs that share this tracker
+     */
+    SingleFlight<String, WatermarkResult> getRequestsInFlight() {
+        return requestsInFlight;
+    }
+
+    /**
+     * Polls per job and detection lag for jobs that were polled until ready
+     * @return {@link PollMetrics}
+     */
+    public PollMetrics getMetrics() {
+        return pollScheduler.getMetrics();
+    }
+
+    /**
+     * Polls a job recorded in the journal straight away, and then as any other job until its deadline
+     */
+    private void resumeTracking(WatermarkJournalEntry entry, BasicFuture<WatermarkResult> future) {
+        pendingJobs.incrementAndGet();
+        Job job = new Job(entry.getHref(), entry.getShape(), entry.getStartTime(), entry.getDeadline(), future, null, RequestPriority.NORMAL);
+        job.journaled = true;
+        job.resumed = true;
+        if(!addJob(job)) {
+            return;
+        }
+
+        WatermarkWebhookReceiver webhookReceiver = this.webhookReceiver;
+        if(webhookReceiver != null) {
+            jobsByHref.putIfAbsent(job.href, job);
+        }
+        schedulePoll(job, 0);
+    }
+
+    /**
+     * Stops tracking jobs. Every job still pending fails, and jobs tracked from now on fail straight away. Journaled jobs are left pending in the journal so that they are resumed when the process starts again.
+     *
+     * This is called when the client the tracker polls with is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        safeStreamAsyncClient.removeCloseListener(closer);
+        for(Job job : jobs) {
+            fail(job, closedException(null), null);
+        }
+    }
+
+    /**
+     * Records a job as being tracked
+     * @return false if the tracker is closed, in which case the job has been failed
+     */
+    private boolean addJob(Job job) {
+        jobs.add(job);
+        // Checked after adding so that either this or close() fails the job
+        if(closed) {
+            fail(job, closedException(null), null);
+            return false;
+        }
+        return true;
+    }
+
+    private static WatermarkAPIException closedException(Throwable cause) {
+        return new WatermarkAPIException("Watermark status could not be polled because the client is closed", cause);
+    }
+
+    /**
+     * Schedules the next poll of a pending job at the predicted time, or fails the job if it cannot be polled again before its deadline
+     * @param retryAfterMillis The wait SafeStream asked for or -1
+     */
+    private void scheduleNextPoll(Job job, long retryAfterMillis) {
+        long now = System.currentTimeMillis();
+        long remaining = job.deadline - now;
+        long delay = Math.max(Math.min(pollScheduler.nextPollDelayMillis(job.shape, now - job.startTime), remaining), retryAfterMillis);
+        if(remaining <= 0 || delay > remaining) {
+            fail(job, new WatermarkAPIException("Timeout reached waiting for video to be watermarked"), "TIMED_OUT");
+            return;
+        }
+        schedulePoll(job, delay);
+    }
+
+    private void schedulePoll(final Job job, long delayMillis) {
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // A callback may have completed the job while it waited
+                    if(job.finished.get()) {
+                        return;
+                    }
+                    dueJobs[job.priority.ordinal()].add(job);
+                    dispatch();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The client has been closed
+            fail(job, closedException(e), null);
+        }
+    }
+
+    /**
+     * Starts status requests for due jobs while there are free slots, the jobs of the highest priority first. This only runs on the scheduler so a request that fails straight away cannot recurse back into it.
+     */
+    private void dispatch() {
+        while(hasDueJobs()) {
+            int inFlight = pollsInFlight.get();
+            if(inFlight >= maxConcurrentPolls) {
+                return;
+            }
+            if(!pollsInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+
+            Job job = nextDueJob();
+            if(job == null) {
+                pollsInFlight.decrementAndGet();
+                continue;
+            }
+            poll(job);
+        }
+    }
+
+    private boolean hasDueJobs() {
+        for(Queue<Job> jobs : dueJobs) {
+            if(!jobs.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Job nextDueJob() {
+        for(Queue<Job> jobs : dueJobs) {
+            Job job = jobs.poll();
+            if(job != null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Job>[] newDueJobs() {
+        Queue<Job>[] dueJobs = (Queue<Job>[]) new Queue<?>[RequestPriority.values().length];
+        for(int i = 0; i < dueJobs.length; i++) {
+            dueJobs[i] = new ConcurrentLinkedQueue<Job>();
+        }
+        return dueJobs;
+    }
+
+    private void poll(final Job job) {
+        // Nothing to do if the caller cancelled or a callback completed the job
+        if(job.future.isDone()) {
+            finish(job, "CANCELLED");
+            releaseSlot();
+            return;
+        }
+
+        job.polls++;
+        safeStreamAsyncClient.withPriority(job.priority).getEndpoint(job.href, WatermarkResult.class, new FutureCallback<SafeStreamHttpResponse>() {
+            @Override
+            public void completed(SafeStreamHttpResponse response) {
+                releaseSlot();
+
+                WatermarkResult watermarkResult;
+                try {
+                    watermarkResult = response.getEntity(WatermarkResult.class);
+                } catch (RuntimeException e) {
+                    fail(job, new WatermarkAPIException(e), "FAILED");
+                    return;
+                }
+
+                long elapsed = System.currentTimeMillis() - job.startTime;
+                if("READY".equals(watermarkResult.getStatus())) {
+                    if(finish(job, "READY")) {
+                        // The time a resumed job took includes the time the process was stopped, so it says nothing about jobs of its shape
+                        if(!job.resumed) {
+                            pollScheduler.recordReady(job.shape, job.lastPendingMillis, elapsed, job.polls);
+                        }
+                        job.future.completed(watermarkResult);
+                    }
+                } else {
+                    job.lastPendingMillis = elapsed;
+                    statusSeen(job, watermarkResult);
+                    scheduleNextPoll(job, response.getRetryAfterMillis());
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                releaseSlot();
+                fail(job, new WatermarkAPIException(ex), "FAILED");
+            }
+
+            @Override
+            public void cancelled() {
+                releaseSlot();
+                finish(job, null);
+                job.future.cancel();
+            }
+        });
+    }
+
+    private void releaseSlot() {
+        pollsInFlight.decrementAndGet();
+        try {
+            scheduler.execute(dispatcher);
+        } catch (RejectedExecutionException e) {
+            // The client has been closed, which failed the jobs still waiting
+        }
+    }
+
+    /**
+     * Tells the job's status listener when a poll sees the job move on to a new status
+     */
+    private void statusSeen(Job job, WatermarkResult watermarkResult) {
+        String status = watermarkResult.getStatus();
+        if(job.statusListener == null || status == null || status.equals(job.lastStatus)) {
+            return;
+        }
+        job.lastStatus = status;
+        try {
+            job.statusListener.statusChanged(watermarkResult);
+        } catch (RuntimeException e) {
+            // A failing listener must not stop the job being polled
+        }
+    }
+
+    /**
+     * @param state The terminal state to record in the journal, or null to leave the job pending there
+     */
+    private void fail(Job job, WatermarkAPIException e, String state) {
+        if(finish(job, state)) {
+            job.future.failed(e);
+        }
+    }
+
+    /**
+     * Completes a job waiting for a callback. The callback is exact, so the job counts as seen ready the moment it arrived.
+     */
+    private void onCallback(WatermarkResult watermarkResult) {
+        if(!"READY".equals(watermarkResult.getStatus())) {
+            return;
+        }
+
+        Job job = jobsByHref.get(watermarkResult.getHref());
+        if(job != null && finish(job, "READY")) {
+            long elapsed = System.currentTimeMillis() - job.startTime;
+            if(!job.resumed) {
+                pollScheduler.recordReady(job.shape, elapsed, elapsed, job.polls);
+            }
+            job.future.completed(watermarkResult);
+        }
+    }
+
+    /**
+     * Stops tracking a job. A job can complete from a poll and a callback at about the same time, so only the first to finish it may complete its future.
+     * @param state The terminal state to record in the journal, or null to leave the job pending there
+     * @return true if this call finished the job
+     */
+    private boolean finish(Job job, String state) {
+        if(!job.finished.compareAndSet(false, true)) {
+            return false;
+        }
+        pendingJobs.decrementAndGet();
+        jobs.remove(job);
+        if(job.href != null) {
+            jobsByHref.remove(job.href, job);
+        }
+
+        WatermarkJournal journal = this.journal;
+        if(journal != null && job.journaled && state != null) {
+            try {
+                journal.finished(job.href, state);
+            } catch (IOException e) {
+                // The job is polled once more if the process restarts
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notified when a tracked job moves to a new status before it is ready
+     */
+    interface StatusListener {
+
+        /**
+         * Called from an I/O thread, so it must not block
+         * @param watermarkResult The job as it was last seen
+         */
+        void statusChanged(WatermarkResult watermarkResult);
+    }
+
+    private static class Job {
+
+        private final String href;
+
+        private final JobShape shape;
+
+        private final long startTime;
+
+        private final long deadline;
+
+        private final BasicFuture<WatermarkResult> future;
+
+        private final StatusListener statusListener;
+
+        private final RequestPriority priority;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        /**
+         * Polls made so far. Only one poll of a job is in flight at a time so these need no locking.
+         */
+        private int polls;
+
+        /**
+         * Time in millis from the start of the job to the last time it was seen pending
+         */
+        private long lastPendingMillis;
+
+        /**
+         * The status the job was last seen in. Only changed by the poll in flight.
+         */
+        private String lastStatus;
+
+        /**
+         * If the job is recorded in the journal
+         */
+        private boolean journaled;
+
+        /**
+         * If the job was resumed from the journal after a restart
+         */
+        private boolean resumed;
+
+        Job(String href, JobShape shape, long startTime, long deadline, BasicFuture<WatermarkResult> future, StatusListener statusListener, RequestPriority priority) {
+            this.href = href;
+            this.shape = shape;
+            this.startTime = startTime;
+            this.deadline = deadline;
+            this.future = future;
+            this.statusListener = statusListener;
+            this.priority = priority;
+        }
+    }
+}
@@ -24,8 +24,11 @@
 
 package com.safestream.sdk.api.watermarking;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.HashMap;
 
+@JsonAdapter(WatermarkResultTypeAdapter.Factory.class)
 public class WatermarkResult {
 
     /**
@@ -0,0 +1,87 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Streaming JSON adapter for {@link WatermarkResult}
+ */
+final class WatermarkResultTypeAdapter extends TypeAdapter<WatermarkResult> {
+
+    private final TypeAdapter<HashMap<String, Object>> containersAdapter;
+
+    WatermarkResultTypeAdapter(Gson gson) {
+        this.containersAdapter = gson.getAdapter(new TypeToken<HashMap<String, Object>>(){});
+    }
+
+    @Override
+    public void write(JsonWriter out, WatermarkResult result) throws IOException {
+        out.beginObject();
+        out.name("status").value(result.getStatus());
+        out.name("containers");
+        containersAdapter.write(out, result.getContainers());
+        out.name("href").value(result.getHref());
+        out.endObject();
+    }
+
+    @Override
+    public WatermarkResult read(JsonReader in) throws IOException {
+        WatermarkResult result = new WatermarkResult();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("status".equals(name)) {
+                result.setStatus(JsonStreams.readString(in));
+            } else if("containers".equals(name)) {
+                result.setContainers(containersAdapter.read(in));
+            } else if("href".equals(name)) {
+                result.setHref(JsonStreams.readString(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return result;
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return WatermarkResult.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new WatermarkResultTypeAdapter(gson) : null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.cache;
+
+import com.safestream.sdk.json.GsonJsonCodec;
+import com.safestream.sdk.json.JsonCodec;
+import com.safestream.sdk.json.JsonCodecException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps cached watermark results as JSON files in a directory, one file per watermark, so they survive a restart.
+ *
+ * Each file is written to a temporary file first and then moved into place, so a reader never sees a partly written entry. Expired files are removed when they are next looked up or by {@link #purgeExpired()}.
+ */
+public class FileWatermarkCacheStore implements WatermarkCacheStore {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SUFFIX = ".json";
+
+    private final Path directory;
+
+    private final JsonCodec jsonCodec;
+
+    /**
+     * @param directory The directory to keep entries in. It is created if it does not exist.
+     * @throws IOException If the directory cannot be created
+     */
+    public FileWatermarkCacheStore(File directory) throws IOException {
+        this(directory, new GsonJsonCodec());
+    }
+
+    /**
+     * @param directory The directory to keep entries in. It is created if it does not exist.
+     * @param jsonCodec The codec entries are written with
+     * @throws IOException If the directory cannot be created
+     */
+    public FileWatermarkCacheStore(File directory, JsonCodec jsonCodec) throws IOException {
+        this.directory = directory.toPath();
+        this.jsonCodec = jsonCodec;
+        Files.createDirectories(this.directory);
+    }
+
+    @Override
+    public WatermarkCacheEntry load(String hash) throws IOException {
+        try {
+            return read(file(hash));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void save(String hash, WatermarkCacheEntry entry) throws IOException {
+        Path file = file(hash);
+        Path temp = Files.createTempFile(directory, hash, ".tmp");
+        try {
+            Files.write(temp, jsonCodec.toJson(entry).getBytes(UTF_8));
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void remove(String hash) throws IOException {
+        Files.deleteIfExists(file(hash));
+    }
+
+    /**
+     * Removes every entry that has expired, and any entry that cannot be read
+     * @return The number of entries removed
+     * @throws IOException If the directory cannot be read
+     */
+    public int purgeExpired() throws IOException {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX);
+        try {
+            for(Path file : files) {
+                WatermarkCacheEntry entry;
+                try {
+                    entry = read(file);
+                } catch (NoSuchFileException e) {
+                    continue;
+                } catch (JsonCodecException e) {
+                    entry = null;
+                }
+
+                if((entry == null || entry.isExpired(now)) && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        } finally {
+            files.close();
+        }
+        return removed;
+    }
+
+    private WatermarkCacheEntry read(Path file) throws IOException {
+        return jsonCodec.fromJson(new String(Files.readAllBytes(file), UTF_8), WatermarkCacheEntry.class);
+    }
+
+    private Path file(String hash) {
+        // Hashes are hex, anything else could name a file outside the directory
+        for(int i = 0; i < hash.length(); i++) {
+            if(Character.digit(hash.charAt(i), 16) < 0) {
+                throw new IllegalArgumentException("Not a cache key hash: " + hash);
+            }
+        }
+        return directory.resolve(hash + SUFFIX);
+    }
+}
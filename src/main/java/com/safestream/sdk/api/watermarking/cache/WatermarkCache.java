@@ -0,0 +1,212 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.cache;
+
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers watermarks that are ready so that requesting the same watermark again, for example when a recipient reopens a screener, does not create it again.
+ *
+ * Results are kept in memory up to a maximum number, dropping the least recently used first, and each result is used for a fixed time after it was created. When a {@link WatermarkCacheStore} is given, results are also written to it and read back from it when they are not in memory, so they can survive a restart. A cache can be shared by every watermark API of one SafeStream API key.
+ *
+ * <code>
+ *
+ *     SafeStreamAPI safestream = new SafeStreamAPI("MY API KEY")
+ *                                      .withWatermarkCache(new WatermarkCache(10000, TimeUnit.HOURS.toMillis(24),
+ *                                              new FileWatermarkCacheStore(new File("watermarks"))));
+ *
+ * </code>
+ */
+public class WatermarkCache {
+
+    /**
+     * Default maximum number of results kept in memory
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * Default time in millis a result is used for
+     */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private final long ttlMillis;
+
+    private final WatermarkCacheStore store;
+
+    private final WatermarkCacheStats stats = new WatermarkCacheStats();
+
+    /**
+     * Results in least recently used order. Guarded by itself.
+     */
+    private final Map<WatermarkCacheKey, WatermarkCacheEntry> entries;
+
+    public WatermarkCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param maxEntries The most results kept in memory
+     * @param ttlMillis Time in millis a result is used for after it was created
+     */
+    public WatermarkCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, null);
+    }
+
+    /**
+     * @param maxEntries The most results kept in memory
+     * @param ttlMillis Time in millis a result is used for after it was created
+     * @param store An optional {@link WatermarkCacheStore} results are also kept in
+     */
+    public WatermarkCache(final int maxEntries, long ttlMillis, WatermarkCacheStore store) {
+        this.ttlMillis = ttlMillis;
+        this.store = store;
+        this.entries = new LinkedHashMap<WatermarkCacheKey, WatermarkCacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<WatermarkCacheKey, WatermarkCacheEntry> eldest) {
+                if(size() > maxEntries) {
+                    stats.evicted();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up a watermark, in memory first and then in the store
+     * @param key {@link WatermarkCacheKey}
+     * @return The watermark result or null if there is none or it has expired
+     */
+    public WatermarkResult get(WatermarkCacheKey key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            WatermarkCacheEntry entry = entries.get(key);
+            if(entry != null) {
+                if(!entry.isExpired(now)) {
+                    stats.hit();
+                    return entry.getResult();
+                }
+                entries.remove(key);
+                stats.expired();
+            }
+        }
+
+        if(store != null) {
+            WatermarkCacheEntry entry = load(key);
+            if(entry != null && entry.getResult() != null) {
+                if(!entry.isExpired(now)) {
+                    synchronized (entries) {
+                        entries.put(key, entry);
+                    }
+                    stats.storeHit();
+                    return entry.getResult();
+                }
+                stats.expired();
+                remove(key);
+            }
+        }
+
+        stats.miss();
+        return null;
+    }
+
+    /**
+     * Remembers a watermark until the time to live has passed
+     * @param key {@link WatermarkCacheKey}
+     * @param watermarkResult {@link WatermarkResult}
+     */
+    public void put(WatermarkCacheKey key, WatermarkResult watermarkResult) {
+        WatermarkCacheEntry entry = new WatermarkCacheEntry(watermarkResult, System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+
+        if(store != null) {
+            try {
+                store.save(key.getHash(), entry);
+            } catch (IOException e) {
+                stats.storeFailed();
+            }
+        }
+    }
+
+    /**
+     * Forgets a watermark, for example because it has been deleted
+     * @param key {@link WatermarkCacheKey}
+     */
+    public void invalidate(WatermarkCacheKey key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+        if(store != null) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return The number of results in memory, including any that have expired but have not been looked up since
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return {@link WatermarkCacheStats}
+     */
+    public WatermarkCacheStats getStats() {
+        return stats;
+    }
+
+    private WatermarkCacheEntry load(WatermarkCacheKey key) {
+        try {
+            return store.load(key.getHash());
+        } catch (IOException e) {
+            stats.storeFailed();
+            return null;
+        } catch (RuntimeException e) {
+            // An entry the codec cannot read is treated as missing
+            stats.storeFailed();
+            return null;
+        }
+    }
+
+    private void remove(WatermarkCacheKey key) {
+        try {
+            store.remove(key.getHash());
+        } catch (IOException e) {
+            stats.storeFailed();
+        }
+    }
+}
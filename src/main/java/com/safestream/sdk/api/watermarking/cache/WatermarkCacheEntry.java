@@ -0,0 +1,67 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.cache;
+
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+
+/**
+ * A cached watermark result and when it expires
+ */
+public class WatermarkCacheEntry {
+
+    private WatermarkResult result;
+
+    /**
+     * Time in millis since the epoch after which the entry is no longer used
+     */
+    private long expiresAt;
+
+    /**
+     * Used by JSON codecs when an entry is read from a {@link WatermarkCacheStore}
+     */
+    private WatermarkCacheEntry() { }
+
+    public WatermarkCacheEntry(WatermarkResult result, long expiresAt) {
+        this.result = result;
+        this.expiresAt = expiresAt;
+    }
+
+    public WatermarkResult getResult() {
+        return result;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @param now Time in millis since the epoch
+     * @return true if the entry has expired at the given time
+     */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
@@ -0,0 +1,172 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.cache;
+
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.api.video.Resolution;
+import com.safestream.sdk.api.watermarking.WatermarkConfiguration;
+import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Identifies a watermark by the video it is made from and the settings it is made with.
+ *
+ * The key is built from a canonical JSON form of the video key and {@link EncodingConfiguration}: properties are written in alphabetical order, null properties are left out, no watermarks is written as an empty list and numbers are written the same way on every JVM. Requests for the same watermark therefore always have the same key, whichever {@link com.safestream.sdk.json.JsonCodec} is configured. The SHA-256 hash of the canonical form names the watermark in a {@link WatermarkCacheStore}.
+ */
+public final class WatermarkCacheKey {
+
+    private final String key;
+
+    private final String canonicalForm;
+
+    private final String hash;
+
+    private WatermarkCacheKey(String key, String canonicalForm) {
+        this.key = key;
+        this.canonicalForm = canonicalForm;
+        this.hash = DigestUtils.sha256Hex(canonicalForm);
+    }
+
+    /**
+     * The key of a watermark. The configuration is read once, so changing it afterwards does not change the key.
+     * @param key The key of the video being watermarked
+     * @param encodingConfiguration {@link EncodingConfiguration}
+     * @return The cache key
+     */
+    public static WatermarkCacheKey of(String key, EncodingConfiguration encodingConfiguration) {
+        StringWriter json = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(json);
+            // Allows NaN and infinite numbers, which SafeStream would reject but which must not break the cache
+            out.setLenient(true);
+            out.beginObject();
+            out.name("key").value(key);
+            if(encodingConfiguration != null) {
+                out.name("settings");
+                writeEncodingConfiguration(out, encodingConfiguration);
+            }
+            out.endObject();
+            out.close();
+        } catch (IOException e) {
+            // A StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return new WatermarkCacheKey(key, json.toString());
+    }
+
+    /**
+     * @return The key of the video being watermarked
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The canonical JSON form of the video key and settings
+     */
+    public String getCanonicalForm() {
+        return canonicalForm;
+    }
+
+    /**
+     * @return The SHA-256 hash of the canonical form as 64 hex characters
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof WatermarkCacheKey && canonicalForm.equals(((WatermarkCacheKey) o).canonicalForm));
+    }
+
+    @Override
+    public int hashCode() {
+        return canonicalForm.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return hash;
+    }
+
+    private static void writeEncodingConfiguration(JsonWriter out, EncodingConfiguration encodingConfiguration) throws IOException {
+        out.beginObject();
+        if(encodingConfiguration.getBitRate() != null) {
+            out.name("bitRate").value(encodingConfiguration.getBitRate());
+        }
+        Resolution resolution = encodingConfiguration.getResolution();
+        if(resolution != null) {
+            out.name("resolution").beginObject();
+            out.name("height").value(resolution.getHeight());
+            out.name("width").value(resolution.getWidth());
+            out.endObject();
+        }
+        if(encodingConfiguration.getSaturation() != null) {
+            out.name("saturation").value(encodingConfiguration.getSaturation());
+        }
+        out.name("watermarks").beginArray();
+        if(encodingConfiguration.getWatermarks() != null) {
+            for(WatermarkConfiguration watermarkConfiguration : encodingConfiguration.getWatermarks()) {
+                writeWatermarkConfiguration(out, watermarkConfiguration);
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    private static void writeWatermarkConfiguration(JsonWriter out, WatermarkConfiguration watermark) throws IOException {
+        if(watermark == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        writeString(out, "content", watermark.getContent());
+        writeString(out, "fontColor", watermark.getFontColor());
+        out.name("fontOpacity").value(Float.valueOf(watermark.getFontOpacity()));
+        out.name("fontSize").value(Float.valueOf(watermark.getFontSize()));
+        writeString(out, "horizontalAlignment", watermark.getHorizontalAlignment() != null ? watermark.getHorizontalAlignment().name() : null);
+        writeString(out, "shadowColor", watermark.getShadowColor());
+        out.name("shadowOffsetX").value(Float.valueOf(watermark.getShadowOffsetX()));
+        out.name("shadowOffsetY").value(Float.valueOf(watermark.getShadowOffsetY()));
+        out.name("shadowOpacity").value(Float.valueOf(watermark.getShadowOpacity()));
+        writeString(out, "type", watermark.getType() != null ? watermark.getType().name() : null);
+        writeString(out, "verticalAlignment", watermark.getVerticalAlignment() != null ? watermark.getVerticalAlignment().name() : null);
+        out.name("x").value(Float.valueOf(watermark.getX()));
+        out.name("y").value(Float.valueOf(watermark.getY()));
+        out.endObject();
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if(value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hits, misses and evictions of a {@link WatermarkCache}. The counters are updated as the cache is used.
+ */
+public class WatermarkCacheStats {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong storeHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong storeFailures = new AtomicLong();
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void storeHit() {
+        hits.incrementAndGet();
+        storeHits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    void expired() {
+        expirations.incrementAndGet();
+    }
+
+    void storeFailed() {
+        storeFailures.incrementAndGet();
+    }
+
+    /**
+     * @return Lookups that found a result, in memory or in the store
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Lookups that found a result in the store but not in memory
+     */
+    public long getStoreHits() {
+        return storeHits.get();
+    }
+
+    /**
+     * @return Lookups that found no result
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The fraction of lookups that found a result, or 0 if there have been none
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return Results dropped from memory to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Results found to have expired when they were looked up
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return Reads and writes of the store that failed. The cache carries on without the store when it fails.
+     */
+    public long getStoreFailures() {
+        return storeFailures.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WatermarkCacheStats{hits=%d, storeHits=%d, misses=%d, hitRate=%.3f, evictions=%d, expirations=%d, storeFailures=%d}",
+                getHits(), getStoreHits(), getMisses(), getHitRate(), getEvictions(), getExpirations(), getStoreFailures());
+    }
+}
@@ -0,0 +1,59 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.cache;
+
+import java.io.IOException;
+
+/**
+ * Keeps cached watermark results beyond the lifetime of a {@link WatermarkCache}, for example so that they survive a restart.
+ *
+ * Entries are named by {@link WatermarkCacheKey#getHash()}. Implementations must be thread safe. A store is shared by every watermark API the cache is used with, so use a separate store for each SafeStream API key.
+ */
+public interface WatermarkCacheStore {
+
+    /**
+     * Reads an entry
+     * @param hash The hash of the cache key
+     * @return The entry or null if there is none. The entry may have expired.
+     * @throws IOException If the store cannot be read
+     */
+    WatermarkCacheEntry load(String hash) throws IOException;
+
+    /**
+     * Writes an entry, replacing any entry with the same hash
+     * @param hash The hash of the cache key
+     * @param entry {@link WatermarkCacheEntry}
+     * @throws IOException If the store cannot be written
+     */
+    void save(String hash, WatermarkCacheEntry entry) throws IOException;
+
+    /**
+     * Removes an entry if there is one
+     * @param hash The hash of the cache key
+     * @throws IOException If the store cannot be written
+     */
+    void remove(String hash) throws IOException;
+}
@@ -24,16 +24,19 @@
 
 package com.safestream.sdk.api.watermarking.encoding;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.safestream.sdk.api.video.Resolution;
 import com.safestream.sdk.api.watermarking.WatermarkConfiguration;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * The configuration for encoding and watermarking a video. This is used when requesting watermarks for a given video.
  */
+@JsonAdapter(EncodingConfigurationTypeAdapter.Factory.class)
 public class EncodingConfiguration {
 
     /**
@@ -56,7 +59,7 @@ public class EncodingConfiguration {
     /**
      * One or more watermarks that should be burned into the video
      */
-    List<WatermarkConfiguration> watermarks;
+    private List<WatermarkConfiguration> watermarks;
 
     public EncodingConfiguration() {}
 
@@ -111,4 +114,56 @@ public class EncodingConfiguration {
         this.watermarks.add(watermarkConfiguration);
         return this;
     }
+
+    public Float getSaturation() {
+        return saturation;
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public String getBitRate() {
+        return bitRate;
+    }
+
+    public List<WatermarkConfiguration> getWatermarks() {
+        return watermarks;
+    }
+
+    void setWatermarks(List<WatermarkConfiguration> watermarks) {
+        this.watermarks = watermarks;
+    }
+
+    /**
+     * Two encoding configurations are equal when their settings are equal and they have equal watermarks in the same order. No watermarks and an empty list of watermarks are equal. Configurations are mutable and must not be changed while they are used as a key.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof EncodingConfiguration)) {
+            return false;
+        }
+
+        EncodingConfiguration other = (EncodingConfiguration) o;
+        return (saturation != null ? saturation.equals(other.saturation) : other.saturation == null)
+                && (resolution != null ? resolution.equals(other.resolution) : other.resolution == null)
+                && (bitRate != null ? bitRate.equals(other.bitRate) : other.bitRate == null)
+                && watermarksOrEmpty().equals(other.watermarksOrEmpty());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = saturation != null ? saturation.hashCode() : 0;
+        result = 31 * result + (resolution != null ? resolution.hashCode() : 0);
+        result = 31 * result + (bitRate != null ? bitRate.hashCode() : 0);
+        result = 31 * result + watermarksOrEmpty().hashCode();
+        return result;
+    }
+
+    private List<WatermarkConfiguration> watermarksOrEmpty() {
+        return watermarks != null ? watermarks : Collections.<WatermarkConfiguration>emptyList();
+    }
 }
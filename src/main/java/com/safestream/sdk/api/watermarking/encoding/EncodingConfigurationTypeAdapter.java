@@ -0,0 +1,95 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.encoding;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.safestream.sdk.api.video.Resolution;
+import com.safestream.sdk.api.watermarking.WatermarkConfiguration;
+import com.safestream.sdk.json.JsonStreams;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON adapter for {@link EncodingConfiguration}
+ */
+final class EncodingConfigurationTypeAdapter extends TypeAdapter<EncodingConfiguration> {
+
+    private final TypeAdapter<Resolution> resolutionAdapter;
+
+    private final TypeAdapter<WatermarkConfiguration> watermarkAdapter;
+
+    EncodingConfigurationTypeAdapter(Gson gson) {
+        this.resolutionAdapter = gson.getAdapter(Resolution.class);
+        this.watermarkAdapter = gson.getAdapter(WatermarkConfiguration.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, EncodingConfiguration encoding) throws IOException {
+        out.beginObject();
+        out.name("saturation").value(encoding.getSaturation());
+        out.name("resolution");
+        resolutionAdapter.write(out, encoding.getResolution());
+        out.name("bitRate").value(encoding.getBitRate());
+        out.name("watermarks");
+        JsonStreams.writeCollection(out, encoding.getWatermarks(), watermarkAdapter);
+        out.endObject();
+    }
+
+    @Override
+    public EncodingConfiguration read(JsonReader in) throws IOException {
+        EncodingConfiguration encoding = new EncodingConfiguration();
+        in.beginObject();
+        while(in.hasNext()) {
+            String name = in.nextName();
+            if("saturation".equals(name)) {
+                encoding.withSaturation(JsonStreams.readFloat(in));
+            } else if("resolution".equals(name)) {
+                encoding.withResoluation(resolutionAdapter.read(in));
+            } else if("bitRate".equals(name)) {
+                encoding.withBitRate(JsonStreams.readString(in));
+            } else if("watermarks".equals(name)) {
+                encoding.setWatermarks(JsonStreams.readList(in, watermarkAdapter));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return encoding;
+    }
+
+    static final class Factory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return EncodingConfiguration.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new EncodingConfigurationTypeAdapter(gson) : null;
+        }
+    }
+}
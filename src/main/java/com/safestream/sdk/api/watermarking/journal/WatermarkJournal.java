@@ -0,0 +1,455 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.journal;
+
+import com.safestream.sdk.api.polling.JobShape;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append only journal of watermark jobs, kept in a memory mapped file so that the jobs pending when a process stops can be resumed when it starts again instead of being submitted a second time. See {@link com.safestream.sdk.api.watermarking.WatermarkJobTracker#useJournal(WatermarkJournal)}
+ *
+ * Each submitted job is appended as a record holding its video key, settings hash, href, deadline and shape, and a second record is appended once the job is ready, has failed or is no longer wanted. Every record carries its length and a CRC32 of its contents, and its length is written last, so a record that was only partly written when the process was killed is recognised and discarded when the journal is next opened.
+ *
+ * Records are written to the page cache, which survives the process being killed. To also survive the machine losing power, open the journal with <code>forceEveryWrite</code>, which flushes every record to disk at the cost of a disk write per record.
+ *
+ * When the file is full, it is compacted if at least half of its records are for finished jobs, and grown otherwise. Compaction writes the pending jobs to a new file and moves it over the old one, so a crash while compacting leaves either the old or the new journal.
+ */
+public class WatermarkJournal implements Closeable {
+
+    /**
+     * Default size in bytes the file is mapped with. It holds several thousand jobs.
+     */
+    public static final int DEFAULT_INITIAL_SIZE = 1 << 20;
+
+    /**
+     * "SSJ1"
+     */
+    private static final int MAGIC = 0x53534a31;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The length and CRC32 in front of every record
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte SUBMITTED = 1;
+
+    private static final byte FINISHED = 2;
+
+    private final File file;
+
+    private final int initialSize;
+
+    private final boolean forceEveryWrite;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Jobs submitted and not finished, by href, in the order they were submitted. Guarded by lock.
+     */
+    private final LinkedHashMap<String, WatermarkJournalEntry> pending = new LinkedHashMap<String, WatermarkJournalEntry>();
+
+    private RandomAccessFile randomAccessFile;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * Records in the file that no longer describe a pending job
+     */
+    private int finishedRecords;
+
+    /**
+     * Bytes of partly written records discarded when the journal was opened
+     */
+    private long discardedBytes;
+
+    private boolean closed;
+
+    /**
+     * Opens a journal, creating the file if it does not exist
+     * @param file The journal file
+     * @throws IOException If the file cannot be opened or is not a journal
+     */
+    public WatermarkJournal(File file) throws IOException {
+        this(file, DEFAULT_INITIAL_SIZE, false);
+    }
+
+    /**
+     * Opens a journal, creating the file if it does not exist
+     * @param file The journal file
+     * @param initialSize Size in bytes to map the file with. The file grows when it is full.
+     * @param forceEveryWrite If every record is flushed to disk as it is written
+     * @throws IOException If the file cannot be opened or is not a journal
+     */
+    public WatermarkJournal(File file, int initialSize, boolean forceEveryWrite) throws IOException {
+        this.file = file;
+        this.initialSize = Math.max(initialSize, HEADER_SIZE + RECORD_HEADER_SIZE);
+        this.forceEveryWrite = forceEveryWrite;
+        map(Math.max(file.length(), this.initialSize));
+        recover();
+    }
+
+    /**
+     * The jobs that have been submitted and not finished, including those recovered when the journal was opened
+     * @return The pending jobs in the order they were submitted
+     */
+    public List<WatermarkJournalEntry> getPending() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<WatermarkJournalEntry>(pending.values()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a submitted job
+     * @param entry {@link WatermarkJournalEntry}
+     * @throws IOException If the record cannot be written
+     */
+    public void submitted(WatermarkJournalEntry entry) throws IOException {
+        byte[] body = submittedBody(entry);
+
+        lock.lock();
+        try {
+            append(body);
+            WatermarkJournalEntry replaced = pending.put(entry.getHref(), entry);
+            if(replaced != null) {
+                finishedRecords++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a job is ready, has failed or is no longer wanted, so it is not resumed
+     * @param href The href of the job
+     * @param state The terminal state of the job, such as <code>READY</code>
+     * @throws IOException If the record cannot be written
+     */
+    public void finished(String href, String state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FINISHED);
+        writeString(out, href);
+        writeString(out, state);
+        out.close();
+
+        lock.lock();
+        try {
+            if(!pending.containsKey(href)) {
+                return;
+            }
+            append(bytes.toByteArray());
+            pending.remove(href);
+            finishedRecords += 2;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the pending jobs
+     * @throws IOException If the journal cannot be rewritten. The journal is then left as it was.
+     */
+    public void compact() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            List<WatermarkJournalEntry> entries = new ArrayList<WatermarkJournalEntry>(pending.values());
+            File compacted = new File(file.getPath() + ".compact");
+            int size;
+            RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+            try {
+                out.setLength(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION);
+                // Buffer methods are called through Buffer, as JDK 9 and later compile them to ByteBuffer overrides that Java 7 and 8 do not have
+                ((Buffer) header).flip();
+                FileChannel channel = out.getChannel();
+                channel.write(header);
+                for(WatermarkJournalEntry entry : entries) {
+                    channel.write(record(submittedBody(entry)));
+                }
+                size = (int) channel.position();
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+
+            randomAccessFile.close();
+            try {
+                Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                // Map whichever file is now in place, the compacted one or the original
+                map(Math.max(initialSize, Math.max(file.length(), 2L * size)));
+                ((Buffer) buffer).position(validLength());
+            }
+            finishedRecords = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Bytes of partly written records that were discarded when the journal was opened. Non zero after the process was killed while writing.
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Flushes the journal to disk and closes it
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            buffer.force();
+            randomAccessFile.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the records in the file and discards a partly written record at the end
+     */
+    private void recover() throws IOException {
+        int magic = buffer.getInt(0);
+        if(magic == 0 && buffer.getInt(4) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        } else if(magic != MAGIC || buffer.getInt(4) != VERSION) {
+            randomAccessFile.close();
+            throw new IOException("Not a SafeStream watermark journal: " + file);
+        }
+
+        int position = HEADER_SIZE;
+        while(true) {
+            byte[] body = readRecord(position);
+            if(body == null) {
+                break;
+            }
+            apply(body);
+            position += RECORD_HEADER_SIZE + body.length;
+        }
+
+        // Anything after the last whole record was being written when the process stopped
+        int end = buffer.capacity();
+        while(end > position && buffer.get(end - 1) == 0) {
+            end--;
+        }
+        discardedBytes = end - position;
+        for(int i = position; i < end; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        ((Buffer) buffer).position(position);
+    }
+
+    /**
+     * @return The length of the whole records at the start of the file
+     */
+    private int validLength() throws IOException {
+        int position = HEADER_SIZE;
+        byte[] body;
+        while((body = readRecord(position)) != null) {
+            position += RECORD_HEADER_SIZE + body.length;
+        }
+        return position;
+    }
+
+    /**
+     * @return The contents of the record at the position, or null if there is no whole record there
+     */
+    private byte[] readRecord(int position) {
+        if(position + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if(length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        byte[] body = new byte[length];
+        // MappedByteBuffer.duplicate() only exists from JDK 13, so the ByteBuffer one is called
+        ByteBuffer view = ((ByteBuffer) buffer).duplicate();
+        ((Buffer) view).position(position + RECORD_HEADER_SIZE);
+        view.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, length);
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? body : null;
+    }
+
+    private void apply(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String href = readString(in);
+        if(type == SUBMITTED) {
+            String key = readString(in);
+            String settingsHash = readString(in);
+            long startTime = in.readLong();
+            long deadline = in.readLong();
+            int watermarkCount = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            String bitRate = readString(in);
+            if(pending.put(href, new WatermarkJournalEntry(key, settingsHash, href, startTime, deadline, new JobShape(watermarkCount, width, height, bitRate, -1))) != null) {
+                finishedRecords++;
+            }
+        } else if(type == FINISHED) {
+            finishedRecords += pending.remove(href) != null ? 2 : 1;
+        }
+    }
+
+    /**
+     * Appends a record. The length is written last, so the record only exists once it has been written in full.
+     */
+    private void append(byte[] body) throws IOException {
+        ensureOpen();
+        if(buffer.remaining() < RECORD_HEADER_SIZE + body.length) {
+            makeRoom(RECORD_HEADER_SIZE + body.length);
+        }
+
+        int position = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ((Buffer) buffer).position(position + RECORD_HEADER_SIZE);
+        buffer.put(body);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, body.length);
+        if(forceEveryWrite) {
+            buffer.force();
+        }
+    }
+
+    private void makeRoom(int needed) throws IOException {
+        if(finishedRecords > 0 && finishedRecords >= pending.size()) {
+            compact();
+            if(buffer.remaining() >= needed) {
+                return;
+            }
+        }
+
+        int position = buffer.position();
+        map(Math.max(2L * buffer.capacity(), (long) position + needed));
+        ((Buffer) buffer).position(position);
+    }
+
+    /**
+     * Maps the file, growing it to the given size if it is smaller
+     */
+    private void map(long size) throws IOException {
+        if(size > Integer.MAX_VALUE) {
+            throw new IOException("Watermark journal is too large: " + file);
+        }
+        if(randomAccessFile != null) {
+            randomAccessFile.close();
+        }
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed) {
+            throw new IOException("Watermark journal is closed");
+        }
+    }
+
+    private static ByteBuffer record(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        ((Buffer) record).flip();
+        return record;
+    }
+
+    private static byte[] submittedBody(WatermarkJournalEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SUBMITTED);
+        writeString(out, entry.getHref());
+        writeString(out, entry.getKey());
+        writeString(out, entry.getSettingsHash());
+        out.writeLong(entry.getStartTime());
+        out.writeLong(entry.getDeadline());
+        JobShape shape = entry.getShape() != null ? entry.getShape() : JobShape.UNKNOWN;
+        out.writeInt(shape.getWatermarkCount());
+        out.writeInt(shape.getWidth());
+        out.writeInt(shape.getHeight());
+        writeString(out, shape.getBitRate());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,92 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.journal;
+
+import com.safestream.sdk.api.polling.JobShape;
+
+/**
+ * A watermark job recorded in a {@link WatermarkJournal}: the video and settings it was requested with, the href its status is polled at and when to give up waiting for it.
+ */
+public class WatermarkJournalEntry {
+
+    private final String key;
+
+    private final String settingsHash;
+
+    private final String href;
+
+    private final long startTime;
+
+    private final long deadline;
+
+    private final JobShape shape;
+
+    /**
+     * @param key The key of the video being watermarked
+     * @param settingsHash The hash of the video key and settings, see {@link com.safestream.sdk.api.watermarking.cache.WatermarkCacheKey#getHash()}
+     * @param href The href the job status is polled at
+     * @param startTime When the watermark was requested, in epoch millis
+     * @param deadline When to give up waiting for the watermark, in epoch millis
+     * @param shape The shape of the job, used to predict when it will be ready
+     */
+    public WatermarkJournalEntry(String key, String settingsHash, String href, long startTime, long deadline, JobShape shape) {
+        this.key = key;
+        this.settingsHash = settingsHash;
+        this.href = href;
+        this.startTime = startTime;
+        this.deadline = deadline;
+        this.shape = shape;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getSettingsHash() {
+        return settingsHash;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public JobShape getShape() {
+        return shape;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", key, href);
+    }
+}
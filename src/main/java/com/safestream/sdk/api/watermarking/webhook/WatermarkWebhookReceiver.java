@@ -0,0 +1,301 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.webhook;
+
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+import com.safestream.sdk.json.GsonJsonCodec;
+import com.safestream.sdk.json.JsonCodec;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Hex;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small embedded HTTP server that receives watermark completion callbacks, so that watermarks being waited on do not have to be polled.
+ *
+ * A callback is a POST to the configured path whose body is the watermark as JSON, in the same form as a watermark status response. It carries two headers:
+ * <ul>
+ *     <li>{@value #TIMESTAMP_HEADER}: the time the callback was sent, in seconds since the epoch</li>
+ *     <li>{@value #SIGNATURE_HEADER}: "sha256=" followed by the hex HMAC-SHA256, keyed with the shared secret, of the timestamp, a period and the body. See {@link #sign(String, long, byte[])}</li>
+ * </ul>
+ * Callbacks with a missing or wrong signature, or a timestamp outside the tolerance, are rejected with a 401. Verified callbacks are answered with a 204 and passed to every {@link WatermarkWebhookListener}.
+ *
+ * Give the receiver to {@link com.safestream.sdk.api.SafeStreamAPI#withWebhookReceiver(WatermarkWebhookReceiver)} and the job tracker completes watermarks when their callbacks arrive. A watermark whose callback has not arrived within {@link WebhookConfiguration#getFallbackMillis()} is polled as usual.
+ *
+ * <code>
+ *
+ *     WatermarkWebhookReceiver receiver = new WatermarkWebhookReceiver(new WebhookConfiguration("MY WEBHOOK SECRET")
+ *                                                  .withPort(8090)
+ *                                                  .withCallbackUrl("https://example.com/safestream/webhooks"));
+ *     receiver.start();
+ *
+ * </code>
+ */
+public class WatermarkWebhookReceiver implements Closeable {
+
+    public static final String SIGNATURE_HEADER = "X-SafeStream-Signature";
+
+    public static final String TIMESTAMP_HEADER = "X-SafeStream-Timestamp";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SIGNATURE_PREFIX = "sha256=";
+
+    /**
+     * Larger bodies are rejected without being read in full
+     */
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final WebhookConfiguration configuration;
+
+    private final JsonCodec jsonCodec;
+
+    private final List<WatermarkWebhookListener> listeners = new CopyOnWriteArrayList<WatermarkWebhookListener>();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public WatermarkWebhookReceiver(WebhookConfiguration configuration) {
+        this(configuration, new GsonJsonCodec());
+    }
+
+    /**
+     * @param configuration {@link WebhookConfiguration}
+     * @param jsonCodec The codec callback bodies are read with
+     */
+    public WatermarkWebhookReceiver(WebhookConfiguration configuration, JsonCodec jsonCodec) {
+        if(configuration.getSecret() == null || configuration.getSecret().isEmpty()) {
+            throw new IllegalArgumentException("A secret is needed to verify webhook callbacks");
+        }
+        this.configuration = configuration;
+        this.jsonCodec = jsonCodec;
+    }
+
+    /**
+     * Starts listening. Calling this again while the receiver is running does nothing.
+     * @throws IOException If the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if(server != null) {
+            return;
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(configuration.getHost(), configuration.getPort()), 0);
+        executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "safestream-webhooks-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext(configuration.getPath(), new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    receive(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        this.server = server;
+    }
+
+    /**
+     * Stops listening
+     */
+    @Override
+    public synchronized void close() {
+        if(server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return The address the receiver is listening on, or null if it has not been started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return server != null ? server.getAddress() : null;
+    }
+
+    public WebhookConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public void addListener(WatermarkWebhookListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(WatermarkWebhookListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return The number of verified callbacks received
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return The number of callbacks rejected because they were malformed or could not be verified
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Signs a callback body, in the form expected in the {@value #SIGNATURE_HEADER} header
+     * @param secret The shared secret
+     * @param timestamp The value of the {@value #TIMESTAMP_HEADER} header, in seconds since the epoch
+     * @param body The callback body
+     * @return "sha256=" followed by the hex signature
+     */
+    public static String sign(String secret, long timestamp, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(UTF_8), "HmacSHA256"));
+            mac.update((timestamp + ".").getBytes(UTF_8));
+            return SIGNATURE_PREFIX + Hex.encodeHexString(mac.doFinal(body));
+        } catch (GeneralSecurityException e) {
+            // Every JVM supports HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        if(!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405);
+            return;
+        }
+
+        byte[] body = readBody(exchange.getRequestBody());
+        if(body == null) {
+            reject(exchange, 413);
+            return;
+        }
+
+        if(!verify(exchange.getRequestHeaders().getFirst(TIMESTAMP_HEADER), exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER), body)) {
+            reject(exchange, 401);
+            return;
+        }
+
+        WatermarkResult watermarkResult;
+        try {
+            watermarkResult = jsonCodec.fromJson(new String(body, UTF_8), WatermarkResult.class);
+        } catch (RuntimeException e) {
+            watermarkResult = null;
+        }
+        if(watermarkResult == null || watermarkResult.getHref() == null) {
+            reject(exchange, 400);
+            return;
+        }
+
+        received.incrementAndGet();
+        respond(exchange, 204);
+        for(WatermarkWebhookListener listener : listeners) {
+            try {
+                listener.onWatermark(watermarkResult);
+            } catch (RuntimeException e) {
+                // One failing listener must not stop the others being notified
+            }
+        }
+    }
+
+    private boolean verify(String timestampHeader, String signature, byte[] body) {
+        if(timestampHeader == null || signature == null) {
+            return false;
+        }
+
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(timestampHeader.trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if(Math.abs(System.currentTimeMillis() - timestamp * 1000) > configuration.getToleranceMillis()) {
+            return false;
+        }
+
+        // Compared in constant time so the signature cannot be guessed a byte at a time
+        return MessageDigest.isEqual(sign(configuration.getSecret(), timestamp, body).getBytes(UTF_8), signature.trim().getBytes(UTF_8));
+    }
+
+    /**
+     * @return The body or null if it is too large
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if(body.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private void reject(HttpExchange exchange, int status) throws IOException {
+        rejected.incrementAndGet();
+        respond(exchange, status);
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
@@ -0,0 +1,153 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.webhook;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for a {@link WatermarkWebhookReceiver}
+ */
+public class WebhookConfiguration {
+
+    /**
+     * Default time in millis to wait for a callback before polling
+     */
+    public static final long DEFAULT_FALLBACK_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Default time in millis a callback's timestamp may differ from the local clock
+     */
+    public static final long DEFAULT_TOLERANCE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private String host = "0.0.0.0";
+
+    private int port = 0;
+
+    private String path = "/safestream/webhooks";
+
+    private String secret;
+
+    private String callbackUrl;
+
+    private long fallbackMillis = DEFAULT_FALLBACK_MILLIS;
+
+    private long toleranceMillis = DEFAULT_TOLERANCE_MILLIS;
+
+    /**
+     * @param secret The secret callbacks are signed with
+     */
+    public WebhookConfiguration(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * Fluent setter for host. The address to listen on.
+     * @param host
+     * @return this
+     */
+    public WebhookConfiguration withHost(String host) {
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * Fluent setter for port. The port to listen on, or 0 to use any free port.
+     * @param port
+     * @return this
+     */
+    public WebhookConfiguration withPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Fluent setter for path. The path callbacks are posted to.
+     * @param path
+     * @return this
+     */
+    public WebhookConfiguration withPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    /**
+     * Fluent setter for callbackUrl. The URL SafeStream can reach the receiver on, for example through a load balancer. When set it is sent with every watermark request. Leave it unset if the callback URL is registered with SafeStream some other way.
+     * @param callbackUrl
+     * @return this
+     */
+    public WebhookConfiguration withCallbackUrl(String callbackUrl) {
+        this.callbackUrl = callbackUrl;
+        return this;
+    }
+
+    /**
+     * Fluent setter for fallbackMillis. Time in millis after a watermark is requested to wait for its callback before polling its status.
+     * @param fallbackMillis
+     * @return this
+     */
+    public WebhookConfiguration withFallbackMillis(long fallbackMillis) {
+        this.fallbackMillis = fallbackMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for toleranceMillis. Callbacks with a timestamp further than this from the local clock are rejected so that a recorded callback cannot be replayed later.
+     * @param toleranceMillis
+     * @return this
+     */
+    public WebhookConfiguration withToleranceMillis(long toleranceMillis) {
+        this.toleranceMillis = toleranceMillis;
+        return this;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public String getCallbackUrl() {
+        return callbackUrl;
+    }
+
+    public long getFallbackMillis() {
+        return fallbackMillis;
+    }
+
+    public long getToleranceMillis() {
+        return toleranceMillis;
+    }
+}
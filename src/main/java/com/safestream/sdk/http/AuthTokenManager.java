@@ -0,0 +1,260 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.codec.binary.Base64;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the JWT used to authenticate requests for a single API key.
+ *
+ * The token's <code>exp</code> claim is decoded so the token can be refreshed in the background shortly before it expires. Background refreshes block on the token request, so they run on the blocking executor of the {@link SafeStreamHttpResources} rather than on its scheduler, which other clients sharing the resources rely on. Requests never wait on a background refresh while the current token is still usable. When no usable token exists, concurrent callers are coalesced so only one of them requests a new token from SafeStream while the others wait for its result.
+ */
+class AuthTokenManager {
+
+    /**
+     * Tokens are treated as expired this long before their <code>exp</code> claim to allow for clock skew between us and SafeStream
+     */
+    private static final long CLOCK_SKEW_MILLIS = 5000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Fetches a new token from SafeStream
+     */
+    interface TokenSource {
+        String requestAuthToken() throws SafeStreamHttpClientException;
+    }
+
+    private final TokenSource tokenSource;
+
+    /**
+     * Runs background refreshes, see {@link SafeStreamHttpResources#scheduleBlocking(Runnable, long, TimeUnit)}
+     */
+    private final SafeStreamHttpResources resources;
+
+    /**
+     * Time in millis before expiry at which the token is refreshed in the background
+     */
+    private final long refreshAheadMillis;
+
+    /**
+     * Held while a token is fetched. A lock rather than a monitor so that virtual threads blocked on the fetch, or waiting for it, do not pin their carrier thread.
+     */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile AuthToken current;
+
+    /**
+     * Guarded by the refresh lock
+     */
+    private ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * Set once the manager is closed, after which tokens are still fetched when asked for but never refreshed in the background. Guarded by the refresh lock.
+     */
+    private boolean closed;
+
+    AuthTokenManager(TokenSource tokenSource, SafeStreamHttpResources resources, long refreshAheadMillis) {
+        this.tokenSource = tokenSource;
+        this.resources = resources;
+        this.refreshAheadMillis = refreshAheadMillis;
+    }
+
+    /**
+     * Returns a usable token, fetching a new one if there is no token yet or the current one has expired.
+     * @return A JWT
+     * @throws SafeStreamHttpClientException
+     */
+    String getToken() throws SafeStreamHttpClientException {
+        AuthToken token = this.current;
+        if(token != null && token.isUsable()) {
+            return token.value;
+        }
+
+        refreshLock.lock();
+        try {
+            // Another thread may have fetched a token while we waited on the lock
+            token = this.current;
+            if(token != null && token.isUsable()) {
+                return token.value;
+            }
+            return refresh().value;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current token without fetching one, so it never blocks
+     * @return A JWT or null if there is no usable token
+     */
+    String getCachedToken() {
+        AuthToken token = this.current;
+        return token != null && token.isUsable() ? token.value : null;
+    }
+
+    /**
+     * Discards the given token if it is still the current one. This is called when SafeStream rejects a token with a 401 so that the next call to {@link #getToken()} fetches a new one.
+     * @param token The rejected token
+     */
+    void invalidate(String token) {
+        refreshLock.lock();
+        try {
+            if(this.current != null && this.current.value.equals(token)) {
+                this.current = null;
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Cancels any scheduled background refresh, stops scheduling new ones and forgets the current token
+     */
+    void close() {
+        refreshLock.lock();
+        try {
+            closed = true;
+            if(scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+            this.current = null;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the refresh lock
+     */
+    private AuthToken refresh() throws SafeStreamHttpClientException {
+        String value = tokenSource.requestAuthToken();
+        AuthToken token = new AuthToken(value, decodeExpiry(value));
+        this.current = token;
+        scheduleRefresh(token);
+        return token;
+    }
+
+    private void scheduleRefresh(final AuthToken token) {
+        if(scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+
+        // Tokens without an expiry are only replaced when SafeStream rejects them
+        if(token.expiresAt == Long.MAX_VALUE || closed) {
+            return;
+        }
+
+        // Short lived tokens are refreshed half way through their remaining lifetime so that a refresh never immediately schedules another
+        long remaining = token.expiresAt - System.currentTimeMillis();
+        if(remaining <= CLOCK_SKEW_MILLIS) {
+            return;
+        }
+        long delay = remaining - Math.min(refreshAheadMillis, remaining / 2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                refreshLock.lock();
+                try {
+                    // Skip the refresh if the token was already replaced or invalidated, or the manager was closed
+                    if(current != token || closed) {
+                        return;
+                    }
+                    try {
+                        refresh();
+                    } catch (SafeStreamHttpClientException e) {
+                        // The current token is kept. If it expires before a refresh succeeds the next request fetches a token itself.
+                    }
+                } finally {
+                    refreshLock.unlock();
+                }
+            }
+        };
+        try {
+            scheduledRefresh = resources.scheduleBlocking(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The resources have been closed. The token is fetched again when it is next needed.
+        }
+    }
+
+    /**
+     * Reads the <code>exp</code> claim from a JWT
+     * @param jwt The token
+     * @return Epoch millis at which the token expires or Long.MAX_VALUE if the token has no readable expiry
+     */
+    static long decodeExpiry(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if(parts.length < 2) {
+            return Long.MAX_VALUE;
+        }
+
+        try {
+            // The payload is base64url encoded which the commons codec decoder accepts
+            String payload = new String(Base64.decodeBase64(parts[1]), UTF_8);
+            JsonElement claims = new JsonParser().parse(payload);
+            if(!claims.isJsonObject()) {
+                return Long.MAX_VALUE;
+            }
+            JsonElement exp = ((JsonObject) claims).get("exp");
+            if(exp == null || !exp.isJsonPrimitive() || !exp.getAsJsonPrimitive().isNumber()) {
+                return Long.MAX_VALUE;
+            }
+            return exp.getAsLong() * 1000;
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static class AuthToken {
+
+        private final String value;
+
+        /**
+         * Epoch millis at which the token expires
+         */
+        private final long expiresAt;
+
+        AuthToken(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isUsable() {
+            return expiresAt == Long.MAX_VALUE || System.currentTimeMillis() < expiresAt - CLOCK_SKEW_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets a blocking call wait for a future it created with this callback.
+ *
+ * {@link org.apache.http.concurrent.BasicFuture#get()} waits on the future's monitor, which on Java 21 pins a virtual thread to its carrier thread for the whole wait. Waiting on this callback parks the thread instead, so any number of virtual threads can wait at once.
+ *
+ * @param <V> The result type
+ */
+public class BlockingCallback<V> implements FutureCallback<V> {
+
+    private final FutureCallback<V> callback;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public BlockingCallback() {
+        this(null);
+    }
+
+    /**
+     * @param callback An optional callback to notify before waiting threads are woken
+     */
+    public BlockingCallback(FutureCallback<V> callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Waits for the future to complete and returns its result
+     * @param future A future created with this callback
+     * @return The result
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * @throws ExecutionException If the future failed
+     */
+    public V get(Future<V> future) throws InterruptedException, ExecutionException {
+        done.await();
+        return future.get();
+    }
+
+    /**
+     * Waits for the future to complete for at most the given time and returns its result
+     * @param future A future created with this callback
+     * @param timeout The most time to wait
+     * @param unit The unit of the timeout
+     * @return The result
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * @throws ExecutionException If the future failed
+     * @throws TimeoutException If the future did not complete in time
+     */
+    public V get(Future<V> future, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if(!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return future.get();
+    }
+
+    @Override
+    public void completed(V result) {
+        try {
+            if(callback != null) {
+                callback.completed(result);
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public void failed(Exception ex) {
+        try {
+            if(callback != null) {
+                callback.failed(ex);
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public void cancelled() {
+        try {
+            if(callback != null) {
+                callback.cancelled();
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+}
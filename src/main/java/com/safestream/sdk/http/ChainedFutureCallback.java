@@ -0,0 +1,82 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Completes a future of one type from the outcome of a future of another type. This is how a future of raw responses is turned into a future of, for example, videos.
+ * @param <S> The source result type
+ * @param <T> The target result type
+ */
+public abstract class ChainedFutureCallback<S, T> implements FutureCallback<S> {
+
+    private final BasicFuture<T> target;
+
+    public ChainedFutureCallback(BasicFuture<T> target) {
+        this.target = target;
+    }
+
+    /**
+     * Converts a successful source result into the target result
+     * @param result The source result
+     * @return The target result
+     * @throws Exception Fails the target future
+     */
+    protected abstract T convert(S result) throws Exception;
+
+    /**
+     * Converts a source failure into the failure reported by the target. By default the failure is passed through.
+     * @param ex The source failure
+     * @return The target failure
+     */
+    protected Exception convertFailure(Exception ex) {
+        return ex;
+    }
+
+    @Override
+    public void completed(S result) {
+        T converted;
+        try {
+            converted = convert(result);
+        } catch (Exception e) {
+            target.failed(e);
+            return;
+        }
+        target.completed(converted);
+    }
+
+    @Override
+    public void failed(Exception ex) {
+        target.failed(convertFailure(ex));
+    }
+
+    @Override
+    public void cancelled() {
+        target.cancel();
+    }
+}
@@ -0,0 +1,280 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops requests from being sent while the SafeStream API is failing or slow, so that callers fail fast instead of piling up behind requests that will time out.
+ *
+ * The breaker starts CLOSED and records the outcome of the most recent calls. When the share of failed or slow calls crosses the thresholds in the {@link CircuitBreakerPolicy} it opens, and every request fails immediately with a {@link CircuitBreakerOpenException}. Once the open duration has passed the breaker is HALF_OPEN and lets a few trial calls through. If they all succeed the breaker closes again, otherwise it opens for another open duration.
+ *
+ * One circuit breaker is shared by every client using the same {@link SafeStreamHttpResources}.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final byte FAILED = 1;
+
+    private static final byte SLOW = 2;
+
+    private final CircuitBreakerPolicy policy;
+
+    private final long slowCallDurationNanos;
+
+    /**
+     * Outcomes of the most recent calls, as FAILED and SLOW flags, in a ring
+     */
+    private final byte[] window;
+
+    /**
+     * Guards the window and the state
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int windowStart;
+
+    private int windowCount;
+
+    private int failedCalls;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    private long openedAtNanos;
+
+    /**
+     * Trial calls let through while half open and not finished yet
+     */
+    private int trialCallsInFlight;
+
+    /**
+     * Trial calls that succeeded while half open
+     */
+    private int trialCallsSucceeded;
+
+    public CircuitBreaker(CircuitBreakerPolicy policy) {
+        this.policy = policy;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(policy.getSlowCallDurationMillis());
+        this.window = new byte[Math.max(1, policy.getSlidingWindowSize())];
+    }
+
+    /**
+     * Asks to send a call. Every permitted call must be followed by {@link #onResult(long, SafeStreamHttpClientException)} or {@link #releasePermission()}.
+     * @throws CircuitBreakerOpenException If the circuit is open
+     */
+    public void acquirePermission() throws CircuitBreakerOpenException {
+        if(!policy.isEnabled()) {
+            return;
+        }
+
+        State from;
+        State to;
+        boolean permitted;
+        lock.lock();
+        try {
+            from = state;
+            if(state == State.OPEN && System.nanoTime() - openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(policy.getOpenDurationMillis())) {
+                transitionTo(State.HALF_OPEN);
+            }
+
+            if(state == State.CLOSED) {
+                permitted = true;
+            } else if(state == State.HALF_OPEN && trialCallsInFlight + trialCallsSucceeded < policy.getHalfOpenTrialCalls()) {
+                trialCallsInFlight++;
+                permitted = true;
+            } else {
+                permitted = false;
+            }
+            to = state;
+        } finally {
+            lock.unlock();
+        }
+        notifyListeners(from, to);
+
+        if(!permitted) {
+            throw new CircuitBreakerOpenException(String.format("Circuit breaker is %s, the request was not sent", to));
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted call
+     * @param durationNanos How long the call took
+     * @param failure The failure or null if the call succeeded. Only failures where no response was received or the response had a 5xx status count against the API.
+     */
+    public void onResult(long durationNanos, SafeStreamHttpClientException failure) {
+        if(!policy.isEnabled()) {
+            return;
+        }
+
+        byte outcome = 0;
+        if(failure != null && isFailure(failure)) {
+            outcome |= FAILED;
+        }
+        if(durationNanos >= slowCallDurationNanos) {
+            outcome |= SLOW;
+        }
+
+        State from;
+        State to;
+        lock.lock();
+        try {
+            from = state;
+            if(state == State.HALF_OPEN) {
+                trialCallsInFlight = Math.max(0, trialCallsInFlight - 1);
+                if(outcome != 0) {
+                    transitionTo(State.OPEN);
+                } else if(++trialCallsSucceeded >= policy.getHalfOpenTrialCalls()) {
+                    transitionTo(State.CLOSED);
+                }
+            } else if(state == State.CLOSED) {
+                record(outcome);
+                if(windowCount >= policy.getMinimumNumberOfCalls()
+                        && (failedCalls >= policy.getFailureRateThreshold() * windowCount || slowCalls >= policy.getSlowCallRateThreshold() * windowCount)) {
+                    transitionTo(State.OPEN);
+                }
+            }
+            // Calls that were let through before the circuit opened do not change anything
+            to = state;
+        } finally {
+            lock.unlock();
+        }
+        notifyListeners(from, to);
+    }
+
+    /**
+     * Gives back a permission for a call that was never completed, for example because it was cancelled
+     */
+    public void releasePermission() {
+        lock.lock();
+        try {
+            if(state == State.HALF_OPEN) {
+                trialCallsInFlight = Math.max(0, trialCallsInFlight - 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The share of calls in the window that failed
+     * @return A rate between 0 and 1 or -1 if the window does not hold the minimum number of calls yet
+     */
+    public float getFailureRate() {
+        lock.lock();
+        try {
+            return windowCount < policy.getMinimumNumberOfCalls() ? -1 : (float) failedCalls / windowCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The share of calls in the window that were slow
+     * @return A rate between 0 and 1 or -1 if the window does not hold the minimum number of calls yet
+     */
+    public float getSlowCallRate() {
+        lock.lock();
+        try {
+            return windowCount < policy.getMinimumNumberOfCalls() ? -1 : (float) slowCalls / windowCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * If a failed call counts against the API. Client errors such as a 404 do not mean the API is unhealthy.
+     */
+    static boolean isFailure(SafeStreamHttpClientException e) {
+        int status = e.getHttpStatus();
+        return status >= 500 || (status == 0 && RetryPolicy.findIOException(e) != null);
+    }
+
+    private void record(byte outcome) {
+        if(windowCount == window.length) {
+            byte evicted = window[windowStart];
+            if((evicted & FAILED) != 0) {
+                failedCalls--;
+            }
+            if((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+            window[windowStart] = outcome;
+            windowStart = (windowStart + 1) % window.length;
+        } else {
+            window[(windowStart + windowCount) % window.length] = outcome;
+            windowCount++;
+        }
+
+        if((outcome & FAILED) != 0) {
+            failedCalls++;
+        }
+        if((outcome & SLOW) != 0) {
+            slowCalls++;
+        }
+    }
+
+    private void transitionTo(State next) {
+        state = next;
+        trialCallsInFlight = 0;
+        trialCallsSucceeded = 0;
+        if(next == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        }
+        if(next == State.CLOSED) {
+            // Start afresh so the failures that opened the circuit do not open it again straight away
+            windowStart = 0;
+            windowCount = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+        }
+    }
+
+    private void notifyListeners(State from, State to) {
+        if(from == to) {
+            return;
+        }
+        for(CircuitBreakerListener listener : policy.getListeners()) {
+            listener.onStateTransition(this, from, to);
+        }
+    }
+}
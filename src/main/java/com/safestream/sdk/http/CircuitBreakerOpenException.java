@@ -0,0 +1,13 @@
+package com.safestream.sdk.http;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} is open. The request never reached SafeStream.
+ */
+public class CircuitBreakerOpenException extends SafeStreamHttpClientException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,223 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Controls when the {@link CircuitBreaker} in front of the SafeStream API opens and how it recovers.
+ *
+ * <code>
+ *
+ *     new SafeStreamHttpClientConfiguration()
+ *          .withCircuitBreakerPolicy(new CircuitBreakerPolicy()
+ *              .withFailureRateThreshold(0.25f)
+ *              .withOpenDurationMillis(10000)
+ *              .withListener(myListener));
+ *
+ * </code>
+ */
+public class CircuitBreakerPolicy {
+
+    /**
+     * If the circuit breaker is used at all
+     */
+    private boolean enabled = true;
+
+    /**
+     * Fraction of calls in the window that may fail before the circuit opens. A call fails when no response is received or SafeStream answers with a 5xx status.
+     */
+    private float failureRateThreshold = 0.5f;
+
+    /**
+     * Fraction of calls in the window that may be slow before the circuit opens
+     */
+    private float slowCallRateThreshold = 0.8f;
+
+    /**
+     * Calls that take at least this many millis are slow
+     */
+    private long slowCallDurationMillis = 10000;
+
+    /**
+     * Number of most recent calls the failure and slow call rates are worked out from
+     */
+    private int slidingWindowSize = 50;
+
+    /**
+     * Number of calls that must be in the window before the rates are acted on
+     */
+    private int minimumNumberOfCalls = 20;
+
+    /**
+     * Time in millis the circuit stays open before trial calls are let through
+     */
+    private long openDurationMillis = 30000;
+
+    /**
+     * Number of trial calls that must succeed while half open for the circuit to close again
+     */
+    private int halfOpenTrialCalls = 3;
+
+    private List<CircuitBreakerListener> listeners = new ArrayList<CircuitBreakerListener>();
+
+    public CircuitBreakerPolicy() { }
+
+    /**
+     * A policy that never opens the circuit
+     * @return A new policy
+     */
+    public static CircuitBreakerPolicy disabled() {
+        return new CircuitBreakerPolicy().withEnabled(false);
+    }
+
+    /**
+     * Fluent setter for enabled
+     * @param enabled
+     * @return this
+     */
+    public CircuitBreakerPolicy withEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    /**
+     * Fluent setter for failureRateThreshold
+     * @param failureRateThreshold
+     * @return this
+     */
+    public CircuitBreakerPolicy withFailureRateThreshold(float failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * Fluent setter for slowCallRateThreshold
+     * @param slowCallRateThreshold
+     * @return this
+     */
+    public CircuitBreakerPolicy withSlowCallRateThreshold(float slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    /**
+     * Fluent setter for slowCallDurationMillis
+     * @param slowCallDurationMillis
+     * @return this
+     */
+    public CircuitBreakerPolicy withSlowCallDurationMillis(long slowCallDurationMillis) {
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for slidingWindowSize
+     * @param slidingWindowSize
+     * @return this
+     */
+    public CircuitBreakerPolicy withSlidingWindowSize(int slidingWindowSize) {
+        this.slidingWindowSize = slidingWindowSize;
+        return this;
+    }
+
+    /**
+     * Fluent setter for minimumNumberOfCalls
+     * @param minimumNumberOfCalls
+     * @return this
+     */
+    public CircuitBreakerPolicy withMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        return this;
+    }
+
+    /**
+     * Fluent setter for openDurationMillis
+     * @param openDurationMillis
+     * @return this
+     */
+    public CircuitBreakerPolicy withOpenDurationMillis(long openDurationMillis) {
+        this.openDurationMillis = openDurationMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for halfOpenTrialCalls
+     * @param halfOpenTrialCalls
+     * @return this
+     */
+    public CircuitBreakerPolicy withHalfOpenTrialCalls(int halfOpenTrialCalls) {
+        this.halfOpenTrialCalls = halfOpenTrialCalls;
+        return this;
+    }
+
+    /**
+     * Adds a listener notified of state transitions
+     * @param listener
+     * @return this
+     */
+    public CircuitBreakerPolicy withListener(CircuitBreakerListener listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public long getOpenDurationMillis() {
+        return openDurationMillis;
+    }
+
+    public int getHalfOpenTrialCalls() {
+        return halfOpenTrialCalls;
+    }
+
+    public List<CircuitBreakerListener> getListeners() {
+        return listeners;
+    }
+}
@@ -0,0 +1,155 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts the requests of one {@link RequestPriority} sent by a {@link RequestDispatcher}, how many are waiting and how long they waited to be sent.
+ *
+ * The wait is the time from a request being handed to the dispatcher to it being sent, and does not include the time SafeStream took to respond. Percentiles are over the most recent requests.
+ */
+public class DispatchMetrics {
+
+    /**
+     * The number of recent waits percentiles are taken from
+     */
+    private static final int RECENT_WAITS = 1024;
+
+    private final RequestPriority priority;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong dispatched = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Guards the recent waits
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final long[] recentWaitNanos = new long[RECENT_WAITS];
+
+    private int recentCount;
+
+    private int recentNext;
+
+    DispatchMetrics(RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    void queued() {
+        queued.incrementAndGet();
+    }
+
+    void unqueued() {
+        queued.decrementAndGet();
+    }
+
+    void dispatched(long jobWaitNanos) {
+        dispatched.incrementAndGet();
+        waitNanos.addAndGet(jobWaitNanos);
+
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while(jobWaitNanos > max && !maxWaitNanos.compareAndSet(max, jobWaitNanos));
+
+        lock.lock();
+        try {
+            recentWaitNanos[recentNext] = jobWaitNanos;
+            recentNext = (recentNext + 1) % RECENT_WAITS;
+            recentCount = Math.min(RECENT_WAITS, recentCount + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return The number of requests waiting to be sent now
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return The number of requests sent
+     */
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    /**
+     * @return The mean time in millis requests waited to be sent
+     */
+    public double getMeanWaitMillis() {
+        long count = dispatched.get();
+        return count == 0 ? 0 : waitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return The longest time in millis a request waited to be sent
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Gets a percentile of the time recent requests waited to be sent
+     * @param percentile Between 0 and 1, for example 0.99
+     * @return The wait in millis, or 0 if no request has been sent
+     */
+    public double getWaitMillis(double percentile) {
+        long[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(recentWaitNanos, recentCount);
+        } finally {
+            lock.unlock();
+        }
+        if(sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1))] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DispatchMetrics{priority=%s, queueDepth=%d, dispatched=%d, meanWaitMillis=%.2f, p99WaitMillis=%.2f, maxWaitMillis=%.2f}",
+                priority, getQueueDepth(), getDispatched(), getMeanWaitMillis(), getWaitMillis(0.99), getMaxWaitMillis());
+    }
+}
@@ -0,0 +1,242 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A token bucket that spaces out requests so they stay within a SafeStream API quota.
+ *
+ * Permits are added at a steady rate up to a burst size. A permit can be taken without waiting with {@link #tryAcquire()}, by blocking with {@link #acquire()}, or reserved ahead of time with {@link #reserve()}, which returns how long the caller must wait before using it and is how non-blocking callers schedule work.
+ *
+ * The limiter adapts to throttling. When SafeStream answers with a 429 the rate is halved and, if SafeStream sent a Retry-After, no permits are handed out until it has passed. Every successful request then raises the rate a little until it is back to the configured rate.
+ */
+public class RateLimiter {
+
+    /**
+     * The rate is never lowered below this fraction of the configured rate
+     */
+    private static final double MIN_RATE_FRACTION = 0.05;
+
+    /**
+     * Fraction of the configured rate added back for each successful request
+     */
+    private static final double RECOVERY_FRACTION = 0.02;
+
+    /**
+     * A burst of 429s from requests already in flight only lowers the rate once in this window
+     */
+    private static final long DECREASE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxPermitsPerSecond;
+
+    private final double burst;
+
+    /**
+     * Guards the bucket. A lock rather than a monitor so that virtual threads waiting for it do not pin their carrier thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double permitsPerSecond;
+
+    /**
+     * Permits in the bucket. This goes below zero when permits have been reserved ahead of time.
+     */
+    private double available;
+
+    private long lastRefillNanos;
+
+    private long pausedUntilNanos;
+
+    private long lastDecreaseNanos;
+
+    /**
+     * @param permitsPerSecond The steady rate permits are handed out at
+     * @param burst The most permits that can be taken at once after a quiet period
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if(permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.maxPermitsPerSecond = permitsPerSecond;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.available = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastDecreaseNanos = lastRefillNanos - DECREASE_WINDOW_NANOS;
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Takes a permit if one is available now
+     * @return true if a permit was taken
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            if(now - pausedUntilNanos < 0 || available < 1) {
+                return false;
+            }
+            available -= 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit, waiting up to the timeout for one to become available
+     * @param timeout The longest time to wait
+     * @param unit The unit of the timeout
+     * @return true if a permit was taken, false if none would be available in time
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long waitNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            waitNanos = waitNanos(now);
+            if(waitNanos > unit.toNanos(timeout)) {
+                return false;
+            }
+            available -= 1;
+        } finally {
+            lock.unlock();
+        }
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+        return true;
+    }
+
+    /**
+     * Takes a permit, waiting as long as it takes for one to become available
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve());
+    }
+
+    /**
+     * Takes a permit without waiting for it. The permit may only be used once the returned time has passed.
+     * @return The time in nanos until the permit may be used, 0 if it may be used now
+     */
+    public long reserve() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            long waitNanos = waitNanos(now);
+            available -= 1;
+            return waitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lowers the rate after SafeStream throttled a request
+     * @param retryAfterMillis The wait SafeStream asked for in a Retry-After header or -1 if there was none
+     */
+    public void onThrottled(long retryAfterMillis) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+
+            if(now - lastDecreaseNanos >= DECREASE_WINDOW_NANOS) {
+                permitsPerSecond = Math.max(maxPermitsPerSecond * MIN_RATE_FRACTION, permitsPerSecond / 2);
+                lastDecreaseNanos = now;
+            }
+
+            // Saved up permits would only be thrown at SafeStream while it is throttling
+            available = Math.min(available, 0);
+
+            if(retryAfterMillis > 0) {
+                long retryAt = now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+                if(retryAt - pausedUntilNanos > 0) {
+                    pausedUntilNanos = retryAt;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Raises the rate back toward the configured rate after a request succeeded
+     */
+    public void onSuccess() {
+        lock.lock();
+        try {
+            if(permitsPerSecond < maxPermitsPerSecond) {
+                refill(System.nanoTime());
+                permitsPerSecond = Math.min(maxPermitsPerSecond, permitsPerSecond + maxPermitsPerSecond * RECOVERY_FRACTION);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The current rate, which is lower than the configured rate while recovering from throttling
+     * @return Permits per second
+     */
+    public double getPermitsPerSecond() {
+        lock.lock();
+        try {
+            return permitsPerSecond;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the permits earned since the last refill. No permits are earned while paused.
+     */
+    private void refill(long now) {
+        long from = pausedUntilNanos - lastRefillNanos > 0 ? pausedUntilNanos : lastRefillNanos;
+        long elapsed = now - from;
+        if(elapsed > 0) {
+            available = Math.min(burst, available + elapsed * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+        if(now - lastRefillNanos > 0) {
+            lastRefillNanos = now;
+        }
+    }
+
+    /**
+     * The time until the next permit is available. Permits are only earned once any pause has passed.
+     */
+    private long waitNanos(long now) {
+        long waitForPause = Math.max(0, pausedUntilNanos - now);
+        long waitForPermit = available >= 1 ? 0 : (long) ((1 - available) * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        return waitForPause + waitForPermit;
+    }
+}
@@ -0,0 +1,387 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which request to SafeStream is sent next when more are waiting than may be in flight at once.
+ *
+ * Waiting requests of a higher {@link RequestPriority} are always sent first. Within a priority, tenants (API keys) share the slots by weighted fair queuing: a tenant with twice the weight of another gets twice as many of the requests sent while both have requests waiting, however many each has queued. A tenant's weight is 1 unless it is set with {@link #setWeight(String, double)}. Bulk requests may not use the slots reserved for interactive requests.
+ *
+ * Dispatching does not block. A request that cannot be sent yet is queued and started later from the executor, by whichever request frees its slot. The blocking client waits for a slot with {@link #acquire(RequestPriority, String)}.
+ *
+ * One dispatcher is shared by every client using the same {@link SafeStreamHttpResources}. Queue depth and wait times by priority are reported by {@link #getMetrics(RequestPriority)}.
+ */
+public class RequestDispatcher {
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    private final int maxInFlight;
+
+    /**
+     * The most slots bulk requests may use
+     */
+    private final int maxBulkInFlight;
+
+    /**
+     * Starts requests that were queued
+     */
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Requests waiting to be sent, by priority. Guarded by lock.
+     */
+    private final TenantQueue[] queues = new TenantQueue[PRIORITIES.length];
+
+    private final DispatchMetrics[] metrics = new DispatchMetrics[PRIORITIES.length];
+
+    private final ConcurrentMap<String, Double> weights = new ConcurrentHashMap<String, Double>();
+
+    /**
+     * Guarded by lock
+     */
+    private int inFlight;
+
+    /**
+     * Orders requests with the same finish tag in the order they arrived. Guarded by lock.
+     */
+    private long sequence;
+
+    /**
+     * @param maxInFlight The most requests in flight at once, or 0 or less for no limit
+     * @param reservedForInteractive Slots bulk requests may not use. Bulk requests can always use at least one slot.
+     * @param executor Starts requests that were queued once a slot is free. Requests may block while an auth token is fetched.
+     */
+    public RequestDispatcher(int maxInFlight, int reservedForInteractive, Executor executor) {
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE;
+        this.maxBulkInFlight = maxInFlight > 0 ? Math.max(1, maxInFlight - Math.max(0, reservedForInteractive)) : Integer.MAX_VALUE;
+        this.executor = executor;
+        for(RequestPriority priority : PRIORITIES) {
+            queues[priority.ordinal()] = new TenantQueue();
+            metrics[priority.ordinal()] = new DispatchMetrics(priority);
+        }
+    }
+
+    /**
+     * Runs a task that sends a request as soon as a slot is free. The task runs on the calling thread if a slot is free now, and otherwise from the executor. It must call {@link #release()} once the request it sent has completed.
+     * @param priority {@link RequestPriority}
+     * @param tenant The tenant the request is sent for, usually its API key
+     * @param task Sends the request
+     */
+    public void dispatch(RequestPriority priority, String tenant, Runnable task) {
+        boolean now;
+        lock.lock();
+        try {
+            now = enqueue(new Request(priority, tenant, task, false));
+        } finally {
+            lock.unlock();
+        }
+        if(now) {
+            task.run();
+        }
+    }
+
+    /**
+     * Waits for a slot. Call {@link #release()} once the request sent with it has completed.
+     * @param priority {@link RequestPriority}
+     * @param tenant The tenant the request is sent for, usually its API key
+     * @throws InterruptedException If the thread is interrupted while waiting. No slot is then held.
+     */
+    public void acquire(RequestPriority priority, String tenant) throws InterruptedException {
+        final CountDownLatch granted = new CountDownLatch(1);
+        Request request = new Request(priority, tenant, new Runnable() {
+            @Override
+            public void run() {
+                granted.countDown();
+            }
+        }, true);
+
+        lock.lock();
+        try {
+            if(enqueue(request)) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            granted.await();
+        } catch (InterruptedException e) {
+            boolean removed;
+            lock.lock();
+            try {
+                removed = queues[priority.ordinal()].remove(request);
+                if(removed) {
+                    metrics[priority.ordinal()].unqueued();
+                }
+            } finally {
+                lock.unlock();
+            }
+            // The slot was granted as the thread was interrupted
+            if(!removed) {
+                release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Frees the slot of a completed request and starts the next waiting requests
+     */
+    public void release() {
+        List<Request> next = new ArrayList<Request>();
+        lock.lock();
+        try {
+            inFlight--;
+            Request request;
+            while((request = next()) != null) {
+                next.add(request);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for(Request request : next) {
+            if(request.inline) {
+                request.task.run();
+            } else {
+                executor.execute(request.task);
+            }
+        }
+    }
+
+    /**
+     * Sets the share of the slots a tenant gets relative to other tenants with requests of the same priority waiting
+     * @param tenant The tenant, usually its API key
+     * @param weight A positive weight. The default is 1.
+     */
+    public void setWeight(String tenant, double weight) {
+        if(weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        weights.put(tenantKey(tenant), weight);
+    }
+
+    /**
+     * @param tenant The tenant, usually its API key
+     * @return The weight of the tenant
+     */
+    public double getWeight(String tenant) {
+        Double weight = weights.get(tenantKey(tenant));
+        return weight != null ? weight : 1;
+    }
+
+    /**
+     * @return The number of requests in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The most requests in flight at once, or {@link Integer#MAX_VALUE} if there is no limit
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param priority {@link RequestPriority}
+     * @return Queue depth and wait times of the requests of a priority
+     */
+    public DispatchMetrics getMetrics(RequestPriority priority) {
+        return metrics[priority.ordinal()];
+    }
+
+    /**
+     * Takes a slot for a request if one is free and nothing of the same or a higher priority is waiting, and otherwise queues it
+     * @return true if the request may be sent now
+     */
+    private boolean enqueue(Request request) {
+        int index = request.priority.ordinal();
+        boolean waiting = false;
+        for(int i = 0; i <= index; i++) {
+            waiting |= !queues[i].isEmpty();
+        }
+        if(!waiting && inFlight < limit(request.priority)) {
+            inFlight++;
+            metrics[index].dispatched(0);
+            return true;
+        }
+
+        request.sequence = sequence++;
+        queues[index].add(request, getWeight(request.tenant));
+        metrics[index].queued();
+        return false;
+    }
+
+    /**
+     * Takes a slot for the next waiting request, the highest priority first
+     * @return The request or null if none may be sent now
+     */
+    private Request next() {
+        for(RequestPriority priority : PRIORITIES) {
+            TenantQueue queue = queues[priority.ordinal()];
+            if(queue.isEmpty()) {
+                continue;
+            }
+            if(inFlight >= limit(priority)) {
+                // A lower priority has the same or a lower limit
+                return null;
+            }
+
+            Request request = queue.poll();
+            inFlight++;
+            DispatchMetrics priorityMetrics = metrics[priority.ordinal()];
+            priorityMetrics.unqueued();
+            priorityMetrics.dispatched(System.nanoTime() - request.queuedNanos);
+            return request;
+        }
+        return null;
+    }
+
+    private int limit(RequestPriority priority) {
+        return priority == RequestPriority.BULK ? maxBulkInFlight : maxInFlight;
+    }
+
+    private static String tenantKey(String tenant) {
+        return tenant != null ? tenant : "";
+    }
+
+    private static final class Request implements Comparable<Request> {
+
+        private final RequestPriority priority;
+
+        private final String tenant;
+
+        private final Runnable task;
+
+        /**
+         * If the task only wakes a waiting thread and so can run on the thread that freed the slot
+         */
+        private final boolean inline;
+
+        private final long queuedNanos = System.nanoTime();
+
+        private long sequence;
+
+        /**
+         * Virtual time at which the tenant's share allows this request to start and finish
+         */
+        private double startTag;
+
+        private double finishTag;
+
+        Request(RequestPriority priority, String tenant, Runnable task, boolean inline) {
+            this.priority = priority;
+            this.tenant = tenantKey(tenant);
+            this.task = task;
+            this.inline = inline;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            int byTag = Double.compare(finishTag, other.finishTag);
+            return byTag != 0 ? byTag : (sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1));
+        }
+    }
+
+    /**
+     * Weighted fair queue of the requests of one priority. Each request is tagged with the virtual time it would finish if every tenant with requests waiting got its weighted share, and the request with the earliest tag is sent first. A tenant that has nothing waiting does not build up credit.
+     */
+    private static final class TenantQueue {
+
+        private final PriorityQueue<Request> requests = new PriorityQueue<Request>();
+
+        /**
+         * The finish tag of the last request queued by each tenant with requests waiting
+         */
+        private final Map<String, double[]> lastFinishTags = new HashMap<String, double[]>();
+
+        private final Map<String, int[]> queuedByTenant = new HashMap<String, int[]>();
+
+        private double virtualTime;
+
+        boolean isEmpty() {
+            return requests.isEmpty();
+        }
+
+        void add(Request request, double weight) {
+            double[] lastFinishTag = lastFinishTags.get(request.tenant);
+            if(lastFinishTag == null) {
+                lastFinishTag = new double[] { virtualTime };
+                lastFinishTags.put(request.tenant, lastFinishTag);
+                queuedByTenant.put(request.tenant, new int[1]);
+            }
+            request.startTag = Math.max(virtualTime, lastFinishTag[0]);
+            request.finishTag = request.startTag + 1 / weight;
+            lastFinishTag[0] = request.finishTag;
+            queuedByTenant.get(request.tenant)[0]++;
+            requests.add(request);
+        }
+
+        Request poll() {
+            Request request = requests.poll();
+            virtualTime = Math.max(virtualTime, request.startTag);
+            removed(request);
+            return request;
+        }
+
+        boolean remove(Request request) {
+            if(!requests.remove(request)) {
+                return false;
+            }
+            removed(request);
+            return true;
+        }
+
+        private void removed(Request request) {
+            int[] queued = queuedByTenant.get(request.tenant);
+            if(--queued[0] == 0) {
+                queuedByTenant.remove(request.tenant);
+                lastFinishTags.remove(request.tenant);
+            }
+        }
+    }
+}
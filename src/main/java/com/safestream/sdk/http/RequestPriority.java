@@ -0,0 +1,49 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+/**
+ * How urgently a request to SafeStream is needed. See {@link RequestDispatcher}
+ *
+ * When more requests are waiting than may be in flight, waiting requests of a higher priority are always sent first. Bulk requests are also kept out of the few slots reserved for interactive requests, so a large batch cannot hold every slot when a viewer is waiting.
+ */
+public enum RequestPriority {
+
+    /**
+     * Someone is waiting for the result, for example a single viewer's watermark
+     */
+    INTERACTIVE,
+
+    /**
+     * The default for requests that do not say how urgent they are
+     */
+    NORMAL,
+
+    /**
+     * Background work that can use whatever capacity is left, for example a batch of watermarks for thousands of recipients
+     */
+    BULK
+}
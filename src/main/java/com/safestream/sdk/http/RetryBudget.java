@@ -0,0 +1,80 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that limits retries to a fraction of requests. Every request adds a fraction of a token, up to the burst size, and every retry takes a whole token. When the bucket is empty failures are returned to the caller instead of being retried.
+ */
+class RetryBudget {
+
+    /**
+     * Tokens are counted in thousandths so they can be added in fractions
+     */
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private final AtomicLong balance;
+
+    RetryBudget(RetryPolicy retryPolicy) {
+        this.deposit = (long) (retryPolicy.getRetryBudgetRatio() * SCALE);
+        this.capacity = retryPolicy.getRetryBudgetBurst() * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * Records a request
+     */
+    void deposit() {
+        while(true) {
+            long current = balance.get();
+            long next = Math.min(capacity, current + deposit);
+            if(next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes a token for a retry
+     * @return true if the retry may be made
+     */
+    boolean tryAcquire() {
+        while(true) {
+            long current = balance.get();
+            if(current < SCALE) {
+                return false;
+            }
+            if(balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
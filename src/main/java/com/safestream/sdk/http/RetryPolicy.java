@@ -0,0 +1,237 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls how {@link SafeStreamHttpClient} retries requests that fail for transient reasons.
+ *
+ * A request is retried when no response was received or SafeStream answered with a 429 or a 5xx status. Requests that are not idempotent, such as creating a video or a watermark, are only retried when SafeStream is known not to have processed them: when the connection could not be opened or the request was rejected with a 429.
+ *
+ * Retries wait using decorrelated jitter, so that many clients failing at once do not retry in lock step. A Retry-After header sent by SafeStream is honored. All clients sharing a {@link SafeStreamHttpResources} also share a retry budget, which stops retries from growing beyond a fraction of the requests being made while SafeStream is struggling.
+ *
+ * <code>
+ *
+ *     new SafeStreamHttpClientConfiguration()
+ *          .withRetryPolicy(new RetryPolicy()
+ *              .withMaxAttempts(5)
+ *              .withMaxDelayMillis(20000));
+ *
+ * </code>
+ */
+public class RetryPolicy {
+
+    /**
+     * Total number of attempts made for a request, including the first
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * Minimum wait in millis before a retry
+     */
+    private long baseDelayMillis = 100;
+
+    /**
+     * Maximum wait in millis before a retry. A request is not retried if SafeStream asks for a longer wait in a Retry-After header.
+     */
+    private long maxDelayMillis = 10000;
+
+    /**
+     * Retries allowed per request made, once the burst allowance has been used up. 0.1 lets retries add at most 10% to the load on SafeStream.
+     */
+    private double retryBudgetRatio = 0.1;
+
+    /**
+     * Number of retries that can be made in a burst before the budget ratio applies
+     */
+    private int retryBudgetBurst = 10;
+
+    public RetryPolicy() { }
+
+    /**
+     * A policy that never retries
+     * @return A new policy
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy().withMaxAttempts(1);
+    }
+
+    /**
+     * Fluent setter for maxAttempts
+     * @param maxAttempts
+     * @return this
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Fluent setter for baseDelayMillis
+     * @param baseDelayMillis
+     * @return this
+     */
+    public RetryPolicy withBaseDelayMillis(long baseDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for maxDelayMillis
+     * @param maxDelayMillis
+     * @return this
+     */
+    public RetryPolicy withMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for retryBudgetRatio
+     * @param retryBudgetRatio
+     * @return this
+     */
+    public RetryPolicy withRetryBudgetRatio(double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+        return this;
+    }
+
+    /**
+     * Fluent setter for retryBudgetBurst
+     * @param retryBudgetBurst
+     * @return this
+     */
+    public RetryPolicy withRetryBudgetBurst(int retryBudgetBurst) {
+        this.retryBudgetBurst = retryBudgetBurst;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    public int getRetryBudgetBurst() {
+        return retryBudgetBurst;
+    }
+
+    /**
+     * If a failed request may be sent again
+     * @param e The failure
+     * @param idempotent If sending the request twice has the same effect as sending it once
+     * @return true if the request can be retried
+     */
+    boolean isRetryable(SafeStreamHttpClientException e, boolean idempotent) {
+        int status = e.getHttpStatus();
+        if(status == 429) {
+            return true;
+        }
+        if(status >= 500) {
+            return idempotent && status != 501;
+        }
+        if(status != 0) {
+            return false;
+        }
+
+        // No response was received
+        IOException cause = findIOException(e);
+        if(cause == null || cause instanceof UnknownHostException || cause instanceof SSLException) {
+            return false;
+        }
+        return idempotent || cause instanceof ConnectException || cause instanceof ConnectTimeoutException;
+    }
+
+    /**
+     * Picks how long to wait before the next retry. The wait is a random time between the base delay and three times the previous wait, capped at the max delay, and never shorter than a Retry-After sent by SafeStream.
+     * @param previousDelayMillis The wait before the previous retry or 0 before the first retry
+     * @param e The failure
+     * @return The wait in millis or -1 if SafeStream asked for a wait longer than the max delay
+     */
+    long nextDelayMillis(long previousDelayMillis, SafeStreamHttpClientException e) {
+        long upper = Math.max(baseDelayMillis, previousDelayMillis * 3);
+        long delay = Math.min(maxDelayMillis, baseDelayMillis + (long) (ThreadLocalRandom.current().nextDouble() * (upper - baseDelayMillis)));
+
+        long retryAfterMillis = e.getRetryAfterMillis();
+        if(retryAfterMillis > maxDelayMillis) {
+            return -1;
+        }
+        return Math.max(delay, retryAfterMillis);
+    }
+
+    static boolean isIdempotent(HttpRequest request) {
+        String method = request.getRequestLine().getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method) || "PUT".equals(method) || "DELETE".equals(method);
+    }
+
+    /**
+     * Parses a Retry-After header, which is either a number of seconds or an HTTP date
+     * @param value The header value
+     * @return The wait in millis or -1 if there is no valid value
+     */
+    static long parseRetryAfter(String value) {
+        if(value == null) {
+            return -1;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value.trim());
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    static IOException findIOException(Throwable e) {
+        for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if(cause instanceof IOException) {
+                return (IOException) cause;
+            }
+        }
+        return null;
+    }
+}
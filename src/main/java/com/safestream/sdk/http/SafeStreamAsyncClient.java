@@ -0,0 +1,402 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking counterpart to {@link SafeStreamHttpClient}.
+ *
+ * Requests are sent on a small, fixed set of I/O threads and return immediately with a future. A caller can either block on the future or register a callback, which runs on an I/O thread and so must not block.
+ *
+ * The async client shares the auth token, connection settings and serializer of the SafeStreamHttpClient it is created from. Requests never block the calling thread. When no usable auth token is cached, one is fetched on the blocking executor of the {@link SafeStreamHttpResources} before the request is sent.
+ *
+ * Requests are sent with the client's {@link RequestPriority}, NORMAL unless the client was made with {@link #withPriority(RequestPriority)}. When more requests are waiting than may be in flight, the {@link RequestDispatcher} queues them without blocking and sends them in priority order.
+ */
+public class SafeStreamAsyncClient {
+
+    /**
+     * Provides the auth token, resource URLs and response handling
+     */
+    private final SafeStreamHttpClient safeStreamHttpClient;
+
+    private final RequestPriority priority;
+
+    public SafeStreamAsyncClient(SafeStreamHttpClient safeStreamHttpClient) {
+        this(safeStreamHttpClient, RequestPriority.NORMAL);
+    }
+
+    /**
+     * @param safeStreamHttpClient The client to share the auth token and connections of
+     * @param priority The priority requests are sent with {@link RequestPriority}
+     */
+    public SafeStreamAsyncClient(SafeStreamHttpClient safeStreamHttpClient, RequestPriority priority) {
+        this.safeStreamHttpClient = safeStreamHttpClient;
+        this.priority = priority;
+    }
+
+    /**
+     * An async client that sends its requests with a different priority. It shares everything else with this client.
+     * @param priority {@link RequestPriority}
+     * @return This client if it already has the priority, otherwise a new client
+     */
+    public SafeStreamAsyncClient withPriority(RequestPriority priority) {
+        return priority == this.priority ? this : new SafeStreamAsyncClient(safeStreamHttpClient, priority);
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * HTTP post to a given SafeStream resource
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param body An optional payload. It will be serialized to JSON
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> post(String resource, Object body, FutureCallback<SafeStreamHttpResponse> callback) {
+        return post(resource, body, null, callback);
+    }
+
+    /**
+     * HTTP post to a given SafeStream resource. The response body is decoded into the entity type as it is read, see {@link SafeStreamHttpResponse#getEntity(Type)}
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param body An optional payload. It will be serialized to JSON
+     * @param entityType The type to decode the response body into
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> post(String resource, Object body, Type entityType, FutureCallback<SafeStreamHttpResponse> callback) {
+        String json = body != null ? safeStreamHttpClient.getResources().getJsonCodec().toJson(body) : null;
+        return executeWithRetries(createPost(safeStreamHttpClient.getResourceUrl(resource), json), entityType, callback);
+    }
+
+    /**
+     * HTTP post to a given URL
+     * @param url The full URL for the request
+     * @param body An optional payload
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> postEndpoint(String url, String body, FutureCallback<SafeStreamHttpResponse> callback) {
+        return executeWithRetries(createPost(url, body), null, callback);
+    }
+
+    /**
+     * HTTP get from a given SafeStream resource
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> get(String resource, FutureCallback<SafeStreamHttpResponse> callback) {
+        return getEndpoint(safeStreamHttpClient.getResourceUrl(resource), null, callback);
+    }
+
+    /**
+     * HTTP get from a given SafeStream resource. The response body is decoded into the entity type as it is read, see {@link SafeStreamHttpResponse#getEntity(Type)}
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param entityType The type to decode the response body into
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> get(String resource, Type entityType, FutureCallback<SafeStreamHttpResponse> callback) {
+        return getEndpoint(safeStreamHttpClient.getResourceUrl(resource), entityType, callback);
+    }
+
+    /**
+     * HTTP get from a given URL
+     * @param url The full URL for the request
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> getEndpoint(String url, FutureCallback<SafeStreamHttpResponse> callback) {
+        return getEndpoint(url, null, callback);
+    }
+
+    /**
+     * HTTP get from a given URL. The response body is decoded into the entity type as it is read, see {@link SafeStreamHttpResponse#getEntity(Type)}
+     *
+     * Identical requests made at the same time, including from the blocking client, share one HTTP call. Each request receives a response of its own, with the entity decoded from the shared body for that request. Cancelling the returned future only cancels the HTTP call if every request sharing it has been cancelled.
+     *
+     * @param url The full URL for the request
+     * @param entityType The type to decode the response body into
+     * @param callback An optional callback notified when the request completes
+     * @return A future response
+     */
+    public Future<SafeStreamHttpResponse> getEndpoint(final String url, final Type entityType, FutureCallback<SafeStreamHttpResponse> callback) {
+        return safeStreamHttpClient.getGetsInFlight().execute(SafeStreamHttpClient.getKey(url, entityType), callback, new SingleFlight.Call<SafeStreamHttpResponse>() {
+            @Override
+            public Future<?> start(FutureCallback<SafeStreamHttpResponse> flight) {
+                return executeWithRetries(new HttpGet(url), safeStreamHttpClient.sharedBody(entityType), flight);
+            }
+        });
+    }
+
+    /**
+     * The scheduler shared with the blocking client. Use it to schedule follow up requests, such as status polls, rather than sleeping. Tasks must not block.
+     * @return The shared scheduler
+     */
+    public ScheduledExecutorService getScheduler() {
+        return safeStreamHttpClient.getResources().getScheduler();
+    }
+
+    /**
+     * The executor shared with the blocking client for work that may block, such as reading requests supplied by the caller. Use it rather than the scheduler for anything that may block.
+     * @return The blocking executor. It rejects tasks once the client has been closed.
+     */
+    public Executor getBlockingExecutor() {
+        return safeStreamHttpClient.getResources().getBlockingExecutor();
+    }
+
+    /**
+     * Runs a task once the client this async client shares is closed. See {@link SafeStreamHttpClient#addCloseListener(Runnable)}
+     * @param listener The task
+     */
+    public void addCloseListener(Runnable listener) {
+        safeStreamHttpClient.addCloseListener(listener);
+    }
+
+    public void removeCloseListener(Runnable listener) {
+        safeStreamHttpClient.removeCloseListener(listener);
+    }
+
+    /**
+     * Executes a request, retrying transient failures according to the {@link RetryPolicy}. Retries are started from the scheduler after the retry delay rather than by sleeping on an I/O thread.
+     */
+    private Future<SafeStreamHttpResponse> executeWithRetries(HttpRequestBase request, Type entityType, FutureCallback<SafeStreamHttpResponse> callback) {
+        BasicFuture<SafeStreamHttpResponse> future = new BasicFuture<SafeStreamHttpResponse>(callback);
+        safeStreamHttpClient.getResources().getRetryBudget().deposit();
+        executeRateLimited(request, entityType, future, 1, 0, true);
+        return future;
+    }
+
+    /**
+     * Reserves a rate limit permit for an attempt and dispatches it once the permit may be used. The attempt only asks the {@link RequestDispatcher} for a slot after that, so a throttled tenant never holds slots that other tenants could use. Attempts that have to wait are started later so no thread is blocked.
+     */
+    private void executeRateLimited(final HttpRequestBase request, final Type entityType, final BasicFuture<SafeStreamHttpResponse> future,
+                                    final int attempt, final long previousDelayMillis, final boolean reauthenticate) {
+        RateLimiter rateLimiter = safeStreamHttpClient.getRateLimiter(request);
+        long waitNanos = rateLimiter != null ? rateLimiter.reserve() : 0;
+        if(waitNanos <= 0) {
+            dispatch(request, entityType, future, attempt, previousDelayMillis, reauthenticate);
+            return;
+        }
+
+        schedule(future, waitNanos, TimeUnit.NANOSECONDS, new Runnable() {
+            @Override
+            public void run() {
+                dispatch(request, entityType, future, attempt, previousDelayMillis, reauthenticate);
+            }
+        });
+    }
+
+    /**
+     * Starts an attempt once the {@link RequestDispatcher} has a slot for it. The slot is held until the attempt completes, and released before any retry is scheduled.
+     */
+    private void dispatch(final HttpRequestBase request, final Type entityType, final BasicFuture<SafeStreamHttpResponse> future,
+                          final int attempt, final long previousDelayMillis, final boolean reauthenticate) {
+        safeStreamHttpClient.getRequestDispatcher().dispatch(priority, safeStreamHttpClient.getTenant(), new Runnable() {
+            @Override
+            public void run() {
+                executeAuthenticated(request, entityType, future, attempt, previousDelayMillis, reauthenticate);
+            }
+        });
+    }
+
+    /**
+     * Executes a request with a bearer token. If SafeStream rejects the token with a 401 the token is discarded and the request is retried once with a fresh token.
+     *
+     * The {@link RequestDispatcher} may run this on the thread that asked for the slot, which can be an I/O thread or the scheduler. Fetching a token blocks, so when no usable token is cached the slot is given back, the token is fetched on the blocking executor and the attempt is dispatched again from there.
+     */
+    private void executeAuthenticated(final HttpRequestBase request, final Type entityType, final BasicFuture<SafeStreamHttpResponse> future,
+                                      final int attempt, final long previousDelayMillis, final boolean reauthenticate) {
+        final RequestDispatcher requestDispatcher = safeStreamHttpClient.getRequestDispatcher();
+        if(future.isCancelled()) {
+            requestDispatcher.release();
+            return;
+        }
+
+        final String token = safeStreamHttpClient.getCachedAuthToken();
+        if(token == null) {
+            requestDispatcher.release();
+            schedule(future, 0, TimeUnit.MILLISECONDS, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        safeStreamHttpClient.getAuthToken();
+                    } catch (SafeStreamHttpClientException e) {
+                        future.failed(e);
+                        return;
+                    }
+                    dispatch(request, entityType, future, attempt, previousDelayMillis, reauthenticate);
+                }
+            });
+            return;
+        }
+
+        final RateLimiter rateLimiter = safeStreamHttpClient.getRateLimiter(request);
+        execute(request, token, entityType, new ChainedFutureCallback<SafeStreamHttpResponse, SafeStreamHttpResponse>(future) {
+            @Override
+            public void completed(SafeStreamHttpResponse result) {
+                requestDispatcher.release();
+                super.completed(result);
+            }
+
+            @Override
+            protected SafeStreamHttpResponse convert(SafeStreamHttpResponse result) {
+                SafeStreamHttpClient.onSuccess(rateLimiter);
+                return result;
+            }
+
+            @Override
+            public void cancelled() {
+                requestDispatcher.release();
+                super.cancelled();
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                requestDispatcher.release();
+                SafeStreamHttpClientException e = (SafeStreamHttpClientException) ex;
+                SafeStreamHttpClient.onFailure(rateLimiter, e);
+                if(reauthenticate && e.getHttpStatus() == 401) {
+                    safeStreamHttpClient.invalidateAuthToken(token);
+                    schedule(future, 0, TimeUnit.MILLISECONDS, new Runnable() {
+                        @Override
+                        public void run() {
+                            executeRateLimited(request, entityType, future, attempt, previousDelayMillis, false);
+                        }
+                    });
+                    return;
+                }
+
+                final long delayMillis = safeStreamHttpClient.getRetryDelayMillis(attempt, previousDelayMillis, e, RetryPolicy.isIdempotent(request));
+                if(delayMillis < 0) {
+                    future.failed(e);
+                    return;
+                }
+                schedule(future, delayMillis, TimeUnit.MILLISECONDS, new Runnable() {
+                    @Override
+                    public void run() {
+                        executeRateLimited(request, entityType, future, attempt + 1, delayMillis, reauthenticate);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts a task on the blocking executor after a delay, because it may fetch an auth token. If the client has been closed the future fails instead.
+     */
+    private void schedule(BasicFuture<SafeStreamHttpResponse> future, long delay, TimeUnit unit, Runnable task) {
+        try {
+            safeStreamHttpClient.getResources().scheduleBlocking(task, delay, unit);
+        } catch (RejectedExecutionException e) {
+            // The client has been closed
+            future.failed(new SafeStreamHttpClientException(e));
+        }
+    }
+
+    /**
+     * Sends a request through the circuit breaker. See {@link CircuitBreaker}
+     */
+    private void execute(HttpRequestBase request, String token, final Type entityType, final FutureCallback<SafeStreamHttpResponse> callback) {
+        final CircuitBreaker circuitBreaker = safeStreamHttpClient.getResources().getCircuitBreaker();
+        try {
+            circuitBreaker.acquirePermission();
+        } catch (CircuitBreakerOpenException e) {
+            callback.failed(e);
+            return;
+        }
+
+        // Bearer authorization header for JWT
+        request.setHeader("Authorization", String.format("Bearer %s", token));
+
+        final long start = System.nanoTime();
+        try {
+            safeStreamHttpClient.getResources().getAsyncHttpClient().execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    SafeStreamHttpResponse safeStreamHttpResponse;
+                    try {
+                        safeStreamHttpResponse = safeStreamHttpClient.readResponse(response, entityType);
+                    } catch (SafeStreamHttpClientException e) {
+                        circuitBreaker.onResult(System.nanoTime() - start, e);
+                        callback.failed(e);
+                        return;
+                    }
+                    circuitBreaker.onResult(System.nanoTime() - start, null);
+                    callback.completed(safeStreamHttpResponse);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    SafeStreamHttpClientException e = ex instanceof SafeStreamHttpClientException ? (SafeStreamHttpClientException) ex : new SafeStreamHttpClientException(ex);
+                    circuitBreaker.onResult(System.nanoTime() - start, e);
+                    callback.failed(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    circuitBreaker.releasePermission();
+                    callback.cancelled();
+                }
+            });
+        } catch (IOException e) {
+            circuitBreaker.releasePermission();
+            callback.failed(new SafeStreamHttpClientException(e));
+        } catch (IllegalStateException e) {
+            // Thrown when the async client has already been closed
+            circuitBreaker.releasePermission();
+            callback.failed(new SafeStreamHttpClientException(e));
+        }
+    }
+
+    private static HttpPost createPost(String url, String body) {
+        HttpPost httppost = new HttpPost(url);
+        if (body != null) {
+            // SafeStream communicates in JSON
+            httppost.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        }
+        return httppost;
+    }
+}
@@ -24,22 +24,36 @@
 
 package com.safestream.sdk.http;
 
-import com.google.gson.GsonBuilder;
 import com.safestream.sdk.Protocol;
+import com.safestream.sdk.json.JsonCodecException;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-public class SafeStreamHttpClient {
+public class SafeStreamHttpClient implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     /**
      * HTTP, HTTPS
@@ -61,17 +75,86 @@ public class SafeStreamHttpClient {
      */
     private String apiKey;
 
-    private static String authToken;
+    /**
+     * Connection pool, scheduler and serializer. These may be shared with other clients. See {@link SafeStreamHttpResources}
+     */
+    private SafeStreamHttpResources resources;
+
+    /**
+     * If this client created its resources itself, and so must close them
+     */
+    private boolean ownsResources;
+
+    /**
+     * Pooled HTTP client used for every request that isn't given an explicit client
+     */
+    private CloseableHttpClient httpClient;
+
+    /**
+     * Caches and refreshes the auth token for this client's API key
+     */
+    private AuthTokenManager authTokenManager;
+
+    /**
+     * Client side rate limiters by resource, created the first time a limited resource is requested
+     */
+    private final ConcurrentHashMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<String, RateLimiter>();
+
+    /**
+     * GET requests in flight, so that identical requests made at the same time share one HTTP call
+     */
+    private final SingleFlight<String, SafeStreamHttpResponse> getsInFlight = new SingleFlight<String, SafeStreamHttpResponse>(new SingleFlight.Copier<SafeStreamHttpResponse>() {
+        @Override
+        public SafeStreamHttpResponse copy(SafeStreamHttpResponse response) throws SafeStreamHttpClientException {
+            try {
+                return response.copy();
+            } catch (IOException e) {
+                throw new SafeStreamHttpClientException(e);
+            } catch (JsonCodecException e) {
+                throw new SafeStreamHttpClientException(e);
+            }
+        }
+    });
+
+    /**
+     * Run once when the client is closed, see {@link #addCloseListener(Runnable)}
+     */
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<Runnable>();
+
+    private volatile boolean closed;
 
     protected SafeStreamHttpClient() {
-        this.protocol = Protocol.HTTP;
-        this.hostName = "api.safestream.com";
-        this.version = "0.1";
+        this(null, new SafeStreamHttpClientConfiguration());
     }
 
     public SafeStreamHttpClient(String apiKey) {
-        this();
+        this(apiKey, new SafeStreamHttpClientConfiguration());
+    }
+
+    public SafeStreamHttpClient(String apiKey, SafeStreamHttpClientConfiguration configuration) {
+        this(apiKey, new SafeStreamHttpResources(configuration));
+        this.ownsResources = true;
+    }
+
+    /**
+     * Creates a client that uses resources shared with other clients. Closing this client will not close the shared resources.
+     * @param apiKey SafeStream API key
+     * @param resources {@link SafeStreamHttpResources}
+     */
+    public SafeStreamHttpClient(String apiKey, SafeStreamHttpResources resources) {
+        SafeStreamHttpClientConfiguration configuration = resources.getConfiguration();
         this.apiKey = apiKey;
+        this.protocol = configuration.getProtocol();
+        this.hostName = configuration.getHostName();
+        this.version = configuration.getVersion();
+        this.resources = resources;
+        this.httpClient = resources.getHttpClient();
+        this.authTokenManager = new AuthTokenManager(new AuthTokenManager.TokenSource() {
+            @Override
+            public String requestAuthToken() throws SafeStreamHttpClientException {
+                return SafeStreamHttpClient.this.requestAuthToken();
+            }
+        }, resources, configuration.getTokenRefreshAheadMillis());
     }
 
     /**
@@ -95,7 +178,7 @@ public class SafeStreamHttpClient {
      * @throws SafeStreamHttpClientException
      */
     public SafeStreamHttpResponse post(String resource, String body) throws SafeStreamHttpClientException {
-        return post(resource, body, HttpClients.createDefault());
+        return executePost(getResourceUrl(resource), body, null, this.httpClient, RequestPriority.NORMAL);
     }
 
     /**
@@ -106,7 +189,32 @@ public class SafeStreamHttpClient {
      * @throws SafeStreamHttpClientException
      */
     public SafeStreamHttpResponse post(String resource, Object body) throws SafeStreamHttpClientException {
-        return post(resource, new GsonBuilder().create().toJson(body), HttpClients.createDefault());
+        return post(resource, resources.getJsonCodec().toJson(body));
+    }
+
+    /**
+     * HTTP post to a given SafeStream resource. The response body is decoded into the entity type as it is read, see {@link SafeStreamHttpResponse#getEntity(Type)}
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param body An optional payload
+     * @param entityType The type to decode the response body into
+     * @return A response object
+     * @throws SafeStreamHttpClientException
+     */
+    public SafeStreamHttpResponse post(String resource, Object body, Type entityType) throws SafeStreamHttpClientException {
+        return post(resource, body, entityType, RequestPriority.NORMAL);
+    }
+
+    /**
+     * HTTP post to a given SafeStream resource with a priority. See {@link RequestDispatcher}
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param body An optional payload
+     * @param entityType The type to decode the response body into
+     * @param priority {@link RequestPriority}
+     * @return A response object
+     * @throws SafeStreamHttpClientException
+     */
+    public SafeStreamHttpResponse post(String resource, Object body, Type entityType, RequestPriority priority) throws SafeStreamHttpClientException {
+        return executePost(getResourceUrl(resource), resources.getJsonCodec().toJson(body), entityType, this.httpClient, priority);
     }
 
     /**
@@ -118,27 +226,27 @@ public class SafeStreamHttpClient {
      * @throws SafeStreamHttpClientException
      */
     public SafeStreamHttpResponse postEndpoint(String url, String body, CloseableHttpClient httpClient) throws SafeStreamHttpClientException {
+        try {
+            return executePost(url, body, null, httpClient, RequestPriority.NORMAL);
+        } finally {
+            tryCloseHttpClient(httpClient);
+        }
+    }
 
+    private SafeStreamHttpResponse executePost(String url, String body, Type entityType, CloseableHttpClient httpClient, RequestPriority priority) throws SafeStreamHttpClientException {
         try {
             HttpPost httppost = new HttpPost(url);
 
-            // Bearer authorization header for JWT
-            httppost.addHeader("Authorization", String.format("Bearer %s", getAuthToken()));
-
             // SafeStream communicates in JSON
             httppost.addHeader("Content-Type", "application/json");
             if (body != null) {
                 httppost.setEntity(new StringEntity(body));
             }
 
-            CloseableHttpResponse response = httpClient.execute(httppost);
-            return handleResponse(response);
+            return executeWithRetries(httppost, entityType, httpClient, priority);
         } catch (IOException e) {
             throw new SafeStreamHttpClientException(e);
-        } finally {
-            tryCloseHttpClient(httpClient);
         }
-
     }
 
     /**
@@ -159,7 +267,18 @@ public class SafeStreamHttpClient {
      * @throws SafeStreamHttpClientException
      */
     public SafeStreamHttpResponse get(String url) throws SafeStreamHttpClientException {
-        return get(url, HttpClients.createDefault());
+        return executeGet(getResourceUrl(url), null, this.httpClient);
+    }
+
+    /**
+     * HTTP get from a given SafeStream resource. The response body is decoded into the entity type as it is read, see {@link SafeStreamHttpResponse#getEntity(Type)}
+     * @param resource The SafeStream resource. This is the relative API path. For example, "videos" or "watermark"
+     * @param entityType The type to decode the response body into
+     * @return A response object
+     * @throws SafeStreamHttpClientException
+     */
+    public SafeStreamHttpResponse get(String resource, Type entityType) throws SafeStreamHttpClientException {
+        return executeGet(getResourceUrl(resource), entityType, this.httpClient);
     }
 
     /**
@@ -169,7 +288,18 @@ public class SafeStreamHttpClient {
      * @throws SafeStreamHttpClientException
      */
     public SafeStreamHttpResponse getEndpoint(String url) throws SafeStreamHttpClientException {
-        return getEndpoint(url, HttpClients.createDefault());
+        return executeGet(url, null, this.httpClient);
+    }
+
+    /**
+     * HTTP get from a given URL. The response body is decoded into the entity type as it is read, see {@link SafeStreamHttpResponse#getEntity(Type)}
+     * @param url The full URL for the request
+     * @param entityType The type to decode the response body into
+     * @return A response object
+     * @throws SafeStreamHttpClientException
+     */
+    public SafeStreamHttpResponse getEndpoint(String url, Type entityType) throws SafeStreamHttpClientException {
+        return executeGet(url, entityType, this.httpClient);
     }
 
     /**
@@ -180,25 +310,306 @@ public class SafeStreamHttpClient {
      * @throws SafeStreamHttpClientException
      */
     public SafeStreamHttpResponse getEndpoint(String url, CloseableHttpClient httpClient) throws SafeStreamHttpClientException {
+        try {
+            return executeGet(url, null, httpClient);
+        } finally {
+            tryCloseHttpClient(httpClient);
+        }
+    }
+
+    /**
+     * Executes a GET request. Identical requests made on the shared client at the same time share one HTTP call. Each caller receives a response of its own, with the entity decoded from the shared body for that caller.
+     */
+    private SafeStreamHttpResponse executeGet(final String url, final Type entityType, final CloseableHttpClient httpClient) throws SafeStreamHttpClientException {
+        if(httpClient != this.httpClient) {
+            return executeWithRetries(new HttpGet(url), entityType, httpClient, RequestPriority.NORMAL);
+        }
+
+        BlockingCallback<SafeStreamHttpResponse> waiter = new BlockingCallback<SafeStreamHttpResponse>();
+        Future<SafeStreamHttpResponse> future = getsInFlight.execute(getKey(url, entityType), waiter, new SingleFlight.Call<SafeStreamHttpResponse>() {
+            @Override
+            public Future<?> start(FutureCallback<SafeStreamHttpResponse> callback) {
+                try {
+                    callback.completed(executeWithRetries(new HttpGet(url), sharedBody(entityType), httpClient, RequestPriority.NORMAL));
+                } catch (SafeStreamHttpClientException e) {
+                    callback.failed(e);
+                }
+                return null;
+            }
+        });
 
         try {
-            HttpGet httpget = new HttpGet(url);
+            return waiter.get(future);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SafeStreamHttpClientException("Thread interrupted while waiting for a response", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof SafeStreamHttpClientException) {
+                throw (SafeStreamHttpClientException) e.getCause();
+            }
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SafeStreamHttpClientException(e.getCause());
+        }
+    }
+
+    /**
+     * GET requests in flight, shared by the blocking and non-blocking clients
+     */
+    SingleFlight<String, SafeStreamHttpResponse> getGetsInFlight() {
+        return getsInFlight;
+    }
+
+    /**
+     * Identifies identical GET requests. Every caller sharing a request decodes its body into the same type, so requests decoded into different types are not identical.
+     */
+    static String getKey(String url, Type entityType) {
+        return entityType != null ? url + " " + entityType : url;
+    }
+
+    /**
+     * The entity type to read a shared GET response with, so that its body is kept for each caller to decode
+     */
+    SafeStreamHttpResponse.SharedBody sharedBody(Type entityType) {
+        return new SafeStreamHttpResponse.SharedBody(entityType, resources.getConfiguration().isRetainResponseBody());
+    }
+
+    /**
+     * Executes a request, retrying transient failures according to the {@link RetryPolicy}. Each attempt first waits for a rate limit permit and only then for a slot from the {@link RequestDispatcher}, so a throttled tenant never holds slots that other tenants could use. The slot is held until the attempt completes, but not while waiting to retry.
+     */
+    private SafeStreamHttpResponse executeWithRetries(HttpRequestBase request, Type entityType, CloseableHttpClient httpClient, RequestPriority priority) throws SafeStreamHttpClientException {
+        boolean idempotent = RetryPolicy.isIdempotent(request);
+        RateLimiter rateLimiter = getRateLimiter(request);
+        RequestDispatcher requestDispatcher = resources.getRequestDispatcher();
+        resources.getRetryBudget().deposit();
+
+        long delayMillis = 0;
+        for(int attempt = 1; ; attempt++) {
+            // Token requests are retried on their own so a failure to get a token is not retried again here
+            String token = authTokenManager.getToken();
+            acquirePermit(rateLimiter);
+            acquireSlot(requestDispatcher, priority);
+            SafeStreamHttpClientException failure;
+            try {
+                SafeStreamHttpResponse response = executeAuthenticated(request, token, entityType, httpClient);
+                onSuccess(rateLimiter);
+                return response;
+            } catch (SafeStreamHttpClientException e) {
+                onFailure(rateLimiter, e);
+                failure = e;
+            } finally {
+                requestDispatcher.release();
+            }
+
+            delayMillis = getRetryDelayMillis(attempt, delayMillis, failure, idempotent);
+            if(delayMillis < 0) {
+                throw failure;
+            }
+            sleepBeforeRetry(delayMillis, failure);
+        }
+    }
+
+    /**
+     * Decides if a failed attempt is retried and how long to wait first. A retry uses up part of the shared retry budget.
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @param previousDelayMillis The wait before the failed attempt or 0 if it was the first attempt
+     * @param e The failure
+     * @param idempotent If sending the request twice has the same effect as sending it once
+     * @return The wait in millis or -1 if the failure should be returned to the caller
+     */
+    long getRetryDelayMillis(int attempt, long previousDelayMillis, SafeStreamHttpClientException e, boolean idempotent) {
+        RetryPolicy retryPolicy = resources.getConfiguration().getRetryPolicy();
+        if(attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(e, idempotent)) {
+            return -1;
+        }
 
+        long delayMillis = retryPolicy.nextDelayMillis(previousDelayMillis, e);
+        if(delayMillis < 0 || !resources.getRetryBudget().tryAcquire()) {
+            return -1;
+        }
+        return delayMillis;
+    }
+
+    /**
+     * Gets the client side rate limiter for a resource. Each resource has its own limiter.
+     * @param resource The SafeStream resource. For example, "watermark", "videos" or "token"
+     * @return The limiter or null if the resource is not rate limited
+     */
+    public RateLimiter getRateLimiter(String resource) {
+        RateLimiter rateLimiter = rateLimiters.get(resource);
+        if(rateLimiter == null) {
+            RateLimit rateLimit = resources.getConfiguration().getRateLimit(resource);
+            if(rateLimit == null) {
+                return null;
+            }
+            rateLimiters.putIfAbsent(resource, new RateLimiter(rateLimit.getPermitsPerSecond(), rateLimit.getBurst()));
+            rateLimiter = rateLimiters.get(resource);
+        }
+        return rateLimiter;
+    }
+
+    /**
+     * Gets the rate limiter for the resource a request is sent to. The resource is the first part of the path after the API version, so a watermark status poll counts against "watermark".
+     */
+    RateLimiter getRateLimiter(HttpRequestBase request) {
+        String path = request.getURI().getPath();
+        if(path == null) {
+            return null;
+        }
+
+        String versionPrefix = "/" + version + "/";
+        path = path.startsWith(versionPrefix) ? path.substring(versionPrefix.length()) : path.substring(path.startsWith("/") ? 1 : 0);
+        int end = path.indexOf('/');
+        return getRateLimiter(end < 0 ? path : path.substring(0, end));
+    }
+
+    static void onSuccess(RateLimiter rateLimiter) {
+        if(rateLimiter != null) {
+            rateLimiter.onSuccess();
+        }
+    }
+
+    static void onFailure(RateLimiter rateLimiter, SafeStreamHttpClientException e) {
+        if(rateLimiter != null && e.getHttpStatus() == 429) {
+            rateLimiter.onThrottled(e.getRetryAfterMillis());
+        }
+    }
+
+    private void acquireSlot(RequestDispatcher requestDispatcher, RequestPriority priority) throws SafeStreamHttpClientException {
+        try {
+            requestDispatcher.acquire(priority, apiKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SafeStreamHttpClientException(e);
+        }
+    }
+
+    private static void acquirePermit(RateLimiter rateLimiter) throws SafeStreamHttpClientException {
+        if(rateLimiter == null) {
+            return;
+        }
+
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SafeStreamHttpClientException(e);
+        }
+    }
+
+    private static void sleepBeforeRetry(long delayMillis, SafeStreamHttpClientException e) throws SafeStreamHttpClientException {
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException interrupted) {
+            // Give up on the request and let the caller see the interrupt
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a request with a bearer token. If SafeStream rejects the token with a 401 the token is discarded and the request is retried once with a fresh token.
+     */
+    private SafeStreamHttpResponse executeAuthenticated(HttpRequestBase request, String token, Type entityType, CloseableHttpClient httpClient) throws SafeStreamHttpClientException {
+        try {
+            return execute(request, token, entityType, httpClient);
+        } catch (SafeStreamHttpClientException e) {
+            if(e.getHttpStatus() != 401) {
+                throw e;
+            }
+            authTokenManager.invalidate(token);
+            return execute(request, authTokenManager.getToken(), entityType, httpClient);
+        }
+    }
+
+    /**
+     * Sends a request through the circuit breaker. See {@link CircuitBreaker}
+     */
+    private SafeStreamHttpResponse execute(HttpRequestBase request, String token, Type entityType, CloseableHttpClient httpClient) throws SafeStreamHttpClientException {
+        CircuitBreaker circuitBreaker = resources.getCircuitBreaker();
+        circuitBreaker.acquirePermission();
+
+        long start = System.nanoTime();
+        SafeStreamHttpClientException failure = null;
+        try {
             // Bearer authorization header for JWT
-            httpget.addHeader("Authorization", String.format("Bearer %s", getAuthToken()));
-            CloseableHttpResponse response = httpClient.execute(httpget);
-            return handleResponse(response);
+            request.setHeader("Authorization", String.format("Bearer %s", token));
+            CloseableHttpResponse response = httpClient.execute(request);
+            return handleResponse(response, entityType);
         } catch(IOException e) {
-            throw new SafeStreamHttpClientException(e);
+            failure = new SafeStreamHttpClientException(e);
+            throw failure;
+        } catch(SafeStreamHttpClientException e) {
+            failure = e;
+            throw e;
         } finally {
-            tryCloseHttpClient(httpClient);
+            circuitBreaker.onResult(System.nanoTime() - start, failure);
+        }
+    }
+
+    /**
+     * Stops refreshing this client's auth token and, unless they are shared, closes the connection pool and scheduler. The client cannot be used after it has been closed.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        authTokenManager.close();
+        try {
+            if(ownsResources) {
+                resources.close();
+            }
+        } finally {
+            for(Runnable listener : closeListeners) {
+                closeListeners.remove(listener);
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    // One failing listener must not stop the others being notified
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a task once this client is closed, after its scheduler has been stopped. Use it to fail work that was waiting on the scheduler. The task runs straight away if the client is already closed.
+     * @param listener The task
+     */
+    public void addCloseListener(Runnable listener) {
+        closeListeners.add(listener);
+        if(closed && closeListeners.remove(listener)) {
+            listener.run();
         }
+    }
 
+    public void removeCloseListener(Runnable listener) {
+        closeListeners.remove(listener);
     }
 
-    private SafeStreamHttpResponse handleResponse(CloseableHttpResponse response) throws SafeStreamHttpClientException {
+    private SafeStreamHttpResponse handleResponse(CloseableHttpResponse response, Type entityType) throws SafeStreamHttpClientException {
+        try {
+            return readResponse(response, entityType);
+        } finally {
+            tryCloseHttpResponse(response);
+        }
+    }
+
+    /**
+     * Reads the status and body of a response.
+     *
+     * When an entity type is given, a successful response body is decoded straight from the response stream into that type without first being copied into a string. The raw body is only kept as a string when there is no entity type, when the response has an error status, or when the client is configured to retain response bodies.
+     *
+     * @param response The HTTP response
+     * @param entityType The type to decode the body into or null to keep the raw body
+     * @return A response object
+     * @throws SafeStreamHttpClientException If the body cannot be read or the response has an error status
+     */
+    SafeStreamHttpResponse readResponse(HttpResponse response, Type entityType) throws SafeStreamHttpClientException {
         try {
-            SafeStreamHttpResponse safeStreamHttpResponse = new SafeStreamHttpResponse(response.getStatusLine().getStatusCode());
+            SafeStreamHttpResponse safeStreamHttpResponse = new SafeStreamHttpResponse(response.getStatusLine().getStatusCode(), resources.getJsonCodec());
+            boolean error = safeStreamHttpResponse.getHttpStatus() >= 400;
 
             // Get hold of the response entity
             HttpEntity entity = response.getEntity();
@@ -208,25 +619,41 @@ public class SafeStreamHttpClient {
             if (entity != null) {
                 InputStream responseContent = entity.getContent();
                 try {
-                    safeStreamHttpResponse.setBody(IOUtils.toString(responseContent));
-                    // do something useful with the response
+                    // JSON defaults to UTF-8 when the server does not name a charset
+                    Charset charset = ContentType.getOrDefault(entity).getCharset();
+                    if(charset == null) {
+                        charset = UTF_8;
+                    }
+
+                    if(entityType instanceof SafeStreamHttpResponse.SharedBody && !error) {
+                        // Read as bytes rather than decoded, so that each caller sharing the response can decode its own entity
+                        safeStreamHttpResponse.setSharedContent((SafeStreamHttpResponse.SharedBody) entityType, IOUtils.toByteArray(responseContent), charset);
+                    } else if(entityType == null || error || resources.getConfiguration().isRetainResponseBody()) {
+                        safeStreamHttpResponse.setBody(IOUtils.toString(responseContent, charset.name()));
+                    } else {
+                        safeStreamHttpResponse.setEntity(entityType, resources.getJsonCodec().fromJson(responseContent, charset, entityType));
+                    }
                 } catch (IOException e) {
                     throw new SafeStreamHttpClientException(e);
+                } catch (JsonCodecException e) {
+                    throw new SafeStreamHttpClientException(e);
                 } finally {
                     // Closing the input stream will trigger connection release
                     responseContent.close();
                 }
             }
 
-            if(safeStreamHttpResponse.getHttpStatus() >= 400) {
-                throw new SafeStreamHttpClientException(String.format("Received %s response: %s", safeStreamHttpResponse.getHttpStatus(), safeStreamHttpResponse.getBody()));
+            Header retryAfter = response.getFirstHeader("Retry-After");
+            safeStreamHttpResponse.setRetryAfterMillis(RetryPolicy.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null));
+
+            if(error) {
+                throw new SafeStreamHttpClientException(String.format("Received %s response: %s", safeStreamHttpResponse.getHttpStatus(), safeStreamHttpResponse.getBody()),
+                        safeStreamHttpResponse.getHttpStatus(), safeStreamHttpResponse.getRetryAfterMillis());
             }
 
             return safeStreamHttpResponse;
         } catch(IOException e) {
             throw new SafeStreamHttpClientException(e);
-        } finally {
-            tryCloseHttpResponse(response);
         }
     }
 
@@ -246,34 +673,101 @@ public class SafeStreamHttpClient {
         }
     }
 
-    private String getAuthToken() throws SafeStreamHttpClientException {
-
-        if(SafeStreamHttpClient.authToken == null) {
-            CloseableHttpClient httpClient = HttpClients.createDefault();
-
+    /**
+     * Requests a new auth token for this client's API key. Fetching a token has no side effects so it is retried like a GET.
+     */
+    private String requestAuthToken() throws SafeStreamHttpClientException {
+        HttpPost httppost = new HttpPost(getResourceUrl("token"));
+        httppost.addHeader("x-api-key", this.apiKey);
+        RateLimiter rateLimiter = getRateLimiter("token");
+        resources.getRetryBudget().deposit();
+
+        long delayMillis = 0;
+        for(int attempt = 1; ; attempt++) {
+            acquirePermit(rateLimiter);
             try {
-                HttpPost httppost = new HttpPost(getResourceUrl("token"));
-                httppost.addHeader("x-api-key", this.apiKey);
-                CloseableHttpResponse response = httpClient.execute(httppost);
-                String responseBody = handleResponse(response).getBody();
-                HashMap responseMap = new GsonBuilder().create().fromJson(responseBody, HashMap.class);
-                SafeStreamHttpClient.authToken = responseMap.get("token").toString();
-                return SafeStreamHttpClient.authToken;
-            } catch (IOException e) {
-                throw new SafeStreamHttpClientException(e);
-            } finally {
-                tryCloseHttpClient(httpClient);
+                String token = fetchAuthToken(httppost);
+                onSuccess(rateLimiter);
+                return token;
+            } catch (SafeStreamHttpClientException e) {
+                onFailure(rateLimiter, e);
+                delayMillis = getRetryDelayMillis(attempt, delayMillis, e, true);
+                if(delayMillis < 0) {
+                    throw e;
+                }
+                sleepBeforeRetry(delayMillis, e);
             }
-        } else {
-            return SafeStreamHttpClient.authToken;
         }
     }
 
+    private String fetchAuthToken(HttpPost httppost) throws SafeStreamHttpClientException {
+        CircuitBreaker circuitBreaker = resources.getCircuitBreaker();
+        circuitBreaker.acquirePermission();
+
+        long start = System.nanoTime();
+        SafeStreamHttpClientException failure = null;
+        try {
+            CloseableHttpResponse response = httpClient.execute(httppost);
+            HashMap responseMap = handleResponse(response, HashMap.class).getEntity(HashMap.class);
+            return responseMap.get("token").toString();
+        } catch (IOException e) {
+            failure = new SafeStreamHttpClientException(e);
+            throw failure;
+        } catch (SafeStreamHttpClientException e) {
+            failure = e;
+            throw e;
+        } finally {
+            circuitBreaker.onResult(System.nanoTime() - start, failure);
+        }
+    }
+
+    /**
+     * The circuit breaker in front of the SafeStream API. It is shared with every client using the same {@link SafeStreamHttpResources}.
+     * @return The circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return resources.getCircuitBreaker();
+    }
+
+    /**
+     * Orders requests by priority and shares request slots fairly between API keys. It is shared with every client using the same {@link SafeStreamHttpResources}.
+     * @return The request dispatcher
+     */
+    public RequestDispatcher getRequestDispatcher() {
+        return resources.getRequestDispatcher();
+    }
+
+    SafeStreamHttpResources getResources() {
+        return resources;
+    }
+
+    /**
+     * The tenant this client's requests are dispatched for, see {@link RequestDispatcher}
+     */
+    String getTenant() {
+        return apiKey;
+    }
+
+    String getAuthToken() throws SafeStreamHttpClientException {
+        return authTokenManager.getToken();
+    }
+
+    /**
+     * @return The current auth token, or null if a token would have to be fetched first
+     */
+    String getCachedAuthToken() {
+        return authTokenManager.getCachedToken();
+    }
+
+    void invalidateAuthToken(String token) {
+        authTokenManager.invalidate(token);
+    }
+
     private String getRootUrl() {
         return String.format("%s://%s/%s/", this.protocol, this.hostName, this.version);
     }
 
-    private String getResourceUrl(String resource) {
+    String getResourceUrl(String resource) {
         return String.format("%s%s", getRootUrl(), resource);
     }
 
@@ -0,0 +1,477 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import com.safestream.sdk.Protocol;
+import com.safestream.sdk.json.GsonJsonCodec;
+import com.safestream.sdk.json.JsonCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transport settings for {@link SafeStreamHttpClient}.
+ *
+ * A SafeStreamHttpClient keeps a single pool of connections open to the SafeStream API for its whole lifetime. These settings control how large that pool is and how long idle connections are kept around.
+ */
+public class SafeStreamHttpClientConfiguration {
+
+    /**
+     * HTTP, HTTPS
+     */
+    private Protocol protocol = Protocol.HTTP;
+
+    /**
+     * SafeStream api hostname
+     */
+    private String hostName = "api.safestream.com";
+
+    /**
+     * SafeStream API version
+     */
+    private String version = "0.1";
+
+    /**
+     * Maximum number of open connections across all routes
+     */
+    private int maxConnectionsTotal = 200;
+
+    /**
+     * Maximum number of open connections to a single route. Almost all SDK traffic goes to the one SafeStream API host so this is usually the limit that matters.
+     */
+    private int maxConnectionsPerRoute = 50;
+
+    /**
+     * Time in millis a connection is kept alive when the server does not send a Keep-Alive header
+     */
+    private long keepAliveMillis = 30000;
+
+    /**
+     * Time in millis a pooled connection may sit idle before the background evictor closes it
+     */
+    private long idleConnectionTimeoutMillis = 60000;
+
+    /**
+     * Time in millis of inactivity after which a pooled connection is re-validated before being leased again
+     */
+    private int validateAfterInactivityMillis = 2000;
+
+    /**
+     * Time in millis to wait for a connection to SafeStream to be opened
+     */
+    private int connectTimeoutMillis = 10000;
+
+    /**
+     * Time in millis to wait for data from SafeStream once connected before giving up on the request
+     */
+    private int socketTimeoutMillis = 30000;
+
+    /**
+     * Time in millis to wait for a connection from the pool when every pooled connection is in use
+     */
+    private int connectionRequestTimeoutMillis = 10000;
+
+    /**
+     * Time in millis before an auth token expires at which it is refreshed in the background
+     */
+    private long tokenRefreshAheadMillis = 60000;
+
+    /**
+     * Number of I/O threads used by the non-blocking transport. See {@link SafeStreamAsyncClient}
+     */
+    private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * If background work that may block runs on virtual threads. See {@link VirtualThreads}
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * Maximum number of requests in flight at once, blocking and non-blocking. Requests beyond it wait in priority order, see {@link RequestDispatcher}. 0 uses maxConnectionsPerRoute and a negative number removes the limit.
+     */
+    private int maxRequestsInFlight = 0;
+
+    /**
+     * Requests in flight that bulk requests may not use, so that interactive requests do not wait behind a batch. -1 reserves a tenth of maxRequestsInFlight.
+     */
+    private int reservedInteractiveRequests = -1;
+
+    /**
+     * If response bodies should always be kept as strings, for debugging. By default bodies are decoded straight from the response stream and only kept as strings for error responses.
+     */
+    private boolean retainResponseBody = false;
+
+    /**
+     * Converts requests and responses to and from JSON. See {@link JsonCodec}
+     */
+    private JsonCodec jsonCodec = new GsonJsonCodec();
+
+    /**
+     * How requests that fail for transient reasons are retried. See {@link RetryPolicy}
+     */
+    private RetryPolicy retryPolicy = new RetryPolicy();
+
+    /**
+     * When to stop sending requests to a failing API. See {@link CircuitBreaker}
+     */
+    private CircuitBreakerPolicy circuitBreakerPolicy = new CircuitBreakerPolicy();
+
+    /**
+     * Client side rate limits by resource, for example "watermark" or "videos". Each API key gets its own limiters. See {@link RateLimiter}
+     */
+    private Map<String, RateLimit> rateLimits = new HashMap<String, RateLimit>();
+
+    /**
+     * Rate limit for resources without a limit of their own or null for no limit
+     */
+    private RateLimit defaultRateLimit;
+
+    public SafeStreamHttpClientConfiguration() { }
+
+    /**
+     * Fluent setter for protocol
+     * @param protocol
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withProtocol(Protocol protocol) {
+        this.protocol = protocol;
+        return this;
+    }
+
+    /**
+     * Fluent setter for hostName. Host names may include a port, for example "localhost:8080"
+     * @param hostName
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withHostName(String hostName) {
+        this.hostName = hostName;
+        return this;
+    }
+
+    /**
+     * Fluent setter for version
+     * @param version
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withVersion(String version) {
+        this.version = version;
+        return this;
+    }
+
+    /**
+     * Fluent setter for maxConnectionsTotal
+     * @param maxConnectionsTotal
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+        return this;
+    }
+
+    /**
+     * Fluent setter for maxConnectionsPerRoute
+     * @param maxConnectionsPerRoute
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    /**
+     * Fluent setter for keepAliveMillis
+     * @param keepAliveMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for idleConnectionTimeoutMillis
+     * @param idleConnectionTimeoutMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withIdleConnectionTimeoutMillis(long idleConnectionTimeoutMillis) {
+        this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for validateAfterInactivityMillis
+     * @param validateAfterInactivityMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withValidateAfterInactivityMillis(int validateAfterInactivityMillis) {
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for connectTimeoutMillis
+     * @param connectTimeoutMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for socketTimeoutMillis
+     * @param socketTimeoutMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for connectionRequestTimeoutMillis
+     * @param connectionRequestTimeoutMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withConnectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for tokenRefreshAheadMillis
+     * @param tokenRefreshAheadMillis
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withTokenRefreshAheadMillis(long tokenRefreshAheadMillis) {
+        this.tokenRefreshAheadMillis = tokenRefreshAheadMillis;
+        return this;
+    }
+
+    /**
+     * Fluent setter for ioThreadCount
+     * @param ioThreadCount
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withIoThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+        return this;
+    }
+
+    /**
+     * Fluent setter for virtualThreads. On Java 24 and later, background work that may block, such as fetching an auth token before a retry, runs on a virtual thread instead of a pooled platform thread. Either way it never holds up the scheduler. It has no effect on older versions of Java, where virtual threads pin their carrier thread while HttpClient releases a connection. See {@link VirtualThreads}
+     * @param virtualThreads
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Fluent setter for maxRequestsInFlight
+     * @param maxRequestsInFlight
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withMaxRequestsInFlight(int maxRequestsInFlight) {
+        this.maxRequestsInFlight = maxRequestsInFlight;
+        return this;
+    }
+
+    /**
+     * Fluent setter for reservedInteractiveRequests
+     * @param reservedInteractiveRequests
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withReservedInteractiveRequests(int reservedInteractiveRequests) {
+        this.reservedInteractiveRequests = reservedInteractiveRequests;
+        return this;
+    }
+
+    /**
+     * Fluent setter for retainResponseBody
+     * @param retainResponseBody
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withRetainResponseBody(boolean retainResponseBody) {
+        this.retainResponseBody = retainResponseBody;
+        return this;
+    }
+
+    /**
+     * Fluent setter for jsonCodec
+     * @param jsonCodec
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withJsonCodec(JsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
+        return this;
+    }
+
+    /**
+     * Fluent setter for retryPolicy. Use {@link RetryPolicy#none()} to turn retries off.
+     * @param retryPolicy
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Fluent setter for circuitBreakerPolicy. Use {@link CircuitBreakerPolicy#disabled()} to turn the circuit breaker off.
+     * @param circuitBreakerPolicy
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+        this.circuitBreakerPolicy = circuitBreakerPolicy;
+        return this;
+    }
+
+    /**
+     * Limits how fast requests are sent to a SafeStream resource. Requests over the limit wait for a permit instead of being throttled by SafeStream.
+     * @param resource The SafeStream resource. For example, "watermark", "videos" or "token"
+     * @param permitsPerSecond The steady number of requests per second
+     * @param burst The most requests that can be sent at once after a quiet period
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withRateLimit(String resource, double permitsPerSecond, int burst) {
+        this.rateLimits.put(resource, new RateLimit(permitsPerSecond, burst));
+        return this;
+    }
+
+    /**
+     * Limits how fast requests are sent to any SafeStream resource that does not have a limit of its own. Each resource is still limited separately.
+     * @param permitsPerSecond The steady number of requests per second
+     * @param burst The most requests that can be sent at once after a quiet period
+     * @return this
+     */
+    public SafeStreamHttpClientConfiguration withDefaultRateLimit(double permitsPerSecond, int burst) {
+        this.defaultRateLimit = new RateLimit(permitsPerSecond, burst);
+        return this;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public long getIdleConnectionTimeoutMillis() {
+        return idleConnectionTimeoutMillis;
+    }
+
+    public int getValidateAfterInactivityMillis() {
+        return validateAfterInactivityMillis;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public int getConnectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public long getTokenRefreshAheadMillis() {
+        return tokenRefreshAheadMillis;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return The most requests in flight at once, or 0 or less for no limit
+     */
+    public int getMaxRequestsInFlight() {
+        return maxRequestsInFlight == 0 ? maxConnectionsPerRoute : maxRequestsInFlight;
+    }
+
+    public int getReservedInteractiveRequests() {
+        return reservedInteractiveRequests >= 0 ? reservedInteractiveRequests : Math.max(0, getMaxRequestsInFlight()) / 10;
+    }
+
+    public boolean isRetainResponseBody() {
+        return retainResponseBody;
+    }
+
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public CircuitBreakerPolicy getCircuitBreakerPolicy() {
+        return circuitBreakerPolicy;
+    }
+
+    public Map<String, RateLimit> getRateLimits() {
+        return rateLimits;
+    }
+
+    public RateLimit getDefaultRateLimit() {
+        return defaultRateLimit;
+    }
+
+    /**
+     * Gets the rate limit for a resource
+     * @param resource The SafeStream resource
+     * @return The limit or null if the resource is not limited
+     */
+    public RateLimit getRateLimit(String resource) {
+        RateLimit rateLimit = rateLimits.get(resource);
+        return rateLimit != null ? rateLimit : defaultRateLimit;
+    }
+}
@@ -2,9 +2,30 @@ package com.safestream.sdk.http;
 
 public class SafeStreamHttpClientException extends Exception {
 
+    /**
+     * The HTTP status of the response that caused this exception or 0 if no response was received
+     */
+    private int httpStatus;
+
+    /**
+     * The wait in millis SafeStream asked for in a Retry-After header or -1 if it did not send one
+     */
+    private long retryAfterMillis = -1;
+
     public SafeStreamHttpClientException() {
     }
 
+    public SafeStreamHttpClientException(String message, int httpStatus) {
+        super(message);
+        this.httpStatus = httpStatus;
+    }
+
+    public SafeStreamHttpClientException(String message, int httpStatus, long retryAfterMillis) {
+        super(message);
+        this.httpStatus = httpStatus;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
     public SafeStreamHttpClientException(String message) {
         super(message);
     }
@@ -20,4 +41,12 @@ public class SafeStreamHttpClientException extends Exception {
     public SafeStreamHttpClientException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
         super(message, cause, enableSuppression, writableStackTrace);
     }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
 }
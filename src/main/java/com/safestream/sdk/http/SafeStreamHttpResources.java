@@ -0,0 +1,309 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import com.safestream.sdk.json.JsonCodec;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The expensive, thread safe parts of a {@link SafeStreamHttpClient}: the connection pools, the background scheduler, the JSON codec, the retry budget, the circuit breaker and the request dispatcher.
+ *
+ * A single instance can be shared by any number of SafeStreamHttpClients, for example one per API key, so that adding API keys does not add sockets or threads. Clients never close shared resources. Close the resources once every client using them is done.
+ */
+public class SafeStreamHttpResources implements Closeable {
+
+    private final SafeStreamHttpClientConfiguration configuration;
+
+    /**
+     * Long lived, pooled HTTP client. Connections are reused across requests and only released when these resources are closed.
+     */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * Times background work such as job polls, retries and idle connection eviction. Its one thread must never block, so work that may block is handed to the blocking executor once it is due.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Runs background work that may block, such as auth token refreshes, on virtual threads when they are enabled and available and otherwise on a pool of platform threads
+     */
+    private final ExecutorService blockingExecutor;
+
+    private final boolean virtualThreads;
+
+    private final JsonCodec jsonCodec;
+
+    /**
+     * Limits retries across every client using these resources. See {@link RetryPolicy}
+     */
+    private final RetryBudget retryBudget;
+
+    /**
+     * Fails requests fast while the API is unhealthy, for every client using these resources
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Orders requests by priority and tenant when more are waiting than may be in flight, for every client using these resources
+     */
+    private final RequestDispatcher requestDispatcher;
+
+    /**
+     * Non-blocking HTTP client used by {@link SafeStreamAsyncClient}. It is only started the first time it is needed.
+     */
+    private CloseableHttpAsyncClient asyncHttpClient;
+
+    public SafeStreamHttpResources() {
+        this(new SafeStreamHttpClientConfiguration());
+    }
+
+    public SafeStreamHttpResources(SafeStreamHttpClientConfiguration configuration) {
+        this.configuration = configuration;
+        this.httpClient = createPooledHttpClient(configuration);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("safestream-scheduler"));
+        this.virtualThreads = configuration.isVirtualThreads() && VirtualThreads.isAvailable();
+        this.blockingExecutor = virtualThreads ? VirtualThreads.newExecutor("safestream-virtual") : Executors.newCachedThreadPool(daemonThreadFactory("safestream-blocking"));
+        this.jsonCodec = configuration.getJsonCodec();
+        this.retryBudget = new RetryBudget(configuration.getRetryPolicy());
+        this.circuitBreaker = new CircuitBreaker(configuration.getCircuitBreakerPolicy());
+        this.requestDispatcher = new RequestDispatcher(configuration.getMaxRequestsInFlight(), configuration.getReservedInteractiveRequests(), new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                try {
+                    // The request may fetch an auth token, which blocks, and the slot is usually freed on an I/O thread
+                    blockingExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // These resources have been closed. Run the request here so that it fails rather than never running.
+                    task.run();
+                }
+            }
+        });
+    }
+
+    public SafeStreamHttpClientConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Runs a task that may block, such as one that fetches an auth token, after a delay. Once it is due the task is handed from the scheduler to a virtual thread when virtual threads are enabled and available, and otherwise to a pooled platform thread, so that it never holds up the scheduler.
+     * @param task The task
+     * @param delay The delay
+     * @param unit The unit of the delay
+     * @return A future that completes when the task has been started. Cancelling it before then stops the task from running.
+     * @throws RejectedExecutionException If these resources have been closed
+     */
+    public ScheduledFuture<?> scheduleBlocking(final Runnable task, long delay, TimeUnit unit) {
+        return scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blockingExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // These resources were closed while the task waited. Run it here so that it fails rather than never running.
+                    task.run();
+                }
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Runs background work that may block straight away, on a virtual thread when virtual threads are enabled and available and otherwise on a pooled platform thread
+     * @return The blocking executor. It rejects tasks once these resources have been closed.
+     */
+    public Executor getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    /**
+     * @return true if background work that may block runs on virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RequestDispatcher getRequestDispatcher() {
+        return requestDispatcher;
+    }
+
+    RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Gets the non-blocking HTTP client, starting its I/O threads the first time it is called
+     * @return A started async HTTP client
+     * @throws IOException If the I/O reactor cannot be started
+     */
+    public synchronized CloseableHttpAsyncClient getAsyncHttpClient() throws IOException {
+        if(asyncHttpClient == null) {
+            asyncHttpClient = createPooledAsyncHttpClient();
+            asyncHttpClient.start();
+        }
+        return asyncHttpClient;
+    }
+
+    /**
+     * Stops the scheduler and closes the connection pools
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        blockingExecutor.shutdownNow();
+        try {
+            httpClient.close();
+        } finally {
+            synchronized (this) {
+                if(asyncHttpClient != null) {
+                    asyncHttpClient.close();
+                }
+            }
+        }
+    }
+
+    private CloseableHttpAsyncClient createPooledAsyncHttpClient() throws IOReactorException {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(configuration.getIoThreadCount())
+                .build();
+
+        final PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        connectionManager.setMaxTotal(configuration.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnectionsPerRoute());
+
+        // The async client has no built in evictor so idle connections are closed from the scheduler
+        final long idleTimeout = configuration.getIdleConnectionTimeoutMillis();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+
+        return HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig(configuration))
+                .setKeepAliveStrategy(keepAliveStrategy(configuration.getKeepAliveMillis()))
+                .setThreadFactory(daemonThreadFactory("safestream-io"))
+                .build();
+    }
+
+    private static CloseableHttpClient createPooledHttpClient(SafeStreamHttpClientConfiguration configuration) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(configuration.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(configuration.getValidateAfterInactivityMillis());
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig(configuration))
+                .setKeepAliveStrategy(keepAliveStrategy(configuration.getKeepAliveMillis()))
+                // Starts a background thread that closes expired and idle connections
+                .evictExpiredConnections()
+                .evictIdleConnections(configuration.getIdleConnectionTimeoutMillis(), TimeUnit.MILLISECONDS)
+                // Retries are made by SafeStreamHttpClient according to the RetryPolicy
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    /**
+     * Bounds how long a request can wait to connect, to read and to lease a pooled connection so that a slow API cannot hold threads forever
+     */
+    private static RequestConfig requestConfig(SafeStreamHttpClientConfiguration configuration) {
+        return RequestConfig.custom()
+                .setConnectTimeout(configuration.getConnectTimeoutMillis())
+                .setSocketTimeout(configuration.getSocketTimeoutMillis())
+                .setConnectionRequestTimeout(configuration.getConnectionRequestTimeoutMillis())
+                .build();
+    }
+
+    /**
+     * Honors the Keep-Alive header sent by the server and falls back to the configured keep alive when there is none
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(final long defaultKeepAliveMillis) {
+        return new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long keepAlive = super.getKeepAliveDuration(response, context);
+                return keepAlive > 0 ? keepAlive : defaultKeepAliveMillis;
+            }
+        };
+    }
+
+    static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -1,13 +1,38 @@
 package com.safestream.sdk.http;
 
-import com.google.gson.GsonBuilder;
+import com.safestream.sdk.json.GsonJsonCodec;
+import com.safestream.sdk.json.JsonCodec;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 
 public class SafeStreamHttpResponse {
 
+    /**
+     * Used when a response is not created by a client and so has no configured codec
+     */
+    private static final JsonCodec DEFAULT_JSON_CODEC = new GsonJsonCodec();
+
     private int httpStatus;
     private String body;
+    private JsonCodec jsonCodec = DEFAULT_JSON_CODEC;
+
+    /**
+     * The body, already decoded while the response was read, and the type it was decoded into
+     */
+    private Type entityType;
+    private Object entity;
+
+    private long retryAfterMillis = -1;
+
+    /**
+     * The raw body of a response that several callers share, the charset it is in and what each caller decodes it into. See {@link #copy()}
+     */
+    private byte[] sharedContent;
+    private Charset sharedCharset;
+    private SharedBody sharedBody;
 
     public SafeStreamHttpResponse() {}
 
@@ -24,6 +49,11 @@ public class SafeStreamHttpResponse {
         this.body = body;
     }
 
+    SafeStreamHttpResponse(int httpStatus, JsonCodec jsonCodec) {
+        this.httpStatus = httpStatus;
+        this.jsonCodec = jsonCodec;
+    }
+
     public int getHttpStatus() {
         return httpStatus;
     }
@@ -36,27 +66,101 @@ public class SafeStreamHttpResponse {
         return body;
     }
 
+    /**
+     * The wait in millis SafeStream asked for in a Retry-After header, for example before polling a job again
+     * @return The wait in millis or -1 if SafeStream did not send one
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    void setRetryAfterMillis(long retryAfterMillis) {
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
     public void setBody(String body) {
         this.body = body;
     }
 
+    void setEntity(Type entityType, Object entity) {
+        this.entityType = entityType;
+        this.entity = entity;
+    }
+
+    void setSharedContent(SharedBody sharedBody, byte[] content, Charset charset) {
+        this.sharedBody = sharedBody;
+        this.sharedContent = content;
+        this.sharedCharset = charset;
+    }
+
+    /**
+     * Creates a response of its own for one of the callers sharing this response. The entity is decoded from the shared raw body for each caller, so callers never see each other's changes to it.
+     * @return A new response
+     * @throws IOException If the body cannot be decoded
+     */
+    SafeStreamHttpResponse copy() throws IOException {
+        SafeStreamHttpResponse copy = new SafeStreamHttpResponse(httpStatus, jsonCodec);
+        copy.retryAfterMillis = retryAfterMillis;
+        copy.body = body;
+        if(sharedContent != null) {
+            if(sharedBody.entityType == null || sharedBody.retainBody) {
+                copy.body = new String(sharedContent, sharedCharset);
+            } else {
+                copy.setEntity(sharedBody.entityType, jsonCodec.fromJson(new ByteArrayInputStream(sharedContent), sharedCharset, sharedBody.entityType));
+            }
+        }
+        return copy;
+    }
+
     /**
      * Deserializes body to object of type E
      * @param clazz Target class to deserialize to
      * @param <E>
      * @return An object of type E
      */
+    @SuppressWarnings("unchecked")
     public <E> E getEntity(Class<E> clazz) {
+        if(this.entity != null && clazz.equals(this.entityType)) {
+            return (E) this.entity;
+        }
         if(this.getBody() == null || this.getBody().isEmpty()) {
             throw new SafeStreamHttpResponseException("No response body exists. Cannot deserialize to " + clazz.getName());
         }
-        return new GsonBuilder().create().fromJson(this.getBody(), clazz);
+        return jsonCodec.fromJson(this.getBody(), clazz);
     }
 
+    /**
+     * Deserializes body to object of the given type
+     * @param type Target type to deserialize to
+     * @param <E>
+     * @return An object of the given type
+     */
+    @SuppressWarnings("unchecked")
     public <E> E getEntity(Type type) {
+        if(this.entity != null && type.equals(this.entityType)) {
+            return (E) this.entity;
+        }
         if(this.getBody() == null || this.getBody().isEmpty()) {
             throw new SafeStreamHttpResponseException("No response body exists. Cannot deserialize to " + type.toString());
         }
-        return new GsonBuilder().create().fromJson(this.getBody(), type);
+        return jsonCodec.fromJson(this.getBody(), type);
+    }
+
+    /**
+     * Passed as the entity type when reading a response that several callers share. The body is kept as bytes rather than decoded, and each caller decodes its own entity from it with {@link #copy()}.
+     */
+    static final class SharedBody implements Type {
+
+        /**
+         * The type each caller decodes the body into, or null to keep the body as a string
+         */
+        private final Type entityType;
+
+        private final boolean retainBody;
+
+        SharedBody(Type entityType, boolean retainBody) {
+            this.entityType = entityType;
+            this.retainBody = retainBody;
+        }
     }
 }
@@ -0,0 +1,358 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets identical requests made at the same time share one call.
+ *
+ * The first caller for a key starts the call. Callers that arrive with the same key while it is in flight join it instead of starting their own, and every caller receives the same result or exception, or a copy of the result when the single flight has a {@link Copier}. Once the call completes the key is forgotten, so the next caller starts a new call; results are not cached.
+ *
+ * Each caller gets its own future. Cancelling it only stops that caller waiting, and the shared call is only cancelled once every caller has cancelled.
+ *
+ * @param <K> The key identical requests share
+ * @param <V> The result type
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * Starts the shared call
+     * @param <V> The result type
+     */
+    public interface Call<V> {
+
+        /**
+         * Starts the call. It may complete the callback before returning, for example when the call blocks.
+         * @param callback Completed with the outcome of the call
+         * @return The future of the call so it can be cancelled once every caller has cancelled, or null
+         */
+        Future<?> start(FutureCallback<V> callback);
+    }
+
+    /**
+     * Gives each caller its own copy of a shared result
+     * @param <V> The result type
+     */
+    public interface Copier<V> {
+
+        /**
+         * Called once for each caller, on the thread that completes the call
+         * @param result The shared result
+         * @return The caller's copy
+         * @throws Exception Fails the caller
+         */
+        V copy(V result) throws Exception;
+    }
+
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<K, Flight>();
+
+    /**
+     * Copies the result for each caller, or null to give every caller the same result
+     */
+    private final Copier<V> copier;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong joined = new AtomicLong();
+
+    public SingleFlight() {
+        this(null);
+    }
+
+    /**
+     * @param copier Gives each caller its own copy of the result, for results that callers may change
+     */
+    public SingleFlight(Copier<V> copier) {
+        this.copier = copier;
+    }
+
+    /**
+     * Starts a call for a key, or joins the call already in flight for it
+     * @param key Identifies identical requests
+     * @param callback An optional callback notified when the call completes. It is called on whichever thread completes the call.
+     * @param call Starts the call if none is in flight
+     * @return A future result for this caller
+     */
+    public Future<V> execute(K key, FutureCallback<V> callback, Call<V> call) {
+        Caller caller = new Caller(callback);
+        BasicFuture<V> future = new BasicFuture<V>(caller);
+        while(true) {
+            Flight flight = flights.get(key);
+            if(flight != null) {
+                caller.flight = flight;
+                if(flight.add(future)) {
+                    joined.incrementAndGet();
+                    return future;
+                }
+                // It completed as we joined, and has been or is about to be forgotten
+                flights.remove(key, flight);
+                continue;
+            }
+
+            flight = new Flight(key);
+            caller.flight = flight;
+            flight.add(future);
+            if(flights.putIfAbsent(key, flight) != null) {
+                continue;
+            }
+
+            calls.incrementAndGet();
+            try {
+                flight.started(call.start(flight));
+            } catch (RuntimeException e) {
+                flight.failed(e);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * Joins the call in flight for a key without starting one if there is none
+     * @param key Identifies identical requests
+     * @param callback An optional callback notified when the call completes
+     * @return A future result for this caller, or null if no call is in flight for the key
+     */
+    public Future<V> join(K key, FutureCallback<V> callback) {
+        Flight flight = flights.get(key);
+        if(flight == null) {
+            return null;
+        }
+
+        Caller caller = new Caller(callback);
+        caller.flight = flight;
+        BasicFuture<V> future = new BasicFuture<V>(caller);
+        if(!flight.add(future)) {
+            return null;
+        }
+        joined.incrementAndGet();
+        return future;
+    }
+
+    /**
+     * @return The number of calls in flight
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * @return The number of calls started
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return The number of callers that joined a call already in flight instead of starting their own
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+
+    /**
+     * Notifies a caller's callback, and lets the flight know when the caller cancels
+     */
+    private final class Caller implements FutureCallback<V> {
+
+        private final FutureCallback<V> callback;
+
+        private volatile Flight flight;
+
+        Caller(FutureCallback<V> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void completed(V result) {
+            if(callback != null) {
+                callback.completed(result);
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            if(callback != null) {
+                callback.failed(ex);
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            if(callback != null) {
+                callback.cancelled();
+            }
+            Flight flight = this.flight;
+            if(flight != null) {
+                flight.cancelIfAbandoned();
+            }
+        }
+    }
+
+    private final class Flight implements FutureCallback<V> {
+
+        private final K key;
+
+        /**
+         * Guarded by lock
+         */
+        private final List<BasicFuture<V>> waiters = new ArrayList<BasicFuture<V>>();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private boolean done;
+
+        private Future<?> call;
+
+        Flight(K key) {
+            this.key = key;
+        }
+
+        boolean add(BasicFuture<V> waiter) {
+            lock.lock();
+            try {
+                if(done) {
+                    return false;
+                }
+                waiters.add(waiter);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void started(Future<?> call) {
+            boolean abandoned;
+            lock.lock();
+            try {
+                this.call = call;
+                abandoned = done && allCancelled();
+            } finally {
+                lock.unlock();
+            }
+            if(abandoned && call != null) {
+                call.cancel(true);
+            }
+        }
+
+        /**
+         * Cancels the call if every caller has cancelled
+         */
+        void cancelIfAbandoned() {
+            Future<?> abandonedCall;
+            lock.lock();
+            try {
+                if(done || !allCancelled()) {
+                    return;
+                }
+                done = true;
+                abandonedCall = call;
+            } finally {
+                lock.unlock();
+            }
+            flights.remove(key, this);
+            if(abandonedCall != null) {
+                abandonedCall.cancel(true);
+            }
+        }
+
+        @Override
+        public void completed(V result) {
+            List<BasicFuture<V>> waiting = finish();
+            if(waiting != null) {
+                for(BasicFuture<V> waiter : waiting) {
+                    if(copier == null) {
+                        waiter.completed(result);
+                        continue;
+                    }
+                    V copy;
+                    try {
+                        copy = copier.copy(result);
+                    } catch (Exception e) {
+                        waiter.failed(e);
+                        continue;
+                    }
+                    waiter.completed(copy);
+                }
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            List<BasicFuture<V>> waiting = finish();
+            if(waiting != null) {
+                for(BasicFuture<V> waiter : waiting) {
+                    waiter.failed(ex);
+                }
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            List<BasicFuture<V>> waiting = finish();
+            if(waiting != null) {
+                for(BasicFuture<V> waiter : waiting) {
+                    waiter.cancel();
+                }
+            }
+        }
+
+        /**
+         * Forgets the flight so later callers start a new call, then returns the callers to notify
+         */
+        private List<BasicFuture<V>> finish() {
+            flights.remove(key, this);
+            lock.lock();
+            try {
+                if(done) {
+                    return null;
+                }
+                done = true;
+                return new ArrayList<BasicFuture<V>>(waiters);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean allCancelled() {
+            for(BasicFuture<V> waiter : waiters) {
+                if(!waiter.isCancelled()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates virtual threads where the running Java supports them.
+ *
+ * The SDK is built for Java 7, so this version reports that virtual threads are not available. The SDK jar is a multi-release jar with a Java 21 version of this class, which is used instead on Java 21 and later and reports that virtual threads are available on Java 24 and later. See {@link SafeStreamHttpClientConfiguration#withVirtualThreads(boolean)}
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() { }
+
+    /**
+     * @return true if virtual threads can be created
+     */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread
+     * @param namePrefix The prefix of the thread names
+     * @return An executor that must be shut down once it is no longer needed
+     * @throws UnsupportedOperationException If virtual threads are not available
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads need Java 24 or later");
+    }
+}
@@ -0,0 +1,75 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * The default {@link JsonCodec}, backed by Gson and the streaming adapters of the SDK models
+ */
+public class GsonJsonCodec implements JsonCodec {
+
+    private final Gson gson;
+
+    public GsonJsonCodec() {
+        this(SafeStreamGson.getInstance());
+    }
+
+    public GsonJsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String toJson(Object value) {
+        return gson.toJson(value);
+    }
+
+    @Override
+    public <T> T fromJson(String json, Type type) {
+        try {
+            return gson.fromJson(json, type);
+        } catch (JsonParseException e) {
+            throw new JsonCodecException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJson(InputStream in, Charset charset, Type type) throws IOException {
+        try {
+            return gson.fromJson(new JsonReader(new InputStreamReader(in, charset)), type);
+        } catch (JsonParseException e) {
+            throw new JsonCodecException(e);
+        }
+    }
+}
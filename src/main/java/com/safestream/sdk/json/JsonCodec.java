@@ -0,0 +1,68 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * Converts SDK models to and from JSON.
+ *
+ * The SDK uses {@link GsonJsonCodec} unless another codec is configured with {@link com.safestream.sdk.http.SafeStreamHttpClientConfiguration#withJsonCodec(JsonCodec)}. Implementations must be thread safe since a single codec is shared by every request.
+ *
+ * Implementations report malformed JSON with a {@link JsonCodecException}.
+ */
+public interface JsonCodec {
+
+    /**
+     * Serializes a value to JSON. Null properties are omitted.
+     * @param value The value to serialize
+     * @return A JSON string
+     */
+    String toJson(Object value);
+
+    /**
+     * Deserializes a JSON string
+     * @param json The JSON string
+     * @param type The target type
+     * @param <T>
+     * @return An object of the target type or null if the string is empty
+     */
+    <T> T fromJson(String json, Type type);
+
+    /**
+     * Deserializes JSON directly from a stream. The stream is not closed.
+     * @param in The stream to read
+     * @param charset The charset the JSON is encoded in
+     * @param type The target type
+     * @param <T>
+     * @return An object of the target type or null if the stream is empty
+     * @throws IOException If the stream cannot be read
+     */
+    <T> T fromJson(InputStream in, Charset charset, Type type) throws IOException;
+}
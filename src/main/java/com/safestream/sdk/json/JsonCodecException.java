@@ -0,0 +1,25 @@
+package com.safestream.sdk.json;
+
+public class JsonCodecException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JsonCodecException() {
+    }
+
+    public JsonCodecException(String message) {
+        super(message);
+    }
+
+    public JsonCodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public JsonCodecException(Throwable cause) {
+        super(cause);
+    }
+
+    public JsonCodecException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
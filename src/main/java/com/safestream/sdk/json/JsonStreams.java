@@ -0,0 +1,196 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helpers shared by the streaming type adapters of the SDK models. They read values the same way Gson's reflective adapters do, so switching a model to a streaming adapter does not change what JSON it accepts.
+ */
+public final class JsonStreams {
+
+    private JsonStreams() { }
+
+    /**
+     * Reads a string, or null
+     */
+    public static String readString(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if(in.peek() == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Reads a number as a float, or null
+     */
+    public static Float readFloat(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return (float) in.nextDouble();
+    }
+
+    /**
+     * Reads a number as a long. Like Gson, a null leaves the field at its default.
+     */
+    public static long readLong(JsonReader in, long defaultValue) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextLong();
+    }
+
+    /**
+     * Reads a number as an int. Like Gson, a null leaves the field at its default.
+     */
+    public static int readInt(JsonReader in, int defaultValue) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextInt();
+    }
+
+    /**
+     * Reads a boolean. Like Gson, the strings "true" and "false" are accepted as well.
+     */
+    public static boolean readBoolean(JsonReader in, boolean defaultValue) throws IOException {
+        JsonToken token = in.peek();
+        if(token == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        if(token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Reads an enum constant by name. Like Gson, unknown names are read as null.
+     */
+    public static <E extends Enum<E>> E readEnum(JsonReader in, Class<E> enumClass) throws IOException {
+        String name = readString(in);
+        if(name == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(enumClass, name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads an array of values with the given adapter, or null
+     */
+    public static <E> List<E> readList(JsonReader in, TypeAdapter<E> elementAdapter) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<E> list = new ArrayList<E>();
+        in.beginArray();
+        while(in.hasNext()) {
+            list.add(elementAdapter.read(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    /**
+     * Reads an array of strings, or null
+     */
+    public static List<String> readStringList(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<String> list = new ArrayList<String>();
+        in.beginArray();
+        while(in.hasNext()) {
+            list.add(readString(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    /**
+     * Writes an enum constant by name
+     */
+    public static void writeEnum(JsonWriter out, Enum<?> value) throws IOException {
+        out.value(value == null ? null : value.name());
+    }
+
+    /**
+     * Writes a collection of values with the given adapter
+     */
+    public static <E> void writeCollection(JsonWriter out, Collection<E> values, TypeAdapter<E> elementAdapter) throws IOException {
+        if(values == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for(E value : values) {
+            elementAdapter.write(out, value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes a collection of strings
+     */
+    public static void writeStringCollection(JsonWriter out, Collection<String> values) throws IOException {
+        if(values == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for(String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+}
@@ -0,0 +1,55 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual threads. This is the Java 21 version of the class, used in place of the Java 7 version on Java 21 and later.
+ *
+ * Apache HttpClient 4 releases a pooled connection while holding the connection's monitor, and before Java 24 a virtual thread that blocks on the pool's lock inside that monitor pins its carrier thread. Once every carrier is pinned this way the virtual thread that would release the lock cannot run, so the SDK only reports virtual threads as available on Java 24 and later.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() { }
+
+    /**
+     * @return true if virtual threads can be created
+     */
+    public static boolean isAvailable() {
+        return Runtime.version().feature() >= 24;
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread
+     * @param namePrefix The prefix of the thread names
+     * @return An executor that must be shut down once it is no longer needed
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix + "-", 1).factory());
+    }
+}
@@ -0,0 +1,281 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A stub of the SafeStream API on the loopback interface for tests.
+ *
+ * It hands out a token and answers the requests a test sets up with {@link #on(String, String, Response...)}, in order, repeating the last response. Anything else gets a 404. Every request is recorded.
+ */
+public class StubServer implements Closeable {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static {
+        // Without this the JDK server leaves Nagle's algorithm on, and every response on a kept-alive connection waits about 40 ms for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final Map<String, Route> routes = new LinkedHashMap<String, Route>();
+
+    private final List<Request> requests = new CopyOnWriteArrayList<Request>();
+
+    private StubServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+        on("POST", "token", Response.json(200, "{\"token\":\"test-token\"}"));
+    }
+
+    /**
+     * Starts a stub on a free port
+     * @return The running stub
+     * @throws IOException If the stub cannot listen
+     */
+    public static StubServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        final StubServer stub = new StubServer(server, executor);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                stub.handle(exchange);
+            }
+        });
+        server.start();
+        return stub;
+    }
+
+    /**
+     * @return The host name and port to configure the client with
+     */
+    public String getHostName() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Sets how the stub answers requests for a resource
+     * @param method The HTTP method
+     * @param resource The path after the API version, for example "videos" or "watermark"
+     * @param responses The responses to send in order. The last one is sent to every later request.
+     * @return this
+     */
+    public synchronized StubServer on(String method, String resource, Response... responses) {
+        routes.put(method + " " + resource, new Route(responses));
+        return this;
+    }
+
+    /**
+     * @param method The HTTP method
+     * @param resource The path after the API version
+     * @return The requests received for the resource, in the order they arrived
+     */
+    public List<Request> getRequests(String method, String resource) {
+        List<Request> matching = new ArrayList<Request>();
+        for(Request request : requests) {
+            if(request.method.equals(method) && request.resource.equals(resource)) {
+                matching.add(request);
+            }
+        }
+        return matching;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        // Drop the leading slash and the API version
+        String resource = path.substring(path.indexOf('/', 1) + 1);
+        Request request = new Request(method, resource, exchange.getRequestURI().getRawQuery(), new String(read(exchange.getRequestBody()), UTF_8));
+        requests.add(request);
+
+        Route route;
+        synchronized (this) {
+            route = routes.get(method + " " + resource);
+        }
+        Response response = route != null ? route.next() : Response.json(404, "{}");
+        response.send(exchange);
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * The responses for one resource
+     */
+    private static final class Route {
+
+        private final Response[] responses;
+
+        private int next;
+
+        Route(Response[] responses) {
+            this.responses = responses;
+        }
+
+        synchronized Response next() {
+            return responses[Math.min(next++, responses.length - 1)];
+        }
+    }
+
+    /**
+     * A request the stub received
+     */
+    public static final class Request {
+
+        public final String method;
+
+        public final String resource;
+
+        public final String query;
+
+        public final String body;
+
+        /**
+         * When the stub received the request, from {@link System#nanoTime()}
+         */
+        public final long receivedNanos = System.nanoTime();
+
+        Request(String method, String resource, String query, String body) {
+            this.method = method;
+            this.resource = resource;
+            this.query = query;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A response the stub sends, or a fault it injects
+     */
+    public static final class Response {
+
+        private final int status;
+
+        private final String body;
+
+        private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+        private long delayMillis;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        /**
+         * @param status The HTTP status
+         * @param body The JSON body
+         * @return A JSON response
+         */
+        public static Response json(int status, String body) {
+            return new Response(status, body);
+        }
+
+        /**
+         * @return A fault that closes the connection without sending a response
+         */
+        public static Response drop() {
+            return new Response(0, null);
+        }
+
+        public Response withHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * @param delayMillis How long the stub waits before responding
+         * @return this
+         */
+        public Response withDelayMillis(long delayMillis) {
+            this.delayMillis = delayMillis;
+            return this;
+        }
+
+        void send(HttpExchange exchange) throws IOException {
+            if(delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if(body == null) {
+                exchange.close();
+                return;
+            }
+
+            byte[] bytes = body.getBytes(UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            for(Map.Entry<String, String> header : headers.entrySet()) {
+                exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+            }
+            exchange.sendResponseHeaders(status, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video;
+
+import com.google.gson.Gson;
+import com.safestream.sdk.json.SafeStreamGson;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Segment overrides read from JSON and through the map getter
+ */
+public class SegmentedProxyTest {
+
+    private final Gson gson = SafeStreamGson.getInstance();
+
+    @Test
+    public void skipsMalformedOverrides() {
+        SegmentedProxy proxy = gson.fromJson("{\"segmentOverrides\":{\"3\":5.5,\"x\":1,\"4\":\"abc\",\"5\":{\"a\":1},\"6\":\"2.5\",\"7\":null},\"segmentCount\":9}", SegmentedProxy.class);
+
+        SegmentOverrides overrides = proxy.getCompactSegmentOverrides();
+        assertEquals(2, overrides.getCount());
+        assertEquals(5.5, overrides.getDuration(3, 6), 0);
+        assertEquals(2.5, overrides.getDuration(6, 6), 0);
+        assertFalse(overrides.isOverridden(4));
+        assertEquals(9, proxy.getSegmentCount());
+    }
+
+    @Test
+    public void changesToOverridesMapAreSeen() {
+        SegmentedProxy proxy = gson.fromJson("{\"segmentOverrides\":{\"3\":5.5}}", SegmentedProxy.class);
+
+        Map<String, Object> overrides = proxy.getSegmentOverrides();
+        overrides.put("8", 1.25);
+        overrides.remove("3");
+
+        assertTrue(proxy.getCompactSegmentOverrides().isOverridden(8));
+        assertFalse(proxy.getCompactSegmentOverrides().isOverridden(3));
+        assertEquals("{\"8\":1.25}", gson.toJsonTree(proxy).getAsJsonObject().get("segmentOverrides").toString());
+    }
+}
@@ -0,0 +1,140 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.video.cache;
+
+import com.safestream.sdk.api.video.Video;
+import com.safestream.sdk.api.video.VideoAPIException;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Videos returned by the cache are copies that callers can change
+ */
+public class VideoCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private VideoCache videoCache;
+
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        videoCache = new VideoCache();
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void cachedVideoIsNotChangedThroughLookup() throws Exception {
+        release.countDown();
+        Video loaded = videoCache.get("video-1", loader());
+        loaded.withName("Changed").withTag("changed");
+
+        Video cached = videoCache.get("video-1", loader());
+        assertEquals("Original", cached.getName());
+        assertEquals(1, cached.getTags().size());
+        assertNotSame(loaded, cached);
+
+        Video cachedAsync = videoCache.getAsync("video-1", loader(), null).get(5, TimeUnit.SECONDS);
+        assertEquals("Original", cachedAsync.getName());
+        assertNotSame(cached, cachedAsync);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void sharedLoadGivesEveryLookupItsOwnVideo() throws Exception {
+        Future<Video> first = callers.submit(lookup());
+        Future<Video> second = callers.submit(lookup());
+        Thread.sleep(200);
+        release.countDown();
+
+        Video firstVideo = first.get(5, TimeUnit.SECONDS);
+        Video secondVideo = second.get(5, TimeUnit.SECONDS);
+        assertEquals(1, loads.get());
+        assertNotSame(firstVideo, secondVideo);
+
+        firstVideo.withName("Changed");
+        assertEquals("Original", secondVideo.getName());
+        assertTrue(secondVideo.getTags().contains("original"));
+    }
+
+    private Callable<Video> lookup() {
+        return new Callable<Video>() {
+            @Override
+            public Video call() throws Exception {
+                return videoCache.get("video-1", loader());
+            }
+        };
+    }
+
+    private VideoLoader loader() {
+        return new VideoLoader() {
+            @Override
+            public Video load(String key) throws VideoAPIException {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new VideoAPIException(e);
+                }
+                return new Video().withKey(key).withName("Original").withTag("original");
+            }
+
+            @Override
+            public Future<Video> loadAsync(String key, FutureCallback<Video> callback) {
+                BasicFuture<Video> future = new BasicFuture<Video>(callback);
+                try {
+                    future.completed(load(key));
+                } catch (VideoAPIException e) {
+                    future.failed(e);
+                }
+                return future;
+            }
+        };
+    }
+}
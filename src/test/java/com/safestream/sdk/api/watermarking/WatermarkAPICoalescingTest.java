@@ -0,0 +1,152 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import com.safestream.sdk.http.CircuitBreakerPolicy;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
+import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Identical watermark requests made at the same time share one request to SafeStream
+ */
+public class WatermarkAPICoalescingTest {
+
+    private static final int CALLERS = 16;
+
+    private StubServer stub;
+
+    private SafeStreamHttpClient safeStreamHttpClient;
+
+    private WatermarkAPI watermarkAPI;
+
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.start();
+        safeStreamHttpClient = new SafeStreamHttpClient("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()));
+        WatermarkJobTracker watermarkJobTracker = new WatermarkJobTracker(new SafeStreamAsyncClient(safeStreamHttpClient), 250, 16);
+        watermarkAPI = new WatermarkAPI(safeStreamHttpClient, watermarkJobTracker);
+        callers = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        callers.shutdownNow();
+        safeStreamHttpClient.close();
+        stub.close();
+    }
+
+    @Test
+    public void identicalCreatesShareOneRequest() throws Exception {
+        // The delay keeps the first request in flight until every caller has joined it
+        stub.on("POST", "watermark", Response.json(200, watermark("PENDING")).withDelayMillis(500));
+
+        List<WatermarkResult> results = createConcurrently("video-1", "Jane Doe", -1);
+
+        assertEquals(1, stub.getRequests("POST", "watermark").size());
+        for(WatermarkResult result : results) {
+            assertSame(results.get(0), result);
+        }
+    }
+
+    @Test
+    public void identicalCreatesShareOneRequestAndOneWait() throws Exception {
+        stub.on("POST", "watermark", Response.json(200, watermark("PENDING")).withDelayMillis(500));
+        stub.on("GET", "watermark/1", Response.json(200, watermark("READY")));
+
+        List<WatermarkResult> results = createConcurrently("video-1", "Jane Doe", 10000);
+
+        assertEquals(1, stub.getRequests("POST", "watermark").size());
+        assertEquals(1, stub.getRequests("GET", "watermark/1").size());
+        for(WatermarkResult result : results) {
+            assertEquals("READY", result.getStatus());
+        }
+    }
+
+    @Test
+    public void differentCreatesAreNotShared() throws Exception {
+        stub.on("POST", "watermark", Response.json(200, watermark("PENDING")).withDelayMillis(500));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        Future<WatermarkResult> first = callers.submit(create(start, "video-1", "Jane Doe", -1));
+        Future<WatermarkResult> second = callers.submit(create(start, "video-1", "John Doe", -1));
+        start.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, stub.getRequests("POST", "watermark").size());
+    }
+
+    private List<WatermarkResult> createConcurrently(String key, String content, long timeout) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<WatermarkResult>> futures = new ArrayList<Future<WatermarkResult>>();
+        for(int i = 0; i < CALLERS; i++) {
+            futures.add(callers.submit(create(start, key, content, timeout)));
+        }
+        start.countDown();
+
+        List<WatermarkResult> results = new ArrayList<WatermarkResult>();
+        for(Future<WatermarkResult> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private Callable<WatermarkResult> create(final CountDownLatch start, final String key, final String content, final long timeout) {
+        return new Callable<WatermarkResult>() {
+            @Override
+            public WatermarkResult call() throws Exception {
+                start.await();
+                return watermarkAPI.create(key, new WatermarkConfiguration().withContent(content), timeout);
+            }
+        };
+    }
+
+    private String watermark(String status) {
+        return "{\"status\":\"" + status + "\",\"href\":\"http://" + stub.getHostName() + "/0.1/watermark/1\"}";
+    }
+}
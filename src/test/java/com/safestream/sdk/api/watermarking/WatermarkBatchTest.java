@@ -0,0 +1,143 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCache;
+import com.safestream.sdk.api.watermarking.cache.WatermarkCacheKey;
+import com.safestream.sdk.api.watermarking.encoding.EncodingConfiguration;
+import com.safestream.sdk.http.CircuitBreakerPolicy;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
+import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.AbstractCollection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Submitting many watermarks together
+ */
+public class WatermarkBatchTest {
+
+    private StubServer stub;
+
+    private SafeStreamHttpClient safeStreamHttpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.start();
+        stub.on("POST", "watermark", Response.json(200, "{\"status\":\"READY\",\"href\":\"http://" + stub.getHostName() + "/0.1/watermark/1\"}"));
+        safeStreamHttpClient = new SafeStreamHttpClient("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        safeStreamHttpClient.close();
+        stub.close();
+    }
+
+    @Test
+    public void readsRequestsOffSharedScheduler() throws Exception {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        // Reading the requests may block, for example on a database cursor
+        AbstractCollection<WatermarkRequest> requests = new AbstractCollection<WatermarkRequest>() {
+            @Override
+            public Iterator<WatermarkRequest> iterator() {
+                return new Iterator<WatermarkRequest>() {
+
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        threads.add(Thread.currentThread().getName());
+                        return next < size();
+                    }
+
+                    @Override
+                    public WatermarkRequest next() {
+                        threads.add(Thread.currentThread().getName());
+                        return new WatermarkRequest("video-" + next++, new EncodingConfiguration(new WatermarkConfiguration().withContent("Jane Doe")));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return 20;
+            }
+        };
+
+        int succeeded = 0;
+        for(WatermarkBatchItem item : new WatermarkAPI(safeStreamHttpClient).createAll(requests, new WatermarkBatchConfiguration(), null)) {
+            assertTrue(String.valueOf(item.getException()), item.isSuccessful());
+            succeeded++;
+        }
+
+        assertEquals(20, succeeded);
+        assertEquals(20, stub.getRequests("POST", "watermark").size());
+        for(String thread : threads) {
+            assertFalse("Requests were read on " + thread, thread.startsWith("safestream-scheduler"));
+        }
+    }
+
+    @Test
+    public void cachesWatermarksThatBecomeReady() throws Exception {
+        String pending = "{\"status\":\"PENDING\",\"href\":\"http://" + stub.getHostName() + "/0.1/watermark/1\"}";
+        stub.on("POST", "watermark", Response.json(200, pending));
+        stub.on("GET", "watermark/1", Response.json(200, pending.replace("PENDING", "READY")));
+        WatermarkCache watermarkCache = new WatermarkCache();
+        WatermarkJobTracker watermarkJobTracker = new WatermarkJobTracker(new SafeStreamAsyncClient(safeStreamHttpClient), 250, 16);
+        WatermarkAPI watermarkAPI = new WatermarkAPI(safeStreamHttpClient, watermarkJobTracker, watermarkCache);
+        EncodingConfiguration encodingConfiguration = new EncodingConfiguration(new WatermarkConfiguration().withContent("Jane Doe"));
+
+        for(WatermarkBatchItem item : watermarkAPI.createAll(Collections.singletonList(new WatermarkRequest("video-1", encodingConfiguration)))) {
+            assertTrue(String.valueOf(item.getException()), item.isSuccessful());
+        }
+
+        WatermarkResult cached = watermarkCache.get(WatermarkCacheKey.of("video-1", encodingConfiguration));
+        assertNotNull(cached);
+        assertEquals("READY", cached.getStatus());
+    }
+}
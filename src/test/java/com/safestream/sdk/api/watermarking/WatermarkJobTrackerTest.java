@@ -0,0 +1,167 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking;
+
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import com.safestream.sdk.http.CircuitBreakerPolicy;
+import com.safestream.sdk.http.SafeStreamAsyncClient;
+import com.safestream.sdk.http.SafeStreamHttpClient;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Waiting for watermarks ends when the client is closed or the timeout passes
+ */
+public class WatermarkJobTrackerTest {
+
+    private StubServer stub;
+
+    private SafeStreamHttpClient safeStreamHttpClient;
+
+    private WatermarkJobTracker watermarkJobTracker;
+
+    private ExecutorService caller;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.start();
+        stub.on("POST", "watermark", Response.json(200, watermark("PENDING")));
+        safeStreamHttpClient = new SafeStreamHttpClient("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()));
+        watermarkJobTracker = new WatermarkJobTracker(new SafeStreamAsyncClient(safeStreamHttpClient), 250, 16);
+        caller = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        caller.shutdownNow();
+        safeStreamHttpClient.close();
+        stub.close();
+    }
+
+    @Test
+    public void closingClientFailsPendingJobs() throws Exception {
+        stub.on("GET", "watermark/1", Response.json(200, watermark("PENDING")));
+        Future<WatermarkResult> tracked = watermarkJobTracker.track(pending(), 60000, null);
+
+        safeStreamHttpClient.close();
+
+        assertFailsWithin(tracked, 1000);
+        assertTrue(watermarkJobTracker.getPendingJobs() == 0);
+    }
+
+    @Test
+    public void closingClientEndsSynchronousCreate() throws Exception {
+        stub.on("GET", "watermark/1", Response.json(200, watermark("PENDING")));
+        Future<WatermarkResult> created = create(60000);
+        awaitPending();
+
+        safeStreamHttpClient.close();
+
+        assertFailsWithin(created, 1000);
+    }
+
+    @Test
+    public void closingTrackerFailsPendingAndLaterJobs() throws Exception {
+        stub.on("GET", "watermark/1", Response.json(200, watermark("PENDING")));
+        Future<WatermarkResult> tracked = watermarkJobTracker.track(pending(), 60000, null);
+
+        watermarkJobTracker.close();
+
+        assertFailsWithin(tracked, 1000);
+        assertFailsWithin(watermarkJobTracker.track(pending(), 60000, null), 1000);
+    }
+
+    @Test
+    public void synchronousCreateReturnsByTimeout() throws Exception {
+        // The status request hangs, so the tracker cannot fail the job at its deadline
+        stub.on("GET", "watermark/1", Response.json(200, watermark("READY")).withDelayMillis(10000));
+        long start = System.nanoTime();
+        Future<WatermarkResult> created = create(1000);
+
+        assertFailsWithin(created, 3000);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Returned after " + elapsedMillis + " ms", elapsedMillis >= 1000);
+    }
+
+    private Future<WatermarkResult> create(final long timeout) {
+        final WatermarkAPI watermarkAPI = new WatermarkAPI(safeStreamHttpClient, watermarkJobTracker);
+        return caller.submit(new Callable<WatermarkResult>() {
+            @Override
+            public WatermarkResult call() throws Exception {
+                return watermarkAPI.create("video-1", new WatermarkConfiguration().withContent("Jane Doe"), timeout);
+            }
+        });
+    }
+
+    private void awaitPending() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(watermarkJobTracker.getPendingJobs() == 0) {
+            if(System.currentTimeMillis() > deadline) {
+                throw new AssertionError("The watermark was not submitted");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertFailsWithin(Future<WatermarkResult> future, long millis) throws Exception {
+        try {
+            future.get(millis, TimeUnit.MILLISECONDS);
+            fail("Expected the wait to fail");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof WatermarkAPIException);
+        }
+    }
+
+    private WatermarkResult pending() {
+        WatermarkResult watermarkResult = new WatermarkResult();
+        watermarkResult.setStatus("PENDING");
+        watermarkResult.setHref(href());
+        return watermarkResult;
+    }
+
+    private String href() {
+        return "http://" + stub.getHostName() + "/0.1/watermark/1";
+    }
+
+    private String watermark(String status) {
+        return "{\"status\":\"" + status + "\",\"href\":\"" + href() + "\"}";
+    }
+}
@@ -0,0 +1,286 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.journal;
+
+import com.safestream.sdk.api.polling.JobShape;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Recovering the pending jobs after the process was killed while writing the journal
+ */
+public class WatermarkJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopensPendingJobs() throws Exception {
+        File file = folder.newFile("journal");
+        WatermarkJournal journal = new WatermarkJournal(file);
+        for(int i = 0; i < 3; i++) {
+            journal.submitted(entry(i));
+        }
+        journal.finished(href(1), "READY");
+        journal.close();
+
+        journal = new WatermarkJournal(file);
+        try {
+            assertEquals(Arrays.asList(href(0), href(2)), hrefs(journal.getPending()));
+            WatermarkJournalEntry entry = journal.getPending().get(1);
+            assertEquals("video-2", entry.getKey());
+            assertEquals("hash-2", entry.getSettingsHash());
+            assertEquals(2000, entry.getStartTime());
+            assertEquals(3000, entry.getDeadline());
+            assertEquals(1920, entry.getShape().getWidth());
+            assertEquals("2500k", entry.getShape().getBitRate());
+            assertEquals(0, journal.getDiscardedBytes());
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void discardsRecordWithTornBody() throws Exception {
+        File file = folder.newFile("journal");
+        int end = writeThirdRecord(file);
+
+        // The length and CRC made it to the file but the end of the body did not
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(end - 4);
+            randomAccessFile.write(new byte[4]);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertRecovers(file);
+    }
+
+    @Test
+    public void discardsRecordWithoutLength() throws Exception {
+        File file = folder.newFile("journal");
+        writeThirdRecord(file);
+
+        // The body and CRC made it to the file but the length, which is written last, did not
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(recordStart(file));
+            randomAccessFile.writeInt(0);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertRecovers(file);
+    }
+
+    @Test
+    public void recoversAfterKillMidWrite() throws Exception {
+        Random random = new Random(42);
+        for(int run = 0; run < 5; run++) {
+            File file = new File(folder.getRoot(), "journal-" + run);
+            Process writer = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    Writer.class.getName(),
+                    file.getPath())
+                    .redirectErrorStream(true)
+                    .start();
+            BufferedReader out = new BufferedReader(new InputStreamReader(writer.getInputStream(), "UTF-8"));
+            String line = out.readLine();
+            if(!"writing".equals(line)) {
+                writer.destroy();
+                fail("Writer did not start: " + line);
+            }
+
+            Thread.sleep(50 + random.nextInt(200));
+            writer.destroy();
+            writer.waitFor();
+
+            WatermarkJournal journal = new WatermarkJournal(file, Writer.INITIAL_SIZE, false);
+            try {
+                assertTrue("Nothing was written before the kill", !journal.getPending().isEmpty());
+                assertEquals(expectedPending(journal.getPending()), hrefs(journal.getPending()));
+
+                // The journal can be written to again and the new job survives another reopen
+                journal.submitted(entry(-1));
+            } finally {
+                journal.close();
+            }
+            journal = new WatermarkJournal(file, Writer.INITIAL_SIZE, false);
+            try {
+                List<String> hrefs = hrefs(journal.getPending());
+                assertEquals(href(-1), hrefs.get(hrefs.size() - 1));
+            } finally {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Appends jobs to a journal until it is killed, finishing every other job
+     */
+    public static class Writer {
+
+        /**
+         * Small enough that the journal is grown and compacted while the writer runs
+         */
+        static final int INITIAL_SIZE = 4096;
+
+        public static void main(String[] args) throws IOException {
+            WatermarkJournal journal = new WatermarkJournal(new File(args[0]), INITIAL_SIZE, false);
+            journal.submitted(entry(0));
+            System.out.println("writing");
+            System.out.flush();
+            for(int i = 1; ; i++) {
+                journal.submitted(entry(i));
+                if(i % 2 == 1) {
+                    journal.finished(href(i - 1), "READY");
+                }
+            }
+        }
+    }
+
+    /**
+     * The writer's jobs are written in a fixed order, so the recovered jobs must be the pending jobs after some number of its writes. The last job recovered shows how far the writer got: to its submission or the finish that follows it.
+     */
+    private static List<String> expectedPending(List<WatermarkJournalEntry> recovered) {
+        List<String> hrefs = hrefs(recovered);
+        String last = hrefs.get(hrefs.size() - 1);
+        int submitted = Integer.parseInt(last.substring(last.lastIndexOf('/') + 1));
+
+        LinkedHashMap<String, Boolean> pending = new LinkedHashMap<String, Boolean>();
+        for(int i = 0; i <= submitted; i++) {
+            pending.put(href(i), true);
+            if(i % 2 == 1 && i < submitted) {
+                pending.remove(href(i - 1));
+            }
+        }
+        List<String> afterSubmitted = new ArrayList<String>(pending.keySet());
+        if(submitted % 2 == 0 || hrefs.equals(afterSubmitted)) {
+            return afterSubmitted;
+        }
+        pending.remove(href(submitted - 1));
+        return new ArrayList<String>(pending.keySet());
+    }
+
+    /**
+     * Writes three jobs to a new journal
+     * @return The end of the third record
+     */
+    private static int writeThirdRecord(File file) throws IOException {
+        WatermarkJournal journal = new WatermarkJournal(file, 4096, false);
+        for(int i = 0; i < 3; i++) {
+            journal.submitted(entry(i));
+        }
+        journal.close();
+        return end(file);
+    }
+
+    /**
+     * @return The start of the third record, found by writing only two
+     */
+    private int recordStart(File file) throws IOException {
+        File twoRecords = folder.newFile("two-records");
+        WatermarkJournal journal = new WatermarkJournal(twoRecords, 4096, false);
+        for(int i = 0; i < 2; i++) {
+            journal.submitted(entry(i));
+        }
+        journal.close();
+        return end(twoRecords);
+    }
+
+    /**
+     * @return The end of the last record. Every record ends with its bit rate, so the last byte is not zero.
+     */
+    private static int end(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            int end = bytes.length;
+            while(end > 0 && bytes[end - 1] == 0) {
+                end--;
+            }
+            return end;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void assertRecovers(File file) throws IOException {
+        WatermarkJournal journal = new WatermarkJournal(file, 4096, false);
+        try {
+            assertEquals(Arrays.asList(href(0), href(1)), hrefs(journal.getPending()));
+            assertTrue(journal.getDiscardedBytes() > 0);
+
+            // The torn record is overwritten, not read as part of the next one
+            journal.submitted(entry(3));
+        } finally {
+            journal.close();
+        }
+
+        journal = new WatermarkJournal(file, 4096, false);
+        try {
+            assertEquals(Arrays.asList(href(0), href(1), href(3)), hrefs(journal.getPending()));
+            assertEquals(0, journal.getDiscardedBytes());
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static WatermarkJournalEntry entry(int i) {
+        return new WatermarkJournalEntry("video-" + i, "hash-" + i, href(i), i * 1000L, i * 1000L + 1000, new JobShape(1, 1920, 1080, "2500k", -1));
+    }
+
+    private static String href(int i) {
+        return "https://api.safestream.com/0.1/watermark/" + i;
+    }
+
+    private static List<String> hrefs(List<WatermarkJournalEntry> entries) {
+        List<String> hrefs = new ArrayList<String>();
+        for(WatermarkJournalEntry entry : entries) {
+            hrefs.add(entry.getHref());
+        }
+        return hrefs;
+    }
+}
@@ -0,0 +1,183 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.api.watermarking.webhook;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import com.safestream.sdk.api.SafeStreamAPI;
+import com.safestream.sdk.api.watermarking.WatermarkConfiguration;
+import com.safestream.sdk.api.watermarking.WatermarkResult;
+import com.safestream.sdk.http.CircuitBreakerPolicy;
+import com.safestream.sdk.http.SafeStreamHttpClientConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * A watermark being waited on is completed by a signed callback from the stub, end to end
+ */
+public class WatermarkWebhookReceiverTest {
+
+    private static final String SECRET = "webhook-secret";
+
+    private StubServer stub;
+
+    private WatermarkWebhookReceiver receiver;
+
+    private SafeStreamAPI safeStreamAPI;
+
+    private ExecutorService caller;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.start();
+        stub.on("POST", "watermark", Response.json(200, watermark("PENDING")));
+        stub.on("GET", "watermark/1", Response.json(200, watermark("READY")));
+        caller = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        caller.shutdownNow();
+        if(safeStreamAPI != null) {
+            safeStreamAPI.close();
+        }
+        if(receiver != null) {
+            receiver.close();
+        }
+        stub.close();
+    }
+
+    @Test
+    public void completesWatermarkFromCallback() throws Exception {
+        start(WebhookConfiguration.DEFAULT_FALLBACK_MILLIS);
+        Future<WatermarkResult> created = create();
+        String callbackUrl = awaitSubmitted();
+
+        assertEquals(204, sendCallback(callbackUrl, SECRET, watermark("READY")));
+
+        assertEquals("READY", created.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(1, receiver.getReceived());
+        assertEquals(0, stub.getRequests("GET", "watermark/1").size());
+    }
+
+    @Test
+    public void pollsWhenCallbackIsNotSigned() throws Exception {
+        start(500);
+        Future<WatermarkResult> created = create();
+        String callbackUrl = awaitSubmitted();
+
+        assertEquals(401, sendCallback(callbackUrl, "wrong-secret", watermark("READY")));
+        assertFalse(created.isDone());
+
+        // The forged callback is ignored and the watermark is polled once the fallback time has passed
+        assertEquals("READY", created.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(1, receiver.getRejected());
+        assertEquals(0, receiver.getReceived());
+        assertEquals(1, stub.getRequests("GET", "watermark/1").size());
+    }
+
+    private void start(long fallbackMillis) throws Exception {
+        receiver = new WatermarkWebhookReceiver(new WebhookConfiguration(SECRET)
+                .withHost("localhost")
+                .withFallbackMillis(fallbackMillis));
+        receiver.start();
+        receiver.getConfiguration().withCallbackUrl("http://localhost:" + receiver.getAddress().getPort() + receiver.getConfiguration().getPath());
+
+        safeStreamAPI = new SafeStreamAPI("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()))
+                .withWebhookReceiver(receiver);
+    }
+
+    private Future<WatermarkResult> create() {
+        return caller.submit(new Callable<WatermarkResult>() {
+            @Override
+            public WatermarkResult call() throws Exception {
+                return safeStreamAPI.watermark().create("video-1", new WatermarkConfiguration().withContent("Jane Doe"), 10000);
+            }
+        });
+    }
+
+    /**
+     * Waits until the watermark has been submitted and is waiting for its callback
+     * @return The callback URL sent with the watermark request
+     */
+    private String awaitSubmitted() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(safeStreamAPI.watermark().getJobTracker().getPendingJobs() == 0) {
+            if(System.currentTimeMillis() > deadline) {
+                throw new AssertionError("The watermark was not submitted");
+            }
+            Thread.sleep(10);
+        }
+
+        JsonObject payload = new JsonParser().parse(stub.getRequests("POST", "watermark").get(0).body).getAsJsonObject();
+        return payload.get("callbackUrl").getAsString();
+    }
+
+    private static int sendCallback(String callbackUrl, String secret, String body) throws Exception {
+        byte[] bytes = body.getBytes(StubServer.UTF_8);
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(callbackUrl).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty(WatermarkWebhookReceiver.TIMESTAMP_HEADER, String.valueOf(timestamp));
+        connection.setRequestProperty(WatermarkWebhookReceiver.SIGNATURE_HEADER, WatermarkWebhookReceiver.sign(secret, timestamp, bytes));
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String watermark(String status) {
+        return "{\"status\":\"" + status + "\",\"href\":\"http://" + stub.getHostName() + "/0.1/watermark/1\"}";
+    }
+}
@@ -0,0 +1,92 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Requests sent without blocking the calling thread
+ */
+public class SafeStreamAsyncClientTest {
+
+    private StubServer stub;
+
+    private SafeStreamHttpClient safeStreamHttpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.start();
+        safeStreamHttpClient = new SafeStreamHttpClient("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        safeStreamHttpClient.close();
+        stub.close();
+    }
+
+    @Test
+    public void fetchesFirstTokenWithoutBlockingCaller() throws Exception {
+        stub.on("POST", "token", Response.json(200, "{\"token\":\"test-token\"}").withDelayMillis(1000));
+        stub.on("GET", "videos", Response.json(200, "[]"));
+
+        long start = System.nanoTime();
+        Future<SafeStreamHttpResponse> response = new SafeStreamAsyncClient(safeStreamHttpClient).get("videos", null);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("The caller waited " + elapsedMillis + " ms", elapsedMillis < 500);
+        assertEquals(200, response.get(5, TimeUnit.SECONDS).getHttpStatus());
+        assertEquals(1, stub.getRequests("POST", "token").size());
+    }
+
+    @Test
+    public void failsWhenTokenCannotBeFetched() throws Exception {
+        stub.on("POST", "token", Response.json(403, "{}"));
+
+        Future<SafeStreamHttpResponse> response = new SafeStreamAsyncClient(safeStreamHttpClient).get("videos", null);
+
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            throw new AssertionError("Expected the token request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SafeStreamHttpClientException);
+        }
+        assertEquals(0, stub.getRequests("GET", "videos").size());
+    }
+}
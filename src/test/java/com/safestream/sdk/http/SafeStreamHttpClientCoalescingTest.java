@@ -0,0 +1,101 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import com.safestream.sdk.api.video.Video;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Identical GET requests in flight at the same time share one upstream call
+ */
+public class SafeStreamHttpClientCoalescingTest {
+
+    private StubServer stub;
+
+    private SafeStreamHttpClient safeStreamHttpClient;
+
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = StubServer.start();
+        safeStreamHttpClient = new SafeStreamHttpClient("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()));
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        callers.shutdownNow();
+        safeStreamHttpClient.close();
+        stub.close();
+    }
+
+    @Test
+    public void decodesSharedResponseForEachCaller() throws Exception {
+        stub.on("GET", "videos", Response.json(200, "{\"key\":\"video-1\",\"name\":\"Original\"}").withDelayMillis(500));
+
+        Future<SafeStreamHttpResponse> first = callers.submit(get());
+        Thread.sleep(100);
+        Future<SafeStreamHttpResponse> second = callers.submit(get());
+
+        SafeStreamHttpResponse firstResponse = first.get(5, TimeUnit.SECONDS);
+        SafeStreamHttpResponse secondResponse = second.get(5, TimeUnit.SECONDS);
+        assertEquals(1, stub.getRequests("GET", "videos").size());
+        assertNotSame(firstResponse, secondResponse);
+
+        Video firstVideo = firstResponse.getEntity(Video.class);
+        Video secondVideo = secondResponse.getEntity(Video.class);
+        assertNotSame(firstVideo, secondVideo);
+
+        firstVideo.withName("Changed");
+        assertEquals("Original", secondVideo.getName());
+        assertEquals("video-1", secondVideo.getKey());
+    }
+
+    private Callable<SafeStreamHttpResponse> get() {
+        return new Callable<SafeStreamHttpResponse>() {
+            @Override
+            public SafeStreamHttpResponse call() throws Exception {
+                return safeStreamHttpClient.get("videos", Video.class);
+            }
+        };
+    }
+}
@@ -0,0 +1,166 @@
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016 MediaSilo
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.safestream.sdk.http;
+
+import com.safestream.sdk.StubServer;
+import com.safestream.sdk.StubServer.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Retries against a stub that fails requests on purpose
+ */
+public class SafeStreamHttpClientRetryTest {
+
+    private StubServer stub;
+
+    @Before
+    public void startStub() throws Exception {
+        stub = StubServer.start();
+    }
+
+    @After
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void retriesServerErrorsOnGet() throws Exception {
+        stub.on("GET", "videos", Response.json(503, "{}"), Response.json(503, "{}"), Response.json(200, "[]"));
+
+        SafeStreamHttpResponse response = client(new RetryPolicy()).get("videos");
+
+        assertEquals(200, response.getHttpStatus());
+        assertEquals(3, stub.getRequests("GET", "videos").size());
+    }
+
+    @Test
+    public void retriesDroppedConnectionOnGet() throws Exception {
+        stub.on("GET", "videos", Response.drop(), Response.json(200, "[]"));
+
+        SafeStreamHttpResponse response = client(new RetryPolicy()).get("videos");
+
+        assertEquals(200, response.getHttpStatus());
+        assertEquals(2, stub.getRequests("GET", "videos").size());
+    }
+
+    @Test
+    public void doesNotRetryServerErrorsOnPost() throws Exception {
+        stub.on("POST", "watermark", Response.json(503, "{}"), Response.json(200, "{}"));
+
+        try {
+            client(new RetryPolicy()).post("watermark", "{}");
+            fail("Expected the 503 to be returned");
+        } catch (SafeStreamHttpClientException e) {
+            assertEquals(503, e.getHttpStatus());
+        }
+        assertEquals(1, stub.getRequests("POST", "watermark").size());
+    }
+
+    @Test
+    public void retriesThrottledPost() throws Exception {
+        stub.on("POST", "watermark", Response.json(429, "{}"), Response.json(200, "{}"));
+
+        SafeStreamHttpResponse response = client(new RetryPolicy()).post("watermark", "{}");
+
+        assertEquals(200, response.getHttpStatus());
+        assertEquals(2, stub.getRequests("POST", "watermark").size());
+    }
+
+    @Test
+    public void waitsForRetryAfter() throws Exception {
+        stub.on("GET", "videos", Response.json(503, "{}").withHeader("Retry-After", "1"), Response.json(200, "[]"));
+
+        client(new RetryPolicy()).get("videos");
+
+        List<StubServer.Request> requests = stub.getRequests("GET", "videos");
+        assertEquals(2, requests.size());
+        long waitedMillis = (requests.get(1).receivedNanos - requests.get(0).receivedNanos) / 1000000;
+        assertTrue("Retried after " + waitedMillis + " ms", waitedMillis >= 950);
+    }
+
+    @Test
+    public void doesNotRetryWhenRetryAfterExceedsMaxDelay() throws Exception {
+        stub.on("GET", "videos", Response.json(503, "{}").withHeader("Retry-After", "60"), Response.json(200, "[]"));
+
+        try {
+            client(new RetryPolicy().withMaxDelayMillis(1000)).get("videos");
+            fail("Expected the 503 to be returned");
+        } catch (SafeStreamHttpClientException e) {
+            assertEquals(503, e.getHttpStatus());
+            assertEquals(60000, e.getRetryAfterMillis());
+        }
+        assertEquals(1, stub.getRequests("GET", "videos").size());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        stub.on("GET", "videos", Response.json(503, "{}"));
+
+        try {
+            client(new RetryPolicy().withMaxAttempts(4)).get("videos");
+            fail("Expected the 503 to be returned");
+        } catch (SafeStreamHttpClientException e) {
+            assertEquals(503, e.getHttpStatus());
+        }
+        assertEquals(4, stub.getRequests("GET", "videos").size());
+    }
+
+    @Test
+    public void stopsRetryingWhenBudgetIsSpent() throws Exception {
+        stub.on("GET", "videos", Response.json(503, "{}"));
+        SafeStreamHttpClient client = client(new RetryPolicy()
+                .withMaxAttempts(5)
+                .withRetryBudgetBurst(2)
+                .withRetryBudgetRatio(0));
+
+        for(int i = 0; i < 2; i++) {
+            try {
+                client.get("videos");
+                fail("Expected the 503 to be returned");
+            } catch (SafeStreamHttpClientException e) {
+                assertEquals(503, e.getHttpStatus());
+            }
+        }
+
+        // The budget pays for two retries of the first call and none of the second
+        assertEquals(4, stub.getRequests("GET", "videos").size());
+    }
+
+    private SafeStreamHttpClient client(RetryPolicy retryPolicy) {
+        return new SafeStreamHttpClient("TEST", new SafeStreamHttpClientConfiguration()
+                .withHostName(stub.getHostName())
+                .withRetryPolicy(retryPolicy.withBaseDelayMillis(10))
+                .withCircuitBreakerPolicy(CircuitBreakerPolicy.disabled()));
+    }
+}